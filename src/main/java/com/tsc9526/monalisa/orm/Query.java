@@ -24,7 +24,17 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.tsc9526.monalisa.orm.datasource.DBConfig;
 import com.tsc9526.monalisa.orm.datasource.DbProp;
@@ -36,18 +46,31 @@ import com.tsc9526.monalisa.orm.executor.CacheableResultExecutor;
 import com.tsc9526.monalisa.orm.executor.CacheableResultLoadExecutor;
 import com.tsc9526.monalisa.orm.executor.CacheableResultSetExecutor;
 import com.tsc9526.monalisa.orm.executor.Execute;
+import com.tsc9526.monalisa.orm.executor.HandlerRelation;
 import com.tsc9526.monalisa.orm.executor.HandlerResultSet;
 import com.tsc9526.monalisa.orm.executor.ResultSetsExecutor;
+import com.tsc9526.monalisa.orm.executor.ResultStream;
+import com.tsc9526.monalisa.orm.executor.RowCallback;
+import com.tsc9526.monalisa.orm.executor.StreamResultExecutor;
 import com.tsc9526.monalisa.orm.executor.UpdateExecutor;
 import com.tsc9526.monalisa.orm.generator.DBExchange;
+import com.tsc9526.monalisa.orm.partition.ShardMerger;
+import com.tsc9526.monalisa.orm.partition.ShardMerger.OrderBy;
+import com.tsc9526.monalisa.orm.partition.ShardResultHandler;
+import com.tsc9526.monalisa.orm.partition.ShardedDB;
+import com.tsc9526.monalisa.tools.Tasks;
 import com.tsc9526.monalisa.tools.Tools;
 import com.tsc9526.monalisa.tools.agent.AgentClass;
 import com.tsc9526.monalisa.tools.cache.Cache;
 import com.tsc9526.monalisa.tools.cache.CacheKey;
 import com.tsc9526.monalisa.tools.cache.CacheManager;
+import com.tsc9526.monalisa.tools.cache.CacheTableRow;
+import com.tsc9526.monalisa.tools.cache.CacheValue;
 import com.tsc9526.monalisa.tools.cache.Cacheable;
 import com.tsc9526.monalisa.tools.datatable.DataMap;
 import com.tsc9526.monalisa.tools.datatable.DataTable;
+import com.tsc9526.monalisa.tools.datatable.KeysetPage;
+import com.tsc9526.monalisa.tools.datatable.KeysetToken;
 import com.tsc9526.monalisa.tools.datatable.Page;
 import com.tsc9526.monalisa.tools.io.MelpClose;
 import com.tsc9526.monalisa.tools.logger.Logger;
@@ -95,6 +118,30 @@ public class Query {
  	
 	private static ThreadLocal<Boolean> putCacheMode = new ThreadLocal<Boolean>();
 	
+	private static volatile ExecutorService pageExecutor = new ThreadPoolExecutor(0, 32, 60L, TimeUnit.SECONDS
+			, new SynchronousQueue<Runnable>()
+			, Tasks.createThreadFactory("Monalisa-Page")
+			, new ThreadPoolExecutor.CallerRunsPolicy());
+	
+	/**
+	 * The executor runs the COUNT(*) of getPage/getPageAfter concurrently with the page data query. <br>
+	 * Default: max 32 threads, the count runs in the caller thread if all threads are busy.
+	 * 
+	 * @param executor null: run the COUNT(*) and the page data query one after the other
+	 * 
+	 * @see DbProp#PROP_DB_PAGE_CONCURRENT
+	 */
+	public static void setPageExecutor(ExecutorService executor) {
+		pageExecutor=executor;
+	}
+	
+	/**
+	 * @return the executor for the concurrent queries(page count, chunks of the select by keys), maybe null
+	 */
+	public static ExecutorService getPageExecutor() {
+		return pageExecutor;
+	}
+	
 	/**
 	 * Indicates whether or not always call the real query and put the results in the cache
 	 * 
@@ -124,6 +171,8 @@ public class Query {
 	
 	protected long autoRefreshInMillis = 0;
 	
+	protected long staleInMillis = 0;
+	
 	protected Boolean readonly;
  	 
 	protected Object tag;
@@ -133,6 +182,17 @@ public class Query {
 	protected Cache cache;
 	
 	protected Dialect dialect;
+	
+	protected int fetchSize = 0;
+	
+	//false: do not run COUNT(*) for the page
+	protected boolean pageCount = true;
+	
+	//cache time of the COUNT(*) for the page, 0: same as the query
+	protected long countTtlInMillis = 0;
+	
+	//true: use the estimated total records of the dialect for the page if supported 
+	protected boolean approximateCount = false;
  
 	public Query(){		 
 	}
@@ -297,11 +357,40 @@ public class Query {
 	}
 	
 	protected Connection getConnectionFromDB(boolean autoCommit) throws SQLException{
-		Connection conn=db.getDataSource().getConnection();
+		return getConnectionFromDB(autoCommit, false);
+	}
+	
+	/**
+	 * @param autoCommit auto commit
+	 * @param read true: get the connection from {@link DBConfig#getReadDataSource()}
+	 * @return the connection
+	 * @throws SQLException if a database access error occurs
+	 */
+	protected Connection getConnectionFromDB(boolean autoCommit,boolean read) throws SQLException{
+		Connection conn= read ? db.getReadDataSource().getConnection() : db.getDataSource().getConnection();
 		conn.setAutoCommit(autoCommit);
 		return conn;
 	}
 	
+	/**
+	 * 不在事务中的查询使用读数据源. setReadonly(false): 总是使用写数据源; 
+	 * setReadonly(true): 返回多个结果集的语句也使用读数据源
+	 * 
+	 * @param x the executor
+	 * @return true if the executor can run on a read host
+	 */
+	protected boolean isReadExecute(Execute<?> x){
+		if(readonly!=null && !readonly){
+			return false;
+		}
+		
+		if(x instanceof CacheableExecute || x instanceof StreamResultExecutor){
+			return true;
+		}else{
+			return readonly!=null && x instanceof ResultSetsExecutor;
+		}
+	}
+	
 
 	/**
 	 * Execute the SQL
@@ -339,6 +428,18 @@ public class Query {
 		});
 	}
 	 
+	/**
+	 * Execute the batch statement by the executor
+	 * 
+	 * @param execute the executor
+	 * @param batchParameters the batch sql parameters to execute
+	 * @param <X> result type
+	 * @return the result of the executor
+	 */
+	public <X> X executeBatch(Execute<X> execute,List<Object[]> batchParameters){
+		return doExecute(execute,getSql(),batchParameters,true);
+	}
+	 
 	public <X> X execute(Execute<X> execute){
 		if(execute instanceof CacheableExecute) {
 			return doCacheExecute( (CacheableExecute<X>) execute);
@@ -356,32 +457,46 @@ public class Query {
 	 	}
 	 	
 		if(ttlInMillis > 0 ){
-			Cache cache   = getCache();
-			CacheKey key  = createCacheKey(extraTag);
+			final Cache cache   = getCache();
+			final CacheKey key  = createCacheKey(extraTag);
+			
+			final long softTtlInMillis = ttlInMillis;
+			final long hardTtlInMillis = staleInMillis > 0 ? ttlInMillis + staleInMillis : ttlInMillis;
+			
+			final Cacheable loader = new Cacheable() {
+				@Override
+				public Object execute() {
+					X v = doExecute(execute,getSql(),queryArgs,false);
+					
+					addCacheRelationTables(cache, key, execute, getSql());
+					
+					return staleInMillis > 0 ? new CacheValue(v, softTtlInMillis) : v; 
+				}
+			};
 			 
-			X value = getCachedObject(cache,key);
+			Object cached = getCachedObject(cache,key);
 			
-			if(value==null){
-				value = doExecute(execute, getSql(),queryArgs,false);
-				
-				cache.putObject(key, value,ttlInMillis); 
+			X value;
+			if(cached==null){
+				value = getCacheValue(loadCacheObject(cache, key, loader, hardTtlInMillis));
+			}else {
+				value = getCacheValue(cached);
 				
-				if(isDebug()){
-					logger.info("Cached, "+Tools.getCachedInfo(key, value, ttlInMillis));
+				if(cached instanceof CacheValue && ((CacheValue)cached).isStale()) {
+					boolean ok = CacheManager.getInstance().refreshAsync(key, cache, loader, hardTtlInMillis);
+					
+					if(ok && isDebug()){
+						logger.info("Stale value returned, refreshing in background: "+key);
+					}
 				}
-			}else {
+				
 				if(isDebug()){
 					logger.info("Loaded from cache, "+Tools.getCachedInfo(key, value, ttlInMillis));
 				}
 			} 
 			
 			if(autoRefreshInMillis>0) {
-				boolean ok = CacheManager.getInstance().addAutoRefreshCache(key,cache,new Cacheable() {
-					@Override
-					public Object execute() {
-						return doExecute(execute,getSql(),queryArgs,false); 
-					}
-				}, ttlInMillis, autoRefreshInMillis);
+				boolean ok = addAutoRefreshCache(key, cache, loader, hardTtlInMillis);
 				
 				if(ok) {
 					if(isDebug()){
@@ -397,6 +512,54 @@ public class Query {
 		return doExecute(execute,getSql(),queryArgs,false);
 	}
 	
+	/**
+	 * 后台自动刷新, 同一个DBConfig同时执行的刷新任务数不超过: cache.refresh.concurrency
+	 */
+	protected boolean addAutoRefreshCache(CacheKey key,Cache cache,Cacheable loader,long ttlInMillis) {
+		if(db==null) {
+			return CacheManager.getInstance().addAutoRefreshCache(key, cache, loader, ttlInMillis, autoRefreshInMillis);
+		}else {
+			int concurrency = DbProp.PROP_DB_CACHE_REFRESH_CONCURRENCY.getIntValue(db, 0);
+			
+			return CacheManager.getInstance().addAutoRefreshCache(db.getKey(), concurrency, key, cache, loader, ttlInMillis, autoRefreshInMillis);
+		}
+	}
+	
+	/**
+	 * 缓存未命中时加载数据: 同一个缓存key同时只有一个线程查询数据库, 其它线程等待该结果
+	 */
+	protected Object loadCacheObject(final Cache cache,final CacheKey key,final Cacheable loader,final long ttlInMillis) {
+		Cacheable putter = new Cacheable() {
+			@Override
+			public Object execute() {
+				Object v = loader.execute();
+				
+				cache.putObject(key, v, ttlInMillis); 
+				
+				if(isDebug()){
+					logger.info("Cached, "+Tools.getCachedInfo(key, getCacheValue(v), ttlInMillis));
+				}
+				return v;
+			}
+		};
+		
+		if(putCacheMode.get() != null) {
+			return putter.execute();
+		}
+		
+		long waitTimeoutInMillis = db==null ? 0 : DbProp.PROP_DB_CACHE_LOAD_TIMEOUT.getIntValue(db, 0);
+		
+		return CacheManager.getInstance().load(key, putter, waitTimeoutInMillis);
+	}
+	
+	@SuppressWarnings("unchecked")
+	protected <X> X getCacheValue(Object cached) {
+		if(cached instanceof CacheValue) {
+			return (X)((CacheValue)cached).getValue();
+		}
+		return (X)cached;
+	}
+	
 	protected <X> X getCachedObject(Cache cache,CacheKey key) {
 		Boolean isPutCacheMode = putCacheMode.get();
 		if(isPutCacheMode != null) {
@@ -415,34 +578,99 @@ public class Query {
 	}
 	
 	protected <X> X doExecute(Execute<X> x,String sql,List<?> parameters, boolean isBatchQuery){
+		if(getShards()!=null && !isReadExecute(x)){
+			throw new RuntimeException("Sharded db: "+db.getKey()+" can not execute update without shard key, use model or query with the shard db: "+sql);
+		}
+		
 		Tx tx=Tx.getTx();
 		
 		Connection conn=null; 
 		try{
-			conn= tx==null?getConnectionFromDB(true):getConnectionFromTx(tx);
+			conn= tx==null?getConnectionFromDB(true,isReadExecute(x)):getConnectionFromTx(tx);
 			  
 			if(!MelpString.isEmpty(sql) || isBatchQuery) {
 				logExecutableSql(sql,parameters,isBatchQuery);
 			}
 			
-			return x.execute(conn, sql, parameters);
-			 
-		}catch(SQLException e){
-			String executeSQL=sql.toString();
-			try{
-				executeSQL=MelpSQL.getExecutableSQL(getDialect(),sql,parameters);
-			}catch(Exception ex){
-				MelpClose.close(ex);
-			}
+			X r = x.execute(conn, sql, parameters);
 			
-			throw new RuntimeException("SQL Exception: "+e.getMessage()+"\r\n========================================================================\r\n"
-					                  +executeSQL+"\r\n========================================================================",e);
+			evictCacheRelationTables(tx, x, sql, parameters, isBatchQuery);
+			
+			return r;
+		}catch(SQLException e){
+			throw toRuntimeException(e, sql, parameters);
 		}finally{
 			if(tx==null){
 				MelpClose.close(conn);
 			}
 		}
 	}
+	
+	/**
+	 * 记录缓存结果所依赖的表: 结果集的元数据中的表 + SQL中FROM/JOIN的表(聚合查询的元数据中可能没有表名)
+	 */
+	protected void addCacheRelationTables(Cache cache,CacheKey key,Execute<?> execute,String sql){
+		Set<String> tables=MelpSQL.getQueryTables(sql);
+		
+		if(execute instanceof HandlerRelation){
+			for(CacheTableRow row:((HandlerRelation)execute).getRelationTables()){
+				String table=MelpSQL.getTableName(row.getTable());
+				if(table!=null){
+					tables.add(table);
+				}
+			}
+		}
+		
+		CacheManager.getInstance().addRelationTables(getDbKey(), tables, cache, key);
+	}
+	
+	/**
+	 * DML语句执行后, 清除依赖目标表的缓存; 在事务中则延迟到事务提交后再清除
+	 */
+	protected void evictCacheRelationTables(Tx tx,Execute<?> x,String sql,List<?> parameters, boolean isBatchQuery){
+		if(x instanceof CacheableExecute || !CacheManager.getInstance().hasRelationTables()){
+			return;
+		}
+		
+		Set<String> tables=new LinkedHashSet<String>();
+		if(isBatchQuery && sql==null){
+			for(Object s:parameters){
+				String table=MelpSQL.getDmlTable(String.valueOf(s));
+				if(table!=null){
+					tables.add(table);
+				}
+			}
+		}else{
+			String table=MelpSQL.getDmlTable(sql);
+			if(table!=null){
+				tables.add(table);
+			}
+		}
+		
+		if(tables.size()>0){
+			if(tx!=null){
+				tx.getTxCacheManager().addEvictTables(getDbKey(), tables);
+			}else{
+				CacheManager.getInstance().evictRelationTables(getDbKey(), tables);
+			}
+		}
+	}
+	
+	protected String getDbKey(){
+		return db==null?null:db.getKey();
+	}
+	
+	protected RuntimeException toRuntimeException(SQLException e,String sql,List<?> parameters){
+		String executeSQL=sql;
+		try{
+			executeSQL=MelpSQL.getExecutableSQL(getDialect(),sql,parameters);
+		}catch(Exception ex){
+			MelpClose.close(ex);
+		}
+		
+		return new RuntimeException("SQL Exception: "+e.getMessage()+"\r\n========================================================================\r\n"
+				                  +executeSQL+"\r\n========================================================================",e);
+	}
 	 
  
 	/**
@@ -491,6 +719,16 @@ public class Query {
 		if(!doExchange()){			
 			queryCheck();
 			
+			ShardedDB shards=getShards();
+			if(shards!=null){
+				List<T> rs=shards.scatter(new ShardedDB.ShardTask<T>(){
+					public T execute(DBConfig shard) {
+						return createShardQuery(shard).getResult(ShardResultHandler.forShard(resultHandler));
+					}
+				});
+				return ShardMerger.aggregate(rs, getSql());
+			}
+			
 			return execute(new CacheableResultExecutor<T>(resultHandler));	 
 		}else{
 			return null;
@@ -542,6 +780,22 @@ public class Query {
 	 * @return List Data
 	 */
 	public <T> DataTable<T> getList(HandlerResultSet<T> resultHandler,int limit,int offset) {
+		ShardedDB shards=getShards();
+		if(shards!=null && !doExchange()){
+			queryCheck();
+			
+			//每个分片取前 limit+offset 条, 合并后再做分页
+			final int top=limit+offset;
+			final HandlerResultSet<T> handler=resultHandler;
+			List<DataTable<T>> rs=shards.scatter(new ShardedDB.ShardTask<DataTable<T>>(){
+				public DataTable<T> execute(DBConfig shard) {
+					Query q=createShardQuery(shard);
+					return q.getDialect().getLimitQuery(q, top, 0).getList(ShardResultHandler.forShard(handler));
+				}
+			});
+			return ShardMerger.merge(rs, ShardMerger.parseOrderBy(getSql()), offset, limit);
+		}
+		
 		Query listQuery=getDialect().getLimitQuery(this, limit, offset);
 		return listQuery.getList(resultHandler); 
 	}	 
@@ -555,6 +809,16 @@ public class Query {
 		if(!doExchange()){		 
 			queryCheck();
 			
+			ShardedDB shards=getShards();
+			if(shards!=null){
+				List<DataTable<T>> rs=shards.scatter(new ShardedDB.ShardTask<DataTable<T>>(){
+					public DataTable<T> execute(DBConfig shard) {
+						return createShardQuery(shard).getList(ShardResultHandler.forShard(resultHandler));
+					}
+				});
+				return ShardMerger.merge(rs, ShardMerger.parseOrderBy(getSql()), 0, -1);
+			}
+			
 			return execute(new CacheableResultSetExecutor<T>(resultHandler));
 		}else{
 			return new DataTable<T>();
@@ -592,30 +856,348 @@ public class Query {
 		if(!doExchange()){			
 			queryCheck();
 			
-			Query countQuery=getDialect().getCountQuery(this);			
-			long total=countQuery.getResult(Long.class);			
+			Future<PageTotal> total=startPageTotal();
 			 
-			Query listQuery=getDialect().getLimitQuery(this, limit, offset);
-			DataTable<T>  list=listQuery.getList(resultHandler);
-			 
-			return new Page<T>(list,total,limit,offset); 
+			DataTable<T>  list=getList(resultHandler, limit, offset);
+			
+			PageTotal pt=getPageTotal(total);
+			
+			Page<T> page=new Page<T>(list,pt.records,limit,offset);
+			page.setApproximate(pt.approximate);
+			return page; 
 		}else{
 			return new Page<T>();		 
 		}
 	}
 	
+	/**
+	 * @return total records of the page, -1 if not count
+	 * 
+	 * @see #setPageCount(boolean)
+	 * @see #setCountCacheTime(long)
+	 */
+	protected long getPageTotal(){
+		if(!pageCount){
+			return -1;
+		}
+		
+		Query countQuery=getDialect().getCountQuery(this);
+		if(countTtlInMillis!=0){
+			countQuery.setCacheTime(countTtlInMillis);
+		}
+		return countQuery.getResult(Long.class);
+	}
+	
+	private PageTotal countPage(){
+		if(pageCount && approximateCount && getShards()==null){
+			try{
+				long n=getDialect().getApproximateCount(this);
+				if(n>=0){
+					return new PageTotal(n,true);
+				}
+			}catch(RuntimeException e){
+				logger.warn("Approximate count failed, use COUNT(*) instead: "+e.getMessage());
+			}
+		}
+		return new PageTotal(getPageTotal(),false);
+	}
+	
+	/**
+	 * Start counting the total records of the page, the count query runs concurrently 
+	 * if the page executor is set and not in transaction.
+	 */
+	private Future<PageTotal> startPageTotal(){
+		Callable<PageTotal> task=new Callable<PageTotal>() {
+			public PageTotal call() throws Exception {
+				return countPage();
+			}
+		};
+		
+		ExecutorService executor=pageExecutor;
+		if(pageCount && executor!=null && Tx.getTx()==null 
+				&& !"false".equalsIgnoreCase(DbProp.PROP_DB_PAGE_CONCURRENT.getValue(db))){
+			final Boolean putCache=putCacheMode.get();
+			final Callable<PageTotal> count=task;
+			
+			return executor.submit(new Callable<PageTotal>() {
+				public PageTotal call() throws Exception {
+					if(putCache!=null){
+						putCacheMode.set(putCache);
+					}
+					try{
+						return count.call();
+					}finally{
+						putCacheMode.remove();
+					}
+				}
+			});
+		}else{
+			FutureTask<PageTotal> f=new FutureTask<PageTotal>(task);
+			f.run();
+			return f;
+		}
+	}
+	
+	private PageTotal getPageTotal(Future<PageTotal> total){
+		try{
+			return total.get();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}catch(ExecutionException e){
+			Throwable t=e.getCause();
+			if(t instanceof RuntimeException){
+				throw (RuntimeException)t;
+			}
+			throw new RuntimeException(t);
+		}
+	}
+	
+	private static class PageTotal{
+		long    records;
+		boolean approximate;
+		
+		PageTotal(long records,boolean approximate){
+			this.records=records;
+			this.approximate=approximate;
+		}
+	}
+	
+	/**
+	 * Keyset(seek) pagination, see {@link #getPageAfter(HandlerResultSet, int, String)}
+	 * 
+	 * @param limit max records of the page
+	 * @param token null: the first page, otherwise the next token of the previous page
+	 * @return Page Data
+	 */
+	public KeysetPage<DataMap> getPageAfter(int limit,String token) {
+		return getPageAfter(DataMap.class,limit,token);
+	}
+	
+	/**
+	 * Keyset(seek) pagination, see {@link #getPageAfter(HandlerResultSet, int, String)}
+	 * 
+	 * @param resultClass the result class
+	 * @param limit max records of the page
+	 * @param token null: the first page, otherwise the next token of the previous page
+	 * @param <T> result type
+	 * @return Page Data
+	 */
+	public <T> KeysetPage<T> getPageAfter(Class<T> resultClass,int limit,String token) {
+		return getPageAfter(new HandlerResultSet<T>(this,resultClass),limit,token);
+	}
+	
+	/**
+	 * Keyset(seek) pagination: instead of skipping offset rows, the next page starts after the sort keys 
+	 * of the last row in the previous page: <code>WHERE (k1,k2) &gt; (?,?) ORDER BY k1,k2 LIMIT n</code>, 
+	 * so the deep pages are as fast as the first page. <br>
+	 * The query must end with ORDER BY, the sort keys must be selected and unique(e.g. the last key is the primary key).<br>
+	 * The COUNT(*) is skipped if {@link #setPageCount(boolean)} is false.
+	 * 
+	 * @param resultHandler handle result set
+	 * @param limit max records of the page
+	 * @param token null: the first page, otherwise the next token of the previous page
+	 * @param <T> result type
+	 * @return Page Data, with the token of the next page
+	 */
+	public <T> KeysetPage<T> getPageAfter(HandlerResultSet<T> resultHandler,int limit,String token) {
+		if(!doExchange()){			
+			queryCheck();
+			
+			List<OrderBy> orders=ShardMerger.parseOrderBy(getSql());
+			if(orders.isEmpty()){
+				throw new RuntimeException("Keyset pagination requires ORDER BY: "+getSql());
+			}
+			
+			List<String> keys=new ArrayList<String>();
+			for(OrderBy o:orders){
+				keys.add(o.getName());
+			}
+			
+			Object[] after= (token==null || token.length()==0) ? null : KeysetToken.decode(keys, token);
+			
+			Future<PageTotal> total=startPageTotal();
+			
+			//多取一条记录, 用于判断是否还有下一页
+			Query listQuery=getDialect().getKeysetQuery(this, orders, after, limit>0?limit+1:limit);
+			DataTable<T> list=listQuery.getList(resultHandler);
+			
+			boolean more=limit>0 && list.size()>limit;
+			if(more){
+				list=new DataTable<T>(list.subList(0, limit));
+			}
+			
+			String next=null;
+			if(more){
+				T last=list.get(list.size()-1);
+				
+				Object[] values=new Object[keys.size()];
+				for(int i=0;i<values.length;i++){
+					values[i]=ShardMerger.getValue(last, keys.get(i));
+				}
+				next=KeysetToken.encode(keys, values);
+			}
+			 
+			PageTotal pt=getPageTotal(total);
+			
+			KeysetPage<T> page=new KeysetPage<T>(list,pt.records,limit,next);
+			page.setApproximate(pt.approximate);
+			return page; 
+		}else{
+			return new KeysetPage<T>();		 
+		}
+	}
+	
+	/**
+	 * Streaming the query results, the rows are read one by one from the database, 
+	 * so the memory usage stays flat no matter how big the result is. <br>
+	 * <b>The stream must be closed after use</b>, for example: <br><br>
+	 * <code>
+	 * ResultStream&lt;Result&gt; rs=q.stream(Result.class);<br>
+	 * try{<br>
+	 * &nbsp;&nbsp;&nbsp;&nbsp;for(Result r:rs){ ... }<br>
+	 * }finally{<br>
+	 * &nbsp;&nbsp;&nbsp;&nbsp;rs.close();<br>
+	 * }<br>
+	 * </code>
+	 * 
+	 * @param resultClass the result class
+	 * @param <T> result type
+	 * @return the result stream
+	 * 
+	 * @see #setFetchSize(int)
+	 */
+	public <T> ResultStream<T> stream(Class<T> resultClass){
+		return stream(new HandlerResultSet<T>(this,resultClass));
+	}
+	
+	/**
+	 * Streaming the query results, the cache is ignored. 
+	 * 
+	 * @param resultHandler handle result set
+	 * @param <T> result type
+	 * @return the result stream, which must be closed after use
+	 * 
+	 * @see #stream(Class)
+	 */
+	public <T> ResultStream<T> stream(HandlerResultSet<T> resultHandler){
+		queryCheck();
+		
+		if(getShards()!=null){
+			throw new RuntimeException("Stream is not supported by sharded db: "+db.getKey()+", use forEach instead");
+		}
+		
+		Tx tx=Tx.getTx();
+		
+		Connection conn=null;
+		try{
+			conn= tx==null?getConnectionFromDB(true,readonly==null || readonly):getConnectionFromTx(tx);
+			
+			logExecutableSql(getSql(),queryArgs,false);
+			
+			ResultStream<T> stream=new ResultStream<T>(resultHandler, conn, tx==null);
+			conn=null;
+			
+			return stream.open(getDialect(), getSql(), queryArgs, getFetchSize());
+		}catch(SQLException e){
+			throw toRuntimeException(e, getSql(), queryArgs);
+		}finally{
+			if(tx==null){
+				MelpClose.close(conn);
+			}
+		}
+	}
+	
+	/**
+	 * Process the query results row by row, the cache is ignored.
+	 * 
+	 * @param resultClass the result class
+	 * @param callback process each row
+	 * @param <T> result type
+	 * @return the number of rows processed
+	 */
+	public <T> long forEach(Class<T> resultClass,RowCallback<T> callback){
+		return forEach(new HandlerResultSet<T>(this,resultClass),callback);
+	}
+	
+	/**
+	 * Process the query results row by row, the cache is ignored.
+	 * 
+	 * @param resultHandler handle result set
+	 * @param callback process each row
+	 * @param <T> result type
+	 * @return the number of rows processed
+	 */
+	public <T> long forEach(HandlerResultSet<T> resultHandler,RowCallback<T> callback){
+		queryCheck();
+		
+		ShardedDB shards=getShards();
+		if(shards!=null){
+			//回调按分片顺序逐个执行
+			long n=0;
+			for(DBConfig shard:shards.getShards()){
+				n+=createShardQuery(shard).forEach(resultHandler,callback);
+			}
+			return n;
+		}
+		
+		return doExecute(new StreamResultExecutor<T>(resultHandler,callback,getDialect(),getFetchSize()),getSql(),queryArgs,false);
+	}
+	
 	public <T> T load(final T result){
 		if(!doExchange()){			 
 			queryCheck();
 			
 			HandlerResultSet<T> resultHandler=new HandlerResultSet<T>(this,(Class<T>)result.getClass());
 			
+			ShardedDB shards=getShards();
+			if(shards!=null){
+				for(DBConfig shard:shards.getShards()){
+					T r=createShardQuery(shard).execute(new CacheableResultLoadExecutor<T>(resultHandler, result));
+					if(r!=null){
+						return r;
+					}
+				}
+				return null;
+			}
+			
 			return execute(new CacheableResultLoadExecutor<T>(resultHandler, result)); 
 		}else{
 			return result;
 		}
 	}
 	 
+	/**
+	 * @return the sharded db, or null if the db is not sharded
+	 */
+	protected ShardedDB getShards(){
+		return db==null?null:db.getShards();
+	}
+	
+	/**
+	 * Create a copy of this query, which will be executed on the shard
+	 * 
+	 * @param shard one of the shards
+	 * @return the query of the shard
+	 */
+	protected Query createShardQuery(DBConfig shard){
+		Query q=new Query(shard);
+		q.sql.append(sql);
+		q.queryArgs.addAll(queryArgs);
+		q.debugSql=debugSql;
+		q.ttlInMillis=ttlInMillis;
+		q.autoRefreshInMillis=autoRefreshInMillis;
+		q.staleInMillis=staleInMillis;
+		q.readonly=readonly;
+		q.tag=tag;
+		q.cache=cache;
+		q.fetchSize=fetchSize;
+		q.pageCount=pageCount;
+		q.countTtlInMillis=countTtlInMillis;
+		q.approximateCount=approximateCount;
+		return q;
+	}
+	
 	protected boolean doExchange(){
 		DBExchange exchange=DBExchange.getExchange(false);
 		if(exchange!=null){
@@ -753,6 +1335,72 @@ public class Query {
 		}
 	}
       
+	/**
+	 * @return the number of rows fetched from the database each time when streaming the results. 
+	 * 
+	 * @see #stream(Class)
+	 * @see com.tsc9526.monalisa.orm.datasource.DbProp#PROP_DB_FETCH_SIZE
+	 */
+	public int getFetchSize() {
+		if(fetchSize>0 || db==null){
+			return fetchSize;
+		}else{
+			return DbProp.PROP_DB_FETCH_SIZE.getIntValue(db,1000);
+		}
+	}
+
+	public Query setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+		return this;
+	}
+	
+	public boolean isPageCount() {
+		return pageCount;
+	}
+	
+	/**
+	 * @param pageCount false: skip the COUNT(*) of getPage/getPageAfter, the total records of the page will be -1
+	 * @return this
+	 */
+	public Query setPageCount(boolean pageCount) {
+		this.pageCount = pageCount;
+		return this;
+	}
+	
+	public long getCountCacheTime() {
+		return countTtlInMillis;
+	}
+	
+	/**
+	 * Cache the COUNT(*) of getPage/getPageAfter separately, usually longer than the page data
+	 * 
+	 * @param countTtlInMillis  cache time in millis, 0: same as the query, -1: never expired
+	 * @return this
+	 */
+	public Query setCountCacheTime(long countTtlInMillis) {
+		this.countTtlInMillis = countTtlInMillis;
+		return this;
+	}
+	
+	public boolean isApproximateCount() {
+		return approximateCount;
+	}
+	
+	/**
+	 * Use the estimated total records of the database instead of COUNT(*) for the page, 
+	 * for example: MySQL/Postgres EXPLAIN, Oracle num_rows of the table statistics. <br>
+	 * Fall back to COUNT(*) if the dialect can not estimate the query.
+	 * 
+	 * @param approximateCount true: the total records of the page is estimated, see {@link Page#isApproximate()}
+	 * @return this
+	 * 
+	 * @see Dialect#getApproximateCount(Query)
+	 */
+	public Query setApproximateCount(boolean approximateCount) {
+		this.approximateCount = approximateCount;
+		return this;
+	}
+	
 	public void setReadonly(Boolean readonly) {
 		this.readonly = readonly;
 	}
@@ -824,6 +1472,22 @@ public class Query {
 		return this;
 	}
 	
+	public long getCacheStaleTime() {
+		return staleInMillis;
+	}
+	
+	/**
+	 * Stale-while-revalidate: after the cache time (soft TTL) expired, 
+	 * the old value is still returned for up to staleInMillis, while one background thread refreshes it.
+	 * 
+	 * @param staleInMillis  0: disabled, &gt;0: serve the stale value in millis after the cache time expired
+	 * @return this
+	 */
+	public Query setCacheStaleTime(long staleInMillis) {
+		this.staleInMillis = staleInMillis;
+		return this;
+	}
+	
 	public String toString(){
 		return "SQL: "+getSql();
 	}
@@ -18,13 +18,16 @@ package com.tsc9526.monalisa.orm;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 import com.tsc9526.monalisa.orm.datasource.DBConfig;
 import com.tsc9526.monalisa.tools.cache.TransactionalCacheManager;
 import com.tsc9526.monalisa.tools.datatable.DataMap;
+import com.tsc9526.monalisa.tools.logger.Logger;
 import com.tsc9526.monalisa.tools.misc.MelpException;
 
 /**
@@ -41,6 +44,8 @@ import com.tsc9526.monalisa.tools.misc.MelpException;
  * @author zzg.zhou(11039850@qq.com)
  */
 public class Tx {
+	static Logger logger=Logger.getLogger(Tx.class);
+	
 	public final static String CONTEXT_CURRENT_USERID="CONTEXT_CURRENT_USERID";
 	
 	public static interface Atom<T>{
@@ -198,6 +203,8 @@ public class Tx {
 	
 	private TransactionalCacheManager tcm = new TransactionalCacheManager();
 	
+	private List<Runnable> commitActions  = new ArrayList<Runnable>();
+	
 	private Tx(){
 		
 	}
@@ -237,6 +244,30 @@ public class Tx {
 		} 
 		
 		tcm.commit();
+		
+		runCommitActions();
+	}
+	
+	/**
+	 * Run the action after this transaction committed, the action is discarded if the transaction rollback.
+	 * 
+	 * @param action run after commit
+	 */
+	public void afterCommit(Runnable action){
+		commitActions.add(action);
+	}
+	
+	protected void runCommitActions(){
+		List<Runnable> actions=commitActions;
+		commitActions=new ArrayList<Runnable>();
+		
+		for(Runnable action:actions){
+			try{
+				action.run();
+			}catch(Throwable e){
+				logger.error("Run commit action exception: "+e,e);
+			}
+		}
 	}
 
 	public void doRollback(){
@@ -246,6 +277,8 @@ public class Tx {
 			}
 			
 			tcm.rollback();
+			
+			commitActions.clear();
 		}catch(SQLException e){
 			throw new RuntimeException(e);
 		} 	
@@ -0,0 +1,48 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 关联字段, 通过 {@link com.tsc9526.monalisa.orm.dao.Select#with(String...)} 批量加载: <br>
+ * 关联的记录满足: child.column = parent.refColumn <br>
+ * 字段类型为 List: 一对多, 否则: 多对一(取第一条记录)
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Relation {
+	/**
+	 * @return 关联表的字段名, 默认: 关联表的主键
+	 */
+	String column() default "";
+	
+	/**
+	 * @return 本表的字段名, 默认: 本表的主键
+	 */
+	String refColumn() default "";
+	
+	/**
+	 * @return 关联表的Model类, 默认: 字段类型(List的元素类型)
+	 */
+	Class<?> model() default void.class;
+}
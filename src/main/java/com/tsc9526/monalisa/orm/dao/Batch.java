@@ -0,0 +1,199 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.dao;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.tsc9526.monalisa.orm.Query;
+import com.tsc9526.monalisa.orm.Tx;
+import com.tsc9526.monalisa.orm.datasource.DBConfig;
+import com.tsc9526.monalisa.orm.datasource.DbProp;
+import com.tsc9526.monalisa.orm.executor.BatchKeysExecutor;
+import com.tsc9526.monalisa.orm.model.Model;
+import com.tsc9526.monalisa.orm.model.ModelEvent;
+import com.tsc9526.monalisa.orm.model.QMH;
+
+/**
+ * 
+ * Batch insert/replace/update/delete models by JDBC batch. <br>
+ * The models are grouped by the database and SQL statement(table + changed columns), 
+ * each group is executed by one PreparedStatement: addBatch()/executeBatch(). <br>
+ * The models whose changes need to be recorded in history table are executed one by one.
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class Batch {
+	protected List<? extends Model<?>> models;
+	protected ModelEvent op;
+	protected boolean    before = true;
+	
+	protected int[] results;
+	
+	protected Map<String, BatchGroup> groups=new LinkedHashMap<String, BatchGroup>();
+	
+	/**
+	 * @param models the models
+	 * @param op  one of: INSERT, REPLACE, UPDATE, DELETE
+	 */
+	public Batch(List<? extends Model<?>> models,ModelEvent op){
+		this.models = models;
+		this.op     = op;
+	}
+	
+	/**
+	 * @param before false: before()/validate() of the models have been called by the caller, skip them
+	 * @return this
+	 */
+	public Batch setBefore(boolean before){
+		this.before=before;
+		return this;
+	}
+	
+	/**
+	 * Execute in transaction
+	 * 
+	 * @return each result of the models
+	 */
+	public int[] execute(){
+		return Tx.execute(new Tx.Atom<int[]>(){
+			public int[] execute() throws Throwable {
+				return doExecute();
+			}
+		});
+	}
+	
+	protected int[] doExecute(){
+		results=new int[models.size()];
+		
+		for(int i=0;i<models.size();i++){
+			Model<?> m=models.get(i);
+			
+			if(QMH.history(m)){
+				flush();
+				
+				results[i]=executeOne(m);
+			}else{
+				addModel(m, i);
+			}
+		}
+		
+		flush();
+		
+		return results;
+	}
+	
+	protected void addModel(Model<?> m,int index){
+		if(before){
+			QMH.before(m, op);
+			if(op!=ModelEvent.DELETE){
+				QMH.validate(m);
+			}
+		}
+		
+		Query query=createQuery(m);
+		
+		boolean autoKey=false;
+		if(op==ModelEvent.INSERT || op==ModelEvent.REPLACE){
+			autoKey= m.autoField()!=null && m.autoField().getObject(m)==null && m.dialect().supportAutoIncrease();
+		}
+		
+		DBConfig db=query.getDb();
+		String key=db.getKey()+"\n"+autoKey+"\n"+query.getSql();
+		
+		BatchGroup group=groups.get(key);
+		if(group==null){
+			int batchSize=DbProp.PROP_TABLE_BATCH_SIZE.getIntValue(db, m.table().name(), 1000);
+			
+			group=new BatchGroup(query,autoKey,batchSize);
+			groups.put(key, group);
+		}
+		
+		group.add(m, index, query.getParameters());
+	}
+	
+	protected Query createQuery(Model<?> m){
+		if(op==ModelEvent.INSERT){
+			return new Insert<Model<?>>(m).createQuery(false);
+		}else if(op==ModelEvent.REPLACE){
+			return new Insert<Model<?>>(m).createQuery(true);
+		}else if(op==ModelEvent.UPDATE){
+			return m.dialect().updateBy(m, null).use(m.db());
+		}else if(op==ModelEvent.DELETE){
+			return m.dialect().delete(m).use(m.db());
+		}else{
+			throw new RuntimeException("Unsupported batch operation: "+op);
+		}
+	}
+	
+	protected int executeOne(Model<?> m){
+		if(op==ModelEvent.INSERT){
+			return m.save();
+		}else if(op==ModelEvent.REPLACE){
+			return m.saveOrUpdate();
+		}else if(op==ModelEvent.UPDATE){
+			return m.update();
+		}else if(op==ModelEvent.DELETE){
+			return m.delete();
+		}else{
+			throw new RuntimeException("Unsupported batch operation: "+op);
+		}
+	}
+	
+	protected void flush(){
+		for(BatchGroup group:groups.values()){
+			int[] rs=group.execute();
+			
+			for(int i=0;i<rs.length;i++){
+				Model<?> m=group.models.get(i);
+				
+				results[group.indexes.get(i)]=rs[i];
+				
+				QMH.after(m, op, rs[i]);
+			}
+		}
+		groups.clear();
+	}
+	
+	protected class BatchGroup{
+		Query   query;
+		boolean autoKey;
+		int     batchSize;
+		
+		List<Model<?>>     models     = new ArrayList<Model<?>>();
+		List<Integer>      indexes    = new ArrayList<Integer>();
+		List<Object[]>     parameters = new ArrayList<Object[]>();
+		
+		BatchGroup(Query query,boolean autoKey,int batchSize){
+			this.query     = query;
+			this.autoKey   = autoKey;
+			this.batchSize = batchSize;
+		}
+		
+		void add(Model<?> m,int index,List<Object> ps){
+			models.add(m);
+			indexes.add(index);
+			parameters.add(ps.toArray());
+		}
+		
+		int[] execute(){
+			return query.executeBatch(new BatchKeysExecutor(models, autoKey, batchSize), parameters);
+		}
+	}
+}
@@ -19,6 +19,7 @@ package com.tsc9526.monalisa.orm.dao;
 import com.tsc9526.monalisa.orm.Query;
 import com.tsc9526.monalisa.orm.annotation.Column;
 import com.tsc9526.monalisa.orm.datasource.DBConfig;
+import com.tsc9526.monalisa.orm.datasource.DbProp;
 import com.tsc9526.monalisa.orm.dialect.Dialect;
 import com.tsc9526.monalisa.orm.executor.KeysExecutor;
 import com.tsc9526.monalisa.orm.model.Model;
@@ -78,6 +79,18 @@ public class Insert<T extends Model>{
 	 * @return 成功变更的记录数
 	 */
 	public int insert(boolean updateOnDuplicateKey){	 
+		Query query=createQuery(updateOnDuplicateKey);
+		return query.execute(new KeysExecutor(model));  
+	}
+	
+	/**
+	 * 创建insert语句, 如果自增字段使用序列, 则先从序列中获取值(seq.block &gt; 1 时按块预取)
+	 * 
+	 * @param updateOnDuplicateKey   true: 如果插入时出现主键冲突则进行更新操作
+	 * 
+	 * @return insert语句
+	 */
+	public Query createQuery(boolean updateOnDuplicateKey){	 
 		Dialect dialect=model.dialect();
 		 
 		FGS fgs=model.autoField();
@@ -85,11 +98,18 @@ public class Insert<T extends Model>{
 			Column c = fgs.getAnnotation(Column.class);
 			String seq      = c==null? null : c.seq();
 			if(!MelpString.isEmpty(seq)){
-				String seqNextSql=dialect.getSequenceNext(seq);
+				Long seqNextNo;
 				
-				Query q=new Query(db());
-				q.add(seqNextSql);
-				Long seqNextNo = q.getResult(Long.class);
+				int block=DbProp.PROP_TABLE_SEQ_BLOCK.getIntValue(db(), model.table().name(), 1);
+				if(block>1){
+					seqNextNo = SequenceAllocator.getAllocator(db(), seq).next(block);
+				}else{
+					String seqNextSql=dialect.getSequenceNext(seq);
+					
+					Query q=new Query(db());
+					q.add(seqNextSql);
+					seqNextNo = q.getResult(Long.class);
+				}
 				fgs.setObject(model, seqNextNo);
 				
 				model.holder().setProperty(ModelHolder.PROP_SEQ_FIELD, fgs.getFieldName());
@@ -98,7 +118,7 @@ public class Insert<T extends Model>{
 		
 		Query query= updateOnDuplicateKey ? dialect.insertOrUpdate(model) : dialect.insert(model);
 		query.use(db()); 
-		return query.execute(new KeysExecutor(model));  
+		return query;
 	}
 	
 	 
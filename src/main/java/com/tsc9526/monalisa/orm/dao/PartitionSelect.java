@@ -0,0 +1,322 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.tsc9526.monalisa.orm.Query;
+import com.tsc9526.monalisa.orm.Tx;
+import com.tsc9526.monalisa.orm.datasource.DBConfig;
+import com.tsc9526.monalisa.orm.datasource.DbProp;
+import com.tsc9526.monalisa.orm.dialect.Dialect;
+import com.tsc9526.monalisa.orm.meta.MetaPartition;
+import com.tsc9526.monalisa.orm.model.Model;
+import com.tsc9526.monalisa.orm.partition.DatePartitionTable;
+import com.tsc9526.monalisa.orm.partition.ShardMerger;
+import com.tsc9526.monalisa.tools.Tasks;
+import com.tsc9526.monalisa.tools.datatable.DataTable;
+import com.tsc9526.monalisa.tools.datatable.Page;
+import com.tsc9526.monalisa.tools.misc.MelpException;
+
+/**
+ * 跨分区查询: 根据日期范围 [from, to) 计算出所有的分区表({@link DatePartitionTable}), 
+ * 跳过不存在的表, 然后并行查询各个分区(每个分区一个连接), 最后按 ORDER BY 归并结果. <br>
+ * 例如查询12个月的数据: <br>
+ * <code>
+ * DataTable&lt;Logs&gt; rs=Logs.SELECT().partitions(from, to).select(100, 0, "status=? ORDER BY log_time DESC", 1);
+ * </code>
+ * <br>
+ * 并发查询的分区数由 {@link DbProp#PROP_DB_PARTITION_PARALLEL} 控制, 在事务中按顺序执行. 
+ * 所有查询共用的线程数由 {@link DbProp#CFG_PARTITION_MAX_THREADS} 限制. 
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@SuppressWarnings({"rawtypes","unchecked"})
+public class PartitionSelect<T extends Model> {
+	private static volatile ExecutorService executor = new ThreadPoolExecutor(0, Math.max(1, DbProp.CFG_PARTITION_MAX_THREADS), 60L, TimeUnit.SECONDS
+			, new SynchronousQueue<Runnable>()
+			, Tasks.createThreadFactory("Monalisa-Partition")
+			, new ThreadPoolExecutor.CallerRunsPolicy());
+	
+	/**
+	 * The executor runs the partition queries of a cross-partition select concurrently. <br>
+	 * Default: max {@link DbProp#CFG_PARTITION_MAX_THREADS} threads, the partition query runs in the caller thread if all threads are busy.
+	 * 
+	 * @param executor null: query the partitions one after the other
+	 */
+	public static void setExecutor(ExecutorService executor) {
+		PartitionSelect.executor=executor;
+	}
+	
+	public static ExecutorService getExecutor() {
+		return executor;
+	}
+	
+	protected Select<T,?>        select;
+	protected Date               from;
+	protected Date               to;
+	protected MetaPartition      mp;
+	protected DatePartitionTable partition;
+	
+	/**
+	 * @param select the select of the partition model
+	 * @param from   the begin date(include) of the partition field
+	 * @param to     the end date(exclude) of the partition field
+	 */
+	public PartitionSelect(Select<T,?> select,Date from,Date to){
+		this.select=select;
+		this.from  =from;
+		this.to    =to;
+		
+		this.mp=select.db().getCfg().getPartition(select.model);
+		
+		Object p= mp==null ? null : mp.getPartition();
+		if(p instanceof DatePartitionTable ==false){
+			throw new RuntimeException("Model class: "+select.model.getClass().getName()+" is not a date partition table");
+		}
+		this.partition=(DatePartitionTable)p;
+	}
+	
+	/**
+	 * @return the existing partition tables in the date range
+	 */
+	public List<String> getTables(){
+		DBConfig db=select.db();
+		Dialect dialect=db.getDialect();
+		
+		List<String> tables=new ArrayList<String>();
+		for(String table:partition.getTableNames(mp, from, to)){
+			if(dialect.tableExistCached(db, table)){
+				tables.add(table);
+			}
+		}
+		return tables;
+	}
+	
+	public long count(final String whereStatement,final Object ... args){
+		List<Long> rs=execute(getTables(),new PartitionTask<Long>() {
+			public Long execute(String table) {
+				return createQuery(table, true, whereStatement, args).getResult(Long.class);
+			}
+		});
+		
+		long n=0;
+		for(Long x:rs){
+			if(x!=null){
+				n+=x;
+			}
+		}
+		return n;
+	}
+	
+	public DataTable<T> select(final String whereStatement,final Object ... args){
+		List<DataTable<T>> rs=execute(getTables(),new PartitionTask<DataTable<T>>() {
+			public DataTable<T> execute(String table) {
+				Query query=createQuery(table, false, whereStatement, args);
+				return (DataTable<T>)query.getList(select.getResultCreator(query));
+			}
+		});
+		
+		return ShardMerger.merge(rs, getOrderBy(whereStatement), 0, -1);
+	}
+	
+	/**
+	 * 每个分区最多取 limit+offset 条记录, 归并后再做分页
+	 * 
+	 * @param limit  limit
+	 * @param offset offset
+	 * @param whereStatement where cause, which can be end with ORDER BY
+	 * @param args args
+	 * @return DataTable
+	 */
+	public DataTable<T> select(int limit,int offset,final String whereStatement,final Object ... args){
+		final int top=limit+offset;
+		
+		List<DataTable<T>> rs=execute(getTables(),new PartitionTask<DataTable<T>>() {
+			public DataTable<T> execute(String table) {
+				Query query=createQuery(table, false, whereStatement, args);
+				return (DataTable<T>)query.getList(select.getResultCreator(query),top,0);
+			}
+		});
+		
+		return ShardMerger.merge(rs, getOrderBy(whereStatement), offset, limit);
+	}
+	
+	public Page<T> selectPage(int limit,int offset,String whereStatement,Object ... args){
+		long total=count(whereStatement, args);
+		
+		DataTable<T> list= total>offset ? select(limit, offset, whereStatement, args) : new DataTable<T>();
+		
+		return new Page<T>(list,total,limit,offset);
+	}
+	
+	protected List<ShardMerger.OrderBy> getOrderBy(String whereStatement){
+		String[] wo=splitWhere(whereStatement);
+		return ShardMerger.parseOrderBy(wo[1]);
+	}
+	
+	/**
+	 * SELECT ... FROM table WHERE date_field&gt;=? AND date_field&lt;? [AND (where)] [ORDER BY ...]
+	 * 
+	 * @param table the partition table
+	 * @param count true: SELECT COUNT(*)
+	 * @param whereStatement where cause
+	 * @param args args
+	 * @return the query of the partition table
+	 */
+	protected Query createQuery(String table,boolean count,String whereStatement,Object ... args){
+		DBConfig db=select.db();
+		Dialect dialect=db.getDialect();
+		
+		String[] wo=splitWhere(whereStatement);
+		String dateField=dialect.getColumnName(partition.getDateField(mp));
+		
+		Query query=new Query(db);
+		query.add("SELECT "+(count?"COUNT(*)":select.model.filterFields())+" FROM ").add(dialect.getTableName(table));
+		query.add(" WHERE "+dateField+">=? AND "+dateField+"<?", from, to);
+		if(wo[0].length()>0){
+			query.add(" AND ("+wo[0]+")");
+		}
+		if(!count && wo[1].length()>0){
+			query.add(" "+wo[1]);
+		}
+		query.add("", args);
+		
+		query.setTag(select.cacheTag!=null ? select.cacheTag : ("@"+db.getKey()+"#"+table));
+		query.setCache(db.getCfg().getCache(select.model));	
+		query.setCacheTime(select.ttlInMillis,select.autoRefreshInMillis);
+		query.setCacheStaleTime(select.staleInMillis);
+		
+		return query;
+	}
+	
+	/**
+	 * @param whereStatement where cause
+	 * @return [where condition, ORDER BY ...]
+	 */
+	protected String[] splitWhere(String whereStatement){
+		String w=whereStatement==null?"":whereStatement.trim();
+		
+		String order="";
+		int p=ShardMerger.mask(" "+w).indexOf(" ORDER BY ");
+		if(p>=0){
+			order=w.substring(p).trim();
+			w=w.substring(0,p).trim();
+		}
+		
+		if(w.length()>=5 && w.substring(0,5).equalsIgnoreCase("WHERE") && (w.length()==5 || Character.isWhitespace(w.charAt(5)))){
+			w=w.substring(5).trim();
+		}
+		
+		return new String[]{w,order};
+	}
+	
+	/**
+	 * 最多 {@link DbProp#PROP_DB_PARTITION_PARALLEL} 个分区并行执行, 结果按表的顺序返回
+	 * 
+	 * @param tables partition tables
+	 * @param task the task of each partition
+	 * @param <X> result type
+	 * @return results of each partition
+	 */
+	protected <X> List<X> execute(final List<String> tables,final PartitionTask<X> task){
+		int parallel=DbProp.PROP_DB_PARTITION_PARALLEL.getIntValue(select.db(), 4);
+		
+		ExecutorService executor=PartitionSelect.executor;
+		if(tables.size()<=1 || parallel<=1 || Tx.getTx()!=null || executor==null){
+			List<X> results=new ArrayList<X>();
+			for(String table:tables){
+				results.add(execute(table, task));
+			}
+			return results;
+		}
+		
+		final Object[] results=new Object[tables.size()];
+		final AtomicInteger next=new AtomicInteger(0);
+		
+		Callable<Void> worker=new Callable<Void>() {
+			public Void call() throws Exception {
+				int i;
+				while((i=next.getAndIncrement())<tables.size()){
+					results[i]=execute(tables.get(i), task);
+				}
+				return null;
+			}
+		};
+		
+		List<Future<Void>> futures=new ArrayList<Future<Void>>();
+		for(int i=1;i<Math.min(parallel, tables.size());i++){
+			futures.add(executor.submit(worker));
+		}
+		
+		try{
+			worker.call();
+			
+			for(Future<Void> f:futures){
+				f.get();
+			}
+			return (List<X>)Arrays.asList(results);
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}catch(ExecutionException e){
+			return MelpException.throwRuntimeException(e.getCause());
+		}catch(Exception e){
+			return MelpException.throwRuntimeException(e);
+		}finally{
+			next.set(tables.size());
+			
+			for(Future<Void> f:futures){
+				f.cancel(true);
+			}
+		}
+	}
+	
+	/**
+	 * 查询失败时清除表是否存在的缓存(分区表可能已被删除)
+	 * 
+	 * @param table the partition table
+	 * @param task the task
+	 * @param <X> result type
+	 * @return result of the partition
+	 */
+	protected <X> X execute(String table,PartitionTask<X> task){
+		try{
+			return task.execute(table);
+		}catch(RuntimeException e){
+			DBConfig db=select.db();
+			db.getDialect().clearTableExistCache(db, table);
+			
+			throw e;
+		}
+	}
+	
+	protected static interface PartitionTask<X>{
+		public X execute(String table);
+	}
+}
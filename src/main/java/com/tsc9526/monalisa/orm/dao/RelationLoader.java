@@ -0,0 +1,291 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.dao;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.tsc9526.monalisa.orm.annotation.Column;
+import com.tsc9526.monalisa.orm.annotation.Relation;
+import com.tsc9526.monalisa.orm.datasource.DbProp;
+import com.tsc9526.monalisa.orm.model.Model;
+import com.tsc9526.monalisa.orm.model.QMH;
+import com.tsc9526.monalisa.tools.clazz.MelpClass;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
+
+/**
+ * 批量加载关联字段({@link Relation}): 每个关联字段, 收集所有记录的关联值, 
+ * 分块执行 <code>WHERE column IN (...)</code>, 再通过哈希索引把子记录设置到父记录中。<br>
+ * 关联路径用 "." 分隔, 例如: "blogs.comments"
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@SuppressWarnings({"rawtypes","unchecked"})
+public class RelationLoader {
+	private static Map<String, RelationMeta> hRelations=new ConcurrentHashMap<String, RelationMeta>();
+	
+	protected Select select;
+	
+	/**
+	 * @param select the cache settings of the select are used by the relation queries
+	 */
+	public RelationLoader(Select select){
+		this.select=select;
+	}
+	
+	/**
+	 * @param models the models, null is ignored
+	 * @param relations the relation paths, for example: "blogs", "blogs.comments"
+	 */
+	public void load(List<? extends Model> models,Collection<String> relations){
+		Map<String, List<String>> hPaths=new LinkedHashMap<String, List<String>>();
+		for(String path:relations){
+			path=path.trim();
+			
+			int p=path.indexOf('.');
+			String name=p>0?path.substring(0,p):path;
+			
+			List<String> nested=hPaths.get(name);
+			if(nested==null){
+				nested=new ArrayList<String>();
+				hPaths.put(name, nested);
+			}
+			if(p>0){
+				nested.add(path.substring(p+1));
+			}
+		}
+		
+		Model first=null;
+		for(Model m:models){
+			if(m!=null){
+				first=m;
+				break;
+			}
+		}
+		
+		if(first!=null){
+			for(String name:hPaths.keySet()){
+				RelationMeta r=getRelationMeta(first.getClass(), name);
+				
+				List<Model> children=loadRelation(models, r);
+				
+				List<String> nested=hPaths.get(name);
+				if(nested.size()>0 && children.size()>0){
+					load(children, nested);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param models the parent models
+	 * @param r the relation 
+	 * @return distinct children of the parent models
+	 */
+	protected List<Model> loadRelation(List<? extends Model> models,RelationMeta r){
+		Set<Object> keys=new LinkedHashSet<Object>();
+		for(Model m:models){
+			Object v=m==null?null:r.refField.getObject(m);
+			if(v!=null){
+				keys.add(v);
+			}
+		}
+		
+		List<Model> children=new ArrayList<Model>();
+		Map<Object, List<Model>> hIndex=new HashMap<Object, List<Model>>();
+		if(keys.size()>0){
+			Model child=r.createModel();
+			
+			int size=DbProp.PROP_TABLE_SELECT_KEYS_SIZE.getIntValue(child.db(), child.table().name(), 1000);
+			size=Math.max(1, Math.min(size, child.dialect().getMaxInSize()));
+			
+			String column=child.dialect().getColumnName(r.column.getAnnotation(Column.class).name());
+			
+			List<Object> ks=new ArrayList<Object>(keys);
+			for(int i=0;i<ks.size();i+=size){
+				for(Model c:selectChildren(child, column, ks.subList(i, Math.min(ks.size(), i+size)))){
+					Object v=MelpClass.converter.convert(r.column.getObject(c), r.refField.getType());
+					
+					List<Model> xs=hIndex.get(v);
+					if(xs==null){
+						xs=new ArrayList<Model>();
+						hIndex.put(v, xs);
+					}
+					xs.add(c);
+					children.add(c);
+				}
+			}
+		}
+		
+		for(Model m:models){
+			if(m!=null){
+				Object v=r.refField.getObject(m);
+				
+				List<Model> xs=v==null?null:hIndex.get(v);
+				if(r.many){
+					r.field.setObject(m, xs==null?new ArrayList<Model>():new ArrayList<Model>(xs));
+				}else{
+					r.field.setObject(m, xs==null?null:xs.get(0));
+				}
+			}
+		}
+		return children;
+	}
+	
+	/**
+	 * @param child the relation model
+	 * @param column the relation column
+	 * @param keys the values of one chunk
+	 * @return the models: <code>WHERE column IN (keys)</code>
+	 */
+	protected List<Model> selectChildren(Model child,String column,List<Object> keys){
+		StringBuilder sb=new StringBuilder(column).append(" IN (");
+		for(int k=0;k<keys.size();k++){
+			sb.append(k>0?", ?":"?");
+		}
+		sb.append(")");
+		
+		return createSelect(child).select(sb.toString(), keys.toArray());
+	}
+	
+	/**
+	 * @param child the relation model
+	 * @return the select of the relation model, with the database and cache settings of the parent select
+	 */
+	protected Select createSelect(Model child){
+		Select s=new Select(child);
+		if(select!=null){
+			if(select.db!=null){
+				s.use(select.db);
+			}
+			s.setCacheTime(select.getCacheTime());
+			s.setAutoRefreshInMillis(select.getAutoRefreshInMillis());
+			s.setCacheStaleTime(select.getCacheStaleTime());
+		}
+		return s;
+	}
+	
+	public static RelationMeta getRelationMeta(Class<?> clazz,String name){
+		String key=clazz.getName()+"#"+name;
+		
+		RelationMeta r=hRelations.get(key);
+		if(r==null){
+			r=new RelationMeta(clazz, name);
+			hRelations.put(key, r);
+		}
+		return r;
+	}
+	
+	public static class RelationMeta{
+		protected FGS     field;
+		protected Class   modelClass;
+		protected boolean many;
+		
+		/**
+		 * the field of the relation model 
+		 */
+		protected FGS     column;
+		
+		/**
+		 * the field of this model
+		 */
+		protected FGS     refField;
+		
+		public RelationMeta(Class<?> clazz,String name){
+			field=MelpClass.getClassHelper(clazz).getField(name);
+			
+			Relation relation=field==null?null:field.getAnnotation(Relation.class);
+			if(relation==null){
+				throw new RuntimeException("Relation not found: "+name+", class: "+clazz.getName());
+			}
+			
+			many=Collection.class.isAssignableFrom(field.getType());
+			
+			modelClass=relation.model();
+			if(modelClass==void.class){
+				modelClass=field.getType();
+				
+				if(many){
+					Type t=field.getField().getGenericType();
+					if(t instanceof ParameterizedType){
+						Type[] ts=((ParameterizedType)t).getActualTypeArguments();
+						modelClass=ts.length==1 && ts[0] instanceof Class ? (Class)ts[0] : null;
+					}else{
+						modelClass=null;
+					}
+				}
+			}
+			
+			if(modelClass==null || !Model.class.isAssignableFrom(modelClass)){
+				throw new RuntimeException("Relation: "+name+" should be a model or a list of model, or set the model(), class: "+clazz.getName());
+			}
+			
+			column  =getField(newModel(modelClass), relation.column());
+			refField=getField(newModel(clazz), relation.refColumn());
+		}
+		
+		protected FGS getField(Model m,String name){
+			FGS f=null;
+			if(name.length()==0){
+				List<FGS> pks=QMH.mm(m).getPkFields();
+				if(pks.size()!=1){
+					throw new RuntimeException("Relation column is required, table: "+m.table().name()+", primary keys: "+pks.size());
+				}
+				f=pks.get(0);
+			}else{
+				f=m.field(name);
+				if(f==null){
+					throw new RuntimeException("Relation column: "+name+" not found, table: "+m.table().name());
+				}
+			}
+			return f;
+		}
+		
+		public Model createModel(){
+			return newModel(modelClass);
+		}
+		
+		protected Model newModel(Class<?> clazz){
+			try{
+				return (Model)clazz.getDeclaredConstructor().newInstance();
+			}catch(Exception e){
+				throw new RuntimeException("Create model error: "+clazz.getName()+", "+e,e);
+			}
+		}
+		
+		public FGS getField(){
+			return field;
+		}
+		
+		public Class getModelClass(){
+			return modelClass;
+		}
+		
+		public boolean isMany(){
+			return many;
+		}
+	}
+}
@@ -18,15 +18,40 @@ package com.tsc9526.monalisa.orm.dao;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.tsc9526.monalisa.orm.Query;
+import com.tsc9526.monalisa.orm.Tx;
+import com.tsc9526.monalisa.orm.annotation.Column;
 import com.tsc9526.monalisa.orm.criteria.Example;
 import com.tsc9526.monalisa.orm.criteria.QEH;
 import com.tsc9526.monalisa.orm.datasource.DBConfig;
+import com.tsc9526.monalisa.orm.datasource.DbProp;
 import com.tsc9526.monalisa.orm.executor.HandlerResultSet;
 import com.tsc9526.monalisa.orm.model.Model;
+import com.tsc9526.monalisa.orm.model.QMH;
+import com.tsc9526.monalisa.orm.partition.ShardMerger;
+import com.tsc9526.monalisa.tools.cache.Cache;
+import com.tsc9526.monalisa.tools.cache.CacheKey;
+import com.tsc9526.monalisa.tools.cache.CacheManager;
+import com.tsc9526.monalisa.tools.clazz.MelpClass;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
 import com.tsc9526.monalisa.tools.datatable.DataTable;
+import com.tsc9526.monalisa.tools.datatable.KeysetPage;
 import com.tsc9526.monalisa.tools.datatable.Page;
+import com.tsc9526.monalisa.tools.misc.MelpException;
 
 /**
  * 
@@ -38,7 +63,12 @@ public class Select<T extends Model,S extends Select> {
 	protected DBConfig db;
 	protected long      ttlInMillis=0;
 	protected long      autoRefreshInMillis = 0;
+	protected long      staleInMillis = 0;
 	protected Object    cacheTag;
+	protected boolean   pageCount = true;
+	protected long      countTtlInMillis = 0;
+	protected boolean   approximateCount = false;
+	protected List<String> relations = new ArrayList<String>();
 	
 	public Select(T model){
 		this.model=model;		 
@@ -98,6 +128,22 @@ public class Select<T extends Model,S extends Select> {
 		return (S)this;
 	}
 	 
+	/**
+	 * 批量加载关联字段({@link com.tsc9526.monalisa.orm.annotation.Relation}), 
+	 * 每个关联字段分块执行一次 <code>WHERE column IN (...)</code>, 不会逐条查询
+	 * 
+	 * @param relations 关联字段名, 多级关联用 "." 分隔, 例如: "blogs", "blogs.comments"
+	 * @return this
+	 * 
+	 * @see RelationLoader
+	 */
+	public S with(String... relations){
+		for(String r:relations){
+			this.relations.add(r);
+		}
+		return (S)this;
+	}
+	
 	public Select use(DBConfig db){
 		this.db=db;
 		return this;
@@ -121,6 +167,7 @@ public class Select<T extends Model,S extends Select> {
 		setup(query);
 		
 		T r=(T)query.getResult(getResultCreator(query));
+		loadRelations(r);
 		return r;
 	}
 	
@@ -173,6 +220,7 @@ public class Select<T extends Model,S extends Select> {
 		setup(query);
 		
 		T r= (T)query.getResult(getResultCreator(query));
+		loadRelations(r);
 		return r;
 	}
 	
@@ -190,6 +238,7 @@ public class Select<T extends Model,S extends Select> {
 		setup(query);
 		
 		T r= (T)query.getResult(getResultCreator(query));
+		loadRelations(r);
 		return r;
 	}
  	
@@ -205,7 +254,9 @@ public class Select<T extends Model,S extends Select> {
 		Query query=model.dialect().select(model,whereStatement, args);
 		setup(query);
 		
-		return (DataTable<T>)query.getList(getResultCreator(query));
+		DataTable<T> r=(DataTable<T>)query.getList(getResultCreator(query));
+		loadRelations(r);
+		return r;
 	}
 	
 	/**
@@ -222,6 +273,7 @@ public class Select<T extends Model,S extends Select> {
 		setup(query);
 		
 		DataTable<T> r= (DataTable<T>)query.getList(getResultCreator(query));
+		loadRelations(r);
 		return r;
 	}
 	
@@ -240,6 +292,7 @@ public class Select<T extends Model,S extends Select> {
 		setup(query);
 		
 		DataTable<T> r=(DataTable<T>)query.getList(getResultCreator(query),limit, offset);
+		loadRelations(r);
 		return r;
 	}
 	
@@ -259,6 +312,7 @@ public class Select<T extends Model,S extends Select> {
 		setup(query);
 		
 		DataTable<T> r=(DataTable<T>)query.getList(getResultCreator(query),limit, offset);
+		loadRelations(r);
 		return r;
 	}
 	
@@ -276,6 +330,7 @@ public class Select<T extends Model,S extends Select> {
 		setup(query);
 		
 		Page<T> r=(Page<T>)query.getPage(getResultCreator(query),limit, offset);
+		loadRelations(r.getRows());
 		return r;
 	}
 	
@@ -295,10 +350,40 @@ public class Select<T extends Model,S extends Select> {
 		setup(query);
 		
 		Page<T> r=(Page<T>)query.getPage(getResultCreator(query),limit, offset);
+		loadRelations(r.getRows());
 		return r;
 	}
   
 	
+	/**
+	 * 键集分页(seek pagination), 翻到很深的页时也和第一页一样快 
+	 * 
+	 * @param limit limit
+	 * @param token null: the first page, otherwise the next token of the previous page: {@link KeysetPage#getNext()}
+	 * @param whereStatement where cause, which should be end with ORDER BY unique keys, default is ORDER BY the primary keys
+	 * @param args args
+	 * @return KeysetPage
+	 * 
+	 * @see Query#getPageAfter(HandlerResultSet, int, String)
+	 */
+	public KeysetPage<T> selectPageAfter(int limit,String token,String whereStatement,Object ... args){
+		if(ShardMerger.parseOrderBy(whereStatement==null?"":" "+whereStatement).isEmpty()){
+			StringBuilder sb=new StringBuilder();
+			for(Object o:model.pkFields()){
+				Column c=((FGS)o).getAnnotation(Column.class);
+				sb.append(sb.length()>0?", ":" ORDER BY ").append(model.dialect().getColumnName(c.name()));
+			}
+			whereStatement= (whereStatement==null?"":whereStatement)+sb.toString();
+		}
+		
+		Query query=model.dialect().select(model,whereStatement, args);
+		setup(query);
+		
+		KeysetPage<T> r=(KeysetPage<T>)query.getPageAfter(getResultCreator(query),limit, token);
+		loadRelations(r.getRows());
+		return r;
+	}
+	
 	public DataTable<T> select(){
 		return select(null);
 	}
@@ -327,10 +412,151 @@ public class Select<T extends Model,S extends Select> {
 		return selectPage(limit, offset, null);
 	}	
 	
+	/**
+	 * Select the models by primary keys(single column), the keys are split into chunks: <code>WHERE pk IN (...)</code>, 
+	 * see {@link DbProp#PROP_TABLE_SELECT_KEYS_SIZE} and {@link DbProp#PROP_DB_SELECT_KEYS_CONCURRENT}. <br>
+	 * If the cache time is set and the table is cached, each model is cached by its primary key.
+	 * 
+	 * @param keys the primary key values
+	 * @return the models in the same order of the keys, null if the key not found
+	 */
+	public List<T> selectByKeys(Collection<?> keys){
+		List<FGS> pks=QMH.mm(model).getPkFields();
+		if(pks.size()!=1){
+			throw new RuntimeException("Select by keys requires one primary key column, table: "+model.table().name()+", primary keys: "+pks.size());
+		}
+		
+		final FGS pk=pks.get(0);
+		
+		List<Object> ids=new ArrayList<Object>();
+		for(Object key:keys){
+			ids.add(key==null?null:MelpClass.converter.convert(key, pk.getType()));
+		}
+		
+		DBConfig db=db();
+		Cache cache=ttlInMillis>0?db.getCfg().getCache(model):null;
+		
+		Map<Object, T> hResults=new HashMap<Object, T>();
+		
+		Set<Object> missing=new LinkedHashSet<Object>();
+		for(Object id:ids){
+			if(id!=null && !hResults.containsKey(id)){
+				T cached=cache!=null?(T)cache.getObject(getKeyCacheKey(db, id)):null;
+				if(cached!=null){
+					hResults.put(id, cached);
+				}else{
+					missing.add(id);
+				}
+			}
+		}
+		
+		if(missing.size()>0){
+			for(T m:selectByKeysInChunks(pk, new ArrayList<Object>(missing))){
+				Object id=pk.getObject(m);
+				hResults.put(id, m);
+				
+				if(cache!=null){
+					CacheKey key=getKeyCacheKey(db, id);
+					
+					cache.putObject(key, m, ttlInMillis);
+					CacheManager.getInstance().addRelationTables(db.getKey(), Collections.singleton(model.table().name()), cache, key);
+				}
+			}
+		}
+		
+		List<T> rs=new ArrayList<T>(ids.size());
+		for(Object id:ids){
+			rs.add(id==null?null:hResults.get(id));
+		}
+		loadRelations(rs);
+		return rs;
+	}
+	
+	protected CacheKey getKeyCacheKey(DBConfig db,Object id){
+		return new CacheKey("@"+db.getKey()+"#"+model.table().name(), "key", id);
+	}
+	
+	protected List<T> selectByKeysInChunks(FGS pk,List<Object> ids){
+		DBConfig db=db();
+		
+		int size=DbProp.PROP_TABLE_SELECT_KEYS_SIZE.getIntValue(db, model.table().name(), 1000);
+		size=Math.max(1, Math.min(size, model.dialect().getMaxInSize()));
+		
+		final String column=model.dialect().getColumnName(pk.getAnnotation(Column.class).name());
+		
+		List<Callable<DataTable<T>>> tasks=new ArrayList<Callable<DataTable<T>>>();
+		for(int i=0;i<ids.size();i+=size){
+			final List<Object> chunk=ids.subList(i, Math.min(ids.size(), i+size));
+			
+			tasks.add(new Callable<DataTable<T>>() {
+				public DataTable<T> call() throws Exception {
+					return selectByKeysChunk(column, chunk);
+				}
+			});
+		}
+		
+		List<T> rs=new ArrayList<T>();
+		
+		ExecutorService executor=Query.getPageExecutor();
+		if(tasks.size()>1 && executor!=null && Tx.getTx()==null 
+				&& "true".equalsIgnoreCase(DbProp.PROP_DB_SELECT_KEYS_CONCURRENT.getValue(db))){
+			try{
+				for(Future<DataTable<T>> f:executor.invokeAll(tasks)){
+					rs.addAll(f.get());
+				}
+			}catch(ExecutionException e){
+				return MelpException.throwRuntimeException(e.getCause());
+			}catch(InterruptedException e){
+				return MelpException.throwRuntimeException(e);
+			}
+		}else{
+			for(Callable<DataTable<T>> task:tasks){
+				try{
+					rs.addAll(task.call());
+				}catch(Exception e){
+					return MelpException.throwRuntimeException(e);
+				}
+			}
+		}
+		return rs;
+	}
+	
+	/**
+	 * @param column the primary key column
+	 * @param keys the primary key values of one chunk
+	 * @return the models: <code>WHERE column IN (keys)</code>
+	 */
+	protected DataTable<T> selectByKeysChunk(String column,List<Object> keys){
+		StringBuilder sb=new StringBuilder(column).append(" IN (");
+		for(int k=0;k<keys.size();k++){
+			sb.append(k>0?", ?":"?");
+		}
+		sb.append(")");
+		
+		Query query=model.dialect().select(model,sb.toString(), keys.toArray());
+		setup(query);
+		query.setCacheTime(0, 0);
+		
+		return (DataTable<T>)query.getList(getResultCreator(query));
+	}
+	
 	public $SelectForExample selectForExample(Example example){
 		return new $SelectForExample(example);
 	} 
 	
+	/**
+	 * 跨分区查询, 只适用于按日期分区的表
+	 * 
+	 * @param from the begin date(include) of the partition field
+	 * @param to   the end date(exclude) of the partition field
+	 * @return the partition select
+	 * 
+	 * @see PartitionSelect
+	 */
+	public PartitionSelect<T> partitions(Date from,Date to){
+		return new PartitionSelect<T>(this, from, to);
+	}
+	
 	
 	public long getCacheTime() {
 		return ttlInMillis;
@@ -355,7 +581,60 @@ public class Select<T extends Model,S extends Select> {
 		this.autoRefreshInMillis = autoRefreshInMillis;
 		return (S)this;
 	}
+	
+	public long getCacheStaleTime() {
+		return staleInMillis;
+	}
+	
+	/**
+	 * @see Query#setCacheStaleTime(long)
+	 */
+	public S setCacheStaleTime(long staleInMillis) {
+		this.staleInMillis = staleInMillis;
+		return (S)this;
+	}
  
+	public boolean isPageCount() {
+		return pageCount;
+	}
+	
+	/**
+	 * @param pageCount false: skip the COUNT(*) of selectPage/selectPageAfter
+	 * @return this
+	 */
+	public S setPageCount(boolean pageCount) {
+		this.pageCount = pageCount;
+		return (S)this;
+	}
+	
+	public long getCountCacheTime() {
+		return countTtlInMillis;
+	}
+	
+	/**
+	 * @param countTtlInMillis cache time of the COUNT(*) of selectPage/selectPageAfter, 0: same as the query
+	 * @return this
+	 */
+	public S setCountCacheTime(long countTtlInMillis) {
+		this.countTtlInMillis = countTtlInMillis;
+		return (S)this;
+	}
+	
+	public boolean isApproximateCount() {
+		return approximateCount;
+	}
+	
+	/**
+	 * @param approximateCount true: selectPage/selectPageAfter use the estimated total records of the database if supported
+	 * @return this
+	 * 
+	 * @see Query#setApproximateCount(boolean)
+	 */
+	public S setApproximateCount(boolean approximateCount) {
+		this.approximateCount = approximateCount;
+		return (S)this;
+	}
+	
 	public Object getCacheTag() {
 		return cacheTag;
 	}
@@ -366,6 +645,22 @@ public class Select<T extends Model,S extends Select> {
 
 	
 	
+	protected void loadRelations(T model){
+		if(model!=null && relations.size()>0){
+			loadRelations(Collections.singletonList(model));
+		}
+	}
+	
+	protected void loadRelations(List<T> models){
+		if(models!=null && models.size()>0 && relations.size()>0){
+			createRelationLoader().load(models, relations);
+		}
+	}
+	
+	protected RelationLoader createRelationLoader(){
+		return new RelationLoader(this);
+	}
+	
 	protected HandlerResultSet getResultCreator(Query query) {
 		return new HandlerResultSet(query,model.getClass()){
 			public  T createResult(ResultSet rs)throws SQLException{
@@ -386,6 +681,10 @@ public class Select<T extends Model,S extends Select> {
 		  
 		query.setCache(db.getCfg().getCache(model));	
 		query.setCacheTime(ttlInMillis,autoRefreshInMillis);
+		query.setCacheStaleTime(staleInMillis);
+		query.setPageCount(pageCount);
+		query.setCountCacheTime(countTtlInMillis);
+		query.setApproximateCount(approximateCount);
 	}
 	
 	public class $SelectForExample{
@@ -445,6 +744,17 @@ public class Select<T extends Model,S extends Select> {
 			return this;
 		}
 		
+		/**
+		 * @param relations 关联字段名
+		 * @return SelectForExample
+		 * 
+		 * @see Select#with(String...)
+		 */
+		public $SelectForExample with(String... relations){
+			Select.this.with(relations);
+			return this;
+		}
+		
 		/**
 		 * @param ttlInMillis         	cache time in millis. 
 		 * 								<ul>
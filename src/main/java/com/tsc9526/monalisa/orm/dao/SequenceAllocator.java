@@ -0,0 +1,193 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.dao;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.tsc9526.monalisa.orm.Query;
+import com.tsc9526.monalisa.orm.datasource.DBConfig;
+import com.tsc9526.monalisa.orm.dialect.Dialect;
+import com.tsc9526.monalisa.tools.logger.Logger;
+
+/**
+ * 按块预取序列值, 在内存中分配, 避免每次插入都查询一次序列. <br>
+ * 
+ * <ul>
+ * <li>INCREMENT BY &gt; 1: pooled-lo, one <code>nextval</code> reserves the values: [nextval, nextval + increment) 
+ * <li>INCREMENT BY = 1: fetch <code>blockSize</code> values by one query, see {@link Dialect#getSequenceNext(String, int)}
+ * </ul>
+ * The values of the current block are handed out by an atomic counter, only refill is synchronized. <br>
+ * Unused values of the block are lost if the application restarts. 
+ * 
+ * @see com.tsc9526.monalisa.orm.datasource.DbProp#PROP_TABLE_SEQ_BLOCK
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class SequenceAllocator {
+	static Logger logger=Logger.getLogger(SequenceAllocator.class);
+	
+	private static Map<String, SequenceAllocator> hAllocators=new ConcurrentHashMap<String, SequenceAllocator>();
+	
+	public static SequenceAllocator getAllocator(DBConfig db,String seq){
+		String key=db.getKey()+":"+seq;
+		
+		SequenceAllocator allocator=hAllocators.get(key);
+		if(allocator==null){
+			synchronized(hAllocators){
+				allocator=hAllocators.get(key);
+				if(allocator==null){
+					allocator=new SequenceAllocator(db, seq);
+					hAllocators.put(key, allocator);
+				}
+			}
+		}
+		return allocator;
+	}
+	
+	protected DBConfig db;
+	protected String   seq;
+	
+	/**
+	 * INCREMENT BY of the sequence, 0: not loaded
+	 */
+	protected long increment = 0;
+	
+	protected volatile Block block = new Block(0, 0);
+	
+	protected SequenceAllocator(DBConfig db,String seq){
+		this.db  = db;
+		this.seq = seq;
+	}
+	
+	/**
+	 * @param blockSize number of the values fetched by one query if the sequence's increment is 1
+	 * @return the next value of the sequence
+	 */
+	public long next(int blockSize){
+		for(;;){
+			Block b=block;
+			
+			int i=b.index.getAndIncrement();
+			if(i<b.size){
+				return b.get(i);
+			}
+			
+			synchronized(this){
+				if(block==b){
+					block=allocate(blockSize);
+				}
+			}
+		}
+	}
+	
+	protected Block allocate(int blockSize){
+		Dialect dialect=getDialect();
+		
+		if(increment==0){
+			increment=loadIncrement(dialect);
+		}
+		
+		if(increment>1){
+			long lo=selectOne(dialect.getSequenceNext(seq));
+			
+			return new Block(lo, (int)Math.min(increment, Integer.MAX_VALUE));
+		}
+		
+		String sql=blockSize>1?dialect.getSequenceNext(seq, blockSize):null;
+		if(sql!=null){
+			List<Long> rs=select(new Query().add(sql));
+			if(rs.isEmpty()){
+				throw new RuntimeException("Sequence: "+seq+" returns none value, SQL: "+sql);
+			}
+			
+			long[] values=new long[rs.size()];
+			for(int i=0;i<values.length;i++){
+				values[i]=rs.get(i);
+			}
+			return new Block(values);
+		}else{
+			long v=selectOne(dialect.getSequenceNext(seq));
+			
+			return new Block(v, 1);
+		}
+	}
+	
+	protected long selectOne(String sql){
+		List<Long> rs=select(new Query().add(sql));
+		if(rs.isEmpty() || rs.get(0)==null){
+			throw new RuntimeException("Sequence: "+seq+" returns none value, SQL: "+sql);
+		}
+		return rs.get(0);
+	}
+	
+	/**
+	 * Executes the sequence query in the db
+	 * 
+	 * @param query the sequence query
+	 * @return values of the first column
+	 */
+	protected List<Long> select(Query query){
+		return query.use(db).getList(Long.class);
+	}
+	
+	protected Dialect getDialect(){
+		return db.getDialect();
+	}
+	
+	protected long loadIncrement(Dialect dialect){
+		try{
+			Query query=dialect.getSequenceIncrement(seq);
+			if(query!=null){
+				List<Long> rs=select(query);
+				if(!rs.isEmpty() && rs.get(0)!=null){
+					return rs.get(0);
+				}
+			}
+		}catch(Exception e){
+			logger.warn("Load increment of sequence: "+seq+" exception: "+e);
+		}
+		return 1;
+	}
+	
+	protected static class Block{
+		long   lo;
+		long[] values;
+		int    size;
+		
+		AtomicInteger index=new AtomicInteger();
+		
+		/**
+		 * Continuous values: [lo, lo + size)
+		 */
+		public Block(long lo,int size){
+			this.lo   = lo;
+			this.size = size;
+		}
+		
+		public Block(long[] values){
+			this.values = values;
+			this.size   = values.length;
+		}
+		
+		long get(int i){
+			return values!=null ? values[i] : lo+i;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.tsc9526.monalisa.orm.Query;
+import com.tsc9526.monalisa.orm.Tx;
+import com.tsc9526.monalisa.orm.annotation.Column;
+import com.tsc9526.monalisa.orm.dialect.Dialect;
+import com.tsc9526.monalisa.orm.model.Model;
+import com.tsc9526.monalisa.orm.model.ModelEvent;
+import com.tsc9526.monalisa.orm.model.QMH;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
+import com.tsc9526.monalisa.tools.string.MelpString;
+
+/**
+ * 
+ * Bulk insert or update models by multi-row upsert statement: <br>
+ * MySQL: INSERT ... ON DUPLICATE KEY UPDATE, Postgres: INSERT ... ON CONFLICT DO UPDATE, Oracle/SQLServer: MERGE. <br>
+ * The models are grouped by the database and {@link Dialect#getUpsertKey(Model)}(table + insert columns + unique columns), 
+ * each group is split into chunks which are limited by the chunk size and {@link Dialect#getMaxParameters()}. <br>
+ * The models which can not be upserted by multi-row statement (no unique key value, sequence field, history table, 
+ * or the dialect not supported) are saved by {@link Batch} with REPLACE. <br>
+ * The auto increment fields are not set back to the models. 
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class Upsert {
+	protected List<? extends Model<?>> models;
+	protected int chunkSize;
+	
+	/**
+	 * @param models the models
+	 * @param chunkSize max rows of one upsert statement
+	 */
+	public Upsert(List<? extends Model<?>> models,int chunkSize){
+		this.models    = models;
+		this.chunkSize = chunkSize>0?chunkSize:1000;
+	}
+	
+	/**
+	 * Execute in transaction
+	 * 
+	 * @return the total rows affected
+	 */
+	public int execute(){
+		return Tx.execute(new Tx.Atom<Integer>(){
+			public Integer execute() throws Throwable {
+				return doExecute();
+			}
+		});
+	}
+	
+	protected int doExecute(){
+		int r=0;
+		
+		//others: before()/validate() are called by Batch, prepared: already called
+		List<Model<?>> others  =new ArrayList<Model<?>>();
+		List<Model<?>> prepared=new ArrayList<Model<?>>();
+		Map<String, List<Model<?>>> groups=new LinkedHashMap<String, List<Model<?>>>();
+		
+		for(Model<?> m:models){
+			if(QMH.history(m) || isSequenceRequired(m) || m.dialect().getUpsertKey(m)==null){
+				others.add(m);
+				continue;
+			}
+			
+			QMH.before(m, ModelEvent.REPLACE);
+			QMH.validate(m);
+			
+			//the insert columns may be changed by before()
+			String key=m.dialect().getUpsertKey(m);
+			if(key==null){
+				prepared.add(m);
+			}else{
+				key=m.db().getKey()+"\n"+key;
+				
+				List<Model<?>> group=groups.get(key);
+				if(group==null){
+					group=new ArrayList<Model<?>>();
+					groups.put(key, group);
+				}
+				group.add(m);
+			}
+		}
+		
+		for(List<Model<?>> group:groups.values()){
+			r+=executeGroup(group);
+		}
+		
+		r+=executeBatch(others, true);
+		r+=executeBatch(prepared, false);
+		
+		return r;
+	}
+	
+	protected int executeBatch(List<Model<?>> ms,boolean before){
+		int r=0;
+		if(ms.size()>0){
+			for(int x:new Batch(ms, ModelEvent.REPLACE).setBefore(before).execute()){
+				if(x>0){
+					r+=x;
+				}
+			}
+		}
+		return r;
+	}
+	
+	protected int executeGroup(List<Model<?>> group){
+		int r=0;
+		
+		Model<?> first=group.get(0);
+		Dialect dialect=first.dialect();
+		
+		int rows=getChunkRows(dialect, first);
+		
+		List<Model<?>> chunk=new ArrayList<Model<?>>();
+		Set<List<Object>> rowKeys=new HashSet<List<Object>>();
+		for(Model<?> m:group){
+			List<Object> rowKey=dialect.getUpsertRowKey(m);
+			
+			if(chunk.size()>=rows || rowKeys.contains(rowKey)){
+				r+=executeChunk(dialect, chunk);
+				
+				chunk.clear();
+				rowKeys.clear();
+			}
+			
+			chunk.add(m);
+			rowKeys.add(rowKey);
+		}
+		
+		if(chunk.size()>0){
+			r+=executeChunk(dialect, chunk);
+		}
+		
+		return r;
+	}
+	
+	/**
+	 * @param dialect the dialect
+	 * @param m the first model of the group
+	 * @return the max rows in one statement, limited by the chunk size and the parameters limit of the dialect
+	 */
+	protected int getChunkRows(Dialect dialect,Model<?> m){
+		int columns=Math.max(1, dialect.insertOrUpdateAll(Collections.singletonList(m)).getParameters().size());
+		
+		return Math.max(1, Math.min(chunkSize, dialect.getMaxParameters()/columns));
+	}
+	
+	protected int executeChunk(Dialect dialect,List<Model<?>> chunk){
+		Query query=dialect.insertOrUpdateAll(chunk).use(chunk.get(0).db());
+		
+		int r=query.execute();
+		
+		for(Model<?> m:chunk){
+			QMH.after(m, ModelEvent.REPLACE, 1);
+		}
+		
+		return r;
+	}
+	
+	protected boolean isSequenceRequired(Model<?> m){
+		FGS fgs=m.autoField();
+		if(fgs!=null && fgs.getObject(m)==null && m.dialect().supportSequence()){
+			Column c = fgs.getAnnotation(Column.class);
+			
+			return c!=null && !MelpString.isEmpty(c.seq());
+		}
+		return false;
+	}
+}
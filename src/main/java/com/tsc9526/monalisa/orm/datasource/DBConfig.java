@@ -28,31 +28,44 @@ import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TimerTask;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import javax.sql.DataSource;
 
 import com.tsc9526.monalisa.orm.Query;
 import com.tsc9526.monalisa.orm.annotation.DB;
 import com.tsc9526.monalisa.orm.annotation.Table;
+import com.tsc9526.monalisa.orm.dao.Batch;
+import com.tsc9526.monalisa.orm.dao.Select;
+import com.tsc9526.monalisa.orm.dao.Upsert;
 import com.tsc9526.monalisa.orm.dialect.Dialect;
 import com.tsc9526.monalisa.orm.generator.DBGeneratorProcessing;
 import com.tsc9526.monalisa.orm.meta.MetaPartition;
 import com.tsc9526.monalisa.orm.model.Model;
 import com.tsc9526.monalisa.orm.model.ModelEvent;
 import com.tsc9526.monalisa.orm.model.ModelMeta;
+import com.tsc9526.monalisa.orm.model.QMH;
 import com.tsc9526.monalisa.orm.model.Record;
+import com.tsc9526.monalisa.orm.partition.PartitionProvisioner;
+import com.tsc9526.monalisa.orm.partition.ShardedDB;
 import com.tsc9526.monalisa.tools.PkgNames;
+import com.tsc9526.monalisa.tools.Tasks;
 import com.tsc9526.monalisa.tools.cache.Cache;
 import com.tsc9526.monalisa.tools.cache.CacheManager;
+import com.tsc9526.monalisa.tools.cache.impl.TinyLfuCache;
 import com.tsc9526.monalisa.tools.clazz.MelpClass;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
 import com.tsc9526.monalisa.tools.clazz.MelpLib;
 import com.tsc9526.monalisa.tools.datatable.DataMap;
 import com.tsc9526.monalisa.tools.datatable.DataTable;
@@ -76,13 +89,27 @@ public class DBConfig implements Closeable{
 	
 	private String[] prefixs=new String[]{PREFIX_DB+"."+CFG_DEFAULT_NAME};
 	
+	/**
+	 * 已经创建数据源的配置, 由后台任务定期检查配置是否改变
+	 */
+	private final static Set<DBConfig> hWatchConfigs=Collections.newSetFromMap(new ConcurrentHashMap<DBConfig, Boolean>());
+	
 	protected CFG _cfg=new CFG();
 	 
-	private DSI dsi;
+	private volatile DSI dsi;
+	
+	private final static Object NO_SHARDS=new Object();
+	
+	/**
+	 * ShardedDB or NO_SHARDS
+	 */
+	private volatile Object shards;
 	
 	private DBConfig owner;
 	
 	private boolean initialized=false;
+	
+	private volatile HistoryTables historyTables;
  		
 	private DBConfig(){
 	}
@@ -138,6 +165,29 @@ public class DBConfig implements Closeable{
 		return DataSourceManager.getInstance().getDialect(this);
 	}
  	
+	/**
+	 * The patterns of {@link DbProp#PROP_DB_HISTORY_TABLES} are compiled once, 
+	 * and recompiled only if the config changed. 
+	 * 
+	 * @param tableName the table name
+	 * @return true if the changes of the table need to be recorded in history table
+	 */
+	public boolean isHistoryTable(String tableName){
+		String tables = DbProp.PROP_DB_HISTORY_TABLES.getValue(this);
+		if(tables==null || tables.trim().length()==0){
+			return false;
+		}
+		
+		String prefix = DbProp.PROP_DB_HISTORY_PREFIX_TABLE.getValue(this);
+		
+		HistoryTables h=historyTables;
+		if(h==null || !h.isConfig(tables, prefix)){
+			h=new HistoryTables(tables, prefix);
+			historyTables=h;
+		}
+		return h.match(tableName);
+	}
+	
 	public DBConfig getOwner(){
 		getCfg();
 		
@@ -160,41 +210,149 @@ public class DBConfig implements Closeable{
 		return getCfg().getDb();
 	}
 	
-	protected synchronized void delayClose(final DataSource ds,int delay){
+	protected void delayClose(final DataSource ds,int delay){
 		ModelMeta.clearReloadModelMetas(getKey());
 		
 		MelpClose.delayClose(ds,delay);
 	}
-	 		
-	public synchronized DataSource getDataSource(){
-		CFG cfg=getCfg();
+	
+	/**
+	 * 配置文件的检查由后台任务完成(间隔: {@link DbProp#CFG_RELOAD_CONFIG_INTERVAL}), 
+	 * 这里只读取当前的数据源, 不加锁
+	 * 
+	 * @return the current data source
+	 */
+	public DataSource getDataSource(){
+		DSI x=dsi;
+		if(x!=null && owner==null && DbProp.lastestCfgTime > _cfg.lastestLoadCfgTime){
+			checkDataSourceChanged();
+			
+			x=dsi;
+		}
 		
-		tryLoadDriverLib(cfg.getDriver()); 
+		if(x==null){
+			x=initDSI();
+		}
 		
-		if(cfg.isCfgFileChanged()){
-			init(cfg.db);
+		return x.getDataSource();
+	}
+	
+	/**
+	 * 非事务的读操作使用的数据源: url中配置了多个主机时(例如: jdbc:mysql://[+h1:3306,-h2:3306,-h3:3306]/db), 
+	 * 在可读的主机之间做负载均衡, 参考: {@link ReadDataSource}.  <br>
+	 * 没有配置多个主机或者 read.split = false 时, 返回的是{@link #getDataSource()}
+	 * 
+	 * @return the data source for reading
+	 */
+	public DataSource getReadDataSource(){
+		DataSource ds=getDataSource();
+		
+		DSI x=dsi;
+		if(x!=null && x.reader!=null){
+			return x.reader;
+		}
+		return ds;
+	}
+	
+	/**
+	 * @return the sharded db, or null if the db is not sharded(property: shards)
+	 */
+	public ShardedDB getShards(){
+		Object x=shards;
+		if(x==null){
+			x=initShards();
+		}
+		return x==NO_SHARDS?null:(ShardedDB)x;
+	}
+	
+	private synchronized Object initShards(){
+		if(shards==null){
+			ShardedDB sd=ShardedDB.create(this);
+			shards= sd==null?NO_SHARDS:sd;
+		}
+		return shards;
+	}
+	
+	private synchronized DSI initDSI(){
+		if(dsi==null){
+			CFG cfg=getCfg();
+			
+			tryLoadDriverLib(cfg.getDriver()); 
 			
-			if(dsi!=null){
-				DSI other=new DSI();
+			dsi=new DSI();
 			
-				if(!dsi.equals(other)){
-					if(dsi.ds!=null){
-						int delay=DbProp.PROP_DB_DATASOURCE_DELAY_CLOSE.getIntValue(this, 30);
-						logger.info("DBCfg:" +cfg.key+" changed, delay "+delay+"s close exists datasouce: "+dsi.url);
-						delayClose(dsi.ds,delay);
+			if(owner==null){
+				startWatchConfig();
+				
+				PartitionProvisioner.instance.register(this);
+			}
+		}
+		return dsi;
+	}
+	
+	private void startWatchConfig(){
+		hWatchConfigs.add(this);
+		
+		int interval=DbProp.CFG_RELOAD_CONFIG_INTERVAL;
+		if(interval>0){
+			Tasks.instance.addSchedule("DBConfigChangeTask", new TimerTask() {
+				public void run() {
+					for(DBConfig db:hWatchConfigs){
+						try{
+							db.checkDataSourceChanged();
+						}catch(Throwable e){
+							logger.error("Check DBCfg: "+db.getKey()+" changed exception: "+e,e);
+						}
 					}
-					dsi=other;
 				}
-			}
+			}, interval*1000, interval*1000);
 		}
- 	
-		if(dsi==null){
-			dsi=new DSI();
+	}
+	
+	/**
+	 * 检查配置是否改变, 如果数据源的配置改变了, 切换到新的数据源, 并延迟关闭旧的数据源
+	 */
+	public void checkDataSourceChanged(){
+		DSI old=swapDSIIfChanged();
+		
+		if(old!=null){
+			int delay=DbProp.PROP_DB_DATASOURCE_DELAY_CLOSE.getIntValue(this, 30);
+			
+			if(old.ds!=null){
+				logger.info("DBCfg:" +getKey()+" changed, delay "+delay+"s close exists datasouce: "+old.url);
+				delayClose(old.ds,delay);
+			}
+			
+			for(Host host:old.hosts){
+				DSI hx=host.getConfig().dsi;
+				if(hx!=null && hx.ds!=null){
+					delayClose(hx.ds,delay);
+				}
+			}
 		}
-		
-		return dsi.getDataSource();
 	}
 	
+	private synchronized DSI swapDSIIfChanged(){
+		CFG cfg=getCfg();
+		
+		//url中的多个主机的配置随主配置一起重新加载
+		if(dsi!=null && owner==null && cfg.isCfgFileChanged()){
+			init(cfg.db);
+			
+			shards=null;
+			
+			tryLoadDriverLib(cfg.getDriver()); 
+			
+			DSI other=new DSI();
+			if(!dsi.equals(other)){
+				DSI old=dsi;
+				dsi=other;
+				return old;
+			}
+		}
+		return null;
+	}
+	 		
 	protected void tryLoadDriverLib(String driverClass){		
 		if(MelpLib.hLibClasses.containsKey(driverClass)){
 			MelpLib.loadClass(driverClass);
@@ -209,16 +367,23 @@ public class DBConfig implements Closeable{
 	}
 	
 	public synchronized void close(){		
-		if(dsi!=null){
+		hWatchConfigs.remove(this);
+		
+		PartitionProvisioner.instance.deregister(this);
+		
+		shards=null;
+		
+		DSI x=dsi;
+		if(x!=null){
 			try{
-				if(dsi.ds!=null){
-					MelpClose.close(dsi.ds);	
+				if(x.ds!=null){
+					MelpClose.close(x.ds);	
 				}
 			}finally{			
 				dsi=null;
 			}
 			
-			for(Host host: getCfg().getDbHosts()){
+			for(Host host: x.hosts){
 				host.getConfig().close();
 			}
 		}
@@ -313,29 +478,81 @@ public class DBConfig implements Closeable{
 		return batchOpModels(models, ModelEvent.DELETE); 
 	}
 	
-	protected int[] batchOpModels(final List<? extends Model<?>> models,final ModelEvent op){
-		return com.tsc9526.monalisa.orm.Tx.execute(new com.tsc9526.monalisa.orm.Tx.Atom<int[]>(){
-			public int[] execute() throws Throwable {
-				int[] rs=new int[models.size()];
-				int i=0;
-				for(Model<?> m:models){
-					int r=0;
+	/**
+	 * Insert or update the models by multi-row upsert statements, see {@link Upsert}
+	 * 
+	 * @param models the models
+	 * @param chunkSize max rows of one statement
+	 * @return the total rows affected
+	 */
+	public int upsertAll(List<? extends Model<?>> models,int chunkSize){
+		return new Upsert(models, chunkSize).execute(); 
+	}
+	
+	/**
+	 * Load the models by primary keys in batch(instead of calling model.load() one by one), 
+	 * the models of the same class and table are loaded by {@link Select#selectByKeys(java.util.Collection)}. <br>
+	 * The models with composite primary keys are loaded one by one.
+	 * 
+	 * @param models the models with primary key values
+	 * @param <T> model type
+	 * @return the loaded models in the same order, null if not found
+	 */
+	@SuppressWarnings({"rawtypes","unchecked"})
+	public <T extends Model<?>> List<T> loadAll(List<T> models){
+		//动态的Record类型相同, 所以按 类型+表名 分组
+		Map<String, List<Integer>> groups=new LinkedHashMap<String, List<Integer>>();
+		for(int i=0;i<models.size();i++){
+			T m=models.get(i);
+			String key=m.getClass().getName()+"#"+m.table().name();
+			
+			List<Integer> group=groups.get(key);
+			if(group==null){
+				group=new ArrayList<Integer>();
+				groups.put(key, group);
+			}
+			group.add(i);
+		}
+		
+		List<T> rs=new ArrayList<T>(Collections.<T>nCopies(models.size(), null));
+		for(List<Integer> group:groups.values()){
+			T first=models.get(group.get(0));
+			
+			List<FGS> pks=QMH.mm(first).getPkFields();
+			if(pks.size()!=1){
+				for(int i:group){
+					rs.set(i, (T)models.get(i).use(this).load());
+				}
+			}else{
+				List<Object> keys=new ArrayList<Object>();
+				for(int i:group){
+					T m=models.get(i);
+					
+					QMH.before(m, ModelEvent.LOAD);
+					keys.add(pks.get(0).getObject(m));
+				}
+				
+				List<Model> xs=new Select(first).use(this).selectByKeys(keys);
+				for(int k=0;k<group.size();k++){
+					T m=models.get(group.get(k));
+					Model x=xs.get(k);
 					
-					if(op==ModelEvent.INSERT){
-						r=m.save();
-					}else if(op==ModelEvent.REPLACE){
-						r=m.saveOrUpdate();
-					}else if(op==ModelEvent.UPDATE){
-						r=m.update();
-					}else if(op==ModelEvent.DELETE){
-						r=m.delete();
+					if(x!=null){
+						for(FGS fgs:m.fields()){
+							fgs.setObject(m, fgs.getObject(x));
+						}
 					}
+					QMH.after(m, ModelEvent.LOAD, x!=null?1:-1);
 					
-					rs[i++]=r;
+					rs.set(group.get(k), x!=null?m:null);
 				}
-				return rs;
 			}
-		});
+		}
+		return rs;
+	}
+	
+	protected int[] batchOpModels(final List<? extends Model<?>> models,final ModelEvent op){
+		return new Batch(models, op).execute();
 	}
 	
 	public boolean tableExist(String name){
@@ -584,7 +801,7 @@ public class DBConfig implements Closeable{
 		private Map<String,String> cacheModels=new ConcurrentHashMap<String,String>();
 		private String cacheTables;
 	 
-		private long lastestLoadCfgTime = 0L;
+		private volatile long lastestLoadCfgTime = 0L;
 		
 		synchronized void init(){
 			if(configName==null){
@@ -721,12 +938,14 @@ public class DBConfig implements Closeable{
 		}
 
 		protected void processUrlHosts() {
+			dbHosts=new ArrayList<Host>();
+			
 			int x1=url.indexOf("[");
 			if(x1>0){
 				int x2=url.indexOf("]",x1);
 				
 				String prefix=url.substring(0,x1);
-				String suffix=url.substring(0,x2+1);
+				String suffix=url.substring(x2+1);
 				
 				String[] hosts=url.substring(x1+1,x2).split(",");
 				for(String h:hosts){
@@ -734,7 +953,14 @@ public class DBConfig implements Closeable{
 					dbHosts.add(dbh);
 				}
 				
+				//写操作使用第一个可写的主机
 				this.url=dbHosts.get(0).URL;
+				for(Host h:dbHosts){
+					if(h.LEVEL!=Level.ONLY_READ){
+						this.url=h.URL;
+						break;
+					}
+				}
 			}
 		}
 	  
@@ -1089,8 +1315,10 @@ public class DBConfig implements Closeable{
 				
 				String cacheClass=DbProp.PROP_TABLE_CACHE_CLASS.getValue(DBConfig.this, tableName);
 				String eviction  =DbProp.PROP_TABLE_CACHE_EVICTION.getValue(DBConfig.this, tableName);
+				int maxEntries   =DbProp.PROP_TABLE_CACHE_MAX_ENTRIES.getIntValue(DBConfig.this, tableName, TinyLfuCache.DEFAULT_MAX_ENTRIES);
+				long maxBytes    =DbProp.PROP_TABLE_CACHE_MAX_BYTES.getLongValue(DBConfig.this, tableName, TinyLfuCache.DEFAULT_MAX_BYTES);
 				
-				return CacheManager.getInstance().getCache(cacheClass,eviction,name);
+				return CacheManager.getInstance().getCache(cacheClass,eviction,name,maxEntries,maxBytes);
 			}else{
 				return null;
 			}
@@ -1101,14 +1329,21 @@ public class DBConfig implements Closeable{
 			String eviction  =DbProp.PROP_TABLE_CACHE_EVICTION.getValue(DBConfig.this);
 			String name      =DbProp.PROP_TABLE_CACHE_NAME.getValue(DBConfig.this);
 			
-			return CacheManager.getInstance().getCache(cacheClass,eviction,name);
+			return getCache(cacheClass, eviction, name);
 		}
 		
 		public Cache getCache(String name){
 			String cacheClass=DbProp.PROP_TABLE_CACHE_CLASS.getValue(DBConfig.this);
 			String eviction  =DbProp.PROP_TABLE_CACHE_EVICTION.getValue(DBConfig.this);
 			 
-			return CacheManager.getInstance().getCache(cacheClass,eviction,name);
+			return getCache(cacheClass, eviction, name);
+		}
+		
+		private Cache getCache(String cacheClass,String eviction,String name){
+			int maxEntries=DbProp.PROP_TABLE_CACHE_MAX_ENTRIES.getIntValue(DBConfig.this, TinyLfuCache.DEFAULT_MAX_ENTRIES);
+			long maxBytes =DbProp.PROP_TABLE_CACHE_MAX_BYTES.getLongValue(DBConfig.this, TinyLfuCache.DEFAULT_MAX_BYTES);
+			
+			return CacheManager.getInstance().getCache(cacheClass,eviction,name,maxEntries,maxBytes);
 		}
 		
 		public Class<?> getAnnotationClass(){
@@ -1137,7 +1372,8 @@ public class DBConfig implements Closeable{
 		
 		public String getDriver() {
 			if(driver==null||driver.length()<1){
-				driver=getDialect().getDriver();
+				//不能调用DBConfig.getDialect(): 初始化url中的多个主机时, 配置还没有初始化完成
+				driver=DataSourceManager.getInstance().getDialect(url).getDriver();
 			}
 			
 			return driver;
@@ -1214,7 +1450,7 @@ public class DBConfig implements Closeable{
 	}
 	
 	class DSI{
-		private DataSource ds=null;
+		private volatile DataSource ds=null;
 		
 		private String     datasourceClass;
 		private String     validationgQuery;
@@ -1225,7 +1461,9 @@ public class DBConfig implements Closeable{
 		private String     username;
 		
 		private Properties poolProps=new Properties();
-		 
+		
+		private List<Host>     hosts;
+		private ReadDataSource reader;
 		
 		public DSI(){
 			CFG cfg=getCfg();
@@ -1247,6 +1485,14 @@ public class DBConfig implements Closeable{
 			username = cfg.getUsername();
 			
 			poolProps.putAll(cfg.getPoolProperties());
+			
+			hosts=owner==null?cfg.getDbHosts():new ArrayList<Host>();
+			if(hosts.size()>1 && !"false".equalsIgnoreCase(DbProp.PROP_DB_READ_SPLIT.getValue(DBConfig.this))){
+				ReadDataSource r=new ReadDataSource(DBConfig.this, hosts);
+				if(r.hasReadHosts()){
+					reader=r;
+				}
+			}
 		}
 		
 		public boolean equals(Object other){
@@ -1273,21 +1519,36 @@ public class DBConfig implements Closeable{
 				sb.append(","+key+":").append(tree.get(key));
 			}
 			
+			for(Host h:hosts){
+				sb.append(",host:").append(h.LEVEL).append("/").append(h.URL);
+			}
+			sb.append(",read.split:").append(reader!=null);
+			
 			return sb.toString();
 		}
 		
 		
 		public DataSource getDataSource(){
+			DataSource x=ds;
+			if(x==null){
+				x=createDataSource();
+			}
+			return x;
+		}
+		
+		private synchronized DataSource createDataSource(){
 			if(ds==null){
+				DataSource x=null;
 				if(!DbProp.ProcessingEnvironment){
-					ds=getDataSourceFromConfigClass();
+					x=getDataSourceFromConfigClass();
 				}
 				
-				if(ds==null){
-					ds=new SimpleDataSource(DBConfig.this);
+				if(x==null){
+					x=new SimpleDataSource(DBConfig.this);
 				}
+				
+				ds=x;
 			}
-			
 			return ds;
 		}
 		
@@ -1348,4 +1609,46 @@ public class DBConfig implements Closeable{
 		}				
 	}
 	
+	private static class HistoryTables{
+		private String  tables;
+		private String  prefix;
+		private Pattern pattern;
+		
+		private Map<String, Boolean> hMatches=new ConcurrentHashMap<String, Boolean>();
+		
+		HistoryTables(String tables,String prefix){
+			this.tables=tables;
+			this.prefix=prefix;
+			
+			StringBuilder sb=new StringBuilder();
+			for(String x:tables.trim().split(",|;|\\|")){
+				x=x.trim();
+				if(x.length()>0){
+					if(sb.length()>0){
+						sb.append("|");
+					}
+					sb.append("(?:").append(x.replace("%", ".*")).append(")");
+				}
+			}
+			this.pattern=Pattern.compile(sb.toString());
+		}
+		
+		boolean isConfig(String tables,String prefix){
+			return this.tables.equals(tables) && (this.prefix==null?prefix==null:this.prefix.equals(prefix));
+		}
+		
+		boolean match(String tableName){
+			Boolean r=hMatches.get(tableName);
+			if(r==null){
+				if(prefix!=null && tableName.startsWith(prefix)){
+					r=false;
+				}else{
+					r=pattern.matcher(tableName).matches();
+				}
+				hMatches.put(tableName, r);
+			}
+			return r;
+		}
+	}
+	
 }
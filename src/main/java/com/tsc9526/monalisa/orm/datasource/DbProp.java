@@ -56,13 +56,50 @@ import com.tsc9526.monalisa.orm.dialect.Dialect;
  * &nbsp;&nbsp;&nbsp;&nbsp;  Define partition tables 
 
  * <li><b>datasourceClass = </b> [scope: DB]<br>
- * &nbsp;&nbsp;&nbsp;&nbsp;  Data source class, the value can be C3p0DataSource or DruidDataSource<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Data source class, the value can be C3p0DataSource, DruidDataSource or FastDataSource(built-in lock-free pool)<br>
  * &nbsp;&nbsp;&nbsp;&nbsp;  or other class which implementations of the class:<br>
  * &nbsp;&nbsp;&nbsp;&nbsp;  {@link com.tsc9526.monalisa.orm.datasource.PooledDataSource}
  *
  * <li><b>datasourceDelayClose = </b> [scope: DB]<br>
  * &nbsp;&nbsp;&nbsp;&nbsp;  After database configuration reload, delay closing data source that has been opened   
  * 
+ * <li><b>read.split = true</b> [scope: DB]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  If the url has multiple hosts, e.g. jdbc:mysql://[+h1:3306,-h2:3306,-h3:3306]/db, <br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  send non-transactional reads to the readable hosts("-": only read, "+": only write)
+ * 
+ * <li><b>read.eject.time = 30</b> [scope: DB]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Seconds of a read host not being used after failures
+ * 
+ * <li><b>shards = </b> [scope: DB]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Config names of the shards, e.g. s0,s1,s2 (DB.s0.url=..., DB.s1.url=...), 
+ * see {@link com.tsc9526.monalisa.orm.partition.ShardedDB}
+ * 
+ * <li><b>shard.strategy = mod</b> [scope: DB]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  mod, hash(consistent hash) or class name of {@link com.tsc9526.monalisa.orm.partition.ShardStrategy}
+ * 
+ * <li><b>shard.key = </b> [scope: TABLE]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  The shard column of the table, default is the primary key
+ * 
+ * <li><b>partition.parallel = 4</b> [scope: DB]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Max partition tables queried concurrently(each uses one connection) by a cross-partition select
+ * 
+ * <li><b>partition.missing.cache = 60</b> [scope: DB]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Seconds of caching a partition table not exists
+ * 
+ * <li><b>partition.exist.cache = 600</b> [scope: DB]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Seconds of caching a partition table exists, the cache is also cleared if the query of the table fails
+ * 
+ * <li><b>partition.precreate = 0</b> [scope: DB]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Number of the next date partition tables created ahead of time in background, 0: disabled(default)<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  see {@link com.tsc9526.monalisa.orm.partition.PartitionProvisioner}
+ * 
+ * <li><b>page.concurrent = true</b> [scope: DB]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Run the COUNT(*) of the page concurrently with the page data query(outside of transaction)<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  see {@link com.tsc9526.monalisa.orm.Query#setPageExecutor(java.util.concurrent.ExecutorService)}
+ * 
+ * <li><b>select.keys.concurrent = false</b> [scope: DB]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Run the IN(...) chunks of Select.selectByKeys() concurrently(outside of transaction)
+ * 
  * <li><b>history.db = </b> [scope: DB]<br>
  * &nbsp;&nbsp;&nbsp;&nbsp;  The history table is saved in the database.
  * 
@@ -75,12 +112,25 @@ import com.tsc9526.monalisa.orm.dialect.Dialect;
  * <li><b>history.tables = </b> [scope: DB]<br>
  * &nbsp;&nbsp;&nbsp;&nbsp;  Those tables need to record changes in history. %: means all of tables
  * 
+ * <li><b>history.async = false</b> [scope: DB]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Write the history records in background(batch insert after the transaction committed)<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  see {@link com.tsc9526.monalisa.orm.model.HistoryWriter}
+ * 
  * <li><b>multi.resultset.deepth = 100</b> [scope: DB]<br>
  * &nbsp;&nbsp;&nbsp;&nbsp;  Useful when only the SQL query return multiple results
  * 
  * <li><b>cache.tables = </b> [scope: DB]<br>
  * &nbsp;&nbsp;&nbsp;&nbsp;  Which tables will be cached 
  * 
+ * <li><b>cache.load.timeout = 0</b> [scope: DB]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Max millis waiting for another thread which is loading the same cache key, 0: wait until it done
+ * 
+ * <li><b>cache.refresh.concurrency = 3</b> [scope: DB]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Max concurrent auto refresh queries of the database, 0: no limit
+ * 
+ * <li><b>fetch.size = 1000</b> [scope: DB]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  The number of rows fetched from the database each time when streaming the query results 
+ * 
  * <li><b>version.name = version</b> [scope: TABLE]<br>
  * &nbsp;&nbsp;&nbsp;&nbsp;  The version field's name 
  *   
@@ -103,7 +153,14 @@ import com.tsc9526.monalisa.orm.dialect.Dialect;
  * &nbsp;&nbsp;&nbsp;&nbsp;  The name of cache setting
  * 
  * <li><b>cache.eviction = LRU</b> [scope: TABLE]<br>
- * &nbsp;&nbsp;&nbsp;&nbsp;  The cache eviction's algorithm
+ * &nbsp;&nbsp;&nbsp;&nbsp;  The cache eviction's algorithm: FIFO, LRU, SOFT, WEAK, TINYLFU. <br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  TINYLFU is a thread-safe, lock-striped cache bounded by cache.max.entries and cache.max.bytes
+ * 
+ * <li><b>cache.max.entries = 5120</b> [scope: TABLE]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Max entries of the TINYLFU cache
+ * 
+ * <li><b>cache.max.bytes = 67108864</b> [scope: TABLE]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Max estimated bytes of the TINYLFU cache
  * 
  * <li><b>auto.create_time = create_time</b> [scope: TABLE]<br>
  * &nbsp;&nbsp;&nbsp;&nbsp;  When calling Model.save(), auto set model field's value if exists: create_time<br>
@@ -121,6 +178,18 @@ import com.tsc9526.monalisa.orm.dialect.Dialect;
  * &nbsp;&nbsp;&nbsp;&nbsp;  You need to set up thread context by call: <br>
  * &nbsp;&nbsp;&nbsp;&nbsp; <code>Tx.put(CONTEXT_CURRENT_USERID,"the_operate_user_id");</code>
  * 
+ * <li><b>batch.size = 1000</b> [scope: TABLE]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  The max number of statements for each JDBC executeBatch() when calling DBConfig.batchXXX(...)<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  For MySQL, add <code>rewriteBatchedStatements=true</code> to the url to send them as multi-row statements
+ * 
+ * <li><b>select.keys.size = 1000</b> [scope: TABLE]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  The max number of primary keys in one IN(...) query when calling Select.selectByKeys()/DBConfig.loadAll(), 
+ * also limited by the dialect(Oracle: 1000)
+ * 
+ * <li><b>seq.block = 1</b> [scope: TABLE]<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  Number of the sequence values reserved by one query for the seq field, 1: query the sequence for each insert<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;  see {@link com.tsc9526.monalisa.orm.dao.SequenceAllocator}
+ * 
  * <li><b>exception_if_set_field_not_found = false</b> [scope: TABLE]<br>
  * &nbsp;&nbsp;&nbsp;&nbsp;  If true, throw a exception if set a not exists field in a model, otherwise false.
  *
@@ -145,7 +214,7 @@ import com.tsc9526.monalisa.orm.dialect.Dialect;
 public class DbProp {
 	public static boolean ProcessingEnvironment=false;
 	
-	static long lastestCfgTime = 0L;
+	static volatile long lastestCfgTime = 0L;
 	private static Properties dbCfgProps = null;
 	public static Properties getDbCfgProps() {
 		return dbCfgProps;
@@ -177,14 +246,34 @@ public class DbProp {
 	
 	public final static DbProp PROP_DB_DATASOURCE_DELAY_CLOSE = new DbProp("datasourceDelayClose",30);
 	
+	public final static DbProp PROP_DB_READ_SPLIT             = new DbProp("read.split",true);
+	public final static DbProp PROP_DB_READ_EJECT_TIME        = new DbProp("read.eject.time",30);
+	
+	public final static DbProp PROP_DB_SHARDS                 = new DbProp("shards");
+	public final static DbProp PROP_DB_SHARD_STRATEGY         = new DbProp("shard.strategy","mod");
+	public final static DbProp PROP_TABLE_SHARD_KEY           = new DbProp("shard.key");
+	
+	public final static DbProp PROP_DB_PARTITION_PARALLEL     = new DbProp("partition.parallel",4);
+	public final static DbProp PROP_DB_PARTITION_MISSING_CACHE= new DbProp("partition.missing.cache",60);
+	public final static DbProp PROP_DB_PARTITION_EXIST_CACHE  = new DbProp("partition.exist.cache",600);
+	public final static DbProp PROP_DB_PARTITION_PRECREATE    = new DbProp("partition.precreate",0);
+	
+	public final static DbProp PROP_DB_PAGE_CONCURRENT        = new DbProp("page.concurrent",true);
+	public final static DbProp PROP_DB_SELECT_KEYS_CONCURRENT = new DbProp("select.keys.concurrent",false);
+	
 	public final static DbProp PROP_DB_HISTORY_DB             = new DbProp("history.db");
 	public final static DbProp PROP_DB_HISTORY_PREFIX_TABLE   = new DbProp("history.prefix.table", "history_");
 	public final static DbProp PROP_DB_HISTORY_PREFIX_COLUMN  = new DbProp("history.prefix.column","history_");
 	public final static DbProp PROP_DB_HISTORY_TABLES         = new DbProp("history.tables");
+	public final static DbProp PROP_DB_HISTORY_ASYNC          = new DbProp("history.async",false);
 	
 	public final static DbProp PROP_DB_MULTI_RESULTSET_DEEPTH = new DbProp("multi.resultset.deepth",100);
   
 	public final static DbProp PROP_DB_CACHE_TABLES	  		  = new DbProp("cache.tables");
+	
+	public final static DbProp PROP_DB_FETCH_SIZE	  		  = new DbProp("fetch.size",1000);
+	public final static DbProp PROP_DB_CACHE_LOAD_TIMEOUT	  = new DbProp("cache.load.timeout",0);
+	public final static DbProp PROP_DB_CACHE_REFRESH_CONCURRENCY = new DbProp("cache.refresh.concurrency",3);
 	 
 	public final static DbProp PROP_TABLE_VERSION_FIELD       = new DbProp("version.name","version");
 	 
@@ -196,12 +285,15 @@ public class DbProp {
 	public final static DbProp PROP_TABLE_VIEW_INDEXES		  = new DbProp("view.indexes",false);
 	
 	public final static DbProp PROP_TABLE_SEQ		          = new DbProp("seq");
+	public final static DbProp PROP_TABLE_SEQ_BLOCK	          = new DbProp("seq.block",1);
 	public final static DbProp PROP_TABLE_PRIMARY_KEYS		  = new DbProp("primaryKeys");
 	
 	
 	public final static DbProp PROP_TABLE_CACHE_CLASS         = new DbProp("cache.class");
 	public final static DbProp PROP_TABLE_CACHE_NAME	  	  = new DbProp("cache.name","default");
 	public final static DbProp PROP_TABLE_CACHE_EVICTION      = new DbProp("cache.eviction","LRU");
+	public final static DbProp PROP_TABLE_CACHE_MAX_ENTRIES   = new DbProp("cache.max.entries",5*1024);
+	public final static DbProp PROP_TABLE_CACHE_MAX_BYTES     = new DbProp("cache.max.bytes",64*1024*1024);
 	 
 	public final static DbProp PROP_TABLE_AUTO_SET_CREATE_TIME=new DbProp("auto.create_time","create_time");
 	public final static DbProp PROP_TABLE_AUTO_SET_UPDATE_TIME=new DbProp("auto.update_time","update_time");
@@ -211,6 +303,10 @@ public class DbProp {
 	public final static DbProp PROP_TABLE_EXCEPTION_IF_SET_FIELD_NOT_FOUND = new DbProp("exception_if_set_field_not_found",false);
 	public final static DbProp PROP_TABLE_CLEAR_CHANGES_AFTER_LOAD         = new DbProp("event.load.clear_changes"        ,false);
 	
+	public final static DbProp PROP_TABLE_BATCH_SIZE    =new DbProp("batch.size",1000);
+	
+	public final static DbProp PROP_TABLE_SELECT_KEYS_SIZE  =new DbProp("select.keys.size",1000);
+	
 	public final static DbProp PROP_TABLE_DBS_MAX_ROWS  =new DbProp("dbs.max.rows",10000);
 	
 	
@@ -241,6 +337,46 @@ public class DbProp {
 	public static int   CFG_RELOAD_CLASS_INTERVAL =15; 
 	
 	public static int 	CFG_RELOAD_MODEL_INTERVAL =15;
+	
+	/**
+	 * 后台检查数据库配置(文件)是否改变的时间间隔(秒), 0: 不检查
+	 */
+	public static int   CFG_RELOAD_CONFIG_INTERVAL =5;
+	
+	/**
+	 * 后台预先创建分区表的时间间隔(秒), 0: 不预先创建
+	 */
+	public static int   CFG_PARTITION_PROVISION_INTERVAL =3600;
+	
+	/**
+	 * 跨分区查询的线程池的最大线程数(所有查询共用), 线程都在忙时分区查询在调用线程中执行
+	 */
+	public static int   CFG_PARTITION_MAX_THREADS =32;
+	
+	/**
+	 * 每个Dialect缓存的 INSERT/UPDATE/WHERE 语句(按表名和字段组合)的最大数量, 0: 不缓存
+	 */
+	public static int   CFG_SQL_SHAPE_CACHE_SIZE =4096;
+	
+	/**
+	 * 异步写历史记录的队列长度, 队列满时由业务线程直接写入
+	 */
+	public static int   CFG_HISTORY_QUEUE_SIZE =10000;
+	
+	/**
+	 * 异步写历史记录时, 每批插入的最大记录数
+	 */
+	public static int   CFG_HISTORY_BATCH_SIZE =500;
+	
+	/**
+	 * 异步写历史记录的定时刷新(及失败重试)间隔(毫秒)
+	 */
+	public static int   CFG_HISTORY_FLUSH_INTERVAL =1000;
+	
+	/**
+	 * 异步写历史记录失败后的最大重试次数, 超过后丢弃并记录错误日志
+	 */
+	public static int   CFG_HISTORY_MAX_RETRIES =3;
 	  
 	/**
 	 * 默认连接空闲1分钟时，执行保持连接检查的SQL
@@ -363,6 +499,28 @@ public class DbProp {
 		}
 	}
 	
+	public long getLongValue(DBConfig db,long defaultValue){
+		String v=getValue(db);
+		if(v!=null && v.trim().length()>0){
+			return Long.parseLong(v.trim());
+		}else{
+			return defaultValue;
+		}
+	}
+	 
+	public long getLongValue(DBConfig db,String tableName, long defaultValue){
+		if(tableName==null || tableName.length()==0){
+			return getLongValue(db,defaultValue);
+		}else{
+			String v=getValue(db, tableName);
+			if(v!=null && v.trim().length()>0){
+				return Long.parseLong(v.trim());
+			}else{
+				return defaultValue;
+			}
+		}
+	}
+	
 	public String getValue(DBConfig db,String tableName,String defaultValue){
 		String v=getValue(db, tableName);
 		if(v==null){
@@ -0,0 +1,210 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.datasource;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.tsc9526.monalisa.orm.datasource.pool.ConnectionPool;
+import com.tsc9526.monalisa.tools.clazz.MelpClass;
+
+/**
+ * 内置的无锁连接池, 配置: datasourceClass = FastDataSource <br>
+ * 连接池参数(前缀: pool.):
+ * <ul>
+ * <li><b>max = 50</b> <br> &nbsp;最大连接数</li>
+ * <li><b>min = 3</b> <br> &nbsp;最小连接数</li>
+ * <li><b>waitTime = 5</b> <br> &nbsp;获取连接的最大等待时间(秒)</li>
+ * <li><b>maxLifetime = 1800</b> <br> &nbsp;连接的最大生存时间(秒), 0: 不限制</li>
+ * <li><b>idleTimeout = 600</b> <br> &nbsp;超过最小连接数的空闲连接, 空闲多长时间(秒)后关闭, 0: 不关闭</li>
+ * <li><b>leakDetectionThreshold = 0</b> <br> &nbsp;连接借出超过多长时间(秒)记录一条泄漏警告(包含借出连接的调用栈), 0: 不检测</li>
+ * <li><b>housekeepingPeriod = 30</b> <br> &nbsp;后台检查连接的时间间隔(秒)</li>
+ * <li><b>statementCacheSize = 0</b> <br> &nbsp;每个连接缓存的PreparedStatement数量(LRU), 0: 不缓存</li>
+ * </ul>
+ * 其它的参数直接传给JDBC驱动
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class FastDataSource implements PooledDataSource {
+	private static AtomicInteger index=new AtomicInteger();
+	
+	private String url;
+	private String driver;
+	private String username;
+	private String password;
+	
+	private int maxSize                = 50;
+	private int minSize                = 3;
+	private int waitTime               = 5;
+	private int maxLifetime            = 30 * 60;
+	private int idleTimeout            = 10 * 60;
+	private int leakDetectionThreshold = 0;
+	private int housekeepingPeriod     = 30;
+	private int statementCacheSize     = 0;
+	
+	private int    idleInSeconds = 60;
+	private String validationQuery;
+	
+	private Properties connProps=new Properties();
+	
+	private volatile ConnectionPool pool;
+	
+	public Connection getConnection() throws SQLException {
+		ConnectionPool p=pool;
+		if(p==null){
+			p=getPool();
+		}
+		return p.getConnection();
+	}
+	
+	public synchronized ConnectionPool getPool(){
+		if(pool==null){
+			ConnectionPool p=new ConnectionPool("FastDataSource-"+index.incrementAndGet());
+			p.setUrl(url);
+			p.setDriver(driver);
+			
+			p.getConnProps().putAll(connProps);
+			if(username!=null){
+				p.getConnProps().put("user", username);
+			}
+			if(password!=null){
+				p.getConnProps().put("password", password);
+			}
+			
+			p.setMaxSize(maxSize);
+			p.setMinSize(Math.min(minSize, maxSize));
+			p.setWaitTimeInMillis(waitTime*1000L);
+			p.setMaxLifetimeInMillis(maxLifetime*1000L);
+			p.setIdleTimeoutInMillis(idleTimeout*1000L);
+			p.setLeakDetectionInMillis(leakDetectionThreshold*1000L);
+			p.setHousekeepingInMillis(housekeepingPeriod*1000L);
+			p.setStatementCacheSize(statementCacheSize);
+			p.setIdleValidation(idleInSeconds*1000L, validationQuery);
+			
+			p.start();
+			
+			pool=p;
+		}
+		return pool;
+	}
+
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getConnection(username,password)");
+	}
+	
+	public void setProperties(Properties properties){
+		for(Object key:properties.keySet()){
+			String name=key.toString();
+			Object v   =properties.get(key);
+			
+			if("max".equals(name)){
+				maxSize=MelpClass.convert(v, Integer.class);
+			}else if("min".equals(name)){
+				minSize=MelpClass.convert(v, Integer.class);
+			}else if("waitTime".equals(name)){
+				waitTime=MelpClass.convert(v, Integer.class);
+			}else if("maxLifetime".equals(name)){
+				maxLifetime=MelpClass.convert(v, Integer.class);
+			}else if("idleTimeout".equals(name)){
+				idleTimeout=MelpClass.convert(v, Integer.class);
+			}else if("leakDetectionThreshold".equals(name)){
+				leakDetectionThreshold=MelpClass.convert(v, Integer.class);
+			}else if("housekeepingPeriod".equals(name)){
+				housekeepingPeriod=MelpClass.convert(v, Integer.class);
+			}else if("statementCacheSize".equals(name)){
+				statementCacheSize=MelpClass.convert(v, Integer.class);
+			}else{
+				connProps.put(name, v);
+			}
+		}
+	}
+	
+	public void setIdleValidationQuery(int idleInSeconds,String validationQuery){
+		this.idleInSeconds   = idleInSeconds;
+		this.validationQuery = validationQuery;
+	}
+	
+	public synchronized void close() throws IOException {
+		if(pool!=null){
+			pool.close();
+			pool=null;
+		}
+	}
+	
+	public PrintWriter getLogWriter() throws SQLException {
+		return null;
+	}
+
+	public void setLogWriter(PrintWriter out) throws SQLException {
+	}
+
+	public void setLoginTimeout(int seconds) throws SQLException {
+	}
+
+	public int getLoginTimeout() throws SQLException {
+		return 0;
+	}
+
+	public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if(iface.isInstance(this)){
+			return (T)this;
+		}
+		return null;
+	}
+
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+
+	public void setUrl(String url) {
+		this.url = url;
+	}
+
+	public void setDriver(String driver) {
+		this.driver = driver;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getDriver() {
+		return driver;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+}
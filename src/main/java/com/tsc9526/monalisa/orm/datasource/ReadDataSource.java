@@ -0,0 +1,233 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.datasource;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import com.tsc9526.monalisa.orm.datasource.DBConfig.Host;
+import com.tsc9526.monalisa.orm.datasource.DBConfig.Level;
+import com.tsc9526.monalisa.tools.logger.Logger;
+
+/**
+ * 读连接的数据源: 在可读的主机(url中的 [h1,-h2,+h3] 除去"+"开头的只写主机)之间选择当前未完成请求最少的主机, 
+ * 请求数相同时轮询. <br>
+ * 获取连接失败或者连接异常(SQLState: 08xxx)的主机会被暂停使用一段时间({@link DbProp#PROP_DB_READ_EJECT_TIME}), 
+ * 没有可用的读主机时使用写数据源.
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class ReadDataSource implements DataSource {
+	static Logger logger=Logger.getLogger(ReadDataSource.class);
+	
+	private final DBConfig   db;
+	private final List<Node> nodes=new ArrayList<Node>();
+	
+	private final AtomicInteger index=new AtomicInteger();
+	private final AtomicLong    fallbackCount=new AtomicLong();
+	
+	private long ejectInMillis;
+	
+	public ReadDataSource(DBConfig db,List<Host> hosts){
+		this.db=db;
+		
+		for(Host host:hosts){
+			if(host.LEVEL!=Level.ONLY_WRITE){
+				nodes.add(new Node(host));
+			}
+		}
+		
+		ejectInMillis=DbProp.PROP_DB_READ_EJECT_TIME.getIntValue(db, 30)*1000L;
+	}
+	
+	/**
+	 * @return true if there is at least one host can be read
+	 */
+	public boolean hasReadHosts(){
+		return nodes.size()>0;
+	}
+	
+	public Connection getConnection() throws SQLException {
+		long now=System.currentTimeMillis();
+		
+		List<Node> tried=null;
+		for(int i=0;i<nodes.size();i++){
+			Node node=select(now,tried);
+			if(node==null){
+				break;
+			}
+			
+			try{
+				Connection conn=node.getDataSource().getConnection();
+				
+				node.outstanding.incrementAndGet();
+				return createProxyConnection(node, conn);
+			}catch(SQLException e){
+				node.eject(now,e);
+			}catch(RuntimeException e){
+				node.eject(now,e);
+			}
+			
+			if(tried==null){
+				tried=new ArrayList<Node>();
+			}
+			tried.add(node);
+		}
+		
+		fallbackCount.incrementAndGet();
+		return db.getDataSource().getConnection();
+	}
+	
+	protected Node select(long now,List<Node> excludes){
+		int size=nodes.size();
+		int start=(index.getAndIncrement() & 0x7FFFFFFF) % size;
+		
+		Node selected=null;
+		for(int i=0;i<size;i++){
+			Node node=nodes.get((start+i)%size);
+			if(node.ejectUntil>now || (excludes!=null && excludes.contains(node))){
+				continue;
+			}
+			
+			if(selected==null || node.outstanding.get()<selected.outstanding.get()){
+				selected=node;
+			}
+		}
+		return selected;
+	}
+	
+	protected Connection createProxyConnection(final Node node,final Connection conn) {
+		InvocationHandler handler = new InvocationHandler() {
+			private boolean closed=false;
+			
+			public Object invoke(Object proxy, Method method, Object[] params) throws Throwable {
+				String name=method.getName();
+				if("close".equals(name)) {
+					if(!closed){
+						closed=true;
+						node.outstanding.decrementAndGet();
+						conn.close();
+					}
+					return null;
+				}else if("unwrap".equals(name) && params[0]==Connection.class) {
+					return conn;
+				}
+				
+				try{
+					return method.invoke(conn, params);
+				}catch(InvocationTargetException e){
+					Throwable t=e.getTargetException();
+					if(t instanceof SQLException){
+						String state=((SQLException)t).getSQLState();
+						if(state!=null && state.startsWith("08")){
+							node.eject(System.currentTimeMillis(),t);
+						}
+					}
+					throw t;
+				}
+			}
+		};
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, handler);
+	}
+	
+	/**
+	 * @return the times of no read host available and the write data source was used
+	 */
+	public long getFallbackCount(){
+		return fallbackCount.get();
+	}
+	
+	public List<Node> getNodes(){
+		return nodes;
+	}
+	
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("getConnection(username,password)");
+	}
+	
+	public PrintWriter getLogWriter() throws SQLException {
+		return null;
+	}
+
+	public void setLogWriter(PrintWriter out) throws SQLException {
+	}
+
+	public void setLoginTimeout(int seconds) throws SQLException {
+	}
+
+	public int getLoginTimeout() throws SQLException {
+		return 0;
+	}
+
+	public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		return null;
+	}
+
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return false;
+	}
+	
+	public class Node{
+		private final Host host;
+		
+		private final AtomicInteger outstanding=new AtomicInteger();
+		
+		private volatile long ejectUntil=0;
+		
+		Node(Host host){
+			this.host=host;
+		}
+		
+		DataSource getDataSource(){
+			return host.getConfig().getDataSource();
+		}
+		
+		void eject(long now,Throwable e){
+			ejectUntil=now+ejectInMillis;
+			
+			logger.warn("Read host: "+host.HOST_PORT+" ejected "+ejectInMillis+" ms, DB: "+db.getKey()+", exception: "+e);
+		}
+		
+		public Host getHost(){
+			return host;
+		}
+		
+		public int getOutstanding(){
+			return outstanding.get();
+		}
+		
+		public boolean isEjected(){
+			return ejectUntil>System.currentTimeMillis();
+		}
+	}
+}
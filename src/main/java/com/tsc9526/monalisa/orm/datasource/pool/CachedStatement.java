@@ -0,0 +1,124 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.datasource.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 缓存的PreparedStatement, close()时清除参数并放回{@link StatementCache}. <br>
+ * 如果修改了语句的属性(fetchSize, maxRows, queryTimeout ...)或者执行出错, close()时关闭真实的语句.
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+class CachedStatement implements InvocationHandler {
+	private final static Set<String> DIRTY_METHODS=new HashSet<String>(Arrays.asList(
+		"setFetchSize","setFetchDirection","setMaxRows","setLargeMaxRows","setMaxFieldSize",
+		"setQueryTimeout","setEscapeProcessing","setCursorName","setPoolable","closeOnCompletion"));
+	
+	static PreparedStatement wrap(PooledConnection conn,StatementCache cache,StatementCache.Key key,PreparedStatement delegate){
+		CachedStatement handler=new CachedStatement(conn, cache, key, delegate);
+		return (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, handler);
+	}
+	
+	private final PooledConnection   conn;
+	private final StatementCache     cache;
+	private final StatementCache.Key key;
+	private final PreparedStatement  delegate;
+	
+	private boolean closed = false;
+	private boolean dirty  = false;
+	
+	private CachedStatement(PooledConnection conn,StatementCache cache,StatementCache.Key key,PreparedStatement delegate){
+		this.conn     = conn;
+		this.cache    = cache;
+		this.key      = key;
+		this.delegate = delegate;
+	}
+	
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name=method.getName();
+		
+		if(name.equals("close")){
+			if(!closed){
+				closed=true;
+				release();
+			}
+			return null;
+		}else if(name.equals("isClosed")){
+			return closed;
+		}else if(name.equals("getConnection")){
+			return conn;
+		}else if(name.equals("unwrap")){
+			Class<?> iface=(Class<?>)args[0];
+			return iface.isInstance(delegate) ? delegate : delegate.unwrap(iface);
+		}else if(name.equals("isWrapperFor")){
+			Class<?> iface=(Class<?>)args[0];
+			return iface.isInstance(delegate) || delegate.isWrapperFor(iface);
+		}else if(name.equals("hashCode")){
+			return System.identityHashCode(proxy);
+		}else if(name.equals("equals")){
+			return proxy==args[0];
+		}else if(name.equals("toString")){
+			return "CachedStatement{"+delegate+"}";
+		}
+		
+		if(closed){
+			throw new SQLException("Statement is closed");
+		}
+		
+		if(DIRTY_METHODS.contains(name)){
+			dirty=true;
+		}
+		
+		try{
+			return method.invoke(delegate, args);
+		}catch(InvocationTargetException e){
+			Throwable t=e.getCause();
+			if(t instanceof SQLException){
+				dirty=true;
+				throw conn.checkException((SQLException)t);
+			}
+			throw t;
+		}
+	}
+	
+	protected void release() throws SQLException{
+		if(!dirty && !conn.isClosed() && !conn.getPoolEntry().isEvict()){
+			try{
+				delegate.clearParameters();
+				delegate.clearBatch();
+				delegate.clearWarnings();
+				
+				if(cache.offer(key, delegate)){
+					return;
+				}
+			}catch(SQLException e){
+				//close the statement
+			}
+		}
+		
+		delegate.close();
+	}
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.datasource.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无锁的连接容器: <br>
+ * <ul>
+ * <li>归还的连接优先放到当前线程的本地列表, 同一线程再次获取时直接复用(线程亲和)</li>
+ * <li>本地列表没有时扫描共享列表, 通过CAS修改连接状态来占用</li>
+ * <li>没有空闲连接时在SynchronousQueue上等待其它线程直接交付归还的连接</li>
+ * </ul>
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class ConcurrentBag {
+	private final static int MAX_THREAD_LOCAL_ENTRIES = 16;
+	
+	private final CopyOnWriteArrayList<PoolEntry> sharedList   = new CopyOnWriteArrayList<PoolEntry>();
+	private final SynchronousQueue<PoolEntry>     handoffQueue = new SynchronousQueue<PoolEntry>(true);
+	private final AtomicInteger                   waiters      = new AtomicInteger();
+	
+	private final ThreadLocal<List<PoolEntry>> threadList = new ThreadLocal<List<PoolEntry>>(){
+		protected List<PoolEntry> initialValue() {
+			return new ArrayList<PoolEntry>(MAX_THREAD_LOCAL_ENTRIES);
+		}
+	};
+	
+	/**
+	 * 不等待, 取一个空闲的连接
+	 * 
+	 * @return the entry, or null if no idle entry
+	 */
+	public PoolEntry tryBorrow(){
+		List<PoolEntry> list=threadList.get();
+		for(int i=list.size()-1;i>=0;i--){
+			PoolEntry entry=list.remove(i);
+			if(entry.compareAndSet(PoolEntry.STATE_NOT_IN_USE, PoolEntry.STATE_IN_USE)){
+				return entry;
+			}
+		}
+		
+		for(PoolEntry entry:sharedList){
+			if(entry.compareAndSet(PoolEntry.STATE_NOT_IN_USE, PoolEntry.STATE_IN_USE)){
+				return entry;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * 等待其它线程归还连接
+	 * 
+	 * @param timeoutInNanos max waiting time
+	 * @return the entry, or null if timeout
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public PoolEntry borrow(long timeoutInNanos) throws InterruptedException{
+		waiters.incrementAndGet();
+		try{
+			for(PoolEntry entry:sharedList){
+				if(entry.compareAndSet(PoolEntry.STATE_NOT_IN_USE, PoolEntry.STATE_IN_USE)){
+					return entry;
+				}
+			}
+			
+			long deadline=System.nanoTime()+timeoutInNanos;
+			while(timeoutInNanos>0){
+				PoolEntry entry=handoffQueue.poll(timeoutInNanos, TimeUnit.NANOSECONDS);
+				if(entry==null || entry.compareAndSet(PoolEntry.STATE_NOT_IN_USE, PoolEntry.STATE_IN_USE)){
+					return entry;
+				}
+				
+				timeoutInNanos=deadline-System.nanoTime();
+			}
+			return null;
+		}finally{
+			waiters.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * 归还连接: 有线程在等待时直接交给等待的线程, 否则放入当前线程的本地列表
+	 * 
+	 * @param entry the entry borrowed from this bag
+	 */
+	public void requite(PoolEntry entry){
+		entry.setState(PoolEntry.STATE_NOT_IN_USE);
+		
+		for(int i=0;waiters.get()>0;i++){
+			if(entry.getState()!=PoolEntry.STATE_NOT_IN_USE || handoffQueue.offer(entry)){
+				return;
+			}else if((i & 0xff) == 0xff){
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+			}else{
+				Thread.yield();
+			}
+		}
+		
+		List<PoolEntry> list=threadList.get();
+		if(list.size()<MAX_THREAD_LOCAL_ENTRIES){
+			list.add(entry);
+		}
+	}
+	
+	/**
+	 * 加入一个新连接, 如果连接状态是空闲, 尝试交给等待的线程
+	 * 
+	 * @param entry the new entry
+	 */
+	public void add(PoolEntry entry){
+		sharedList.add(entry);
+		
+		while(waiters.get()>0 && entry.getState()==PoolEntry.STATE_NOT_IN_USE && !handoffQueue.offer(entry)){
+			Thread.yield();
+		}
+	}
+	
+	/**
+	 * 移除一个正在使用或者被保留的连接
+	 * 
+	 * @param entry the entry
+	 * @return true if removed
+	 */
+	public boolean remove(PoolEntry entry){
+		if(!entry.compareAndSet(PoolEntry.STATE_IN_USE, PoolEntry.STATE_REMOVED) && !entry.compareAndSet(PoolEntry.STATE_RESERVED, PoolEntry.STATE_REMOVED)){
+			return false;
+		}
+		
+		return sharedList.remove(entry);
+	}
+	
+	/**
+	 * 保留一个空闲连接, 保留期间不会被借出(用于后台检查)
+	 * 
+	 * @param entry the entry
+	 * @return true if reserved
+	 */
+	public boolean reserve(PoolEntry entry){
+		return entry.compareAndSet(PoolEntry.STATE_NOT_IN_USE, PoolEntry.STATE_RESERVED);
+	}
+	
+	public void unreserve(PoolEntry entry){
+		if(entry.compareAndSet(PoolEntry.STATE_RESERVED, PoolEntry.STATE_NOT_IN_USE)){
+			while(waiters.get()>0 && entry.getState()==PoolEntry.STATE_NOT_IN_USE && !handoffQueue.offer(entry)){
+				Thread.yield();
+			}
+		}
+	}
+	
+	public List<PoolEntry> values(){
+		return new ArrayList<PoolEntry>(sharedList);
+	}
+	
+	public List<PoolEntry> values(int state){
+		List<PoolEntry> rs=new ArrayList<PoolEntry>();
+		for(PoolEntry entry:sharedList){
+			if(entry.getState()==state){
+				rs.add(entry);
+			}
+		}
+		return rs;
+	}
+	
+	public int getCount(int state){
+		int n=0;
+		for(PoolEntry entry:sharedList){
+			if(entry.getState()==state){
+				n++;
+			}
+		}
+		return n;
+	}
+	
+	public int size(){
+		return sharedList.size();
+	}
+	
+	public int getWaitingThreadCount(){
+		return waiters.get();
+	}
+}
@@ -0,0 +1,545 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.datasource.pool;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.tsc9526.monalisa.tools.Tasks;
+import com.tsc9526.monalisa.tools.clazz.MelpClass;
+import com.tsc9526.monalisa.tools.logger.Logger;
+
+/**
+ * 连接池: 借出/归还通过{@link ConcurrentBag}完成, 不需要全局锁. <br>
+ * 后台线程定期关闭空闲超时和超过最大生存时间的连接, 补足最小连接数, 并检测连接泄漏.
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class ConnectionPool {
+	static Logger logger=Logger.getLogger(ConnectionPool.class);
+	
+	private final String name;
+	
+	private final ConcurrentBag bag   = new ConcurrentBag();
+	private final AtomicInteger total = new AtomicInteger();
+	
+	private String     url;
+	private String     driver;
+	private Properties connProps = new Properties();
+	
+	private int  maxSize                  = 50;
+	private int  minSize                  = 3;
+	private long waitTimeInMillis         = 5000;
+	private long maxLifetimeInMillis      = 30 * 60 * 1000;
+	private long idleTimeoutInMillis      = 10 * 60 * 1000;
+	private long leakDetectionInMillis    = 0;
+	private long housekeepingInMillis     = 30 * 1000;
+	
+	private int  statementCacheSize       = 0;
+	
+	private long   idleValidationInMillis = 60 * 1000;
+	private String validationQuery;
+	private int    validationTimeout      = 5;
+	
+	private volatile boolean defaultAutoCommit = true;
+	private volatile boolean defaultReadOnly   = false;
+	private volatile int     defaultTransactionIsolation = -1;
+	private volatile String  defaultCatalog;
+	
+	private final AtomicLong borrowCount      = new AtomicLong();
+	private final AtomicLong borrowNanos      = new AtomicLong();
+	private final AtomicLong maxBorrowNanos   = new AtomicLong();
+	private final AtomicLong timeoutCount     = new AtomicLong();
+	private final AtomicLong createdCount     = new AtomicLong();
+	private final AtomicLong closedCount      = new AtomicLong();
+	private final AtomicLong leakCount        = new AtomicLong();
+	private final AtomicLong statementHits    = new AtomicLong();
+	private final AtomicLong statementMisses  = new AtomicLong();
+	
+	private volatile boolean started = false;
+	private volatile boolean closed  = false;
+	
+	private ScheduledThreadPoolExecutor executor;
+	
+	public ConnectionPool(String name){
+		this.name=name;
+	}
+	
+	public synchronized void start(){
+		if(started){
+			return;
+		}
+		
+		if(driver!=null){
+			try{
+				MelpClass.forName(driver);
+			}catch(ClassNotFoundException e){
+				throw new RuntimeException(e);
+			}
+		}
+		
+		executor=new ScheduledThreadPoolExecutor(1,Tasks.createThreadFactory("Monalisa-Pool-"+name));
+		executor.setRemoveOnCancelPolicy(true);
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		
+		fillPool();
+		
+		executor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try{
+					housekeeping();
+				}catch(Throwable e){
+					logger.error("Pool: "+name+" housekeeping exception: "+e,e);
+				}
+			}
+		}, housekeepingInMillis, housekeepingInMillis, TimeUnit.MILLISECONDS);
+		
+		started=true;
+	}
+	
+	public Connection getConnection() throws SQLException {
+		if(!started){
+			start();
+		}
+		
+		long start  =System.nanoTime();
+		long timeout=TimeUnit.MILLISECONDS.toNanos(waitTimeInMillis);
+		
+		try{
+			do{
+				if(closed){
+					throw new SQLException("Pool: "+name+" is closed");
+				}
+				
+				PoolEntry entry=bag.tryBorrow();
+				if(entry==null){
+					entry=createEntry(PoolEntry.STATE_IN_USE);
+				}
+				if(entry==null){
+					entry=bag.borrow(timeout-(System.nanoTime()-start));
+					if(entry==null){
+						break;
+					}
+				}
+				
+				long now=System.currentTimeMillis();
+				if(!isAlive(entry,now)){
+					closeEntry(entry);
+					continue;
+				}
+				
+				entry.lastBorrowTime=now;
+				entry.leakReported  =false;
+				if(leakDetectionInMillis>0){
+					entry.borrowStack=new Exception("Connection borrowed by thread: "+Thread.currentThread().getName());
+				}
+				
+				recordBorrow(System.nanoTime()-start);
+				
+				return newConnection(entry);
+			}while((System.nanoTime()-start)<timeout);
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for connection: "+name,e);
+		}
+		
+		timeoutCount.incrementAndGet();
+		throw new RuntimeException("Connection pool is full/timeout("+waitTimeInMillis+" ms): "+name+", "+getStatus());
+	}
+	
+	/**
+	 * 子类可以覆盖此方法, 返回带有其它功能的连接包装
+	 * 
+	 * @param entry the borrowed pool entry
+	 * @return the connection returned to the caller
+	 */
+	protected PooledConnection newConnection(PoolEntry entry){
+		return new PooledConnection(this,entry);
+	}
+	
+	void release(PoolEntry entry){
+		long now=System.currentTimeMillis();
+		
+		entry.lastAccessTime=now;
+		entry.borrowStack   =null;
+		
+		if(entry.leakReported){
+			logger.info("Pool: "+name+" previously reported leaked connection returned: "+entry.connection);
+		}
+		
+		if(closed || entry.evict || isExpired(entry,now)){
+			closeEntry(entry);
+		}else{
+			bag.requite(entry);
+		}
+	}
+	
+	protected boolean isExpired(PoolEntry entry,long now){
+		return maxLifetimeInMillis>0 && (now-entry.createTime)>maxLifetimeInMillis;
+	}
+	
+	protected boolean isAlive(PoolEntry entry,long now){
+		if(entry.evict || isExpired(entry,now)){
+			return false;
+		}
+		
+		if(idleValidationInMillis>=0 && (now-entry.lastAccessTime)>idleValidationInMillis){
+			try{
+				if(validationQuery!=null && validationQuery.trim().length()>0){
+					Statement stmt=entry.connection.createStatement();
+					try{
+						stmt.setQueryTimeout(validationTimeout);
+						stmt.execute(validationQuery);
+					}finally{
+						stmt.close();
+					}
+					
+					if(!entry.connection.getAutoCommit()){
+						entry.connection.rollback();
+					}
+				}else{
+					return entry.connection.isValid(validationTimeout);
+				}
+			}catch(SQLException e){
+				logger.warn("Pool: "+name+" validate connection failed: "+entry.connection+", "+e);
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	protected PoolEntry createEntry(int state) throws SQLException{
+		for(;;){
+			int n=total.get();
+			if(n>=maxSize){
+				return null;
+			}
+			if(total.compareAndSet(n, n+1)){
+				break;
+			}
+		}
+		
+		try{
+			Connection conn=DriverManager.getConnection(url, connProps);
+			
+			initConnection(conn);
+			
+			PoolEntry entry=new PoolEntry(conn, state);
+			if(statementCacheSize>0){
+				entry.statements=new StatementCache(statementCacheSize);
+			}
+			createdCount.incrementAndGet();
+			
+			bag.add(entry);
+			return entry;
+		}catch(SQLException e){
+			total.decrementAndGet();
+			throw e;
+		}catch(RuntimeException e){
+			total.decrementAndGet();
+			throw e;
+		}
+	}
+	
+	protected void initConnection(Connection conn) throws SQLException{
+		if(conn.getAutoCommit()!=defaultAutoCommit){
+			conn.setAutoCommit(defaultAutoCommit);
+		}
+		
+		if(defaultTransactionIsolation<0){
+			defaultReadOnly             = conn.isReadOnly();
+			defaultTransactionIsolation = conn.getTransactionIsolation();
+			defaultCatalog              = conn.getCatalog();
+		}
+	}
+	
+	protected void closeEntry(PoolEntry entry){
+		if(bag.remove(entry)){
+			total.decrementAndGet();
+			closedCount.incrementAndGet();
+			
+			if(entry.statements!=null){
+				entry.statements.close();
+			}
+			
+			try{
+				entry.connection.close();
+			}catch(Throwable e){
+				logger.warn("Pool: "+name+" close connection exception: "+entry.connection+", "+e);
+			}
+			
+			if(!closed && bag.getWaitingThreadCount()>0 && executor!=null){
+				executor.execute(new Runnable() {
+					public void run() {
+						fillWaiting();
+					}
+				});
+			}
+		}
+	}
+	
+	protected void fillWaiting(){
+		try{
+			while(!closed && bag.getWaitingThreadCount()>0 && createEntry(PoolEntry.STATE_NOT_IN_USE)!=null);
+		}catch(SQLException e){
+			logger.warn("Pool: "+name+" create connection exception: "+e);
+		}
+	}
+	
+	protected void fillPool(){
+		try{
+			while(!closed && total.get()<minSize && createEntry(PoolEntry.STATE_NOT_IN_USE)!=null);
+		}catch(SQLException e){
+			logger.warn("Pool: "+name+" create connection exception: "+e);
+		}
+	}
+	
+	protected void housekeeping(){
+		long now=System.currentTimeMillis();
+		
+		for(PoolEntry entry:bag.values(PoolEntry.STATE_NOT_IN_USE)){
+			boolean idleTimeout=idleTimeoutInMillis>0 && (now-entry.lastAccessTime)>idleTimeoutInMillis && total.get()>minSize;
+			
+			if((idleTimeout || entry.evict || isExpired(entry,now)) && bag.reserve(entry)){
+				closeEntry(entry);
+			}
+		}
+		
+		if(leakDetectionInMillis>0){
+			for(PoolEntry entry:bag.values(PoolEntry.STATE_IN_USE)){
+				if(!entry.leakReported && (now-entry.lastBorrowTime)>leakDetectionInMillis){
+					entry.leakReported=true;
+					leakCount.incrementAndGet();
+					
+					Throwable stack=entry.borrowStack;
+					logger.warn("Pool: "+name+" connection leak detected, borrowed "+(now-entry.lastBorrowTime)+" ms ago: "+entry.connection, stack);
+				}
+			}
+		}
+		
+		fillPool();
+	}
+	
+	public synchronized void close(){
+		if(closed){
+			return;
+		}
+		closed=true;
+		
+		if(executor!=null){
+			executor.shutdownNow();
+		}
+		
+		for(PoolEntry entry:bag.values()){
+			if(bag.reserve(entry)){
+				closeEntry(entry);
+			}else{
+				entry.markEvict();
+			}
+		}
+		
+		logger.info("Pool: "+name+" closed, "+getStatus());
+	}
+	
+	private void recordBorrow(long nanos){
+		borrowCount.incrementAndGet();
+		borrowNanos.addAndGet(nanos);
+		
+		long max=maxBorrowNanos.get();
+		while(nanos>max && !maxBorrowNanos.compareAndSet(max, nanos)){
+			max=maxBorrowNanos.get();
+		}
+	}
+	
+	void recordStatement(boolean hit){
+		if(hit){
+			statementHits.incrementAndGet();
+		}else{
+			statementMisses.incrementAndGet();
+		}
+	}
+	
+	public String getStatus(){
+		return "{total: "+getTotalCount()+", active: "+getActiveCount()+", idle: "+getIdleCount()+", waiting: "+getWaitingCount()+"}";
+	}
+	
+	public String getName(){
+		return name;
+	}
+	
+	public int getTotalCount(){
+		return total.get();
+	}
+	
+	public int getActiveCount(){
+		return bag.getCount(PoolEntry.STATE_IN_USE);
+	}
+	
+	public int getIdleCount(){
+		return bag.getCount(PoolEntry.STATE_NOT_IN_USE);
+	}
+	
+	public int getWaitingCount(){
+		return bag.getWaitingThreadCount();
+	}
+	
+	public long getBorrowCount(){
+		return borrowCount.get();
+	}
+	
+	/**
+	 * @return average time(ms) of waiting for a connection
+	 */
+	public double getAvgBorrowMillis(){
+		long n=borrowCount.get();
+		return n==0?0:(borrowNanos.get()/1000000.0/n);
+	}
+	
+	/**
+	 * @return max time(ms) of waiting for a connection
+	 */
+	public double getMaxBorrowMillis(){
+		return maxBorrowNanos.get()/1000000.0;
+	}
+	
+	public long getTimeoutCount(){
+		return timeoutCount.get();
+	}
+	
+	public long getCreatedCount(){
+		return createdCount.get();
+	}
+	
+	public long getClosedCount(){
+		return closedCount.get();
+	}
+	
+	public long getLeakCount(){
+		return leakCount.get();
+	}
+	
+	/**
+	 * @return number of prepared statements taken from the statement cache
+	 */
+	public long getStatementHitCount(){
+		return statementHits.get();
+	}
+	
+	/**
+	 * @return number of prepared statements created because of not found in the statement cache
+	 */
+	public long getStatementMissCount(){
+		return statementMisses.get();
+	}
+	
+	public boolean isClosed(){
+		return closed;
+	}
+	
+	boolean isDefaultAutoCommit() {
+		return defaultAutoCommit;
+	}
+
+	boolean isDefaultReadOnly() {
+		return defaultReadOnly;
+	}
+
+	int getDefaultTransactionIsolation() {
+		return defaultTransactionIsolation;
+	}
+
+	String getDefaultCatalog() {
+		return defaultCatalog;
+	}
+	
+	public void setUrl(String url) {
+		this.url = url;
+	}
+
+	public void setDriver(String driver) {
+		this.driver = driver;
+	}
+	
+	public Properties getConnProps() {
+		return connProps;
+	}
+
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public void setMinSize(int minSize) {
+		this.minSize = minSize;
+	}
+
+	public void setWaitTimeInMillis(long waitTimeInMillis) {
+		this.waitTimeInMillis = waitTimeInMillis;
+	}
+
+	public void setMaxLifetimeInMillis(long maxLifetimeInMillis) {
+		this.maxLifetimeInMillis = maxLifetimeInMillis;
+	}
+
+	public void setIdleTimeoutInMillis(long idleTimeoutInMillis) {
+		this.idleTimeoutInMillis = idleTimeoutInMillis;
+	}
+
+	public void setLeakDetectionInMillis(long leakDetectionInMillis) {
+		this.leakDetectionInMillis = leakDetectionInMillis;
+	}
+
+	public void setHousekeepingInMillis(long housekeepingInMillis) {
+		if(housekeepingInMillis>0){
+			this.housekeepingInMillis = housekeepingInMillis;
+		}
+	}
+
+	public void setIdleValidation(long idleValidationInMillis,String validationQuery) {
+		this.idleValidationInMillis = idleValidationInMillis;
+		this.validationQuery        = validationQuery;
+	}
+	
+	/**
+	 * @param statementCacheSize max cached prepared statements per connection, 0: disabled
+	 */
+	public void setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+	}
+	
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+	
+	public void setValidationTimeout(int validationTimeout) {
+		this.validationTimeout = validationTimeout;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.datasource.pool;
+
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 连接池中的一个物理连接
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class PoolEntry {
+	public final static int STATE_NOT_IN_USE =  0;
+	public final static int STATE_IN_USE     =  1;
+	public final static int STATE_REMOVED    = -1;
+	public final static int STATE_RESERVED   = -2;
+	
+	private final AtomicInteger state = new AtomicInteger(STATE_NOT_IN_USE);
+	
+	final Connection connection;
+	final long       createTime;
+	
+	/**
+	 * null: the statement cache is disabled
+	 */
+	StatementCache   statements;
+	
+	volatile long      lastAccessTime;
+	volatile long      lastBorrowTime;
+	volatile Throwable borrowStack;
+	volatile boolean   evict;
+	volatile boolean   leakReported;
+	
+	PoolEntry(Connection connection,int state){
+		this.connection     = connection;
+		this.createTime     = System.currentTimeMillis();
+		this.lastAccessTime = createTime;
+		
+		this.state.set(state);
+	}
+	
+	public int getState(){
+		return state.get();
+	}
+	
+	public boolean compareAndSet(int expect,int update){
+		return state.compareAndSet(expect, update);
+	}
+	
+	void setState(int update){
+		state.set(update);
+	}
+	
+	public Connection getConnection() {
+		return connection;
+	}
+
+	public long getCreateTime() {
+		return createTime;
+	}
+
+	public long getLastAccessTime() {
+		return lastAccessTime;
+	}
+	
+	public long getLastBorrowTime() {
+		return lastBorrowTime;
+	}
+	
+	/**
+	 * Mark the connection to be closed when it is returned to the pool
+	 */
+	public void markEvict() {
+		this.evict = true;
+	}
+	
+	public boolean isEvict() {
+		return evict;
+	}
+	
+	public StatementCache getStatementCache() {
+		return statements;
+	}
+	
+	public String toString(){
+		return "PoolEntry{state: "+state.get()+", created: "+createTime+", lastAccess: "+lastAccessTime+", connection: "+connection+"}";
+	}
+}
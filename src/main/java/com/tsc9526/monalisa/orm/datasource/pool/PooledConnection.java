@@ -0,0 +1,435 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.datasource.pool;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * 从连接池借出的连接, close()时归还到连接池, 并恢复被修改过的连接属性
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class PooledConnection implements Connection {
+	final static int DIRTY_AUTO_COMMIT = 1;
+	final static int DIRTY_READ_ONLY   = 2;
+	final static int DIRTY_ISOLATION   = 4;
+	final static int DIRTY_CATALOG     = 8;
+	
+	private final ConnectionPool pool;
+	private final PoolEntry      entry;
+	
+	protected Connection delegate;
+	
+	private boolean closed = false;
+	private int     dirtyBits;
+	private boolean autoCommit;
+	
+	PooledConnection(ConnectionPool pool,PoolEntry entry){
+		this.pool       = pool;
+		this.entry      = entry;
+		this.delegate   = entry.connection;
+		this.autoCommit = pool.isDefaultAutoCommit();
+	}
+	
+	protected Connection conn() throws SQLException{
+		if(closed){
+			throw new SQLException("Connection is closed");
+		}
+		return delegate;
+	}
+	
+	public PoolEntry getPoolEntry(){
+		return entry;
+	}
+	
+	protected SQLException checkException(SQLException e){
+		String state=e.getSQLState();
+		if(state!=null && state.startsWith("08")){
+			entry.markEvict();
+		}
+		return e;
+	}
+	
+	public void close() throws SQLException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		
+		try{
+			if(!entry.isEvict()){
+				if(!autoCommit){
+					delegate.rollback();
+				}
+				
+				resetState();
+			}
+		}catch(SQLException e){
+			entry.markEvict();
+		}finally{
+			pool.release(entry);
+		}
+	}
+	
+	protected void resetState() throws SQLException{
+		if((dirtyBits & DIRTY_AUTO_COMMIT)!=0 && autoCommit!=pool.isDefaultAutoCommit()){
+			delegate.setAutoCommit(pool.isDefaultAutoCommit());
+		}
+		if((dirtyBits & DIRTY_READ_ONLY)!=0){
+			delegate.setReadOnly(pool.isDefaultReadOnly());
+		}
+		if((dirtyBits & DIRTY_ISOLATION)!=0){
+			delegate.setTransactionIsolation(pool.getDefaultTransactionIsolation());
+		}
+		if((dirtyBits & DIRTY_CATALOG)!=0 && pool.getDefaultCatalog()!=null){
+			delegate.setCatalog(pool.getDefaultCatalog());
+		}
+		
+		delegate.clearWarnings();
+	}
+	
+	public boolean isClosed() throws SQLException {
+		return closed;
+	}
+	
+	public Statement createStatement() throws SQLException {
+		try{
+			return conn().createStatement();
+		}catch(SQLException e){
+			throw checkException(e);
+		}
+	}
+
+	public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+		try{
+			return conn().createStatement(resultSetType, resultSetConcurrency);
+		}catch(SQLException e){
+			throw checkException(e);
+		}
+	}
+	
+	public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		try{
+			return conn().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+		}catch(SQLException e){
+			throw checkException(e);
+		}
+	}
+
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		return prepare(sql, -1, -1, -1, -1);
+	}
+	
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		return prepare(sql, resultSetType, resultSetConcurrency, -1, -1);
+	}
+	
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		return prepare(sql, resultSetType, resultSetConcurrency, resultSetHoldability, -1);
+	}
+	
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+		return prepare(sql, -1, -1, -1, autoGeneratedKeys);
+	}
+	
+	/**
+	 * Take the statement from the statement cache of the connection if enabled, -1: the parameter is not specified 
+	 */
+	protected PreparedStatement prepare(String sql,int resultSetType,int resultSetConcurrency,int resultSetHoldability,int autoGeneratedKeys) throws SQLException {
+		try{
+			Connection c=conn();
+			
+			StatementCache     cache=entry.statements;
+			StatementCache.Key key  =null;
+			
+			PreparedStatement pst=null;
+			if(cache!=null){
+				key=new StatementCache.Key(sql, resultSetType, resultSetConcurrency, resultSetHoldability, autoGeneratedKeys);
+				pst=cache.take(key);
+				
+				pool.recordStatement(pst!=null);
+			}
+			
+			if(pst==null){
+				if(autoGeneratedKeys>=0){
+					pst=c.prepareStatement(sql, autoGeneratedKeys);
+				}else if(resultSetHoldability>=0){
+					pst=c.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+				}else if(resultSetType>=0){
+					pst=c.prepareStatement(sql, resultSetType, resultSetConcurrency);
+				}else{
+					pst=c.prepareStatement(sql);
+				}
+			}
+			
+			return cache!=null ? CachedStatement.wrap(this, cache, key, pst) : pst;
+		}catch(SQLException e){
+			throw checkException(e);
+		}
+	}
+
+	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+		try{
+			return conn().prepareStatement(sql, columnIndexes);
+		}catch(SQLException e){
+			throw checkException(e);
+		}
+	}
+
+	public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+		try{
+			return conn().prepareStatement(sql, columnNames);
+		}catch(SQLException e){
+			throw checkException(e);
+		}
+	}
+
+	public CallableStatement prepareCall(String sql) throws SQLException {
+		try{
+			return conn().prepareCall(sql);
+		}catch(SQLException e){
+			throw checkException(e);
+		}
+	}
+	
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		try{
+			return conn().prepareCall(sql, resultSetType, resultSetConcurrency);
+		}catch(SQLException e){
+			throw checkException(e);
+		}
+	}
+
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		try{
+			return conn().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+		}catch(SQLException e){
+			throw checkException(e);
+		}
+	}
+
+	public String nativeSQL(String sql) throws SQLException {
+		return conn().nativeSQL(sql);
+	}
+
+	public void setAutoCommit(boolean autoCommit) throws SQLException {
+		try{
+			conn().setAutoCommit(autoCommit);
+			
+			this.autoCommit = autoCommit;
+			this.dirtyBits |= DIRTY_AUTO_COMMIT;
+		}catch(SQLException e){
+			throw checkException(e);
+		}
+	}
+
+	public boolean getAutoCommit() throws SQLException {
+		return conn().getAutoCommit();
+	}
+
+	public void commit() throws SQLException {
+		try{
+			conn().commit();
+		}catch(SQLException e){
+			throw checkException(e);
+		}
+	}
+
+	public void rollback() throws SQLException {
+		try{
+			conn().rollback();
+		}catch(SQLException e){
+			throw checkException(e);
+		}
+	}
+	
+	public void rollback(Savepoint savepoint) throws SQLException {
+		try{
+			conn().rollback(savepoint);
+		}catch(SQLException e){
+			throw checkException(e);
+		}
+	}
+
+	public DatabaseMetaData getMetaData() throws SQLException {
+		return conn().getMetaData();
+	}
+
+	public void setReadOnly(boolean readOnly) throws SQLException {
+		conn().setReadOnly(readOnly);
+		dirtyBits |= DIRTY_READ_ONLY;
+	}
+
+	public boolean isReadOnly() throws SQLException {
+		return conn().isReadOnly();
+	}
+
+	public void setCatalog(String catalog) throws SQLException {
+		conn().setCatalog(catalog);
+		dirtyBits |= DIRTY_CATALOG;
+	}
+
+	public String getCatalog() throws SQLException {
+		return conn().getCatalog();
+	}
+
+	public void setTransactionIsolation(int level) throws SQLException {
+		conn().setTransactionIsolation(level);
+		dirtyBits |= DIRTY_ISOLATION;
+	}
+
+	public int getTransactionIsolation() throws SQLException {
+		return conn().getTransactionIsolation();
+	}
+
+	public SQLWarning getWarnings() throws SQLException {
+		return conn().getWarnings();
+	}
+
+	public void clearWarnings() throws SQLException {
+		conn().clearWarnings();
+	}
+
+	public Map<String, Class<?>> getTypeMap() throws SQLException {
+		return conn().getTypeMap();
+	}
+
+	public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+		conn().setTypeMap(map);
+	}
+
+	public void setHoldability(int holdability) throws SQLException {
+		conn().setHoldability(holdability);
+	}
+
+	public int getHoldability() throws SQLException {
+		return conn().getHoldability();
+	}
+
+	public Savepoint setSavepoint() throws SQLException {
+		return conn().setSavepoint();
+	}
+
+	public Savepoint setSavepoint(String name) throws SQLException {
+		return conn().setSavepoint(name);
+	}
+
+	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+		conn().releaseSavepoint(savepoint);
+	}
+
+	public Clob createClob() throws SQLException {
+		return conn().createClob();
+	}
+
+	public Blob createBlob() throws SQLException {
+		return conn().createBlob();
+	}
+
+	public NClob createNClob() throws SQLException {
+		return conn().createNClob();
+	}
+
+	public SQLXML createSQLXML() throws SQLException {
+		return conn().createSQLXML();
+	}
+
+	public boolean isValid(int timeout) throws SQLException {
+		return !closed && delegate.isValid(timeout);
+	}
+
+	public void setClientInfo(String name, String value) throws SQLClientInfoException {
+		delegate.setClientInfo(name, value);
+	}
+
+	public void setClientInfo(Properties properties) throws SQLClientInfoException {
+		delegate.setClientInfo(properties);
+	}
+
+	public String getClientInfo(String name) throws SQLException {
+		return conn().getClientInfo(name);
+	}
+
+	public Properties getClientInfo() throws SQLException {
+		return conn().getClientInfo();
+	}
+
+	public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+		return conn().createArrayOf(typeName, elements);
+	}
+
+	public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+		return conn().createStruct(typeName, attributes);
+	}
+
+	public void setSchema(String schema) throws SQLException {
+		conn().setSchema(schema);
+	}
+
+	public String getSchema() throws SQLException {
+		return conn().getSchema();
+	}
+
+	public void abort(Executor executor) throws SQLException {
+		entry.markEvict();
+		
+		delegate.abort(executor);
+	}
+
+	public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+		conn().setNetworkTimeout(executor, milliseconds);
+	}
+
+	public int getNetworkTimeout() throws SQLException {
+		return conn().getNetworkTimeout();
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if(iface.isInstance(this)){
+			return (T)this;
+		}else if(iface.isInstance(delegate)){
+			return (T)delegate;
+		}
+		return conn().unwrap(iface);
+	}
+
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || iface.isInstance(delegate) || conn().isWrapperFor(iface);
+	}
+	
+	public String toString(){
+		return "PooledConnection{"+delegate+"}";
+	}
+}
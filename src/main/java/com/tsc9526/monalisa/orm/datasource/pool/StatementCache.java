@@ -0,0 +1,163 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.datasource.pool;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.tsc9526.monalisa.tools.logger.Logger;
+
+/**
+ * 物理连接上缓存的PreparedStatement(LRU). <br>
+ * 语句借出时从缓存中移除, 关闭时再放回缓存, 所以同一条SQL在一个连接上同时打开多次也不会冲突.
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class StatementCache {
+	static Logger logger=Logger.getLogger(StatementCache.class);
+	
+	private final int maxSize;
+	private final LinkedHashMap<Key, PreparedStatement> statements;
+	
+	private boolean closed = false;
+	
+	public StatementCache(int maxSize){
+		this.maxSize    = maxSize;
+		this.statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true){
+			private static final long serialVersionUID = 5526340168312069145L;
+
+			protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+				if(size()>StatementCache.this.maxSize){
+					closeStatement(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+	
+	/**
+	 * @param key the statement key
+	 * @return the cached statement(removed from the cache), or null if cache miss 
+	 */
+	public synchronized PreparedStatement take(Key key){
+		return statements.remove(key);
+	}
+	
+	/**
+	 * Put the statement back to the cache
+	 * 
+	 * @param key the statement key
+	 * @param pst the statement
+	 * @return false if the cache is closed or the same statement is already cached, the caller should close the statement
+	 */
+	public synchronized boolean offer(Key key,PreparedStatement pst){
+		if(closed || statements.containsKey(key)){
+			return false;
+		}
+		
+		statements.put(key, pst);
+		return true;
+	}
+	
+	public synchronized int size(){
+		return statements.size();
+	}
+	
+	public int getMaxSize(){
+		return maxSize;
+	}
+	
+	public void close(){
+		List<PreparedStatement> xs;
+		synchronized(this){
+			closed=true;
+			
+			xs=new ArrayList<PreparedStatement>(statements.values());
+			statements.clear();
+		}
+		
+		for(PreparedStatement pst:xs){
+			closeStatement(pst);
+		}
+	}
+	
+	protected void closeStatement(PreparedStatement pst){
+		try{
+			pst.close();
+		}catch(SQLException e){
+			logger.warn("Close cached statement exception: "+e);
+		}
+	}
+	
+	/**
+	 * The statement key: SQL + result set type/concurrency/holdability + auto generated keys
+	 */
+	public static class Key{
+		final String sql;
+		final int    resultSetType;
+		final int    resultSetConcurrency;
+		final int    resultSetHoldability;
+		final int    autoGeneratedKeys;
+		
+		private final int hash;
+		
+		public Key(String sql,int resultSetType,int resultSetConcurrency,int resultSetHoldability,int autoGeneratedKeys){
+			this.sql                  = sql;
+			this.resultSetType        = resultSetType;
+			this.resultSetConcurrency = resultSetConcurrency;
+			this.resultSetHoldability = resultSetHoldability;
+			this.autoGeneratedKeys    = autoGeneratedKeys;
+			
+			int h=sql.hashCode();
+			h=h*31+resultSetType;
+			h=h*31+resultSetConcurrency;
+			h=h*31+resultSetHoldability;
+			h=h*31+autoGeneratedKeys;
+			this.hash=h;
+		}
+		
+		public int hashCode(){
+			return hash;
+		}
+		
+		public boolean equals(Object o){
+			if(this==o){
+				return true;
+			}
+			if(!(o instanceof Key)){
+				return false;
+			}
+			
+			Key k=(Key)o;
+			return hash==k.hash 
+				&& resultSetType==k.resultSetType 
+				&& resultSetConcurrency==k.resultSetConcurrency 
+				&& resultSetHoldability==k.resultSetHoldability 
+				&& autoGeneratedKeys==k.autoGeneratedKeys
+				&& sql.equals(k.sql);
+		}
+		
+		public String toString(){
+			return sql;
+		}
+	}
+}
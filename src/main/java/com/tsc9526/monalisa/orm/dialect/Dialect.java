@@ -17,8 +17,13 @@
 package com.tsc9526.monalisa.orm.dialect;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,6 +45,10 @@ import com.tsc9526.monalisa.orm.meta.MetaTable.CreateTable;
 import com.tsc9526.monalisa.orm.model.Model;
 import com.tsc9526.monalisa.orm.model.ModelHolder;
 import com.tsc9526.monalisa.orm.model.ModelIndex;
+import com.tsc9526.monalisa.orm.model.ModelMeta;
+import com.tsc9526.monalisa.orm.model.QMH;
+import com.tsc9526.monalisa.orm.partition.ShardMerger;
+import com.tsc9526.monalisa.orm.partition.ShardMerger.OrderBy;
 import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
 import com.tsc9526.monalisa.tools.clazz.MelpEnum;
 import com.tsc9526.monalisa.tools.converters.impl.ArrayTypeConversion;
@@ -102,6 +111,14 @@ public abstract class Dialect{
 		
 	protected static Map<String, CreateTable> hTables=new ConcurrentHashMap<String, CreateTable>();
 	
+	protected static Map<String, Long>    hExistTables  =new ConcurrentHashMap<String, Long>();
+	protected static Map<String, Long>    hMissingTables=new ConcurrentHashMap<String, Long>();
+	
+	/**
+	 * 生成的SQL语句(只和表名, 操作, 字段组合相关), 重复的 save/update/delete/load 只需要绑定参数
+	 */
+	protected Map<ShapeKey, String> hShapeSqls=new ConcurrentHashMap<ShapeKey, String>();
+	
 	public abstract String getUrlPrefix();
 	
 	public abstract String getDriver();
@@ -134,6 +151,54 @@ public abstract class Dialect{
 		return names.contains(getRealname(name).toUpperCase());
 	}
 	
+	/**
+	 * 带缓存的表是否存在检查: 存在的表缓存 {@link com.tsc9526.monalisa.orm.datasource.DbProp#PROP_DB_PARTITION_EXIST_CACHE} 秒, 
+	 * 不存在的表缓存 {@link com.tsc9526.monalisa.orm.datasource.DbProp#PROP_DB_PARTITION_MISSING_CACHE} 秒后再重新检查
+	 * 
+	 * @param db the db
+	 * @param name table name
+	 * @return true if the table exists
+	 */
+	public boolean tableExistCached(DBConfig db,String name){
+		String key=db.getKey()+":"+name;
+		long now=System.currentTimeMillis();
+		
+		Long expired=hExistTables.get(key);
+		if(expired!=null && expired>now){
+			return true;
+		}
+		
+		expired=hMissingTables.get(key);
+		if(expired!=null && expired>now){
+			return false;
+		}
+		
+		if(tableExist(db, name, false)){
+			long ttl=DbProp.PROP_DB_PARTITION_EXIST_CACHE.getIntValue(db, 600)*1000L;
+			hExistTables.put(key, now+ttl);
+			hMissingTables.remove(key);
+			return true;
+		}else{
+			hExistTables.remove(key);
+			long ttl=DbProp.PROP_DB_PARTITION_MISSING_CACHE.getIntValue(db, 60)*1000L;
+			hMissingTables.put(key, now+ttl);
+			return false;
+		}
+	}
+	
+	/**
+	 * 清除表是否存在的缓存, 例如查询表失败时(表可能已被删除)
+	 * 
+	 * @param db the db
+	 * @param name table name
+	 */
+	public void clearTableExistCache(DBConfig db,String name){
+		String key=db.getKey()+":"+name;
+		
+		hExistTables.remove(key);
+		hMissingTables.remove(key);
+	}
+	
 	/**
 	 * 实现该接口用于保持连接，在连接空闲时将执行该SQL语句。 <br>
 	 * 默认空闲5分钟执行一次检查， 参考：{@link com.tsc9526.monalisa.orm.datasource.DbProp#CFG_CONNECT_IDLE_INTERVALS}
@@ -156,9 +221,43 @@ public abstract class Dialect{
 		return null;
 	}
 	
+	/**
+	 * @param seq the sequence name
+	 * @param count number of the values
+	 * @return SQL to get the next <code>count</code> values of the sequence by one query, null if not supported
+	 */
+	public String getSequenceNext(String seq,int count){
+		return null;
+	}
+	
+	/**
+	 * @param seq the sequence name
+	 * @return the query of the sequence's increment(INCREMENT BY), null if unknown
+	 */
+	public Query getSequenceIncrement(String seq){
+		return null;
+	}
+	
 	public void setupMetaConnection(Connection conn) {
 	}
 	
+	/**
+	 * 创建流式读取的查询语句(只向前, 只读), 结果集逐行从数据库中获取, 不会一次全部加载到内存 
+	 * 
+	 * @param conn      数据库连接
+	 * @param sql       查询语句
+	 * @param fetchSize 每次从数据库中提取的记录数
+	 * @return PreparedStatement
+	 * @throws SQLException SQL异常
+	 */
+	public PreparedStatement prepareStreamStatement(Connection conn,String sql,int fetchSize)throws SQLException{
+		PreparedStatement pst=conn.prepareStatement(sql,ResultSet.TYPE_FORWARD_ONLY,ResultSet.CONCUR_READ_ONLY);
+		if(fetchSize>0){
+			pst.setFetchSize(fetchSize);
+		}
+		return pst;
+	}
+	
 	public String getMetaCatalogPattern(DBConfig db){
 		return db.getCfg().getCatalog();
 	}
@@ -175,6 +274,25 @@ public abstract class Dialect{
 		return table.getName();
 	}
 	
+	/**
+	 * @param db the db
+	 * @param tableName table name
+	 * @return true if the table has been created by {@link #createTable(DBConfig, CreateTable)}
+	 */
+	public boolean tableCreated(DBConfig db,String tableName){
+		return hTables.containsKey(db.getKey()+":"+tableName);
+	}
+	
+	/**
+	 * 记录已经存在的表, 之后 {@link #createTable(DBConfig, CreateTable)} 不需要再建表
+	 * 
+	 * @param db the db
+	 * @param table the existing table
+	 */
+	public void tableCreated(DBConfig db,CreateTable table){
+		hTables.put(db.getKey()+":"+table.getTableName(), table);
+	}
+	
 	public synchronized void createTable(DBConfig db,CreateTable table){
 		String key=db.getKey()+":"+table.getTableName();
 		if(!hTables.containsKey(key)){
@@ -260,9 +378,7 @@ public abstract class Dialect{
 	public Query insert(Model model){
 		Query query=createQuery(model);
 		
-		query.add("INSERT "); 
-		 
-		query.add("INTO "+getTableName(model.table()));
+		query.add("INSERT INTO "+getTableName(model.table()));
 		
 		addNameValues(query,model);
 	  	 
@@ -271,29 +387,443 @@ public abstract class Dialect{
  	
 	
 	protected void addNameValues(Query query,Model model){
-		query.add("(");
+		List<Object> values=new ArrayList<Object>();
 		
-		int i=0;
-		for(Object o:model.changedFields()){
-			FGS fgs=(FGS)o;
+		ShapeKey key=getInsertShape(model, values);
+		
+		String sql=getShapeSql(key);
+		if(sql==null){
+			StringBuilder sb=new StringBuilder("(");
+			for(int i=0;i<key.size();i++){
+				if(i>0){
+					sb.append(", ");
+				}
+				sb.append(getColumnName(key.nameAt(i)));
+			}
+			sb.append(")VALUES(");
+			for(int i=0;i<key.size();i++){			 
+				sb.append(i>0?", ?":"?");
+			}
+			sb.append(")");
 			
-			Column c=fgs.getAnnotation(Column.class);
-			Object v=getValue(fgs,model);
+			sql=sb.toString();
+			putShapeSql(key, sql);
+		}
+		
+		query.add(sql,values);
+	}
+	
+	/**
+	 * The columns to insert: changed fields, except the auto increment field without value
+	 * 
+	 * @param model  the model
+	 * @param names  output the column names, ignored if null
+	 * @param values output the column values, ignored if null
+	 */
+	protected void getNameValues(Model model,List<String> names,List<Object> values){
+		ShapeKey key=getInsertShape(model, values);
+		if(names!=null){
+			key.getNames(names);
+		}
+	}
+	
+	/**
+	 * @param model  the model
+	 * @param values output the column values, ignored if null
+	 * @return the insert columns, see {@link #getNameValues(Model, List, List)}
+	 */
+	protected ShapeKey getInsertShape(Model model,List<Object> values){
+		ModelMeta mm=QMH.mm(model);
+		
+		Collection<FGS> fields=model.changedFields();
+		
+		ShapeKey key=new ShapeKey("V", mm, null, fields.size());
+		for(FGS fgs:fields){
+			int index=mm.indexOf(fgs);
+			
+			Column c=getColumn(mm, index, fgs);
+			Object v=getValue(fgs,c,model);
 			 
 			if(!c.auto() || v!=null){
-				if(i>0){
-					query.add(", ");
+				key.add(index, c);
+				
+				if(values!=null){
+					values.add(v);
 				}
-				query.add(getColumnName(c.name()),v);
-				i++;
 			}			
 		}
-		query.add(")VALUES(");
+		return key;
+	}
+	
+	protected Column getColumn(ModelMeta mm,int index,FGS fgs){
+		return index>=0?mm.columnAt(index):fgs.getAnnotation(Column.class);
+	}
+	
+	/**
+	 * @return true if the dialect supports {@link #insertOrUpdateAll(List)}
+	 */
+	public boolean supportInsertOrUpdateAll(){
+		return false;
+	}
+	
+	/**
+	 * Multi-row version of {@link #insertOrUpdate(Model)}, 
+	 * all of the models must have the same {@link #getUpsertKey(Model)}
+	 * 
+	 * @param models the models
+	 * @return the upsert query, null if not supported
+	 */
+	public Query insertOrUpdateAll(List<? extends Model> models){
+		return null;
+	}
+	
+	/**
+	 * @return the max number of parameters in one SQL statement
+	 */
+	public int getMaxParameters(){
+		return 2000;
+	}
+	
+	/**
+	 * @return the max number of values in one <code>IN (...)</code> expression
+	 */
+	public int getMaxInSize(){
+		return getMaxParameters();
+	}
+	
+	/**
+	 * @param model the model
+	 * @return the models with the same key(table, insert columns, unique columns) can be saved by one {@link #insertOrUpdateAll(List)}, 
+	 *   null if the model can not be saved by multi-row upsert.
+	 */
+	public String getUpsertKey(Model model){
+		if(!supportInsertOrUpdateAll()){
+			return null;
+		}
 		
-		for(int k=0;k<i;k++){			 
-			query.add(k>0?", ?":"?");
+		List<FGS> uniqueFields=getUniqueFields(model);
+		if(uniqueFields.isEmpty()){
+			return null;
+		}
+		
+		List<String> names=new ArrayList<String>();
+		getUpsertNameValues(model, uniqueFields, names, null);
+		
+		StringBuilder key=new StringBuilder(getTableName(model.table())).append(':');
+		for(String name:names){
+			key.append(name).append(',');
+		}
+		key.append(':');
+		for(FGS fgs:uniqueFields){
+			key.append(fgs.getFieldName()).append(',');
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * @param model the model
+	 * @return the values of the unique columns, 
+	 * one upsert statement can not contain two rows with the same unique values
+	 */
+	public List<Object> getUpsertRowKey(Model model){
+		List<Object> values=new ArrayList<Object>();
+		for(FGS fgs:getUniqueFields(model)){
+			values.add(fgs.getObject(model));
+		}
+		return values;
+	}
+	
+	/**
+	 * The columns of the multi-row upsert: the insert columns({@link #getNameValues(Model, List, List)}), 
+	 * and the unique columns which are not changed(e.g. the model is loaded, then some other fields are changed)
+	 * 
+	 * @param model  the model
+	 * @param uniqueFields the unique fields
+	 * @param names  output the column names, ignored if null
+	 * @param values output the column values, ignored if null
+	 */
+	protected void getUpsertNameValues(Model model,List<FGS> uniqueFields,List<String> names,List<Object> values){
+		List<String> inserts=new ArrayList<String>();
+		getNameValues(model, inserts, values);
+		
+		if(names!=null){
+			names.addAll(inserts);
+		}
+		for(FGS fgs:uniqueFields){
+			String name=fgs.getAnnotation(Column.class).name();
+			if(!inserts.contains(name)){
+				if(names!=null){
+					names.add(name);
+				}
+				if(values!=null){
+					values.add(getValue(fgs, model));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Append: <code>(column1, column2 ...)VALUES(?, ? ...), (?, ? ...) ...</code>
+	 * 
+	 * @param query  the query
+	 * @param models the models with the same {@link #getUpsertKey(Model)}
+	 * @param uniqueFields the unique fields
+	 */
+	protected void addNameValuesAll(Query query,List<? extends Model> models,List<FGS> uniqueFields){
+		List<String> names =new ArrayList<String>();
+		List<Object> values=new ArrayList<Object>();
+		
+		getUpsertNameValues(models.get(0), uniqueFields, names, values);
+		for(int i=1;i<models.size();i++){
+			getUpsertNameValues(models.get(i), uniqueFields, null, values);
+		}
+		
+		StringBuilder row=new StringBuilder("(");
+		for(int i=0;i<names.size();i++){			 
+			row.append(i>0?", ?":"?");
+		}
+		row.append(")");
+		
+		StringBuilder sb=new StringBuilder("(");
+		for(int i=0;i<names.size();i++){
+			if(i>0){
+				sb.append(", ");
+			}
+			sb.append(getColumnName(names.get(i)));
+		}
+		sb.append(")VALUES");
+		for(int i=0;i<models.size();i++){
+			if(i>0){
+				sb.append(", ");
+			}
+			sb.append(row);
+		}
+		
+		query.add(sb.toString(),values);
+	}
+	
+	/**
+	 * Append the clauses of MERGE statement, the source table alias: <b>s</b>, the target table alias: <b>m</b>
+	 * <pre>
+	 * ON (m.unique1 = s.unique1 AND ...)
+	 * WHEN MATCHED     THEN UPDATE SET m.column1 = s.column1, ...
+	 * WHEN NOT MATCHED THEN INSERT (column1, ...) VALUES (s.column1, ...)
+	 * </pre>
+	 * 
+	 * @param query the query
+	 * @param model the first model of the rows
+	 * @param uniqueFields the unique fields
+	 */
+	protected void addMergeClauses(Query query,Model model,List<FGS> uniqueFields){
+		StringBuilder sb=new StringBuilder(" ON (");
+		for(int i=0;i<uniqueFields.size();i++){
+			String name=getColumnName(uniqueFields.get(i).getAnnotation(Column.class).name());
+			
+			sb.append(i>0?" AND ":"").append("m.").append(name).append(" = s.").append(name);
+		}
+		sb.append(")");
+		
+		List<String> updates=getUpdateNames(model, uniqueFields);
+		if(updates.size()>0){
+			sb.append("\r\n WHEN MATCHED     THEN UPDATE SET ");
+			for(int i=0;i<updates.size();i++){
+				String name=getColumnName(updates.get(i));
+				
+				sb.append(i>0?", ":"").append("m.").append(name).append(" = s.").append(name);
+			}
+		}
+		
+		List<String> names=new ArrayList<String>();
+		getNameValues(model, names, null);
+		
+		StringBuilder values=new StringBuilder();
+		sb.append("\r\n WHEN NOT MATCHED THEN INSERT (");
+		for(int i=0;i<names.size();i++){
+			String name=getColumnName(names.get(i));
+			
+			sb.append(i>0?", ":"").append(name);
+			values.append(i>0?", ":"").append("s.").append(name);
+		}
+		sb.append(") VALUES (").append(values).append(")");
+		
+		query.add(sb.toString());
+	}
+	
+	/**
+	 * @param model the model
+	 * @param uniqueFields the unique fields
+	 * @return the columns to update if the unique key exists: changed fields except the key/unique/auto/create_time/create_by fields
+	 */
+	protected List<String> getUpdateNames(Model model,List<FGS> uniqueFields){
+		Set<String> unames=new HashSet<String>();
+		for(FGS fgs:uniqueFields){
+			unames.add(fgs.getFieldName());
+		}
+		
+		List<String> names=new ArrayList<String>();
+		
+		FGS createTime = model.fieldGetCreateTime();
+		FGS createBy   = model.fieldGetCreateBy();
+		for(Object o:model.changedFields()){
+			FGS fgs=(FGS)o;
+			
+			Column c = fgs.getAnnotation(Column.class);
+			
+			boolean skip = c.auto() || c.key() || unames.contains(fgs.getFieldName());
+			if(!skip){
+				skip = fgs.isSameName(createTime) || fgs.isSameName(createBy);
+			} 
+			
+			if(!skip){
+				names.add(c.name());
+			}
+		}
+		return names;
+	}
+	
+	/**
+	 * @param key the shape of the SQL
+	 * @return the cached SQL, null if not found
+	 */
+	protected String getShapeSql(ShapeKey key){
+		return key.isCacheable()?hShapeSqls.get(key):null;
+	}
+	
+	/**
+	 * 缓存满了以后不再加入新的语句(已缓存的语句继续使用)
+	 * 
+	 * @param key the shape of the SQL
+	 * @param sql the SQL
+	 */
+	protected void putShapeSql(ShapeKey key,String sql){
+		if(key.isCacheable() && hShapeSqls.size()<DbProp.CFG_SQL_SHAPE_CACHE_SIZE){
+			hShapeSqls.put(key, sql);
+		}
+	}
+	
+	/**
+	 * @param key the key columns
+	 * @return the cached: <code>column1 = ? AND column2 = ? ...</code> 
+	 */
+	protected String getWhereKeySql(ShapeKey key){
+		String sql=getShapeSql(key);
+		if(sql==null){
+			StringBuilder sb=new StringBuilder();
+			for(int i=0;i<key.size();i++){
+				if(i>0){
+					sb.append(" AND ");
+				}
+				sb.append(getColumnName(key.nameAt(i))).append(" = ?");
+			}
+			
+			sql=sb.toString();
+			putShapeSql(key, sql);
+		}
+		return sql;
+	}
+	
+	/**
+	 * 生成的SQL语句的缓存key: 操作, 表名, 字段的位置({@link ModelMeta#indexOf(FGS)}) 
+	 * 
+	 * @author zzg.zhou(11039850@qq.com)
+	 */
+	protected static class ShapeKey{
+		private final String    op;
+		private final ModelMeta mm;
+		private final String    table;
+		
+		private int[]    fields;
+		private Column[] columns;
+		private int      size;
+		private boolean  cacheable=true;
+		private int      hash;
+		
+		/**
+		 * @param op the operation
+		 * @param mm the model meta, the field positions are relative to it
+		 * @param table the table name, null if the SQL does not contain it
+		 * @param capacity the expected number of the fields
+		 */
+		public ShapeKey(String op,ModelMeta mm,String table,int capacity){
+			this.op     =op;
+			this.mm     =mm;
+			this.table  =table;
+			this.fields =new int[Math.max(capacity, 1)];
+			this.columns=new Column[fields.length];
+		}
+		
+		/**
+		 * @param index the field position, -1: the field is not in the model meta, the SQL will not be cached
+		 * @param column the column of the field
+		 */
+		public void add(int index,Column column){
+			if(index<0){
+				cacheable=false;
+			}
+			
+			if(size==fields.length){
+				fields =Arrays.copyOf(fields, size*2);
+				columns=Arrays.copyOf(columns, size*2);
+			}
+			fields [size]=index;
+			columns[size]=column;
+			size++;
+			hash=0;
+		}
+		
+		public int size(){
+			return size;
+		}
+		
+		public String nameAt(int i){
+			return columns[i].name();
+		}
+		
+		public void getNames(List<String> names){
+			for(int i=0;i<size;i++){
+				names.add(columns[i].name());
+			}
+		}
+		
+		public boolean isCacheable(){
+			return cacheable;
+		}
+		
+		public int hashCode(){
+			int h=hash;
+			if(h==0){
+				h=op.hashCode()*31+System.identityHashCode(mm);
+				h=h*31+(table==null?0:table.hashCode());
+				for(int i=0;i<size;i++){
+					h=h*31+fields[i];
+				}
+				hash=h;
+			}
+			return h;
+		}
+		
+		public boolean equals(Object o){
+			if(this==o){
+				return true;
+			}
+			if(!(o instanceof ShapeKey)){
+				return false;
+			}
+			
+			ShapeKey k=(ShapeKey)o;
+			if(k.mm!=mm || k.size!=size || !k.op.equals(op)){
+				return false;
+			}
+			if(table==null?k.table!=null:!table.equals(k.table)){
+				return false;
+			}
+			for(int i=0;i<size;i++){
+				if(fields[i]!=k.fields[i]){
+					return false;
+				}
+			}
+			return true;
 		}
-		query.add(")");
 	}
 	
 	
@@ -360,12 +890,18 @@ public abstract class Dialect{
 		
 		Query query = createQuery(model);
 		
-		query.add("UPDATE "+getTableName(model.table())+" SET ");
-		for(Object o:model.changedFields()){
-			FGS fgs=(FGS)o;
+		ModelMeta mm=QMH.mm(model);
+		String table=getTableName(model.table());
+		
+		Collection<FGS> fields=model.changedFields();
+		
+		ShapeKey key=new ShapeKey(updateByVersion?"UV":"U", mm, table, fields.size()+1);
+		List<Object> values=new ArrayList<Object>();
+		for(FGS fgs:fields){
+			int index=mm.indexOf(fgs);
 			
-			Column c=fgs.getAnnotation(Column.class);
-			Object v=getValue(fgs,model);
+			Column c=getColumn(mm, index, fgs);
+			Object v=getValue(fgs,c,model);
 			 
 			boolean updateField = !c.key() || (model.enableUpdateKey() && v!=null);
 			if(updateField && updateByVersion &&  c.name().equalsIgnoreCase(versionField) ){
@@ -373,18 +909,39 @@ public abstract class Dialect{
 			}
 				
 			if(updateField){
-				if(query.parameterCount()>0){
-					query.add(", ");
-				}
-				
-				query.add(getColumnName(c.name())+"=?",v);	 
+				key.add(index, c);
+				values.add(v);
 			}				 
 		}		
 		
+		if(updateByVersion){
+			key.add(mm.indexOf(versionField), null);
+		}
+		
+		String sql=getShapeSql(key);
+		if(sql==null){
+			StringBuilder sb=new StringBuilder("UPDATE ").append(table).append(" SET ");
+			
+			int n=updateByVersion?key.size()-1:key.size();
+			for(int i=0;i<n;i++){
+				if(i>0){
+					sb.append(", ");
+				}
+				sb.append(getColumnName(key.nameAt(i))).append("=?");
+			}
+			
+			if(updateByVersion){
+				String vfn=getColumnName(versionField);
+				sb.append(", ").append(vfn).append(" = ").append(vfn).append(" + 1");
+			}
+			
+			sql=sb.toString();
+			putShapeSql(key, sql);
+		}
+		query.add(sql,values);
 		
 		if(updateByVersion){
 			String vfn=getColumnName(versionField);
-			query.add(", ").add(vfn).add(" = ").add(vfn).add(" + 1");
 			
 			addWhereCause(query,whereStatement,args);
 			
@@ -399,9 +956,7 @@ public abstract class Dialect{
 	}
 	
 	private void addWhereCause(Query query,String whereStatement,Object ... args){
-		List<String> kws=MelpSQL.splitKeyWords(whereStatement);
-		String w=kws.get(0);
-		if(w.equalsIgnoreCase("WHERE")){
+		if(MelpSQL.isStartByKeyWord(whereStatement,"WHERE")){
 			query.add(whereStatement, args);
 		}else{ 
 			query.add(" WHERE ").add(whereStatement,  args);
@@ -483,6 +1038,7 @@ public abstract class Dialect{
 		newQuery.use(origin.getDb());
 		newQuery.setCache(origin.getCache());
 		newQuery.setCacheTime(origin.getCacheTime(),origin.getAutoRefreshInMillis());		                                                   
+		newQuery.setCacheStaleTime(origin.getCacheStaleTime());
 		newQuery.setParameters(origin.getParameters());
 	}
 	
@@ -614,22 +1170,23 @@ public abstract class Dialect{
 	}
 	
 	protected Query getWhereByPrimaryKey(Model model){
-		Query query=createQuery(model);
+		ModelMeta mm=QMH.mm(model);
+		
+		ShapeKey key =new ShapeKey("W", mm, null, 1);
+		List<Object> values=new ArrayList<Object>();
 		
 		int keyType=-1; //-1: 初始化, 0-无匹配的键, 1-primary key, 2-unique key	 
-		for(Object o:model.fields()){
-			FGS fgs=(FGS)o;
+		for(int index=0;index<mm.fieldCount();index++){
+			FGS fgs=mm.fieldAt(index);
 			
-			Column c=fgs.getAnnotation(Column.class);
+			Column c=mm.columnAt(index);
 			if(c.key()){
 				keyType=1;
 				
-				Object v=getValue(fgs,model);
+				Object v=getValue(fgs,c,model);
 				if(v!=null){
-					if(!query.isEmpty()){
-						query.add(" AND ");
-					}					
-					query.add(getColumnName(c.name())+" = ?",v);
+					key.add(index, c);
+					values.add(v);
 				}else{	
 					keyType=0;					 
 					break;										
@@ -638,6 +1195,8 @@ public abstract class Dialect{
 		}	 
 		
 		if(keyType==1){
+			Query query=createQuery(model);
+			query.add(getWhereKeySql(key),values);
 			return query;
 		}else{
 			return null;
@@ -645,22 +1204,26 @@ public abstract class Dialect{
 	}
 	
 	protected Query getWhereByUniqueKey(Model model){
+		ModelMeta mm=QMH.mm(model);
+		
 		for(Object x:model.uniqueIndexes()){
 			ModelIndex index=(ModelIndex)x;
 			
-			Query query=createQuery(model);
-			 
 			List<FGS> fs=index.getFields();
+			
+			ShapeKey key =new ShapeKey("W", mm, null, fs.size());
+			List<Object> values=new ArrayList<Object>();
+			 
 			boolean keyExists=fs.size()>0;
 			for(FGS fgs:fs){
-				Column c=fgs.getAnnotation(Column.class);
+				int i=mm.indexOf(fgs);
+				
+				Column c=getColumn(mm, i, fgs);
 				
-				Object v=getValue(fgs,model);
+				Object v=getValue(fgs,c,model);
 				if(v!=null){
-					if(!query.isEmpty()){
-						query.add(" AND ");
-					}					
-					query.add(getColumnName(c.name())+" = ?",v);
+					key.add(i, c);
+					values.add(v);
 				}else{	
 					keyExists=false;
 					break;										
@@ -668,6 +1231,8 @@ public abstract class Dialect{
 			}	
 			
 			if(keyExists){
+				Query query=createQuery(model);
+				query.add(getWhereKeySql(key),values);
 				return query;
 			}			
 		}		
@@ -675,9 +1240,21 @@ public abstract class Dialect{
 	}
 	
 	protected Object getValue(FGS fgs,Model model) {
+		return getValue(fgs, null, model);
+	}
+	
+	/**
+	 * @param fgs   the field
+	 * @param c     the column of the field, null: get it from the field annotation
+	 * @param model the model
+	 * @return the value to bind to the SQL parameter
+	 */
+	protected Object getValue(FGS fgs,Column c,Model model) {
 		Object v=fgs.getObject(model);
 		if(v!=null){
-			Column c=fgs.getAnnotation(Column.class);			
+			if(c==null){
+				c=fgs.getAnnotation(Column.class);
+			}
 			String type=MelpTypes.getJavaType(c.jdbcType());
 			
 			if(v.getClass().isEnum()){
@@ -771,6 +1348,145 @@ public abstract class Dialect{
 		return false;
 	}
 	
+	/**
+	 * @return true if support the row value comparison: (a, b) &gt; (?, ?)
+	 */
+	public boolean supportRowValueComparison(){
+		return false;
+	}
+	
+	/**
+	 * 键集分页: 在原来的查询上增加条件 (k1, k2) &gt; (?, ?), 只取排序字段之后的 limit 条记录, 
+	 * 排序字段(ORDER BY)必须能唯一确定一条记录, 例如最后一个字段是主键. 
+	 * 
+	 * @param origin the query with ORDER BY
+	 * @param orders the ORDER BY of the query
+	 * @param after  values of the sort keys of the last row in previous page, null: the first page
+	 * @param limit  max records
+	 * @return the keyset query
+	 */
+	public Query getKeysetQuery(Query origin,List<OrderBy> orders,Object[] after,int limit){
+		if(after==null){
+			return getLimitQuery(origin, limit, 0);
+		}
+		
+		String sql=origin.getSql();
+		String m  =ShardMerger.mask(sql);
+		
+		int p=m.lastIndexOf(" ORDER BY ");
+		String body =sql.substring(0,p);
+		String order=sql.substring(p);
+		
+		String mb=m.substring(0,p);
+		boolean wrap= mb.indexOf(" GROUP BY ")>0 || mb.indexOf(" HAVING ")>0 || mb.indexOf(" UNION ")>0 || mb.indexOf(" DISTINCT ")>0;
+		
+		List<Object> args=new ArrayList<Object>();
+		
+		Query query=createQuery(null);
+		copy(query, origin);
+		query.setParameters(new ArrayList<Object>());
+		
+		if(wrap){
+			StringBuilder sb=new StringBuilder();
+			for(OrderBy o:orders){
+				sb.append(sb.length()>0?", ":"").append(getColumnName(o.getName())).append(o.isDesc()?" DESC":"");
+			}
+			
+			query.add("SELECT * FROM ("+body+") keyset_ WHERE ", origin.getParameters());
+			query.add(getKeysetCondition(orders, after, true, args), args);
+			query.add(" ORDER BY "+sb.toString());
+		}else{
+			int w=mb.indexOf(" WHERE ");
+			if(w>0){
+				query.add(body.substring(0,w)+" WHERE ("+body.substring(w+7)+") AND ", origin.getParameters());
+			}else{
+				query.add(body+" WHERE ", origin.getParameters());
+			}
+			query.add(getKeysetCondition(orders, after, false, args), args);
+			query.add(order);
+		}
+		
+		return getLimitQuery(query, limit, 0);
+	}
+	
+	/**
+	 * (k1, k2) &gt; (?, ?) or k1&gt;? OR (k1=? AND k2&gt;?) if not support the row value comparison
+	 */
+	protected String getKeysetCondition(List<OrderBy> orders,Object[] after,boolean useName,List<Object> args){
+		if(orders.size()!=after.length){
+			throw new RuntimeException("Keyset values: "+after.length+" not match the sort keys: "+orders);
+		}
+		
+		boolean sameDirection=true;
+		String[] keys=new String[orders.size()];
+		for(int i=0;i<keys.length;i++){
+			OrderBy o=orders.get(i);
+			if(after[i]==null){
+				throw new RuntimeException("Keyset pagination requires non null sort keys: "+o.getName());
+			}
+			
+			keys[i]= useName ? getColumnName(o.getName()) : o.getExpression();
+			sameDirection = sameDirection && o.isDesc()==orders.get(0).isDesc();
+		}
+		
+		StringBuilder sb=new StringBuilder();
+		if(keys.length==1 || (sameDirection && supportRowValueComparison())){
+			String op=orders.get(0).isDesc()?" < ":" > ";
+			if(keys.length==1){
+				sb.append(keys[0]).append(op).append("?");
+			}else{
+				StringBuilder vs=new StringBuilder();
+				for(int i=0;i<keys.length;i++){
+					sb.append(i==0?"(":", ").append(keys[i]);
+					vs.append(i==0?"(":", ").append("?");
+				}
+				sb.append(")").append(op).append(vs).append(")");
+			}
+			for(Object v:after){
+				args.add(v);
+			}
+		}else{
+			sb.append("(");
+			for(int i=0;i<keys.length;i++){
+				sb.append(i==0?"(":" OR (");
+				for(int j=0;j<i;j++){
+					sb.append(keys[j]).append(" = ? AND ");
+					args.add(after[j]);
+				}
+				sb.append(keys[i]).append(orders.get(i).isDesc()?" < ?":" > ?").append(")");
+				args.add(after[i]);
+			}
+			sb.append(")");
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * 估算查询结果的记录数, 用于只需要显示大概的总数(例如: 约120万条)的分页, 避免在大表上执行 COUNT(*)
+	 * 
+	 * @param origin the query
+	 * @return the estimated number of rows, -1: not supported
+	 */
+	public long getApproximateCount(Query origin){
+		return -1;
+	}
+	
+	protected Query createApproximateQuery(Query origin,String sql,List<?> parameters){
+		Query query=createQuery(null);
+		copy(query, origin);
+		
+		String originTag = origin.getTag()==null? "": origin.getTag().toString();
+		query.setTag(originTag+"-approximate");
+		if(origin.getCountCacheTime()!=0){
+			query.setCacheTime(origin.getCountCacheTime());
+		}
+		
+		query.setParameters(new ArrayList<Object>(parameters));
+		query.add(sql);
+		
+		return query;
+	}
+	
 	public Query getCountQuery(Query origin) {
 		return getCountQuery(origin,null);
 	}
@@ -16,6 +16,10 @@
  *******************************************************************************************/
 package com.tsc9526.monalisa.orm.dialect;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -57,6 +61,15 @@ public class MysqlDialect extends Dialect {
 	public String getIdleValidationQuery(){
     	return "SELECT 1";
     }
+	
+	/**
+	 * MySQL驱动只有在fetchSize=Integer.MIN_VALUE时才会逐行读取结果集
+	 */
+	public PreparedStatement prepareStreamStatement(Connection conn,String sql,int fetchSize)throws SQLException{
+		PreparedStatement pst=conn.prepareStatement(sql,ResultSet.TYPE_FORWARD_ONLY,ResultSet.CONCUR_READ_ONLY);
+		pst.setFetchSize(Integer.MIN_VALUE);
+		return pst;
+	}
 
 	public String geCatalog(String jdbcUrl) {
 		return null;
@@ -144,6 +157,45 @@ public class MysqlDialect extends Dialect {
 		
 		return query;
 	}
+	
+	public boolean supportInsertOrUpdateAll(){
+		return true;
+	}
+	
+	public int getMaxParameters(){
+		return 65535;
+	}
+	
+	/**
+	 * INSERT INTO table (...)VALUES(...), (...) ON DUPLICATE KEY UPDATE column = VALUES(column) ...
+	 */
+	public Query insertOrUpdateAll(List<? extends Model> models){
+		Model model=models.get(0);
+		
+		List<FGS> uniqueFields = getUniqueFields(model);
+		
+		Query query=createQuery(model);
+		
+		query.add("INSERT INTO ").add(getTableName(model.table()));
+		
+		addNameValuesAll(query,models,uniqueFields);
+		
+		query.add(" ON DUPLICATE KEY UPDATE ");
+		
+		List<String> names=getUpdateNames(model, uniqueFields);
+		for(int i=0;i<names.size();i++){
+			String name=getColumnName(names.get(i));
+			
+			query.add((i>0?", ":"") + name + " = VALUES(" + name + ")");
+		}
+		
+		if(names.isEmpty()){
+			Column c = uniqueFields.get(0).getAnnotation(Column.class);
+			query.add(getColumnName(c.name()) + " = " +getColumnName(c.name()));
+		}
+		
+		return query;
+	}
  
 	public String getLimitSql(String orignSql, int limit,int offset){
 		return orignSql+" LIMIT " + limit + " OFFSET " + offset;
@@ -248,4 +300,52 @@ public class MysqlDialect extends Dialect {
 	}
 
 	
+	
+	public boolean supportRowValueComparison(){
+		return true;
+	}
+	
+	/**
+	 * EXPLAIN 估算的记录数
+	 */
+	public long getApproximateCount(Query origin){
+		Query query=createApproximateQuery(origin, "EXPLAIN "+origin.getSql(), origin.getParameters());
+		return getExplainRows(query.getList());
+	}
+	
+	/**
+	 * 最外层查询(第一个id)的每个表的 rows * filtered% 的乘积
+	 * 
+	 * @param rs the result of EXPLAIN
+	 * @return the estimated number of rows, -1: unknown
+	 */
+	protected long getExplainRows(DataTable<DataMap> rs){
+		double n=-1;
+		
+		String id=null;
+		for(DataMap r:rs){
+			String x=r.getString("id");
+			if(id==null){
+				id=x;
+			}else if(!id.equals(x)){
+				continue;
+			}
+			
+			Object rows=r.get("rows");
+			if(rows==null){
+				continue;
+			}
+			
+			double v=Double.parseDouble(rows.toString());
+			
+			Object filtered=r.get("filtered");
+			if(filtered!=null){
+				v=v*Double.parseDouble(filtered.toString())/100;
+			}
+			
+			n= n<0 ? v : n*v;
+		}
+		
+		return n<0 ? -1 : (long)Math.ceil(n);
+	}
 }
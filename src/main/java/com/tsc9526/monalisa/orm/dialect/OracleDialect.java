@@ -19,10 +19,13 @@ package com.tsc9526.monalisa.orm.dialect;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.sql.DataSource;
 
@@ -36,7 +39,10 @@ import com.tsc9526.monalisa.orm.datasource.SimpleDataSource;
 import com.tsc9526.monalisa.orm.meta.MetaTable;
 import com.tsc9526.monalisa.orm.meta.MetaTable.CreateTable;
 import com.tsc9526.monalisa.orm.model.Model;
+import com.tsc9526.monalisa.orm.partition.ShardMerger;
 import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
+import com.tsc9526.monalisa.tools.datatable.DataMap;
+import com.tsc9526.monalisa.tools.datatable.DataTable;
 
 /**
  * 
@@ -187,6 +193,61 @@ public class OracleDialect extends Dialect{
 		
 		return query;
 	}
+	
+	public boolean supportInsertOrUpdateAll(){
+		return true;
+	}
+	
+	public int getMaxParameters(){
+		return 32767;
+	}
+	
+	/**
+	 * ORA-01795: maximum number of expressions in a list is 1000
+	 */
+	public int getMaxInSize(){
+		return 1000;
+	}
+	
+	/**
+	 * MERGE INTO table m USING (SELECT ? c1, ? c2 FROM dual UNION ALL SELECT ?, ? FROM dual ...) s ON (...) 
+	 */
+	public Query insertOrUpdateAll(List<? extends Model> models){
+		Model model=models.get(0);
+		
+		List<FGS> uniqueFields = getUniqueFields(model);
+		
+		List<String> names =new ArrayList<String>();
+		List<Object> values=new ArrayList<Object>();
+		getUpsertNameValues(model, uniqueFields, names, values);
+		for(int i=1;i<models.size();i++){
+			getUpsertNameValues(models.get(i), uniqueFields, null, values);
+		}
+		
+		StringBuilder row=new StringBuilder();
+		for(int i=0;i<names.size();i++){
+			row.append(i>0?", ?":"?");
+		}
+		
+		StringBuilder sb=new StringBuilder("SELECT ");
+		for(int i=0;i<names.size();i++){
+			sb.append(i>0?", ":"").append("? ").append(getColumnName(names.get(i)));
+		}
+		sb.append(" FROM dual");
+		for(int i=1;i<models.size();i++){
+			sb.append("\r\n UNION ALL SELECT ").append(row).append(" FROM dual");
+		}
+		
+		Query query=createQuery(model);
+		
+		query.add("MERGE INTO ").add(getTableName(model.table())).add(" m USING (\r\n ");
+		query.add(sb.toString(), values);
+		query.add("\r\n) s");
+		
+		addMergeClauses(query, model, uniqueFields);
+		
+		return query;
+	}
 
 	
 	@Override
@@ -219,6 +280,40 @@ public class OracleDialect extends Dialect{
 		return "SELECT "+seq+".Nextval FROM dual";
 	}
 	
+	@Override
+	public String getSequenceNext(String seq,int count){
+		return "SELECT "+seq+".Nextval FROM dual CONNECT BY LEVEL <= "+count;
+	}
+	
+	@Override
+	public Query getSequenceIncrement(String seq){
+		String owner=null;
+		String name =seq.trim();
+		
+		int p=name.indexOf('.');
+		if(p>0){
+			owner=getSequenceObjectName(name.substring(0,p));
+			name =name.substring(p+1);
+		}
+		name=getSequenceObjectName(name);
+		
+		Query query=new Query();
+		if(owner==null){
+			query.add("SELECT increment_by FROM user_sequences WHERE sequence_name = ?",name);
+		}else{
+			query.add("SELECT increment_by FROM all_sequences WHERE sequence_owner = ? AND sequence_name = ?",owner,name);
+		}
+		return query;
+	}
+	
+	protected String getSequenceObjectName(String name){
+		if(name.startsWith("\"") && name.endsWith("\"")){
+			return name.substring(1,name.length()-1);
+		}else{
+			return name.toUpperCase();
+		}
+	}
+	
 	@Override
 	public DataSource getMetaDataSource(DBConfig dbcfg){
 		Properties props=new Properties();
@@ -249,4 +344,43 @@ public class OracleDialect extends Dialect{
 	}
 	 
 	
+	
+	/**
+	 * 只支持单表查询(没有WHERE条件): 表统计信息中的 num_rows
+	 */
+	public long getApproximateCount(Query origin){
+		String table=getSingleTableName(origin.getSql());
+		if(table==null){
+			return -1;
+		}
+		
+		Query query;
+		int p=table.indexOf(".");
+		if(p>0){
+			query=createApproximateQuery(origin, "SELECT num_rows FROM all_tables WHERE owner=? AND table_name=?"
+					, Arrays.asList(table.substring(0,p),table.substring(p+1)));
+		}else{
+			query=createApproximateQuery(origin, "SELECT num_rows FROM user_tables WHERE table_name=?", Arrays.asList(table));
+		}
+		
+		DataTable<DataMap> rs=query.getList();
+		if(rs.isEmpty() || rs.get(0).get("num_rows")==null){
+			return -1;
+		}
+		return Long.parseLong(rs.get(0).get("num_rows").toString());
+	}
+	
+	/**
+	 * @param sql the query
+	 * @return the upper case table name if the sql is: SELECT ... FROM table [alias] [ORDER BY ...], otherwise null
+	 */
+	protected String getSingleTableName(String sql){
+		Matcher m=SINGLE_TABLE.matcher(ShardMerger.mask(sql));
+		if(m.matches()){
+			return sql.substring(m.start(1), m.end(1)).toUpperCase();
+		}
+		return null;
+	}
+	
+	private static Pattern SINGLE_TABLE=Pattern.compile("^\\s*SELECT\\s.*?\\sFROM\\s+([A-Z0-9_$#]+(?:\\.[A-Z0-9_$#]+)?)(?:\\s+(?!ORDER\\s|WHERE\\s|JOIN\\s|LEFT\\s|INNER\\s|GROUP\\s)[A-Z0-9_]+)?\\s*(?:ORDER\\s+BY\\s.*)?$");
 }
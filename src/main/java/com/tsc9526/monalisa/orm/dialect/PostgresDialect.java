@@ -16,9 +16,14 @@
  *******************************************************************************************/
 package com.tsc9526.monalisa.orm.dialect;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.tsc9526.monalisa.orm.Query;
 import com.tsc9526.monalisa.orm.annotation.Column;
@@ -27,6 +32,7 @@ import com.tsc9526.monalisa.orm.meta.MetaTable.CreateTable;
 import com.tsc9526.monalisa.orm.model.Model;
 import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
 import com.tsc9526.monalisa.tools.datatable.DataMap;
+import com.tsc9526.monalisa.tools.datatable.DataTable;
 
 /**
  * 
@@ -54,6 +60,16 @@ public class PostgresDialect extends Dialect {
 	public String getIdleValidationQuery(){
     	return "SELECT 1";
     }
+	
+	/**
+	 * PostgreSQL驱动只有在非自动提交模式下, 才会使用服务端游标按fetchSize分批读取结果集
+	 */
+	public PreparedStatement prepareStreamStatement(Connection conn,String sql,int fetchSize)throws SQLException{
+		if(conn.getAutoCommit()){
+			conn.setAutoCommit(false);
+		}
+		return super.prepareStreamStatement(conn, sql, fetchSize);
+	}
 
 	public String geCatalog(String jdbcUrl) {
 		String catalog = "";
@@ -161,6 +177,55 @@ public class PostgresDialect extends Dialect {
 		
 		return query;
 	}
+	
+	public boolean supportInsertOrUpdateAll(){
+		return true;
+	}
+	
+	public int getMaxParameters(){
+		return 32767;
+	}
+	
+	/**
+	 * INSERT INTO table (...)VALUES(...), (...) ON CONFLICT (...) DO UPDATE SET column = EXCLUDED.column ...
+	 */
+	public Query insertOrUpdateAll(List<? extends Model> models){
+		Model model=models.get(0);
+		
+		List<FGS> uniqueFields = getUniqueFields(model);
+		
+		StringBuilder uniqueColumns = new StringBuilder(); 
+		for(FGS fgs:uniqueFields){
+			Column c = fgs.getAnnotation(Column.class);
+			
+			if(uniqueColumns.length()>0) {
+				uniqueColumns.append(",");
+			}
+			uniqueColumns.append(getColumnName(c.name()));
+		}
+		
+		Query query=createQuery(model);
+		
+		query.add("INSERT INTO ").add(getTableName(model.table()));
+		
+		addNameValuesAll(query,models,uniqueFields);
+		
+		query.add(" ON CONFLICT ( "+uniqueColumns.toString()+") DO UPDATE SET ");
+		
+		List<String> names=getUpdateNames(model, uniqueFields);
+		for(int i=0;i<names.size();i++){
+			String name=getColumnName(names.get(i));
+			
+			query.add((i>0?", ":"") + name + " = EXCLUDED." + name);
+		}
+		
+		if(names.isEmpty()){
+			Column c = uniqueFields.get(0).getAnnotation(Column.class);
+			query.add(getColumnName(c.name()) + " = EXCLUDED." +getColumnName(c.name()));
+		}
+		
+		return query;
+	}
   
 	public String getLimitSql(String orignSql, int limit,int offset){
 		return orignSql+" LIMIT " + limit + " OFFSET " + offset;
@@ -187,4 +252,30 @@ public class PostgresDialect extends Dialect {
 	public synchronized void createTable(DBConfig db, CreateTable table) {
 		throw new RuntimeException("Not implement!");
 	} 
+	
+	public boolean supportRowValueComparison(){
+		return true;
+	}
+	
+	/**
+	 * EXPLAIN 估算的记录数(the rows of the top plan node)
+	 */
+	public long getApproximateCount(Query origin){
+		Query query=createApproximateQuery(origin, "EXPLAIN "+origin.getSql(), origin.getParameters());
+		
+		DataTable<DataMap> rs=query.getList();
+		if(rs.isEmpty()){
+			return -1;
+		}
+		
+		Object plan=rs.get(0).values().iterator().next();
+		return getPlanRows(plan==null?"":plan.toString());
+	}
+	
+	protected long getPlanRows(String plan){
+		Matcher m=PLAN_ROWS.matcher(plan);
+		return m.find() ? Long.parseLong(m.group(1)) : -1;
+	}
+	
+	private static Pattern PLAN_ROWS=Pattern.compile("\\srows=(\\d+)");
 }
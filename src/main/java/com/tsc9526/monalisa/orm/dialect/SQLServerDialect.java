@@ -16,10 +16,14 @@
  *******************************************************************************************/
 package com.tsc9526.monalisa.orm.dialect;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.tsc9526.monalisa.orm.Query;
 import com.tsc9526.monalisa.orm.datasource.DBConfig;
 import com.tsc9526.monalisa.orm.meta.MetaTable.CreateTable;
 import com.tsc9526.monalisa.orm.model.Model;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
 
 /**
  * jdbc:sqlserver://localhost:1433;databaseName=AdventureWorks;user=MyUserName;password=*****;
@@ -117,6 +121,53 @@ public class SQLServerDialect extends Dialect {
 	public Query insertOrUpdate(Model model) {
 		throw new RuntimeException("Not implement!");
 	}
+	
+	public boolean supportInsertOrUpdateAll(){
+		return true;
+	}
+	
+	/**
+	 * MERGE INTO table AS m USING (VALUES (?, ?), (?, ?) ...) AS s (c1, c2) ON (...) ... ;
+	 */
+	public Query insertOrUpdateAll(List<? extends Model> models){
+		Model model=models.get(0);
+		
+		List<FGS> uniqueFields = getUniqueFields(model);
+		
+		List<String> names =new ArrayList<String>();
+		List<Object> values=new ArrayList<Object>();
+		getUpsertNameValues(model, uniqueFields, names, values);
+		for(int i=1;i<models.size();i++){
+			getUpsertNameValues(models.get(i), uniqueFields, null, values);
+		}
+		
+		StringBuilder row=new StringBuilder("(");
+		StringBuilder columns=new StringBuilder("(");
+		for(int i=0;i<names.size();i++){
+			row.append(i>0?", ?":"?");
+			columns.append(i>0?", ":"").append(getColumnName(names.get(i)));
+		}
+		row.append(")");
+		columns.append(")");
+		
+		StringBuilder sb=new StringBuilder("(VALUES ");
+		for(int i=0;i<models.size();i++){
+			sb.append(i>0?", ":"").append(row);
+		}
+		sb.append(")");
+		
+		Query query=createQuery(model);
+		
+		query.add("MERGE INTO ").add(getTableName(model.table())).add(" AS m USING ");
+		query.add(sb.toString(), values);
+		query.add(" AS s "+columns);
+		
+		addMergeClauses(query, model, uniqueFields);
+		
+		query.add(";");
+		
+		return query;
+	}
 
 	
 }
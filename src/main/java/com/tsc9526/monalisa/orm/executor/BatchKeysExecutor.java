@@ -0,0 +1,110 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.executor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import com.tsc9526.monalisa.orm.model.Model;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
+import com.tsc9526.monalisa.tools.io.MelpClose;
+import com.tsc9526.monalisa.tools.string.MelpSQL;
+
+/**
+ * Execute the same statement for a list of models by JDBC batch, 
+ * the auto increment keys will be written back to the models.
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class BatchKeysExecutor extends HandlerRelation implements Execute<int[]>{
+	private List<? extends Model<?>> models;
+	private boolean autoKey;
+	private int     batchSize;
+	
+	/**
+	 * @param models     the models, each model is related to the batch parameter(Object[]) at the same index 
+	 * @param autoKey    true: get the generated keys
+	 * @param batchSize  the max number of statements for each executeBatch()
+	 */
+	public BatchKeysExecutor(List<? extends Model<?>> models,boolean autoKey,int batchSize){
+		this.models    = models;
+		this.autoKey   = autoKey;
+		this.batchSize = batchSize>0 ? batchSize : Integer.MAX_VALUE;
+	}
+	
+	public int[] execute(Connection conn,String sql,List<?> parameters) throws SQLException {
+		int[] result=new int[parameters.size()];
+		
+		PreparedStatement pst = null;
+		try {
+			if(autoKey){
+				pst = conn.prepareStatement(sql,Statement.RETURN_GENERATED_KEYS);
+			}else{
+				pst = conn.prepareStatement(sql);
+			}
+			
+			int from=0;
+			while(from<parameters.size()){
+				int to=Math.min(parameters.size(), from+batchSize);
+				
+				for(int i=from;i<to;i++){
+					MelpSQL.setPreparedParameters(pst, Arrays.asList((Object[])parameters.get(i)));
+					pst.addBatch();
+				}
+				
+				int[] rs=pst.executeBatch();
+				for(int i=0;i<rs.length && from+i<to;i++){
+					result[from+i]= rs[i]==Statement.SUCCESS_NO_INFO ? 1 : rs[i];
+				}
+				
+				if(autoKey){
+					setupGeneratedKeys(pst, from, to);
+				}
+				
+				from=to;
+			}
+			
+			return result;
+		}finally {
+			MelpClose.close(pst);
+		}
+	}
+	
+	protected void setupGeneratedKeys(PreparedStatement pst,int from,int to)throws SQLException{
+		ResultSet rs=null;
+		try{
+			rs = pst.getGeneratedKeys();
+			
+			int i=from;
+			while(i<to && rs.next()){
+				Model<?> model=models.get(i++);
+				
+				FGS fgs=model.autoField();
+				
+				Long id = rs.getLong(1);
+				fgs.setObject(model, id.intValue());
+			}
+		}finally{
+			MelpClose.close(rs);
+		}
+	}
+}
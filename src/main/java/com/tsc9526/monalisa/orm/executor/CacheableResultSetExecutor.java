@@ -19,18 +19,13 @@ package com.tsc9526.monalisa.orm.executor;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import com.tsc9526.monalisa.tools.datatable.DataColumn;
 import com.tsc9526.monalisa.tools.datatable.DataTable;
 import com.tsc9526.monalisa.tools.io.MelpClose;
 import com.tsc9526.monalisa.tools.string.MelpSQL;
-import com.tsc9526.monalisa.tools.string.MelpTypes;
 
 /**
  * 
@@ -68,38 +63,7 @@ public class CacheableResultSetExecutor<T>  extends HandlerRelation implements C
 	} 
 	
 	protected List<DataColumn> getHeaders(ResultSet rs) throws SQLException {
-		List<DataColumn> ls=new ArrayList<DataColumn>();
-		
-		ResultSetMetaData rsmd=rs.getMetaData();
-		
-		Map<String, Integer> xs = new HashMap<String, Integer>();
-		for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-			String label=rsmd.getColumnLabel(i);
-			
-			String name = label;
-			if (name == null || name.trim().length() < 1) {
-				name = rsmd.getColumnName(i);
-			}
-
-			Integer n = xs.get(name);
-			if (n != null) {
-				name = name + n;
-
-				xs.put(name, n + 1);
-			} else {
-				xs.put(name, 1);
-			}
-			
-			DataColumn dc=new DataColumn(name);
-			int jdbcType=rsmd.getColumnType(i);
-			dc.setJdbcType(jdbcType);
-			dc.setTypeString(MelpTypes.getJavaType(jdbcType));
-			dc.setLabel(label==null?name:label);
-			
-			ls.add(dc);
-		}
-		
-		return ls;
+		return resultHandler.getMappingPlan(rs).createHeaders();
 	}
 	
 	 public String getCacheExtraTag() {
@@ -27,25 +27,21 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.tsc9526.monalisa.orm.Query;
-import com.tsc9526.monalisa.orm.annotation.DB;
 import com.tsc9526.monalisa.orm.datasource.DataSourceManager;
 import com.tsc9526.monalisa.orm.generator.DBExchange;
 import com.tsc9526.monalisa.orm.generator.DBMetadata;
 import com.tsc9526.monalisa.orm.meta.MetaColumn;
 import com.tsc9526.monalisa.orm.meta.MetaTable;
-import com.tsc9526.monalisa.orm.meta.Name;
 import com.tsc9526.monalisa.orm.model.Model;
 import com.tsc9526.monalisa.orm.model.ModelEvent;
+import com.tsc9526.monalisa.orm.model.ModelMeta;
 import com.tsc9526.monalisa.orm.model.QMH;
-import com.tsc9526.monalisa.tools.clazz.MelpClass;
-import com.tsc9526.monalisa.tools.clazz.MelpClass.ClassHelper;
 import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
 import com.tsc9526.monalisa.tools.clazz.MelpJavaBeans;
 import com.tsc9526.monalisa.tools.datatable.DataMap;
 import com.tsc9526.monalisa.tools.io.MelpClose;
 import com.tsc9526.monalisa.tools.string.MelpSQL;
 import com.tsc9526.monalisa.tools.string.MelpString;
-import com.tsc9526.monalisa.tools.string.MelpTypes;
 
 /**
  * 
@@ -58,6 +54,11 @@ public class HandlerResultSet<T> {
 	protected Query query;
 	protected Class<T> resultClass;
 	
+	private MappingPlan plan;
+	private ResultSet   planResultSet;
+	private ModelMeta   planModelMeta;
+	private FGS[]       planSetters;
+	
 	public HandlerResultSet(Query query, Class<T> resultClass) {
 		this.query = query;
 		this.resultClass = resultClass;
@@ -66,6 +67,10 @@ public class HandlerResultSet<T> {
 	public Class<T> getResultClass(){
 		 return resultClass;
 	}
+	
+	public Query getQuery(){
+		return query;
+	}
 
 	public T createResult(ResultSet rs) throws SQLException {
 		if (resultClass == Long.class || resultClass == long.class) {
@@ -131,92 +136,67 @@ public class HandlerResultSet<T> {
 		return result;
 	}
 
+	/**
+	 * @param rs the result set
+	 * @return the mapping plan of the result set
+	 * @throws SQLException SQL exception
+	 */
+	public MappingPlan getMappingPlan(ResultSet rs) throws SQLException {
+		if(plan==null || planResultSet!=rs){
+			plan          = MappingPlan.getPlan(query, resultClass, rs.getMetaData());
+			planResultSet = rs;
+			planModelMeta = null;
+		}
+		return plan;
+	}
+	
 	protected DataMap loadToMap(ResultSet rs, DataMap map) throws SQLException {
-		ResultSetMetaData rsmd = rs.getMetaData();
-
-		Map<String, Integer> xs = new HashMap<String, Integer>();
-		for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-			String name = rsmd.getColumnLabel(i);
-			if (name == null || name.trim().length() < 1) {
-				name = rsmd.getColumnName(i);
-			}
-			name = name.toLowerCase();
-
-			Integer n = xs.get(name);
-			if (n != null) {
-				map.put(name + n, rs.getObject(i));
-
-				xs.put(name, n + 1);
-			} else {
-				xs.put(name, 1);
-
-				map.put(name, rs.getObject(i));
-			}
+		MappingPlan plan = getMappingPlan(rs);
+		
+		String[] names = plan.getMapNames();
+		for (int i = 0; i < names.length; i++) {
+			map.put(names[i], rs.getObject(i+1));
 		}
 
 		return map;
 	}
 
 	protected void loadModel(ResultSet rs, Model<?> model) throws SQLException {
-		Class<?> clazz = MelpClass.findClassWithAnnotation(model.getClass(), DB.class);
-		if (clazz == null && model.use() == null) {
+		MappingPlan plan = getMappingPlan(rs);
+		
+		if (!plan.isWithDB(model.getClass()) && model.use() == null) {
 			model.use(query.getDb());
 		}
- 
-		ResultSetMetaData rsmd = rs.getMetaData();
-
-		for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-			String name = rsmd.getColumnLabel(i);
-			if (name == null || name.trim().length() < 1) {
-				name = rsmd.getColumnName(i);
-			}
-
-			Name nColumn = new Name(false).setName(name);
-
-			FGS fgs = model.field(nColumn.getJavaName());
-			if (fgs != null) {
-				if(MelpTypes.isDateType(rsmd.getColumnType(i))){
-					fgs.setObject(model,  rs.getTimestamp(i));
-				}else{
-					fgs.setObject(model, rs.getObject(i));
-				}
-			}
+		
+		if(planModelMeta==null){
+			planModelMeta = QMH.mm(model);
+			planSetters   = plan.getModelSetters(planModelMeta);
+		}else{
+			QMH.mm(model, planModelMeta);
 		}
+		
+		setValues(rs, model, planSetters, plan.getDates());
 	}
 
 	protected T loadResult(ResultSet rs, T result) throws SQLException {
-		ClassHelper metaClass = MelpClass.getClassHelper(result.getClass());
-
-		ResultSetMetaData rsmd = rs.getMetaData();
-
-		Map<String, Integer> xs = new HashMap<String, Integer>();
-		for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-			String name = rsmd.getColumnLabel(i);
-			if (name == null || name.trim().length() < 1) {
-				name = rsmd.getColumnName(i);
-			}
-
-			Integer n = xs.get(name);
-			if (n != null) {
-				name = name + n;
-
-				xs.put(name, n + 1);
-			} else {
-				xs.put(name, 1);
-			}
-
-			Name nColumn = new Name(false).setName(name);
-
-			FGS fgs = metaClass.getField(nColumn.getJavaName());
+		MappingPlan plan = getMappingPlan(rs);
+		
+		setValues(rs, result, plan.getResultSetters(result.getClass()), plan.getDates());
+		
+		return result;
+	}
+	
+	protected void setValues(ResultSet rs, Object result, FGS[] setters, boolean[] dates) throws SQLException {
+		for (int i = 0; i < setters.length; i++) {
+			FGS fgs = setters[i];
 			if (fgs != null) {
-				if(MelpTypes.isDateType(rsmd.getColumnType(i))){
-					fgs.setObject(result,  rs.getTimestamp(i));
+				if(dates[i]){
+					fgs.setObject(result, rs.getTimestamp(i+1));
 				}else{
-					fgs.setObject(result, rs.getObject(i));
+					fgs.setObject(result, rs.getObject(i+1));
 				}
 			}
 		}
-		return result;
 	}
 
 	public static void processExchange(Query query, DBExchange exchange) {
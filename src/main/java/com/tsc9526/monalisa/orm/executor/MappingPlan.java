@@ -0,0 +1,264 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.executor;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.tsc9526.monalisa.orm.Query;
+import com.tsc9526.monalisa.orm.annotation.DB;
+import com.tsc9526.monalisa.orm.meta.Name;
+import com.tsc9526.monalisa.orm.model.ModelMeta;
+import com.tsc9526.monalisa.tools.clazz.MelpClass;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.ClassHelper;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
+import com.tsc9526.monalisa.tools.datatable.DataColumn;
+import com.tsc9526.monalisa.tools.string.MelpTypes;
+
+/**
+ * The row-mapping plan of a query: column labels, java names, date flags and the field setters, 
+ * it's built once per (SQL, result class) and reused for every row.
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class MappingPlan {
+	/**
+	 * The max number of cached plans, the cache will be cleared if exceeded
+	 */
+	public static int CFG_MAX_PLANS = 1024;
+	
+	private static Map<String, MappingPlan> hPlans=new ConcurrentHashMap<String, MappingPlan>();
+	 
+	public static MappingPlan getPlan(Query query,Class<?> resultClass,ResultSetMetaData rsmd)throws SQLException{
+		String key=getPlanKey(query, resultClass);
+		
+		MappingPlan plan=hPlans.get(key);
+		if(plan==null || !plan.isMatched(rsmd)){
+			plan=new MappingPlan(resultClass, rsmd);
+			
+			if(hPlans.size()>=CFG_MAX_PLANS){
+				hPlans.clear();
+			}
+			hPlans.put(key, plan);
+		}
+		return plan;
+	}
+	
+	public static void clearPlans(){
+		hPlans.clear();
+	}
+	
+	private static String getPlanKey(Query query,Class<?> resultClass){
+		StringBuilder sb=new StringBuilder();
+		if(query!=null){
+			if(query.getDb()!=null){
+				sb.append(query.getDb().getKey());
+			}
+			sb.append("|").append(query.getSql());
+		}
+		sb.append("|").append(resultClass.getName());
+		return sb.toString();
+	}
+	
+	
+	private Class<?>  resultClass;
+	private boolean   resultClassWithDB;
+	
+	private int       columnCount;
+	
+	/**
+	 * The original label of each column
+	 */
+	private String[]  labels;
+	
+	/**
+	 * label or column name, the duplicated name with a suffix number
+	 */
+	private String[]  names;
+	
+	/**
+	 * names for the DataMap(lower case)
+	 */
+	private String[]  mapNames;
+	
+	/**
+	 * java names for model
+	 */
+	private String[]  modelJavaNames;
+	
+	private int[]     jdbcTypes;
+	private boolean[] dates;
+	
+	private FGS[]     resultSetters;
+	
+	private volatile ModelSetters modelSetters;
+	 
+	private MappingPlan(Class<?> resultClass,ResultSetMetaData rsmd)throws SQLException{
+		this.resultClass       = resultClass;
+		this.resultClassWithDB = MelpClass.findClassWithAnnotation(resultClass, DB.class)!=null;
+		
+		columnCount    = rsmd.getColumnCount();
+		
+		labels         = new String[columnCount];
+		names          = new String[columnCount];
+		mapNames       = new String[columnCount];
+		modelJavaNames = new String[columnCount];
+		jdbcTypes      = new int[columnCount];
+		dates          = new boolean[columnCount];
+		 
+		Map<String, Integer> xs = new HashMap<String, Integer>();
+		Map<String, Integer> ms = new HashMap<String, Integer>();
+		for (int i = 0; i < columnCount; i++) {
+			String label = rsmd.getColumnLabel(i+1);
+			
+			String name = label;
+			if (name == null || name.trim().length() < 1) {
+				name = rsmd.getColumnName(i+1);
+			}
+			
+			labels[i]         = label;
+			modelJavaNames[i] = new Name(false).setName(name).getJavaName();
+			mapNames[i]       = getUniqueName(ms, name.toLowerCase());
+			names[i]          = getUniqueName(xs, name);
+			
+			jdbcTypes[i]      = rsmd.getColumnType(i+1);
+			dates[i]          = MelpTypes.isDateType(jdbcTypes[i]);
+		}
+		
+		if(!Map.class.isAssignableFrom(resultClass)){
+			resultSetters = createResultSetters(resultClass);
+		}
+	}
+	
+	private String getUniqueName(Map<String, Integer> xs,String name){
+		Integer n = xs.get(name);
+		if (n != null) {
+			xs.put(name, n + 1);
+			
+			return name + n;
+		} else {
+			xs.put(name, 1);
+			
+			return name;
+		}
+	}
+	
+	private boolean isMatched(ResultSetMetaData rsmd)throws SQLException{
+		if(rsmd.getColumnCount()!=columnCount){
+			return false;
+		}
+		
+		for (int i = 0; i < columnCount; i++) {
+			String label = rsmd.getColumnLabel(i+1);
+			if(label==null ? labels[i]!=null : !label.equals(labels[i])){
+				return false;
+			}
+			
+			if(rsmd.getColumnType(i+1)!=jdbcTypes[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+	 
+	FGS[] createResultSetters(Class<?> clazz){
+		ClassHelper metaClass = MelpClass.getClassHelper(clazz);
+		
+		FGS[] fgs=new FGS[columnCount];
+		for (int i = 0; i < columnCount; i++) {
+			String javaName=new Name(false).setName(names[i]).getJavaName();
+			
+			fgs[i]=metaClass.getField(javaName);
+		}
+		return fgs;
+	}
+	
+	FGS[] getResultSetters(Class<?> clazz){
+		if(clazz==resultClass && resultSetters!=null){
+			return resultSetters;
+		}else{
+			return createResultSetters(clazz);
+		}
+	}
+	
+	FGS[] getModelSetters(ModelMeta mm){
+		ModelSetters ms=modelSetters;
+		if(ms==null || ms.mm!=mm){
+			FGS[] fgs=new FGS[columnCount];
+			for (int i = 0; i < columnCount; i++) {
+				fgs[i]=mm.findFieldByName(modelJavaNames[i]);
+			}
+			
+			ms=new ModelSetters(mm, fgs);
+			modelSetters=ms;
+		}
+		return ms.fgs;
+	}
+	
+	boolean isWithDB(Class<?> clazz){
+		if(clazz==resultClass){
+			return resultClassWithDB;
+		}else{
+			return MelpClass.findClassWithAnnotation(clazz, DB.class)!=null;
+		}
+	}
+	
+	/**
+	 * @return new created headers of the DataTable
+	 */
+	public List<DataColumn> createHeaders(){
+		List<DataColumn> ls=new ArrayList<DataColumn>();
+		for (int i = 0; i < columnCount; i++) {
+			String name=names[i];
+			
+			DataColumn dc=new DataColumn(name);
+			dc.setJdbcType(jdbcTypes[i]);
+			dc.setTypeString(MelpTypes.getJavaType(jdbcTypes[i]));
+			dc.setLabel(labels[i]==null?name:labels[i]);
+			
+			ls.add(dc);
+		}
+		return ls;
+	}
+	
+	public int getColumnCount(){
+		return columnCount;
+	}
+	
+	public String[] getMapNames(){
+		return mapNames;
+	}
+	
+	public boolean[] getDates(){
+		return dates;
+	}
+	
+	static class ModelSetters{
+		ModelMeta mm;
+		FGS[]     fgs;
+		
+		ModelSetters(ModelMeta mm,FGS[] fgs){
+			this.mm =mm;
+			this.fgs=fgs;
+		}
+	}
+}
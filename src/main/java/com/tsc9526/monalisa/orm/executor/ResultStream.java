@@ -0,0 +1,167 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.executor;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.tsc9526.monalisa.orm.dialect.Dialect;
+import com.tsc9526.monalisa.tools.io.MelpClose;
+import com.tsc9526.monalisa.tools.string.MelpSQL;
+
+/**
+ * Forward-only result set, the rows are read one by one from the database. <br>
+ * The stream must be closed after use(or iterate to the end), then the statement 
+ * and the connection(if it's not in a transaction) will be released.
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class ResultStream<T> implements Iterator<T>,Iterable<T>,Closeable{
+	private HandlerResultSet<T> resultHandler;
+	
+	private Connection conn;
+	private boolean    closeConnection;
+	private boolean    autoCommit;
+	
+	private PreparedStatement pst;
+	private ResultSet         rs;
+	
+	private T       next;
+	private boolean fetched = false;
+	private boolean closed  = false;
+	private long    rows    = 0;
+	
+	/**
+	 * @param resultHandler    handle each row
+	 * @param conn             the database connection
+	 * @param closeConnection  true: close the connection when the stream is closed
+	 */
+	public ResultStream(HandlerResultSet<T> resultHandler,Connection conn,boolean closeConnection){
+		this.resultHandler  = resultHandler;
+		this.conn           = conn;
+		this.closeConnection= closeConnection;
+	}
+	
+	public ResultStream<T> open(Dialect dialect,String sql,List<?> parameters,int fetchSize)throws SQLException{
+		try{
+			autoCommit=conn.getAutoCommit();
+			
+			pst = dialect.prepareStreamStatement(conn, sql, fetchSize);
+			MelpSQL.setPreparedParameters(pst, parameters);
+			
+			rs  = pst.executeQuery();
+			
+			return this;
+		}catch(SQLException e){
+			close();
+			throw e;
+		}catch(RuntimeException e){
+			close();
+			throw e;
+		}
+	}
+	
+	public boolean hasNext() {
+		if(fetched){
+			return true;
+		}
+		
+		if(closed){
+			return false;
+		}
+		
+		try{
+			if(rs.next()){
+				next    = resultHandler.createResult(rs);
+				fetched = true;
+			}else{
+				close();
+			}
+		}catch(SQLException e){
+			close();
+			throw new RuntimeException(e);
+		}catch(RuntimeException e){
+			close();
+			throw e;
+		}
+		
+		return fetched;
+	}
+
+	public T next() {
+		if(!hasNext()){
+			throw new NoSuchElementException();
+		}
+		
+		T r=next;
+		
+		next    = null;
+		fetched = false;
+		rows++;
+		
+		return r;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("remove");
+	}
+	
+	public Iterator<T> iterator() {
+		return this;
+	}
+	
+	/**
+	 * @return the number of rows has been read
+	 */
+	public long getRows(){
+		return rows;
+	}
+	
+	public boolean isClosed(){
+		return closed;
+	}
+	
+	public void close() {
+		if(closed){
+			return;
+		}
+		closed = true;
+		next   = null;
+		
+		MelpClose.close(rs,pst);
+		
+		try{
+			if(conn!=null && autoCommit && !conn.getAutoCommit()){
+				//restore the connection which changed by the dialect
+				conn.commit();
+				conn.setAutoCommit(true);
+			}
+		}catch(SQLException e){
+			MelpClose.close(e);
+		}finally{
+			if(closeConnection){
+				MelpClose.close(conn);
+			}
+		}
+	}
+}
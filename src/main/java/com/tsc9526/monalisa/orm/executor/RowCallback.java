@@ -0,0 +1,33 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.executor;
+
+/**
+ * Callback for each row of the streaming query
+ * 
+ * @see com.tsc9526.monalisa.orm.Query#forEach(HandlerResultSet, RowCallback)
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public interface RowCallback<T> {
+	/**
+	 * @param row   the current row
+	 * @param index base 0, the row index
+	 * @return true: continue to process the next row, false: stop
+	 */
+	public boolean onRow(T row,long index);
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.executor;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import com.tsc9526.monalisa.orm.dialect.Dialect;
+
+/**
+ * Read the rows one by one, and pass each row to the callback. 
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class StreamResultExecutor<T> implements Execute<Long>{
+	private HandlerResultSet<T> resultHandler;
+	private RowCallback<T>      callback;
+	private Dialect             dialect;
+	private int                 fetchSize;
+	
+	public StreamResultExecutor(HandlerResultSet<T> resultHandler,RowCallback<T> callback,Dialect dialect,int fetchSize){
+		this.resultHandler = resultHandler;
+		this.callback      = callback;
+		this.dialect       = dialect;
+		this.fetchSize     = fetchSize;
+	}
+	
+	/**
+	 * @return the number of rows processed
+	 */
+	public Long execute(Connection conn,String sql,List<?> parameters) throws SQLException {
+		ResultStream<T> stream=new ResultStream<T>(resultHandler, conn, false);
+		try{
+			stream.open(dialect, sql, parameters, fetchSize);
+			
+			while(stream.hasNext()){
+				long index=stream.getRows();
+				
+				if(!callback.onRow(stream.next(),index)){
+					break;
+				}
+			}
+			
+			return stream.getRows();
+		}finally{
+			stream.close();
+		}
+	}
+}
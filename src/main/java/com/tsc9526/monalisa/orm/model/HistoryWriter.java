@@ -0,0 +1,355 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.tsc9526.monalisa.orm.Tx;
+import com.tsc9526.monalisa.orm.datasource.DBConfig;
+import com.tsc9526.monalisa.orm.datasource.DbProp;
+import com.tsc9526.monalisa.tools.Tasks;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
+import com.tsc9526.monalisa.tools.logger.Logger;
+
+/**
+ * 异步批量写入历史记录. <br>
+ * 
+ * The current rows are loaded by the committing thread right after the transaction committed(discarded if rollback), 
+ * so the history is a snapshot of the committed data. A background thread only inserts the queued records in batch, 
+ * grouped by the history database. <br>
+ * Failed records are retried one by one at the flush interval, 
+ * and dropped after {@link DbProp#CFG_HISTORY_MAX_RETRIES} attempts. <br>
+ * If the queue is full, the record is written by the caller thread.
+ * 
+ * @see DbProp#PROP_DB_HISTORY_ASYNC
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class HistoryWriter {
+	static Logger logger=Logger.getLogger(HistoryWriter.class);
+	
+	private static HistoryWriter instance;
+	
+	public static synchronized HistoryWriter getInstance(){
+		if(instance==null){
+			instance=new HistoryWriter(DbProp.CFG_HISTORY_QUEUE_SIZE);
+			instance.start();
+		}
+		return instance;
+	}
+	
+	public static boolean isAsync(DBConfig db){
+		return "true".equalsIgnoreCase(DbProp.PROP_DB_HISTORY_ASYNC.getValue(db));
+	}
+	
+	protected BlockingQueue<Entry> queue;
+	
+	protected List<Entry> retries = new ArrayList<Entry>();
+	
+	protected volatile boolean running = false;
+	
+	protected ExecutorService worker;
+	
+	protected AtomicLong writtenCount = new AtomicLong();
+	protected AtomicLong droppedCount = new AtomicLong();
+	
+	protected HistoryWriter(int queueSize){
+		this.queue=new LinkedBlockingQueue<Entry>(queueSize);
+	}
+	
+	protected synchronized void start(){
+		if(!running){
+			running=true;
+			
+			worker=Executors.newSingleThreadExecutor(Tasks.createThreadFactory("Monalisa-History"));
+			worker.submit(new Runnable() {
+				public void run() {
+					loop();
+				}
+			});
+			
+			Tasks.instance.addShutdown(new Runnable() {
+				public void run() {
+					stop();
+				}
+			});
+		}
+	}
+	
+	public synchronized void stop(){
+		if(running){
+			running=false;
+			
+			worker.shutdownNow();
+			
+			flush();
+		}
+	}
+	
+	/**
+	 * Queue the history record, if in transaction the record is queued after the transaction committed.
+	 *  
+	 * @param history the history record
+	 */
+	public void write(Record history){
+		write(new Entry(history));
+	}
+	
+	/**
+	 * Queue the history entry, the entry is prepared(load the current row) in the caller thread 
+	 * after the transaction committed, the writer thread only inserts the record.
+	 * 
+	 * @param entry the history entry
+	 */
+	public void write(final Entry entry){
+		Tx tx=Tx.getTx();
+		if(tx!=null){
+			tx.afterCommit(new Runnable() {
+				public void run() {
+					prepareAndOffer(entry);
+				}
+			});
+		}else{
+			prepareAndOffer(entry);
+		}
+	}
+	
+	protected void prepareAndOffer(Entry entry){
+		try{
+			entry.prepare();
+		}catch(Throwable e){
+			//The writer thread prepares the entry again before insert
+			logger.error("Prepare history: "+entry.history.table().name()+" exception, retry later: "+e,e);
+		}
+		
+		offer(entry);
+	}
+	
+	protected void offer(Entry entry){
+		if(!running || !queue.offer(entry)){
+			try{
+				entry.prepare();
+				entry.history.save();
+				
+				writtenCount.incrementAndGet();
+			}catch(Throwable e){
+				droppedCount.incrementAndGet();
+				
+				logger.error("Save history: "+entry.history.table().name()+" exception: "+e,e);
+			}
+		}
+	}
+	
+	protected void loop(){
+		long nextRetryTime=0;
+		
+		while(running){
+			try{
+				Entry e=queue.poll(DbProp.CFG_HISTORY_FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+				
+				synchronized(this){
+					if(e!=null){
+						List<Entry> batch=new ArrayList<Entry>();
+						batch.add(e);
+						queue.drainTo(batch, DbProp.CFG_HISTORY_BATCH_SIZE-1);
+						
+						writeBatch(batch);
+					}
+					
+					long now=System.currentTimeMillis();
+					if(retries.size()>0 && now>=nextRetryTime){
+						writeRetries();
+						
+						nextRetryTime=now+DbProp.CFG_HISTORY_FLUSH_INTERVAL;
+					}
+				}
+			}catch(InterruptedException e){
+				break;
+			}catch(Throwable e){
+				logger.error("History writer exception: "+e,e);
+			}
+		}
+	}
+	
+	/**
+	 * Write all of the queued history records(include the failed records) in the caller thread
+	 */
+	public synchronized void flush(){
+		List<Entry> batch=new ArrayList<Entry>();
+		while(queue.drainTo(batch, DbProp.CFG_HISTORY_BATCH_SIZE)>0){
+			writeBatch(batch);
+			batch.clear();
+		}
+		
+		writeRetries();
+	}
+	
+	protected void writeBatch(List<Entry> batch){
+		Map<String, List<Entry>> groups=new LinkedHashMap<String, List<Entry>>();
+		for(Entry e:batch){
+			String key=e.history.db().getKey();
+			
+			List<Entry> group=groups.get(key);
+			if(group==null){
+				group=new ArrayList<Entry>();
+				groups.put(key, group);
+			}
+			group.add(e);
+		}
+		
+		for(List<Entry> group:groups.values()){
+			List<Record> records=new ArrayList<Record>();
+			for(Iterator<Entry> it=group.iterator();it.hasNext();){
+				Entry e=it.next();
+				try{
+					e.prepare();
+					
+					records.add(e.history);
+				}catch(Throwable t){
+					logger.error("Prepare history: "+e.history.table().name()+" exception, retry later: "+t,t);
+					
+					it.remove();
+					failed(e);
+				}
+			}
+			
+			if(records.isEmpty()){
+				continue;
+			}
+			
+			try{
+				group.get(0).history.db().batchInsert(records);
+				
+				writtenCount.addAndGet(records.size());
+			}catch(Throwable e){
+				logger.error("Batch insert history("+records.size()+") exception, retry later: "+e,e);
+				
+				for(Entry x:group){
+					failed(x);
+				}
+			}
+		}
+	}
+	
+	protected void writeRetries(){
+		List<Entry> xs=new ArrayList<Entry>(retries);
+		retries.clear();
+		
+		for(Entry e:xs){
+			try{
+				e.prepare();
+				e.history.save();
+				
+				writtenCount.incrementAndGet();
+			}catch(Throwable t){
+				failed(e);
+			}
+		}
+	}
+	
+	protected void failed(Entry e){
+		e.attempts++;
+		
+		if(e.attempts>DbProp.CFG_HISTORY_MAX_RETRIES){
+			droppedCount.incrementAndGet();
+			
+			logger.error("Drop history after "+e.attempts+" attempts, table: "+e.history.table().name()+", data: "+e.history);
+		}else{
+			retries.add(e);
+		}
+	}
+	
+	public int getQueueSize(){
+		return queue.size();
+	}
+	
+	public synchronized int getRetrySize(){
+		return retries.size();
+	}
+	
+	public long getWrittenCount(){
+		return writtenCount.get();
+	}
+	
+	public long getDroppedCount(){
+		return droppedCount.get();
+	}
+	
+	public static class Entry{
+		Record   history;
+		int      attempts;
+		
+		Model<?> row;
+		boolean  load;
+		Map<String, Object> changes;
+		Map<String, Object> header;
+		
+		Entry(Record history){
+			this.history=history;
+		}
+		
+		/**
+		 * @param history the history record
+		 * @param row  the model with primary key values
+		 * @param load true: load the other fields of the row from the table
+		 * @param changes the changed field values
+		 * @param header the history fields: time, type, txid, user
+		 */
+		Entry(Record history,Model<?> row,boolean load,Map<String, Object> changes,Map<String, Object> header){
+			this.history=history;
+			this.row    =row;
+			this.load   =load;
+			this.changes=changes;
+			this.header =header;
+		}
+		
+		/**
+		 * Fill the history record: the row(loaded from the table), then the changed fields and the history fields
+		 */
+		public void prepare(){
+			if(row!=null){
+				if(load){
+					row.load();
+				}
+				history.parse(row);
+				
+				for(Map.Entry<String, Object> e:changes.entrySet()){
+					FGS x=history.field(e.getKey());
+					if(x!=null){
+						x.setObject(history, e.getValue());
+					}
+				}
+				
+				for(Map.Entry<String, Object> e:header.entrySet()){
+					history.set(e.getKey(), e.getValue());
+				}
+				
+				row=null;
+			}
+		}
+	}
+}
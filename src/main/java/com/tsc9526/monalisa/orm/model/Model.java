@@ -19,6 +19,7 @@ package com.tsc9526.monalisa.orm.model;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -42,6 +43,7 @@ import com.tsc9526.monalisa.orm.meta.MetaTable;
 import com.tsc9526.monalisa.orm.meta.MetaTable.CreateTable;
 import com.tsc9526.monalisa.orm.meta.MetaTable.TableType;
 import com.tsc9526.monalisa.orm.partition.Partition;
+import com.tsc9526.monalisa.orm.partition.ShardedDB;
 import com.tsc9526.monalisa.tools.clazz.MelpClass;
 import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
 import com.tsc9526.monalisa.tools.clazz.MelpJavaBeans;
@@ -226,11 +228,9 @@ public abstract class Model<T extends Model> implements Serializable ,Shallowabl
 	 */
 	public int save() {
 		if (history()) {
-			return Tx.execute(new Atom<Integer>() {
+			return executeHistory(ModelEvent.INSERT, new Atom<Integer>() {
 				public Integer execute() {
-					int r=doSave();
-					saveHistory(ModelEvent.INSERT);
-					return r;
+					return doSave();
 				}
 			});
 		} else {
@@ -254,11 +254,9 @@ public abstract class Model<T extends Model> implements Serializable ,Shallowabl
 	 */
 	public int saveOrUpdate() {
 		if (history()) {
-			return Tx.execute(new Atom<Integer>() {
+			return executeHistory(ModelEvent.REPLACE, new Atom<Integer>() {
 				public Integer execute() {
-					int r=doSaveOrUpdate();
-					saveHistory(ModelEvent.REPLACE);
-					return r;
+					return doSaveOrUpdate();
 				}
 			});
 		} else {
@@ -293,11 +291,9 @@ public abstract class Model<T extends Model> implements Serializable ,Shallowabl
 	 */
 	public int updateBy(final String whereStatement,final Object ... args) {
 		if (history()) {
-			return Tx.execute(new Atom<Integer>() {
+			return executeHistory(ModelEvent.UPDATE, new Atom<Integer>() {
 				public Integer execute() {
-					int r= doUpdateBy(whereStatement,args);
-					saveHistory(ModelEvent.UPDATE);
-					return r;
+					return doUpdateBy(whereStatement,args);
 				}
 			});
 		} else {
@@ -327,11 +323,9 @@ public abstract class Model<T extends Model> implements Serializable ,Shallowabl
 	 */
 	public int updateByVersion() {
 		if (history()) {
-			return Tx.execute(new Atom<Integer>() {
+			return executeHistory(ModelEvent.UPDATE, new Atom<Integer>() {
 				public Integer execute() {
-					int r= doUpdateByVersion();
-					saveHistory(ModelEvent.UPDATE);
-					return r;
+					return doUpdateByVersion();
 				}
 			});
 		} else {
@@ -364,11 +358,9 @@ public abstract class Model<T extends Model> implements Serializable ,Shallowabl
 	 */
 	public int delete() {
 		if (history()) {
-			return Tx.execute(new Atom<Integer>() {
+			return executeHistory(ModelEvent.DELETE, new Atom<Integer>() {
 				public Integer execute() {
-					int r= doDelete();
-					saveHistory(ModelEvent.DELETE);
-					return r;
+					return doDelete();
 				}
 			});
 		} else {
@@ -385,10 +377,77 @@ public abstract class Model<T extends Model> implements Serializable ,Shallowabl
 		return r;
 	}
 
+	/**
+	 * Execute the operation and save the history record in transaction. <br>
+	 * If {@link DbProp#PROP_DB_HISTORY_ASYNC} is true, the history record is loaded after the operation committed 
+	 * and written in background, see {@link HistoryWriter}
+	 * 
+	 * @param event the model event
+	 * @param op the operation
+	 * @return 成功变更的记录数
+	 */
+	protected int executeHistory(final ModelEvent event,final Atom<Integer> op) {
+		if (HistoryWriter.isAsync(mm().db)) {
+			int r;
+			try {
+				r = op.execute();
+			} catch (Throwable e) {
+				return MelpException.throwRuntimeException(e);
+			}
+			
+			try {
+				saveHistory(event);
+			} catch (Throwable e) {
+				logger.error("Save history of table: " + mm().tableName + " exception: " + e, e);
+			}
+			return r;
+		} else {
+			return Tx.execute(new Atom<Integer>() {
+				public Integer execute() throws Throwable {
+					int r = op.execute();
+					saveHistory(event);
+					return r;
+				}
+			});
+		}
+	}
+	
 	protected void saveHistory(ModelEvent event) {
+		HistoryWriter.Entry entry = createHistoryEntry(event);
+		if (entry == null) {
+			return;
+		}
+		
+		if (HistoryWriter.isAsync(mm().db)) {
+			//异步模式下, 事务提交后在当前线程加载当前记录(SELECT), 后台线程只执行插入
+			HistoryWriter.getInstance().write(entry);
+		} else {
+			entry.prepare();
+			entry.history.save();
+		}
+	}
+	
+	protected Record createHistory(ModelEvent event) {
+		HistoryWriter.Entry entry = createHistoryEntry(event);
+		if (entry == null) {
+			return null;
+		}
+		
+		entry.prepare();
+		return entry.history;
+	}
+	
+	/**
+	 * 创建历史记录: 主键, 修改的字段值, 事务信息在当前线程中获取, 
+	 * 其它字段在 {@link HistoryWriter.Entry#prepare()} 时从表中加载
+	 * 
+	 * @param event the model event
+	 * @return the history entry, null if the table has no primary key
+	 */
+	protected HistoryWriter.Entry createHistoryEntry(ModelEvent event) {
 		List<FGS> pks=mm().getPkFields();
 		if(pks.size()<1){
-			return;
+			return null;
 		}
 		
 		DBConfig db  = mm().db;
@@ -428,44 +487,23 @@ public abstract class Model<T extends Model> implements Serializable ,Shallowabl
 				m.set(c.name(), fgs.getObject(this)); 
 			}
 		}
-		m.load();				
-		history.parse(m);
 		
+		Map<String, Object> changes = new LinkedHashMap<String, Object>();
 		for(FGS fgs:changedFields()){
-			String name =fgs.getFieldName();
-			FGS x=history.field(name);			 			 			 
-			if(x!=null){
-				x.setObject(history, fgs.getObject(this));
-			}
+			changes.put(fgs.getFieldName(), fgs.getObject(this));
 		}
 		
-		history.set(prefix + "time", new Date());
-		history.set(prefix + "type", event.name());
-		history.set(prefix + "txid", tx == null ? "" : tx.getTxid());
-		history.set(prefix + "user", Tx.getContext(Tx.CONTEXT_CURRENT_USERID));
+		Map<String, Object> header = new LinkedHashMap<String, Object>();
+		header.put(prefix + "time", new Date());
+		header.put(prefix + "type", event.name());
+		header.put(prefix + "txid", tx == null ? "" : tx.getTxid());
+		header.put(prefix + "user", Tx.getContext(Tx.CONTEXT_CURRENT_USERID));
 		
-		history.save();
+		return new HistoryWriter.Entry(history, m, event!=ModelEvent.DELETE, changes, header);
 	}
 
 	protected boolean history() {
-		String h = DbProp.PROP_DB_HISTORY_TABLES.getValue(mm().db);
-		if (h != null && h.trim().length() > 0) {
-			String prefix = DbProp.PROP_DB_HISTORY_PREFIX_TABLE.getValue(mm().db);			
-			String n = mm().tableName;
-			if(n.startsWith(prefix)){
-				return false;
-			}
-			
-			String[] xs = h.trim().split(",|;|\\|");
-			for (String x : xs) {
-				x = x.trim().replace("%", ".*");
-
-				if (n.matches(x)) {
-					return true;
-				}
-			}
-		}
-		return false;
+		return mm().db.isHistoryTable(mm().tableName);
 	}
 
 	protected void before(ModelEvent event) {
@@ -766,8 +804,11 @@ public abstract class Model<T extends Model> implements Serializable ,Shallowabl
 			}
 
 			try {
-				CreateTable createTable = metaTable.getCreateTable().createTable(TableType.PARTITION, tableName);
-				db.getDialect().createTable(db, createTable);
+				//表可能已经由后台预先创建了: PartitionProvisioner
+				if(!db.getDialect().tableCreated(db, tableName)) {
+					CreateTable createTable = metaTable.getCreateTable().createTable(TableType.PARTITION, tableName);
+					db.getDialect().createTable(db, createTable);
+				}
 				table = ModelMeta.createTable(tableName, mm().table);
 				hCachePartitionTables.put(tableKey, table);
 			} catch (Exception e) {
@@ -777,6 +818,29 @@ public abstract class Model<T extends Model> implements Serializable ,Shallowabl
 		return table;
 	}
 
+	/**
+	 * 缓存已经创建好的分区表, 避免第一次写入新的分区时还要检查建表
+	 * 
+	 * @param db the db
+	 * @param mp the partition
+	 * @param tableName the created partition table
+	 * @return true if a partition model of the table has been loaded and the table is cached
+	 */
+	public static boolean cachePartitionTable(DBConfig db, MetaPartition mp, String tableName) {
+		String tableKey = db.getKey() + ":" + tableName;
+		if(hCachePartitionTables.containsKey(tableKey)) {
+			return true;
+		}
+		
+		for(ModelMeta mm : ModelMeta.getModelMetas()) {
+			if(mm.mp != null && mm.db.getKey().equals(db.getKey()) && mm.mp.getTablePrefix().equalsIgnoreCase(mp.getTablePrefix())) {
+				hCachePartitionTables.put(tableKey, ModelMeta.createTable(tableName, mm.table));
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * 
 	 * @return find all auto increase fields, return null if not found.
@@ -790,7 +854,17 @@ public abstract class Model<T extends Model> implements Serializable ,Shallowabl
 	 * @return the database 
 	 */
 	public DBConfig db() {
-		return $db == null ? mm().db : this.$db;
+		DBConfig db = $db == null ? mm().db : this.$db;
+		
+		ShardedDB shards = db.getShards();
+		if(shards != null) {
+			DBConfig shard = shards.getShard(this, mm().tableName);
+			if(shard != null) {
+				return shard;
+			}
+		}
+		
+		return db;
 	}
 
 	public boolean readonly() {
@@ -16,17 +16,22 @@
  *******************************************************************************************/
 package com.tsc9526.monalisa.orm.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.tsc9526.monalisa.orm.annotation.Column;
 import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
-import com.tsc9526.monalisa.tools.datatable.CaseInsensitiveMap;
 import com.tsc9526.monalisa.tools.datatable.DataMap;
 import com.tsc9526.monalisa.tools.string.MelpString;
 
@@ -36,7 +41,7 @@ import com.tsc9526.monalisa.tools.string.MelpString;
  */
 @SuppressWarnings("unchecked")
 public class ModelHolder implements Serializable {
-	private static final long serialVersionUID = 703976566431364671L;
+	private static final long serialVersionUID = -2871530487751906125L;
 	
 	public final static String PROP_SEQ_FIELD      = "SEQ_FIELD";
 	
@@ -52,10 +57,28 @@ public class ModelHolder implements Serializable {
 	
 	
 	
-	protected CaseInsensitiveMap<Object> hModelValues=null; 
+	/**
+	 * 字段值(没有对应的java字段时), 位置见: {@link ModelMeta#indexOf(String)}
+	 */
+	protected transient Object[] values;
+	
+	/**
+	 * 修改过的字段: 位置的标记 + 修改的顺序
+	 */
+	protected transient BitSet   changedMask  = new BitSet();
+	protected transient int[]    changedOrder = new int[8];
+	protected transient int      changedCount = 0;
 	
-	//javaName
-	protected Set<String> 		 changedFields=new LinkedHashSet<String>();
+	/**
+	 * values/changedMask 对应的字段位置 
+	 */
+	protected transient ModelMeta layout;
+	
+	/**
+	 * 序列化时按字段名保存, 反序列化后在第一次访问时按当前的 ModelMeta 重建位置
+	 */
+	protected transient Map<String, Object> namedValues;
+	protected transient List<String>        namedChanges;
  
 	protected transient Model<?> model;
 	
@@ -65,11 +88,114 @@ public class ModelHolder implements Serializable {
 		this.model=model;
 	}	
 	
-	protected CaseInsensitiveMap<Object> getModelValues() {
-		if(hModelValues==null){
-			hModelValues=new CaseInsensitiveMap<Object>();
+	/**
+	 * 字段的位置以当前的 ModelMeta 为准, 如果表结构改变了(ModelMeta重新加载), 按字段名重新映射
+	 * 
+	 * @return the current model meta
+	 */
+	protected ModelMeta layout(){
+		ModelMeta mm=model.mm();
+		if(mm!=layout){
+			if(layout!=null && (values!=null || changedCount>0)){
+				remap(mm);
+			}else if(namedValues!=null){
+				restore(mm);
+			}
+			layout=mm;
+		}
+		return mm;
+	}
+	
+	private void restore(ModelMeta mm){
+		if(namedValues.size()>0){
+			values=new Object[mm.fieldCount()];
+			for(Map.Entry<String, Object> e:namedValues.entrySet()){
+				int j=mm.indexOf(e.getKey());
+				if(j>=0){
+					values[j]=e.getValue();
+				}
+			}
+		}
+		
+		for(String name:namedChanges){
+			int j=mm.indexOf(name);
+			if(j>=0 && !changedMask.get(j)){
+				changedMask.set(j);
+				
+				if(changedCount==changedOrder.length){
+					changedOrder=Arrays.copyOf(changedOrder, changedCount*2);
+				}
+				changedOrder[changedCount++]=j;
+			}
+		}
+		
+		namedValues =null;
+		namedChanges=null;
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		out.defaultWriteObject();
+		
+		Map<String, Object> hValues=new LinkedHashMap<String, Object>();
+		List<String>        changes=new ArrayList<String>();
+		if(layout!=null){
+			if(values!=null){
+				for(int i=0;i<values.length;i++){
+					if(values[i]!=null){
+						hValues.put(layout.fieldAt(i).getFieldName(), values[i]);
+					}
+				}
+			}
+			
+			for(int k=0;k<changedCount;k++){
+				changes.add(layout.fieldAt(changedOrder[k]).getFieldName());
+			}
+		}else if(namedValues!=null){
+			hValues.putAll(namedValues);
+			changes.addAll(namedChanges);
 		}
-		return hModelValues;
+		
+		out.writeObject(hValues);
+		out.writeObject(changes);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		
+		changedMask =new BitSet();
+		changedOrder=new int[8];
+		changedCount=0;
+		
+		namedValues =(Map<String, Object>)in.readObject();
+		namedChanges=(List<String>)in.readObject();
+	}
+	
+	private void remap(ModelMeta mm){
+		Object[] xs=values==null?null:new Object[mm.fieldCount()];
+		
+		int[] order=new int[Math.max(8, changedCount)];
+		int   count=0;
+		BitSet mask=new BitSet();
+		
+		for(int i=0;i<layout.fieldCount();i++){
+			int j=mm.indexOf(layout.fieldAt(i).getFieldName());
+			if(j>=0 && xs!=null && i<values.length){
+				xs[j]=values[i];
+			}
+		}
+		
+		for(int k=0;k<changedCount;k++){
+			int j=mm.indexOf(layout.fieldAt(changedOrder[k]).getFieldName());
+			if(j>=0 && !mask.get(j)){
+				mask.set(j);
+				order[count++]=j;
+			}
+		}
+		
+		values      =xs;
+		changedMask =mask;
+		changedOrder=order;
+		changedCount=count;
 	}
 	
 	public <T> T getProperty(String key){
@@ -81,35 +207,78 @@ public class ModelHolder implements Serializable {
 	}
 	
 	protected void set(String name,Object value){
-		name = model.field(name).getFieldName();
-		
-		getModelValues().put(name, value);		
-		fieldChanged(name);
+		int index=layout().indexOf(name);
+		if(index<0){
+			throw new RuntimeException("Field not found: "+name);
+		}
 		
+		set(index,value);
 	}
 	
 	protected Object get(String name){
-		name = model.field(name).getFieldName();
+		int index=layout().indexOf(name);
+		if(index<0){
+			throw new RuntimeException("Field not found: "+name);
+		}
+		
+		return get(index);
+	}
+	
+	/**
+	 * @param index the field index of the model meta
+	 * @param value the field value
+	 */
+	public void set(int index,Object value){
+		ModelMeta mm=layout();
+		
+		if(values==null){
+			values=new Object[mm.fieldCount()];
+		}
+		values[index]=value;
 		
-		return getModelValues().get(name);
+		fieldChanged(index);
 	}
 	
+	/**
+	 * @param index the field index of the model meta
+	 * @return the field value
+	 */
+	public Object get(int index){
+		layout();
+		
+		return values==null?null:values[index];
+	}
+	
+	/**
+	 * Copy the field values(without the changes)
+	 * 
+	 * @param from the source holder
+	 */
+	protected void copyValues(ModelHolder from){
+		if(from.values!=null){
+			from.layout();
+			
+			this.layout=from.layout;
+			this.values=from.values.clone();
+		}
+	}
 	
 	public Collection<FGS> changedFields(){
-		Set<FGS> fields=new LinkedHashSet<FGS>();
+		ModelMeta mm=layout();
 		
-		for(String name:changedFields){
-			FGS fgs=model.field(name);
-			if(fgs!=null && isInclude(fgs)){
+		List<FGS> fields=new ArrayList<FGS>(changedCount+mm.unannotatedFields.length);
+		
+		for(int k=0;k<changedCount;k++){
+			FGS fgs=mm.fieldAt(changedOrder[k]);
+			if(isInclude(fgs)){
 				fields.add(fgs);
 			}
 		}
 		
 		//Fill user defined fields without annotation: @Column
-		for(FGS fgs:model.fields()){
-			Field f=fgs.getField();
-			if(f!=null && f.getAnnotation(Column.class)==null){
-				fields.add(fgs);		
+		for(int i:mm.unannotatedFields){
+			if(!changedMask.get(i) || !isInclude(mm.fieldAt(i))){
+				fields.add(mm.fieldAt(i));		
 			}
 		}
 		 
@@ -231,9 +400,29 @@ public class ModelHolder implements Serializable {
 	}		
 	
 	public boolean fieldChanged(String fieldJavaName){
-		if(isInclude(fieldJavaName)){
-			if(!changedFields.contains(fieldJavaName)){
-				changedFields.add(fieldJavaName);
+		int index=layout().indexOf(fieldJavaName);
+		if(index<0){
+			throw new RuntimeException("Field not found: "+fieldJavaName);
+		}
+		
+		return fieldChanged(index);
+	}
+	
+	/**
+	 * @param index the field index of the model meta
+	 * @return false if the field is excluded
+	 */
+	public boolean fieldChanged(int index){
+		ModelMeta mm=layout();
+		
+		if(isInclude(mm.fieldAt(index))){
+			if(!changedMask.get(index)){
+				changedMask.set(index);
+				
+				if(changedCount==changedOrder.length){
+					changedOrder=Arrays.copyOf(changedOrder, changedCount*2);
+				}
+				changedOrder[changedCount++]=index;
 			}
 			
 			dirty=true;
@@ -250,6 +439,10 @@ public class ModelHolder implements Serializable {
 	}
 	
 	protected  boolean isInclude(FGS fgs){
+		if(fieldFilterExcludeMode && fieldFilterSets.isEmpty()){
+			return true;
+		}
+		
 		Column column=fgs.getAnnotation(Column.class);
 		if(column==null){
 			return true;
@@ -273,21 +466,25 @@ public class ModelHolder implements Serializable {
 	}
 	
 	public void clearChangesNull(){
-		List<String> nullFields = new ArrayList<String>();
-		for(String name:changedFields){
-			FGS fgs=model.field(name);
-			if(fgs!=null && isInclude(fgs)){
-				if(fgs.getObject(model)==null){
-					nullFields.add(name);
-				}
+		ModelMeta mm=layout();
+		
+		int n=0;
+		for(int k=0;k<changedCount;k++){
+			int index=changedOrder[k];
+			
+			FGS fgs=mm.fieldAt(index);
+			if(isInclude(fgs) && fgs.getObject(model)==null){
+				changedMask.clear(index);
+			}else{
+				changedOrder[n++]=index;
 			}
 		}
-		
-		changedFields.removeAll(nullFields);
+		changedCount=n;
 	}
 	
 	public void clearChanges(){
-		changedFields.clear();
+		changedMask.clear();
+		changedCount=0;
 		
 		dirty=false;
 	}
@@ -21,7 +21,7 @@ import java.lang.reflect.Field;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +44,7 @@ import com.tsc9526.monalisa.tools.Tasks;
 import com.tsc9526.monalisa.tools.clazz.MelpClass;
 import com.tsc9526.monalisa.tools.clazz.MelpClass.ClassHelper;
 import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
+import com.tsc9526.monalisa.tools.converters.Conversion;
 import com.tsc9526.monalisa.tools.logger.Logger;
 import com.tsc9526.monalisa.tools.string.MelpString;
 import com.tsc9526.monalisa.tools.validator.Validator;
@@ -59,6 +60,13 @@ public class ModelMeta{
 	private static Map<String, ModelMeta> hMonitorMetas=new ConcurrentHashMap<String, ModelMeta>();
 	private static Map<String, ModelMeta> hMetas       =new ConcurrentHashMap<String, ModelMeta>();
 	
+	/**
+	 * @return all of the loaded model metas
+	 */
+	public static Collection<ModelMeta> getModelMetas(){
+		return hMetas.values();
+	}
+	
 	public static ModelMeta getModelMeta(Model<?> model){
 		String key=getModelKey(model);
 		
@@ -111,7 +119,7 @@ public class ModelMeta{
 	public synchronized static void reloadModelMetas(){
 		//check if data source changed
 		for(ModelMeta mm:hMonitorMetas.values()){
-			mm.db.getDataSource();
+			mm.db.checkDataSourceChanged();
 		}
 		
 		for(ModelMeta mm:hMonitorMetas.values()){
@@ -186,6 +194,19 @@ public class ModelMeta{
 	protected Map<String,FGS> hFieldsByColumnName=new LinkedHashMap<String, MelpClass.FGS>();
 	protected Map<String,FGS> hFieldsByJavaName  =new LinkedHashMap<String, MelpClass.FGS>();
 	
+	/**
+	 * 字段的位置, ModelHolder 按位置保存字段值和修改标记
+	 */
+	protected FGS[]                 fieldArray;
+	protected Column[]              columnArray;
+	protected Map<FGS,Integer>      hFieldIndexes   =new IdentityHashMap<FGS, Integer>();
+	protected Map<String,Integer>   hFieldIndexNames=new ConcurrentHashMap<String, Integer>();
+	
+	/**
+	 * 没有注解 {@link Column} 的字段的位置
+	 */
+	protected int[]                 unannotatedFields;
+	
 	protected boolean record=false;
 	protected boolean changed=false;
 	
@@ -262,7 +283,81 @@ public class ModelMeta{
 		
 		if(primaryKeys==null || primaryKeys.length==0){
 			primaryKeys=pks.toArray(new String[0]);
-		}				
+		}
+		
+		initFieldIndexes();
+	}
+	
+	protected void initFieldIndexes(){
+		fieldArray=hFieldsByColumnName.values().toArray(new FGS[0]);
+		columnArray=new Column[fieldArray.length];
+		
+		List<Integer> xs=new ArrayList<Integer>();
+		for(int i=0;i<fieldArray.length;i++){
+			FGS fgs=fieldArray[i];
+			hFieldIndexes.put(fgs, i);
+			columnArray[i]=fgs.getAnnotation(Column.class);
+			
+			Field f=fgs.getField();
+			if(f!=null && f.getAnnotation(Column.class)==null){
+				xs.add(i);
+			}
+		}
+		
+		unannotatedFields=new int[xs.size()];
+		for(int i=0;i<unannotatedFields.length;i++){
+			unannotatedFields[i]=xs.get(i);
+		}
+	}
+	
+	/**
+	 * @return number of the fields
+	 */
+	public int fieldCount(){
+		return fieldArray.length;
+	}
+	
+	/**
+	 * @param index the field index, see {@link #indexOf(String)}
+	 * @return the field
+	 */
+	public FGS fieldAt(int index){
+		return fieldArray[index];
+	}
+	
+	/**
+	 * @param index the field index, see {@link #indexOf(String)}
+	 * @return the column annotation of the field
+	 */
+	public Column columnAt(int index){
+		return columnArray[index];
+	}
+	
+	/**
+	 * @param fgs the field of this model meta
+	 * @return the field index, -1 if not found
+	 */
+	public int indexOf(FGS fgs){
+		Integer i=hFieldIndexes.get(fgs);
+		return i==null?-1:i;
+	}
+	
+	/**
+	 * @param name the java field name or column name(case insensitive)
+	 * @return the field index, -1 if not found
+	 */
+	public int indexOf(String name){
+		Integer i=hFieldIndexNames.get(name);
+		if(i==null){
+			FGS fgs=findFieldByName(name);
+			if(fgs==null){
+				return -1;
+			}
+			
+			i=indexOf(fgs);
+			hFieldIndexNames.put(name, i);
+		}
+		return i;
 	}
 	
 	protected void initIndexes(Model<?> model) {
@@ -541,9 +636,7 @@ public class ModelMeta{
 			  
 			t.fieldFilterExcludeMode=model.holder().fieldFilterExcludeMode;
 			t.fieldFilterSets.addAll(model.holder().fieldFilterSets);
-			if(f.hModelValues!=null){
-				t.getModelValues().putAll(f.hModelValues);
-			}
+			t.copyValues(f);
 			
 			for(FGS fgs:model.fields()){				
 				Object value=fgs.getObject(model);
@@ -615,6 +708,10 @@ public class ModelMeta{
 	 
 
 	protected static FGS createFGS(final MetaColumn c,final FGS mfd){	
+		//resolve the target type once: java.lang.Integer, java.util.Date ...
+		final Class<?>      javaClass =getJavaClass(c.getJavaType());
+		final Conversion<?> conversion=MelpClass.converter.getConversion(javaClass);
+		
 		return new FGS(mfd==null?null:mfd.getType(),c.getJavaName(),c.getName()){
 			private Column columnAnnotation;
 			
@@ -626,19 +723,13 @@ public class ModelMeta{
 					if(bean instanceof Model<?>){
 						Model<?> m=(Model<?>)bean;
 						
-						if(Date.class.getName().equals(c.getJavaType())){
-							v=MelpClass.converter.convert(v, Date.class);
-						}else{
-							try{
-								String jtype=c.getJavaType();
-								if(jtype.indexOf(".")<0){
-									jtype="java.lang."+jtype;
-								}
-								
-								v=MelpClass.converter.convert(v, Class.forName(jtype));
-							}catch(ClassNotFoundException e){
-								throw new RuntimeException("Convert: "+v+" to class exception: "+c.getJavaType(),e);
+						//Integer, Long, String, BigDecimal, Timestamp ... returned by the driver: no conversion
+						if(v!=null && v.getClass()!=javaClass){
+							if(javaClass==null){
+								throw new RuntimeException("Convert: "+v+" to class exception: "+c.getJavaType()+", class not found.");
 							}
+							
+							v=MelpClass.converter.convert(v, javaClass, conversion);
 						}
 						
 						m.holder().set(c.getName(), v);							
@@ -680,6 +771,32 @@ public class ModelMeta{
 		};
 	}
 	
+	/**
+	 * @param javaType the java type of the column: Integer, byte[], java.util.Date ...
+	 * @return the class, or null if not found
+	 */
+	protected static Class<?> getJavaClass(String javaType){
+		if(javaType==null){
+			return null;
+		}
+		
+		if("byte[]".equals(javaType)){
+			return byte[].class;
+		}
+		
+		try{
+			String jtype=javaType;
+			if(jtype.indexOf(".")<0){
+				jtype="java.lang."+jtype;
+			}
+			
+			return Class.forName(jtype);
+		}catch(ClassNotFoundException e){
+			logger.warn("Column java type not found: "+javaType);
+			return null;
+		}
+	}
+	
 	protected static Column createColumn(final MetaColumn c){
 		return new Column(){								 
 			public Class<? extends Annotation> annotationType() {
@@ -29,4 +29,28 @@ public class QMH {
 	public static void after(Model<?> m,ModelEvent event,int r) {
 		m.after(event, r);
 	}
+	
+	public static void validate(Model<?> m) {
+		m.doValidate();
+	}
+	
+	public static boolean history(Model<?> m) {
+		return m.history();
+	}
+	
+	public static ModelMeta mm(Model<?> m) {
+		return m.mm();
+	}
+	
+	/**
+	 * Share the meta with the model if it has not been set
+	 * 
+	 * @param m  the model
+	 * @param mm the model meta
+	 */
+	public static void mm(Model<?> m,ModelMeta mm) {
+		if(m.$modelMeta==null) {
+			m.$modelMeta=mm;
+		}
+	}
 }
@@ -0,0 +1,72 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.partition;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一致性哈希分片: 每个分片在哈希环上有{@link #VIRTUAL_NODES}个虚拟节点, 
+ * 增加一个分片时只有约 1/n 的数据需要迁移
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class ConsistentHashShard implements ShardStrategy{
+	public final static int VIRTUAL_NODES = 160;
+	
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+	
+	private Map<Integer, TreeMap<Long, Integer>> hRings=new ConcurrentHashMap<Integer, TreeMap<Long,Integer>>();
+	
+	public int getShard(Object key,int shards){
+		TreeMap<Long, Integer> ring=getRing(shards);
+		
+		long h=hash(key.toString());
+		
+		SortedMap<Long, Integer> tail=ring.tailMap(h);
+		return tail.isEmpty() ? ring.firstEntry().getValue() : tail.get(tail.firstKey());
+	}
+	
+	protected TreeMap<Long, Integer> getRing(int shards){
+		TreeMap<Long, Integer> ring=hRings.get(shards);
+		if(ring==null){
+			ring=new TreeMap<Long, Integer>();
+			for(int i=0;i<shards;i++){
+				for(int n=0;n<VIRTUAL_NODES;n++){
+					ring.put(hash("SHARD-"+i+"-NODE-"+n), i);
+				}
+			}
+			hRings.put(shards, ring);
+		}
+		return ring;
+	}
+	
+	protected long hash(String key){
+		try{
+			byte[] d=MessageDigest.getInstance("MD5").digest(key.getBytes(UTF8));
+			
+			return ((long)(d[3] & 0xFF) << 24) | ((long)(d[2] & 0xFF) << 16) | ((long)(d[1] & 0xFF) << 8) | (d[0] & 0xFF);
+		}catch(NoSuchAlgorithmException e){
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -17,7 +17,12 @@
 package com.tsc9526.monalisa.orm.partition;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 import com.tsc9526.monalisa.orm.meta.MetaColumn;
 import com.tsc9526.monalisa.orm.meta.MetaPartition;
@@ -90,4 +95,102 @@ public class DatePartitionTable implements Partition<Model>{
 	 
 		return tableName;
 	} 
+	
+	/**
+	 * 
+	 * @param mp MetaPartition
+	 * @return the date field name of the partition
+	 */
+	public String getDateField(MetaPartition mp){
+		return mp.getArgs()[1];
+	}
+	
+	/**
+	 * 日期范围 [from, to) 内的所有分区表名, 按日期升序排列
+	 * 
+	 * @param mp   MetaPartition
+	 * @param from the begin date(include)
+	 * @param to   the end date(exclude)
+	 * @return table names
+	 */
+	public List<String> getTableNames(MetaPartition mp,Date from,Date to){
+		SimpleDateFormat sdf=new SimpleDateFormat(mp.getArgs()[0]);
+		int unit=getDateUnit(mp.getArgs()[0]);
+		
+		Set<String> names=new LinkedHashSet<String>();
+		
+		long end=to.getTime()-1;
+		if(end>=from.getTime()){
+			Calendar c=Calendar.getInstance();
+			for(int i=0;;i++){
+				c.setTime(from);
+				c.add(unit, i);
+				if(c.getTimeInMillis()>end){
+					break;
+				}
+				names.add(mp.getTablePrefix()+sdf.format(c.getTime()));
+			}
+			names.add(mp.getTablePrefix()+sdf.format(new Date(end)));
+		}
+		
+		return new ArrayList<String>(names);
+	}
+	
+	/**
+	 * 当前日期所在的分区, 以及之后的 next 个分区的表名
+	 * 
+	 * @param mp   MetaPartition
+	 * @param now  the date
+	 * @param next number of the next partitions
+	 * @return table names
+	 */
+	public List<String> getNextTableNames(MetaPartition mp,Date now,int next){
+		SimpleDateFormat sdf=new SimpleDateFormat(mp.getArgs()[0]);
+		int unit=getDateUnit(mp.getArgs()[0]);
+		
+		Set<String> names=new LinkedHashSet<String>();
+		
+		Calendar c=Calendar.getInstance();
+		for(int i=0;i<=next;i++){
+			c.setTime(now);
+			c.add(unit, i);
+			names.add(mp.getTablePrefix()+sdf.format(c.getTime()));
+		}
+		
+		return new ArrayList<String>(names);
+	}
+	
+	/**
+	 * @param pattern the date format
+	 * @return the smallest calendar field of the date format
+	 */
+	protected int getDateUnit(String pattern){
+		StringBuilder sb=new StringBuilder();
+		
+		boolean quote=false;
+		for(char c:pattern.toCharArray()){
+			if(c=='\''){
+				quote=!quote;
+			}else if(!quote){
+				sb.append(c);
+			}
+		}
+		String p=sb.toString();
+		
+		if(p.indexOf('s')>=0){
+			return Calendar.SECOND;
+		}else if(p.indexOf('m')>=0){
+			return Calendar.MINUTE;
+		}else if(p.indexOf('H')>=0 || p.indexOf('k')>=0 || p.indexOf('h')>=0 || p.indexOf('K')>=0){
+			return Calendar.HOUR_OF_DAY;
+		}else if(p.indexOf('d')>=0 || p.indexOf('D')>=0 || p.indexOf('E')>=0){
+			return Calendar.DAY_OF_MONTH;
+		}else if(p.indexOf('w')>=0 || p.indexOf('W')>=0){
+			return Calendar.WEEK_OF_YEAR;
+		}else if(p.indexOf('M')>=0){
+			return Calendar.MONTH;
+		}else{
+			return Calendar.YEAR;
+		}
+	}
 }
@@ -0,0 +1,43 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.partition;
+
+/**
+ * 取模分片: 整数值对分片个数取模, 其它值使用字符串的hashCode取模. <br>
+ * 分片的个数改变后大部分数据需要迁移, 分片个数可能变化时使用{@link ConsistentHashShard}
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class ModShard implements ShardStrategy{
+	
+	public int getShard(Object key,int shards){
+		long v;
+		if(key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte){
+			v=((Number)key).longValue();
+		}else{
+			String s=key.toString();
+			try{
+				v=Long.parseLong(s);
+			}catch(NumberFormatException e){
+				v=s.hashCode();
+			}
+		}
+		
+		int r=(int)(v % shards);
+		return r<0 ? r+shards : r;
+	}
+}
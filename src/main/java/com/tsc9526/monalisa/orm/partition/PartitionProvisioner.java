@@ -0,0 +1,272 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.partition;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.tsc9526.monalisa.orm.datasource.DBConfig;
+import com.tsc9526.monalisa.orm.datasource.DbProp;
+import com.tsc9526.monalisa.orm.dialect.Dialect;
+import com.tsc9526.monalisa.orm.generator.DBMetadata;
+import com.tsc9526.monalisa.orm.meta.MetaPartition;
+import com.tsc9526.monalisa.orm.meta.MetaTable;
+import com.tsc9526.monalisa.orm.meta.MetaTable.CreateTable;
+import com.tsc9526.monalisa.orm.meta.MetaTable.TableType;
+import com.tsc9526.monalisa.orm.model.Model;
+import com.tsc9526.monalisa.tools.Tasks;
+import com.tsc9526.monalisa.tools.logger.Logger;
+
+/**
+ * 后台预先创建分区表: 按日期分区的表({@link DatePartitionTable}), 在新的分区开始之前就把表建好, 
+ * 避免每个分区的第一次写入时, 所有的写操作都要等待建表. <br>
+ * 每隔 {@link DbProp#CFG_PARTITION_PROVISION_INTERVAL} 秒检查一次, 
+ * 创建当前分区及之后 {@link DbProp#PROP_DB_PARTITION_PRECREATE} 个分区的表(模板为生成代码时的建表语句), 默认不启用
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class PartitionProvisioner {
+	static Logger logger=Logger.getLogger(PartitionProvisioner.class);
+	
+	public static PartitionProvisioner instance=new PartitionProvisioner();
+	
+	private Set<DBConfig> dbs=new CopyOnWriteArraySet<DBConfig>();
+	
+	private ExecutorService executor=Executors.newSingleThreadExecutor(Tasks.createThreadFactory("Monalisa-Partition-Provisioner"));
+	
+	private AtomicBoolean running = new AtomicBoolean(false);
+	
+	private AtomicLong runCount     = new AtomicLong();
+	private AtomicLong createdCount = new AtomicLong();
+	private AtomicLong existsCount  = new AtomicLong();
+	private AtomicLong failedCount  = new AtomicLong();
+	
+	private volatile long   lastRunTime = 0;
+	private volatile String lastError   = null;
+	
+	private PartitionProvisioner(){
+	}
+	
+	/**
+	 * 注册有日期分区的数据库, 立即在后台执行一次, 之后定时检查
+	 * 
+	 * @param db the db
+	 * @return true if the db has date partitions and has not been registered
+	 */
+	public boolean register(DBConfig db){
+		if(DbProp.ProcessingEnvironment || dbs.contains(db)){
+			return false;
+		}
+		
+		try{
+			if(DbProp.PROP_DB_PARTITION_PRECREATE.getIntValue(db, 0)<=0 || !hasDatePartitions(db)){
+				return false;
+			}
+		}catch(Exception e){
+			logger.warn("Invalid partitions of the db: "+db.getKey()+", "+e);
+			return false;
+		}
+		
+		if(dbs.add(db)){
+			int interval=DbProp.CFG_PARTITION_PROVISION_INTERVAL;
+			if(interval>0){
+				Tasks.instance.addSchedule("PartitionProvisionTask", new TimerTask() {
+					public void run() {
+						provisionAsync();
+					}
+				}, interval*1000, interval*1000);
+				
+				provisionAsync();
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	public void deregister(DBConfig db){
+		dbs.remove(db);
+	}
+	
+	/**
+	 * 在后台线程中检查所有已注册的数据库, 如果上一次检查还没有完成, 则忽略本次检查
+	 * 
+	 * @return false if the provisioner is running
+	 */
+	public boolean provisionAsync(){
+		if(running.compareAndSet(false, true)){
+			try{
+				executor.submit(new Runnable() {
+					public void run() {
+						try{
+							for(DBConfig db:dbs){
+								provision(db);
+							}
+						}finally{
+							running.set(false);
+						}
+					}
+				});
+				return true;
+			}catch(RuntimeException e){
+				running.set(false);
+				throw e;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * 创建当前分区及之后的几个分区表
+	 * 
+	 * @param db the db
+	 * @return number of the tables created
+	 */
+	public int provision(DBConfig db){
+		runCount.incrementAndGet();
+		lastRunTime=System.currentTimeMillis();
+		
+		int created=0;
+		try{
+			int next=DbProp.PROP_DB_PARTITION_PRECREATE.getIntValue(db, 0);
+			
+			Date now=new Date();
+			for(MetaPartition mp:db.getCfg().getMetaPartitions()){
+				Object p=mp.getPartition();
+				if(p instanceof DatePartitionTable){
+					List<String> tables=((DatePartitionTable)p).getNextTableNames(mp, now, next);
+					for(String table:tables){
+						if(provisionTable(db, mp, table)){
+							created++;
+						}
+					}
+				}
+			}
+		}catch(Throwable e){
+			failed(db, null, e);
+		}
+		return created;
+	}
+	
+	/**
+	 * @param db the db
+	 * @param mp the partition
+	 * @param tableName the partition table
+	 * @return true if the table is created, false if the table exists or failed
+	 */
+	protected boolean provisionTable(DBConfig db,MetaPartition mp,String tableName){
+		try{
+			Dialect dialect=db.getDialect();
+			
+			boolean created=false;
+			if(dialect.tableCreated(db, tableName)){
+				existsCount.incrementAndGet();
+			}else{
+				MetaTable metaTable = DBMetadata.getMetaTable(db.getKey(), mp.getTablePrefix());
+				if (metaTable == null || metaTable.getCreateTable() == null) {
+					throw new RuntimeException("MetaTable not found: " + mp.getTablePrefix());
+				}
+				
+				CreateTable createTable = metaTable.getCreateTable().createTable(TableType.PARTITION, tableName);
+				if(dialect.tableExist(db, tableName, false)){
+					dialect.tableCreated(db, createTable);
+					existsCount.incrementAndGet();
+				}else{
+					dialect.createTable(db, createTable);
+					
+					createdCount.incrementAndGet();
+					created=true;
+					
+					logger.info("Partition table created ahead of time: "+tableName+", db: "+db.getKey());
+				}
+			}
+			
+			Model.cachePartitionTable(db, mp, tableName);
+			
+			return created;
+		}catch(Throwable e){
+			failed(db, tableName, e);
+			return false;
+		}
+	}
+	
+	protected void failed(DBConfig db,String tableName,Throwable e){
+		failedCount.incrementAndGet();
+		
+		lastError=(tableName==null?"":tableName+": ")+e;
+		
+		logger.error("Fail create partition table: "+(tableName==null?"":tableName)+", db: "+db.getKey()+", "+e,e);
+	}
+	
+	protected boolean hasDatePartitions(DBConfig db){
+		for(MetaPartition mp:db.getCfg().getMetaPartitions()){
+			if(DatePartitionTable.class.getName().equals(mp.getClazz())){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public int getRegisteredCount(){
+		return dbs.size();
+	}
+	
+	public boolean isRunning(){
+		return running.get();
+	}
+	
+	/**
+	 * @return times of checking db
+	 */
+	public long getRunCount(){
+		return runCount.get();
+	}
+	
+	public long getCreatedCount(){
+		return createdCount.get();
+	}
+	
+	/**
+	 * @return number of the partition tables which already exist when checking
+	 */
+	public long getExistsCount(){
+		return existsCount.get();
+	}
+	
+	public long getFailedCount(){
+		return failedCount.get();
+	}
+	
+	public long getLastRunTime(){
+		return lastRunTime;
+	}
+	
+	public String getLastError(){
+		return lastError;
+	}
+	
+	public String toString(){
+		return "PartitionProvisioner{dbs: "+dbs.size()+", runs: "+getRunCount()+", created: "+getCreatedCount()
+				+", exists: "+getExistsCount()+", failed: "+getFailedCount()+", lastError: "+lastError+"}";
+	}
+}
@@ -0,0 +1,507 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.partition;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.tsc9526.monalisa.orm.model.Model;
+import com.tsc9526.monalisa.tools.clazz.MelpClass;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.ClassHelper;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
+import com.tsc9526.monalisa.tools.clazz.MelpJavaBeans;
+import com.tsc9526.monalisa.tools.datatable.DataMap;
+import com.tsc9526.monalisa.tools.datatable.DataTable;
+
+/**
+ * 合并各个分片的查询结果: <br>
+ * <ul>
+ * <li>ORDER BY: 各个分片的结果已经排好序, 多路归并</li>
+ * <li>LIMIT/OFFSET: 每个分片查询前 offset+limit 条记录, 归并后再跳过 offset 条</li>
+ * <li>COUNT/SUM/MIN/MAX: 对各个分片的聚合结果再做一次聚合(不支持AVG和COUNT(DISTINCT ...))</li>
+ * </ul>
+ * 不处理GROUP BY: 分组查询的结果按分片的顺序拼接
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class ShardMerger {
+	private static Pattern AGGREGATE = Pattern.compile("^(COUNT|SUM|MIN|MAX|AVG)\\s*\\(\\s*\\)(\\s+AS)?(\\s+\\S+)?$");
+	private static Pattern FROM      = Pattern.compile("\\sFROM[\\s(]");
+	
+	/**
+	 * 把引号中的内容和括号中的内容替换成空格, 并转成大写, 用于查找最外层的SQL关键字
+	 * 
+	 * @param sql the sql
+	 * @return masked sql, which has the same length of the sql
+	 */
+	public static String mask(String sql){
+		char[] cs=sql.toUpperCase().toCharArray();
+		
+		int  depth=0;
+		char quote=0;
+		for(int i=0;i<cs.length;i++){
+			char c=cs[i];
+			if(quote!=0){
+				if(c==quote){
+					quote=0;
+				}
+				cs[i]=' ';
+			}else if(c=='\'' || c=='"' || c=='`'){
+				quote=c;
+				cs[i]=' ';
+			}else if(c=='('){
+				if(depth>0){
+					cs[i]=' ';
+				}
+				depth++;
+			}else if(c==')'){
+				depth--;
+				if(depth>0){
+					cs[i]=' ';
+				}
+			}else if(depth>0 || c=='\r' || c=='\n' || c=='\t'){
+				cs[i]=' ';
+			}
+		}
+		return new String(cs);
+	}
+	
+	/**
+	 * @param sql the sql
+	 * @return the outermost ORDER BY columns, empty list if not found
+	 */
+	public static List<OrderBy> parseOrderBy(String sql){
+		List<OrderBy> orders=new ArrayList<OrderBy>();
+		
+		String m=mask(sql);
+		int p=m.lastIndexOf(" ORDER BY ");
+		if(p<0){
+			return orders;
+		}
+		
+		int start=p+" ORDER BY ".length();
+		int end  =m.length();
+		for(String k:new String[]{" LIMIT "," OFFSET "," FETCH "," FOR UPDATE"}){
+			int x=m.indexOf(k,start);
+			if(x>0 && x<end){
+				end=x;
+			}
+		}
+		
+		for(String item:split(sql,m,start,end)){
+			orders.add(new OrderBy(item));
+		}
+		return orders;
+	}
+	
+	/**
+	 * @param sql the sql
+	 * @return the aggregate function(COUNT/SUM/MIN/MAX/AVG) of each select column, 
+	 * null if the select column is not an aggregate function. <br>
+	 * return null if no aggregate functions or the sql contains GROUP BY 
+	 */
+	public static List<String> parseAggregates(String sql){
+		String m=mask(sql);
+		
+		int s=m.indexOf("SELECT ");
+		if(s<0){
+			return null;
+		}
+		
+		Matcher from=FROM.matcher(m);
+		int f=from.find(s)?from.start():-1;
+		if(f<0 || m.indexOf(" GROUP BY ",f)>0){
+			return null;
+		}
+		
+		boolean found=false;
+		List<String> fns=new ArrayList<String>();
+		
+		int start=s+"SELECT ".length();
+		for(int[] range:splitRanges(m,start,f)){
+			String item=m.substring(range[0],range[1]).trim();
+			if(item.startsWith("DISTINCT ")){
+				return null;
+			}
+			
+			Matcher matcher=AGGREGATE.matcher(item);
+			if(matcher.matches()){
+				String fn=matcher.group(1);
+				if(fn.equals("COUNT") && sql.substring(range[0],range[1]).toUpperCase().replaceAll("\\s+"," ").indexOf("(DISTINCT ")>0){
+					fn="COUNT_DISTINCT";
+				}
+				fns.add(fn);
+				found=true;
+			}else{
+				fns.add(null);
+			}
+		}
+		
+		return found?fns:null;
+	}
+	
+	private static List<String> split(String sql,String masked,int start,int end){
+		List<String> items=new ArrayList<String>();
+		for(int[] range:splitRanges(masked,start,end)){
+			String item=sql.substring(range[0],range[1]).trim();
+			if(item.length()>0){
+				items.add(item);
+			}
+		}
+		return items;
+	}
+	
+	private static List<int[]> splitRanges(String masked,int start,int end){
+		List<int[]> ranges=new ArrayList<int[]>();
+		
+		int x=start;
+		for(int i=start;i<end;i++){
+			if(masked.charAt(i)==','){
+				ranges.add(new int[]{x,i});
+				x=i+1;
+			}
+		}
+		ranges.add(new int[]{x,end});
+		
+		return ranges;
+	}
+	
+	/**
+	 * 多路归并已经排好序的各个分片的结果
+	 * 
+	 * @param lists  results of each shard
+	 * @param orders the order by columns, results are concatenated if empty
+	 * @param offset skip records
+	 * @param limit  max records, -1: no limit
+	 * @param <T> result type
+	 * @return the merged results
+	 */
+	public static <T> DataTable<T> merge(List<? extends List<T>> lists,final List<OrderBy> orders,int offset,int limit){
+		DataTable<T> r=new DataTable<T>();
+		
+		if(orders==null || orders.isEmpty()){
+			for(List<T> list:lists){
+				for(T x:list){
+					if(offset>0){
+						offset--;
+					}else if(limit<0 || r.size()<limit){
+						r.add(x);
+					}else{
+						return r;
+					}
+				}
+			}
+			return r;
+		}
+		
+		PriorityQueue<Cursor<T>> queue=new PriorityQueue<Cursor<T>>(Math.max(1, lists.size()));
+		for(int i=0;i<lists.size();i++){
+			Iterator<T> it=lists.get(i).iterator();
+			if(it.hasNext()){
+				queue.add(new Cursor<T>(i,it,orders));
+			}
+		}
+		
+		while(!queue.isEmpty() && (limit<0 || r.size()<limit)){
+			Cursor<T> c=queue.poll();
+			
+			if(offset>0){
+				offset--;
+			}else{
+				r.add(c.head);
+			}
+			
+			if(c.next()){
+				queue.add(c);
+			}
+		}
+		
+		return r;
+	}
+	
+	/**
+	 * 合并各个分片的单个结果: 聚合查询再做一次聚合, 否则返回排序后的第一个结果
+	 * 
+	 * @param results result of each shard
+	 * @param sql the query sql
+	 * @param <T> result type
+	 * @return the merged result
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T aggregate(List<T> results,String sql){
+		List<T> rs=new ArrayList<T>();
+		for(T x:results){
+			if(x!=null){
+				rs.add(x);
+			}
+		}
+		if(rs.isEmpty()){
+			return null;
+		}
+		
+		List<String> fns=parseAggregates(sql);
+		T first=rs.get(0);
+		if(fns==null){
+			List<List<T>> lists=new ArrayList<List<T>>();
+			for(T x:rs){
+				List<T> one=new ArrayList<T>();
+				one.add(x);
+				lists.add(one);
+			}
+			return merge(lists, parseOrderBy(sql), 0, 1).get(0);
+		}else if(first instanceof Map){
+			Map<String,Object> m=(Map<String,Object>)first;
+			
+			DataMap r=new DataMap();
+			int i=0;
+			for(String key:m.keySet()){
+				String fn=i<fns.size()?fns.get(i):null;
+				if(fn==null){
+					r.put(key, m.get(key));
+				}else{
+					List<Object> values=new ArrayList<Object>();
+					for(T x:rs){
+						values.add(((Map<String,Object>)x).get(key));
+					}
+					r.put(key, combine(fn, values));
+				}
+				i++;
+			}
+			return (T)r;
+		}else if(first instanceof Number){
+			return (T)combine(fns.get(0), (List<Object>)rs);
+		}else{
+			return first;
+		}
+	}
+	
+	protected static Object combine(String fn,List<Object> values){
+		if(fn.equals("COUNT") || fn.equals("SUM")){
+			return sum(values);
+		}else if(fn.equals("MIN") || fn.equals("MAX")){
+			Object r=null;
+			for(Object v:values){
+				if(v!=null){
+					int c= r==null? 0 : compare(v, r);
+					if(r==null || (fn.equals("MIN") && c<0) || (fn.equals("MAX") && c>0)){
+						r=v;
+					}
+				}
+			}
+			return r;
+		}else{
+			throw new RuntimeException("Aggregate function: "+fn+" can not be merged across shards, use SUM and COUNT instead of AVG.");
+		}
+	}
+	
+	protected static Object sum(List<Object> values){
+		Object first=null;
+		
+		long       l =0;
+		double     d =0;
+		BigDecimal bd=null;
+		BigInteger bi=null;
+		for(Object v:values){
+			if(v==null){
+				continue;
+			}
+			if(first==null){
+				first=v;
+			}
+			
+			if(v instanceof BigDecimal){
+				bd= bd==null? (BigDecimal)v : bd.add((BigDecimal)v);
+			}else if(v instanceof BigInteger){
+				bi= bi==null? (BigInteger)v : bi.add((BigInteger)v);
+			}else if(v instanceof Double || v instanceof Float){
+				d+=((Number)v).doubleValue();
+			}else{
+				l+=((Number)v).longValue();
+			}
+		}
+		
+		if(first==null){
+			return null;
+		}else if(first instanceof BigDecimal){
+			return bd;
+		}else if(first instanceof BigInteger){
+			return bi;
+		}else if(first instanceof Double){
+			return d;
+		}else if(first instanceof Float){
+			return (float)d;
+		}else if(first instanceof Integer && l<=Integer.MAX_VALUE && l>=Integer.MIN_VALUE){
+			return (int)l;
+		}else{
+			return l;
+		}
+	}
+	
+	/**
+	 * @param row  Map, Model or java bean
+	 * @param name column name
+	 * @return the column value
+	 */
+	@SuppressWarnings("rawtypes")
+	public static Object getValue(Object row,String name){
+		if(row==null){
+			return null;
+		}else if(row instanceof Map){
+			return ((Map)row).get(name);
+		}else if(row instanceof Model){
+			return ((Model)row).get(name);
+		}else{
+			ClassHelper mc=MelpClass.getClassHelper(row.getClass());
+			FGS fgs=mc.getField(name);
+			if(fgs==null){
+				fgs=mc.getField(MelpJavaBeans.getJavaName(name,false));
+			}
+			return fgs==null?null:fgs.getObject(row);
+		}
+	}
+	
+	/**
+	 * null is less than any value
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static int compare(Object a,Object b){
+		if(a==b){
+			return 0;
+		}else if(a==null){
+			return -1;
+		}else if(b==null){
+			return 1;
+		}else if(a instanceof Number && b instanceof Number && a.getClass()!=b.getClass()){
+			return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+		}else if(a instanceof Comparable && a.getClass().isInstance(b)){
+			return ((Comparable)a).compareTo(b);
+		}else{
+			return a.toString().compareTo(b.toString());
+		}
+	}
+	
+	public static class OrderBy{
+		private String  expression;
+		private String  name;
+		private boolean desc;
+		
+		public OrderBy(String item){
+			String s=item.trim().replaceAll("\\s+", " ");
+			
+			String u=s.toUpperCase();
+			for(String nulls:new String[]{" NULLS FIRST"," NULLS LAST"}){
+				if(u.endsWith(nulls)){
+					s=s.substring(0,s.length()-nulls.length());
+					u=s.toUpperCase();
+				}
+			}
+			
+			if(u.endsWith(" DESC")){
+				desc=true;
+				s=s.substring(0,s.length()-5);
+			}else if(u.endsWith(" ASC")){
+				s=s.substring(0,s.length()-4);
+			}
+			
+			s=s.trim();
+			this.expression=s;
+			
+			int p=s.lastIndexOf(".");
+			if(p>=0 && s.indexOf("(")<0){
+				s=s.substring(p+1);
+			}
+			
+			if(s.length()>1){
+				char c=s.charAt(0);
+				if(c=='`' || c=='"' || c=='['){
+					s=s.substring(1,s.length()-1);
+				}
+			}
+			
+			this.name=s;
+		}
+		
+		/**
+		 * @return the column name, without table alias and quotes
+		 */
+		public String getName(){
+			return name;
+		}
+		
+		/**
+		 * @return the sort expression, without ASC/DESC
+		 */
+		public String getExpression(){
+			return expression;
+		}
+		
+		public boolean isDesc(){
+			return desc;
+		}
+		
+		public String toString(){
+			return name+(desc?" DESC":" ASC");
+		}
+	}
+	
+	static class Cursor<T> implements Comparable<Cursor<T>>{
+		private int           index;
+		private Iterator<T>   it;
+		private List<OrderBy> orders;
+		
+		private T        head;
+		private Object[] values;
+		
+		Cursor(int index,Iterator<T> it,List<OrderBy> orders){
+			this.index =index;
+			this.it    =it;
+			this.orders=orders;
+			
+			next();
+		}
+		
+		boolean next(){
+			if(it.hasNext()){
+				head=it.next();
+				
+				values=new Object[orders.size()];
+				for(int i=0;i<values.length;i++){
+					values[i]=getValue(head, orders.get(i).name);
+				}
+				return true;
+			}
+			return false;
+		}
+		
+		public int compareTo(Cursor<T> o) {
+			for(int i=0;i<values.length;i++){
+				int c=compare(values[i], o.values[i]);
+				if(c!=0){
+					return orders.get(i).desc ? -c : c;
+				}
+			}
+			return index-o.index;
+		}
+	}
+}
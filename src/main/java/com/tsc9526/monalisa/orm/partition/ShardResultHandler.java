@@ -0,0 +1,72 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.partition;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.tsc9526.monalisa.orm.executor.HandlerResultSet;
+import com.tsc9526.monalisa.orm.executor.MappingPlan;
+
+/**
+ * 自定义的HandlerResultSet在多个分片并行查询时被共用, 对它的调用需要同步
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class ShardResultHandler<T> extends HandlerResultSet<T> {
+	private HandlerResultSet<T> origin;
+	
+	/**
+	 * 每个分片使用各自的HandlerResultSet映射记录, 分片之间不需要同步; 
+	 * 自定义的HandlerResultSet(子类)可能带有状态, 仍然共用并同步调用
+	 * 
+	 * @param origin the handler of the query
+	 * @param <T> result type
+	 * @return the handler for one shard
+	 */
+	public static <T> HandlerResultSet<T> forShard(HandlerResultSet<T> origin){
+		if(origin.getClass()==HandlerResultSet.class){
+			return new HandlerResultSet<T>(origin.getQuery(), origin.getResultClass());
+		}else{
+			return new ShardResultHandler<T>(origin);
+		}
+	}
+	
+	public ShardResultHandler(HandlerResultSet<T> origin){
+		super(null, origin.getResultClass());
+		
+		this.origin=origin;
+	}
+	
+	public T createResult(ResultSet rs) throws SQLException {
+		synchronized (origin) {
+			return origin.createResult(rs);
+		}
+	}
+	
+	public T load(ResultSet rs, T result) throws SQLException {
+		synchronized (origin) {
+			return origin.load(rs, result);
+		}
+	}
+	
+	public MappingPlan getMappingPlan(ResultSet rs) throws SQLException {
+		synchronized (origin) {
+			return origin.getMappingPlan(rs);
+		}
+	}
+}
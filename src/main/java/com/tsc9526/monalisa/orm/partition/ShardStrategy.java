@@ -0,0 +1,32 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.partition;
+
+/**
+ * 分库策略: 根据分片字段的值计算数据所在的分片
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public interface ShardStrategy {
+	
+	/**
+	 * @param key    分片字段的值, 不为null
+	 * @param shards 分片的个数
+	 * @return 分片的序号: 0 ~ shards-1
+	 */
+	public int getShard(Object key,int shards);
+}
@@ -0,0 +1,231 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.orm.partition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.tsc9526.monalisa.orm.Tx;
+import com.tsc9526.monalisa.orm.datasource.DBConfig;
+import com.tsc9526.monalisa.orm.datasource.DbProp;
+import com.tsc9526.monalisa.orm.model.Model;
+import com.tsc9526.monalisa.tools.Tasks;
+import com.tsc9526.monalisa.tools.clazz.MelpClass;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
+import com.tsc9526.monalisa.tools.misc.MelpException;
+
+/**
+ * 水平分库: 一个逻辑库的数据按分片字段分布在多个库上, 配置示例: <br>
+ * <pre>
+ * DB.cfg.shards          = s0,s1,s2
+ * DB.cfg.shard.strategy  = mod     (mod / hash / class name of {@link ShardStrategy})
+ * DB.cfg.shard.key.user  = user_id (default is the primary key)
+ * DB.s0.url = jdbc:mysql://host0:3306/db
+ * DB.s1.url = jdbc:mysql://host1:3306/db
+ * DB.s2.url = jdbc:mysql://host2:3306/db
+ * </pre>
+ * 设置了分片字段的Model, 读写只访问一个分片; 没有指定分片的查询在所有分片上并行执行后合并结果, 参考: {@link ShardMerger}
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class ShardedDB {
+	private static volatile ExecutorService executor = new ThreadPoolExecutor(0, 64, 60L, TimeUnit.SECONDS
+			, new SynchronousQueue<Runnable>()
+			, Tasks.createThreadFactory("Monalisa-Shard")
+			, new ThreadPoolExecutor.CallerRunsPolicy());
+	
+	/**
+	 * The executor runs the query of each shard concurrently. <br>
+	 * Default: max 64 threads, the shard query runs in the caller thread if all threads are busy.
+	 * 
+	 * @param executor null: query the shards one after the other
+	 */
+	public static void setExecutor(ExecutorService executor) {
+		ShardedDB.executor=executor;
+	}
+	
+	public static ExecutorService getExecutor() {
+		return executor;
+	}
+	
+	/**
+	 * @param db the logic db
+	 * @return null if the db is not sharded
+	 */
+	public static ShardedDB create(DBConfig db){
+		String names=DbProp.PROP_DB_SHARDS.getValue(db);
+		if(names==null || names.trim().length()==0 || db.getOwner()!=null){
+			return null;
+		}
+		
+		List<String> configNames=new ArrayList<String>();
+		for(String name:names.split(",")){
+			name=name.trim();
+			if(name.length()>0){
+				configNames.add(name);
+			}
+		}
+		
+		//分片自己的配置也能读到 shards 属性
+		if(configNames.contains(db.getCfg().getConfigName())){
+			return null;
+		}
+		
+		List<DBConfig> shards=new ArrayList<DBConfig>();
+		for(String name:configNames){
+			shards.add(db.getByConfigName(name));
+		}
+		
+		return new ShardedDB(db,shards,createStrategy(DbProp.PROP_DB_SHARD_STRATEGY.getValue(db)));
+	}
+	
+	protected static ShardStrategy createStrategy(String strategy){
+		if(strategy==null || strategy.trim().length()==0 || strategy.trim().equalsIgnoreCase("mod")){
+			return new ModShard();
+		}else if(strategy.trim().equalsIgnoreCase("hash")){
+			return new ConsistentHashShard();
+		}else{
+			try{
+				return (ShardStrategy)MelpClass.forName(strategy.trim()).getDeclaredConstructor().newInstance();
+			}catch(Exception e){
+				return MelpException.throwRuntimeException(e);
+			}
+		}
+	}
+	
+	private final DBConfig       db;
+	private final List<DBConfig> shards;
+	private final ShardStrategy  strategy;
+	
+	public ShardedDB(DBConfig db,List<DBConfig> shards,ShardStrategy strategy){
+		this.db      =db;
+		this.shards  =Collections.unmodifiableList(shards);
+		this.strategy=strategy;
+	}
+	
+	public DBConfig getShard(Object key){
+		if(key==null){
+			throw new RuntimeException("Shard key is null, DB: "+db.getKey());
+		}
+		return shards.get(strategy.getShard(key, shards.size()));
+	}
+	
+	/**
+	 * @param model the model
+	 * @param table the table name of the model
+	 * @return the shard of the model, or null if the shard key is not set
+	 */
+	public DBConfig getShard(Model<?> model,String table){
+		Object key=getShardValue(model,table);
+		return key==null?null:getShard(key);
+	}
+	
+	/**
+	 * @param model the model
+	 * @param table the table name of the model
+	 * @return value of the shard key(property: shard.key.[table], default is the primary key)
+	 */
+	public Object getShardValue(Model<?> model,String table){
+		String column=DbProp.PROP_TABLE_SHARD_KEY.getValue(db, table);
+		if(column!=null && column.trim().length()>0){
+			return model.get(column.trim());
+		}else{
+			List<FGS> pks=model.pkFields();
+			if(pks.size()==1){
+				return pks.get(0).getObject(model);
+			}else{
+				return null;
+			}
+		}
+	}
+	
+	/**
+	 * 在每个分片上执行task: 不在事务中时并行执行, 否则在当前线程中依次执行(使用事务的连接). <br>
+	 * task可能被多个线程同时调用, 各分片的结果在所有分片执行完成后再合并
+	 * 
+	 * @param task the task
+	 * @param <X> result type
+	 * @return results of each shard, in the order of shards
+	 */
+	public <X> List<X> scatter(final ShardTask<X> task){
+		List<X> results=new ArrayList<X>();
+		
+		ExecutorService executor=ShardedDB.executor;
+		if(shards.size()==1 || Tx.getTx()!=null || executor==null){
+			for(DBConfig shard:shards){
+				results.add(task.execute(shard));
+			}
+			return results;
+		}
+		
+		List<Future<X>> futures=new ArrayList<Future<X>>();
+		for(int i=1;i<shards.size();i++){
+			final DBConfig shard=shards.get(i);
+			futures.add(executor.submit(new Callable<X>() {
+				public X call() throws Exception {
+					return task.execute(shard);
+				}
+			}));
+		}
+		
+		try{
+			results.add(task.execute(shards.get(0)));
+			
+			for(Future<X> f:futures){
+				results.add(f.get());
+			}
+			return results;
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}catch(ExecutionException e){
+			return MelpException.throwRuntimeException(e.getCause());
+		}finally{
+			for(Future<X> f:futures){
+				f.cancel(true);
+			}
+		}
+	}
+	
+	public DBConfig getDb(){
+		return db;
+	}
+	
+	public List<DBConfig> getShards(){
+		return shards;
+	}
+	
+	public ShardStrategy getStrategy(){
+		return strategy;
+	}
+	
+	public int size(){
+		return shards.size();
+	}
+	
+	public static interface ShardTask<X>{
+		public X execute(DBConfig shard);
+	}
+}
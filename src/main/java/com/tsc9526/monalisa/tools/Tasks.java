@@ -17,16 +17,21 @@
 package com.tsc9526.monalisa.tools;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.Timer;
+import java.util.Map;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.tsc9526.monalisa.tools.logger.Logger;
  
 
 /**
+ * 后台定时任务, 所有任务(模型/类的重新加载, 缓存刷新等)共用一个调度线程池
  * 
  * @author zzg.zhou(11039850@qq.com)
  */
@@ -34,97 +39,89 @@ public class Tasks {
 	static Logger logger=Logger.getLogger(Tasks.class);
 	
 	public static TaskThread instance=new TaskThread();
+	
+	/**
+	 * @return the shared scheduler, only used to trigger tasks, long running jobs should be submitted to other thread pool.
+	 */
+	public static ScheduledThreadPoolExecutor getScheduler(){
+		return instance.scheduler;
+	}
+	
+	public static ThreadFactory createThreadFactory(final String namePrefix){
+		return new ThreadFactory() {
+			private AtomicInteger index=new AtomicInteger();
+			
+			public Thread newThread(Runnable r) {
+				Thread t=new Thread(r, namePrefix+"-"+index.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
   
-	public static class TaskThread extends Thread{
-		protected long    ts         = System.currentTimeMillis();
-		protected boolean running    = false;
+	public static class TaskThread {
 		protected boolean destoried  = false;
-		protected boolean terminated = false;
-		protected Timer   timer      = new Timer("Monalisa-DBTask-Timer",true);
+		
+		protected ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(2,createThreadFactory("Monalisa-Scheduler"));
 		
 		protected List<Runnable> cls   = new ArrayList<Runnable>();
 		
-		protected Set<String> timeTasks = new HashSet<String>();
+		protected Map<String,ScheduledFuture<?>> timeTasks = new ConcurrentHashMap<String,ScheduledFuture<?>>();
 		
 		private TaskThread(){
-			setName("Monalisa-Task-Daemon");
-			setDaemon(true);
-			
-			start();
-		}
-		
-		public void interrupt(){
-			running=false;
-			super.interrupt();
-		}
-		
-		public void run(){
-			running=true;
-		 
-			try{
-				while(running){
-					delay(200);
-				}
-			}finally{
-				terminated=true;
-				
-				destory();
-			}
+			scheduler.setRemoveOnCancelPolicy(true);
+			scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
 		}
 		
 		public synchronized void destory(){
-			if(running){
-				running=false;
-				
-				synchronized(this){
-					notifyAll();
-				}
-			}
-			
 			if(!destoried){
 				destoried=true;
 				
-				timer.cancel();
+				scheduler.shutdownNow();
 				
 				for(Runnable c:cls){
 					c.run();
 				}
 				
-				if(!terminated){
-					interrupt();
-				}
-				
 				logger.info("Monalisa task thread destoried!");
 			}
 		}
 		
-		public synchronized void addSchedule(String taskName,TimerTask task,long delay,long period){
-			if(!timeTasks.contains(taskName)){
-				timeTasks.add(taskName);
-				
+		public synchronized void addSchedule(String taskName,final TimerTask task,long delay,long period){
+			if(!timeTasks.containsKey(taskName) && !destoried){
 				if(delay<=0){
 					task.run();
 					
 					delay=period;
 				}
-				timer.schedule(task,delay,period);
+				
+				ScheduledFuture<?> future=scheduler.scheduleWithFixedDelay(new Runnable() {
+					public void run() {
+						try{
+							task.run();
+						}catch(Throwable e){
+							logger.error(e);
+						}
+					}
+				},delay,period,TimeUnit.MILLISECONDS);
+				
+				timeTasks.put(taskName, future);
+			}
+		}
+		
+		public synchronized boolean removeSchedule(String taskName){
+			ScheduledFuture<?> future=timeTasks.remove(taskName);
+			if(future!=null){
+				future.cancel(false);
+				return true;
 			}
+			return false;
 		}
 		
 		public void addShutdown(Runnable c){
 			cls.add(c);
 		}
 		 
-		protected void delay(int millis){
-			synchronized(this){
-				try{
-					wait(millis);
-				}catch(InterruptedException ex){
-					running=false;
-				}
-			} 		
-		}
-		
 		public boolean isDestoried(){
 			return destoried;
 		}
@@ -18,21 +18,25 @@ package com.tsc9526.monalisa.tools.cache;
  
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import com.tsc9526.monalisa.tools.Tools;
 import com.tsc9526.monalisa.tools.cache.decorators.FifoCache;
 import com.tsc9526.monalisa.tools.cache.decorators.LruCache;
 import com.tsc9526.monalisa.tools.cache.decorators.SoftCache;
 import com.tsc9526.monalisa.tools.cache.decorators.WeakCache;
 import com.tsc9526.monalisa.tools.cache.impl.PerpetualCache;
+import com.tsc9526.monalisa.tools.cache.impl.TinyLfuCache;
 import com.tsc9526.monalisa.tools.logger.Logger;
 
 /**
@@ -48,105 +52,138 @@ public class CacheManager {
 		return cm;
 	}
 	
-	private ThreadPoolExecutor pool;
-	
-	private int refreshCachePoolSize = 5;
+	/**
+	 * @param cache the cache
+	 * @param key the key
+	 * @return true if the key is in the cache, see {@link ContainsKeyCache}
+	 */
+	public static boolean containsKey(Cache cache,Object key){
+		if(cache instanceof ContainsKeyCache){
+			return ((ContainsKeyCache)cache).containsKey(key);
+		}else{
+			return cache.getObject(key)!=null;
+		}
+	}
 	
 	private Map<String, Cache> hCaches = new ConcurrentHashMap<String, Cache>();
 	
-	protected Timer                 autoRefreshTimer = new Timer("Monalisa-CacheRefresh-Timer",true);
-	 
-	private Map<CacheKey,TimerTask> refreshCacheKeys = new ConcurrentHashMap<CacheKey,TimerTask>(); 
-	private Map<CacheKey,String>    runningCacheKeys = new ConcurrentHashMap<CacheKey,String>(); 
+	private RefreshScheduler refreshScheduler = new RefreshScheduler();
+	
+	private ConcurrentHashMap<CacheKey,FutureTask<Object>> loadingCacheKeys = new ConcurrentHashMap<CacheKey,FutureTask<Object>>();
 	
-	private Cache defaultCache = getCache(PerpetualCache.class.getName(), "LRU", "default"); 
+	/**
+	 * dbKey#table -&gt; 依赖该表的缓存
+	 */
+	private ConcurrentHashMap<String,Set<CacheRef>> hTableCacheKeys = new ConcurrentHashMap<String,Set<CacheRef>>();
+	
+	private int relationPruneSize = 1024;
+	
+	private Cache defaultCache = getCache(PerpetualCache.class.getName(), "TINYLFU", "default"); 
 	 
 	private CacheManager(){  
 	}
 	
 	public void setAutoRefreshThreads(int threads) {
-		refreshCachePoolSize = threads;
+		refreshScheduler.setThreads(threads);
 	}
 	
-	protected synchronized ExecutorService getExecutorPool() {
-		if(pool==null) {
-			logger.info("Init refresh cache thread pool size: "+refreshCachePoolSize);
-			
-			pool = (ThreadPoolExecutor)Executors.newFixedThreadPool(refreshCachePoolSize);
-		}
-		
-		return pool;
+	public RefreshScheduler getRefreshScheduler() {
+		return refreshScheduler;
 	}
 	
 	public boolean addAutoRefreshCache(CacheKey key,Cache cache, Cacheable cacheable,long ttlInMillis, long autoRefreshInMillis) {
-		if(!refreshCacheKeys.containsKey(key)) { 
-		 	TimerTask timerTask = createRefreshTimerTask(key, cache, cacheable, ttlInMillis);
-		 	TimerTask existTask = refreshCacheKeys.putIfAbsent(key, timerTask);
-			
-		 	if(existTask == null ) { 
-		 		logger.debug("Add auto refresh cache key: "+key);
-		 		
-				autoRefreshTimer.schedule(timerTask, autoRefreshInMillis, autoRefreshInMillis);
+		return addAutoRefreshCache(RefreshScheduler.DEFAULT_GROUP, 0, key, cache, cacheable, ttlInMillis, autoRefreshInMillis);
+	}
+	
+	/**
+	 * @see RefreshScheduler#add(String, int, CacheKey, Cache, Cacheable, long, long)
+	 */
+	public boolean addAutoRefreshCache(String group,int groupConcurrency,CacheKey key,Cache cache, Cacheable cacheable,long ttlInMillis, long autoRefreshInMillis) {
+		return refreshScheduler.add(group, groupConcurrency, key, cache, cacheable, ttlInMillis, autoRefreshInMillis);
+	}
+ 
+	
+	/**
+	 * 同一个key同时只有一个线程执行加载(single-flight), 其它线程等待该线程的加载结果
+	 * 
+	 * @param key    the cache key
+	 * @param loader load the value, also put it into the cache
+	 * @param waitTimeoutInMillis max time waiting for the loading thread, &lt;=0: wait forever
+	 * @param <X> result type
+	 * @return the loaded value
+	 */
+	@SuppressWarnings("unchecked")
+	public <X> X load(CacheKey key, final Cacheable loader, long waitTimeoutInMillis) {
+		FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+			public Object call() throws Exception {
+				return loader.execute();
+			}
+		});
+		
+		FutureTask<Object> exists = loadingCacheKeys.putIfAbsent(key, task);
+		if(exists == null) {
+			try {
+				task.run();
 				
-				return true;
+				return (X)getLoadResult(key, task, 0);
+			}finally {
+				loadingCacheKeys.remove(key, task);
+			}
+		}else {
+			if(logger.isDebugEnabled()) {
+				logger.debug("Wait for loading cache key: "+key);
 			}
+			
+			return (X)getLoadResult(key, exists, waitTimeoutInMillis);
 		}
-		
-		return false;
 	}
- 
 	
-	protected TimerTask createRefreshTimerTask(final CacheKey key,final Cache cache, final Cacheable cacheable,final long ttlInMillis) {
-		final Runnable r= new Runnable() {
-			@Override
-			public void run() {
-				try {
-					long ts = System.currentTimeMillis();
-					
-					Object value = cacheable.execute();
-					cache.putObject(key, value, ttlInMillis);
-					
-					long delta = System.currentTimeMillis() -ts;
-					
-					if(logger.isDebugEnabled()) {
-						logger.debug("Auto refresh cache("+ delta+" ms), "+Tools.getCachedInfo(key, value,ttlInMillis));
-					}
-				}finally {
-					runningCacheKeys.remove(key);
-				}
+	private Object getLoadResult(CacheKey key, FutureTask<Object> task, long waitTimeoutInMillis) {
+		try {
+			if(waitTimeoutInMillis > 0) {
+				return task.get(waitTimeoutInMillis, TimeUnit.MILLISECONDS);
+			}else {
+				return task.get();
 			}
-		};	
-		
-		return new TimerTask() {
-			@Override
-			public void run() {
-				String exists = runningCacheKeys.putIfAbsent(key, key.toString());
-				if(exists==null) {
-					getExecutorPool().submit(r);
-				}
+		}catch(TimeoutException e) {
+			throw new RuntimeException("Timeout("+waitTimeoutInMillis+" ms) waiting for loading cache key: "+key, e);
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}catch(ExecutionException e) {
+			Throwable t = e.getCause();
+			if(t instanceof RuntimeException) {
+				throw (RuntimeException)t;
+			}else if(t instanceof Error) {
+				throw (Error)t;
 			}
-		};
+			throw new RuntimeException(t);
+		}
+	}
+	
+	public int getLoadingCount() {
+		return loadingCacheKeys.size();
+	}
+	
+	/**
+	 * 在后台线程池中刷新缓存, 同一个key同时只会有一个刷新任务
+	 * 
+	 * @param key         the cache key
+	 * @param cache       the cache
+	 * @param cacheable   load the value
+	 * @param ttlInMillis cache time of the new value
+	 * @return true if a new refresh task is submitted, false if the key is refreshing
+	 */
+	public boolean refreshAsync(CacheKey key,Cache cache, Cacheable cacheable,long ttlInMillis) {
+		return refreshScheduler.refreshAsync(key, cache, cacheable, ttlInMillis);
 	}
 	 
 	public boolean removeAutoRefreshCache(CacheKey key) {
-		TimerTask task = refreshCacheKeys.remove(key);
-		if(task!=null) {
-			logger.debug("Remove auto refresh cache key: "+key);
-			
-			task.cancel();
-			
-			autoRefreshTimer.purge();
-			
-			return true;
-		}
-		
-		return false;
+		return refreshScheduler.remove(key);
 	}
 	
 	public List<CacheKey> getAutoRefreshCacheKeys() {
-		List<CacheKey> keys = new ArrayList<CacheKey>();
-		keys.addAll( refreshCacheKeys.keySet() );
-		return keys;
+		return refreshScheduler.keys();
 	}
 	  
 	
@@ -196,15 +233,138 @@ public class CacheManager {
 	}
 	
 	public int getAutoRefreshActiveCount(){
-		return pool.getActiveCount();
+		return refreshScheduler.getActiveCount();
 	}
 	
-	public void shutdown() {
-		autoRefreshTimer.cancel();
+	/**
+	 * 记录缓存key所依赖的表, 这些表发生变更(INSERT/UPDATE/DELETE)时, 通过{@link #evictRelationTables(String, Collection)}清除该缓存
+	 * 
+	 * @param dbKey  the database key
+	 * @param tables table names which the cached value depends on
+	 * @param cache  the cache
+	 * @param key    the cache key
+	 */
+	public void addRelationTables(String dbKey,Collection<String> tables,Cache cache,CacheKey key){
+		if(tables==null || tables.isEmpty() || cache==null || key==null){
+			return;
+		}
+		
+		CacheRef ref=new CacheRef(cache, key);
+		for(String table:tables){
+			String tk=getRelationKey(dbKey, table);
+			if(tk==null){
+				continue;
+			}
+			
+			Set<CacheRef> refs=hTableCacheKeys.get(tk);
+			if(refs==null){
+				refs=Collections.newSetFromMap(new ConcurrentHashMap<CacheRef, Boolean>());
+				
+				Set<CacheRef> exists=hTableCacheKeys.putIfAbsent(tk, refs);
+				if(exists!=null){
+					refs=exists;
+				}
+			}
+			
+			if(refs.add(ref) && refs.size()>relationPruneSize){
+				pruneRelationRefs(refs);
+			}
+		}
+	}
+	
+	/**
+	 * 清除依赖这些表的所有缓存
+	 * 
+	 * @param dbKey  the database key
+	 * @param tables the changed tables
+	 * @return number of evicted cache keys
+	 */
+	public int evictRelationTables(String dbKey,Collection<String> tables){
+		if(tables==null || hTableCacheKeys.isEmpty()){
+			return 0;
+		}
 		
-		if(pool!=null) {
-			pool.shutdownNow();
+		int n=0;
+		for(String table:tables){
+			String tk=getRelationKey(dbKey, table);
+			if(tk==null){
+				continue;
+			}
+			
+			Set<CacheRef> refs=hTableCacheKeys.remove(tk);
+			if(refs!=null){
+				for(CacheRef ref:refs){
+					ref.cache.removeObject(ref.key);
+					n++;
+				}
+				
+				if(logger.isDebugEnabled()){
+					logger.debug("Evict "+refs.size()+" cache keys by table changed: "+tk);
+				}
+			}
 		}
+		return n;
+	}
+	
+	public boolean hasRelationTables(){
+		return !hTableCacheKeys.isEmpty();
+	}
+	
+	public Set<String> getRelationTables(){
+		return Collections.unmodifiableSet(hTableCacheKeys.keySet());
+	}
+	
+	public void setRelationPruneSize(int relationPruneSize){
+		this.relationPruneSize=relationPruneSize;
+	}
+	
+	/**
+	 * 集合过大时, 去除缓存中已过期/被淘汰的key
+	 */
+	protected void pruneRelationRefs(Set<CacheRef> refs){
+		for(Iterator<CacheRef> it=refs.iterator();it.hasNext();){
+			CacheRef ref=it.next();
+			if(ref.cache.getObject(ref.key)==null){
+				it.remove();
+			}
+		}
+		
+		if(refs.size()>relationPruneSize/2){
+			relationPruneSize = relationPruneSize*2;
+		}
+	}
+	
+	protected String getRelationKey(String dbKey,String table){
+		if(table==null || table.length()==0){
+			return null;
+		}
+		return (dbKey==null?"":dbKey)+"#"+table.toLowerCase();
+	}
+	
+	static class CacheRef{
+		final Cache    cache;
+		final CacheKey key;
+		
+		CacheRef(Cache cache,CacheKey key){
+			this.cache=cache;
+			this.key  =key;
+		}
+		
+		public int hashCode(){
+			return System.identityHashCode(cache)*31+key.hashCode();
+		}
+		
+		public boolean equals(Object o){
+			if(o instanceof CacheRef){
+				CacheRef r=(CacheRef)o;
+				return r.cache==cache && r.key.equals(key);
+			}
+			return false;
+		}
+	}
+	
+	public void shutdown() {
+		refreshScheduler.shutdown();
 	}
 	
 	public List<Object> getCacheKeys(){
@@ -220,6 +380,19 @@ public class CacheManager {
 	}
 	 
 	public Cache getCache(String cacheClass,String eviction,String name){
+		return getCache(cacheClass, eviction, name, TinyLfuCache.DEFAULT_MAX_ENTRIES, TinyLfuCache.DEFAULT_MAX_BYTES);
+	}
+	
+	/**
+	 * 
+	 * @param cacheClass the cache class
+	 * @param eviction   FIFO, LRU, SOFT, WEAK or TINYLFU
+	 * @param name       the cache name
+	 * @param maxEntries max entries of the TINYLFU cache, only used when the cache is created
+	 * @param maxBytes   max estimated bytes of the TINYLFU cache, only used when the cache is created
+	 * @return the cache
+	 */
+	public Cache getCache(String cacheClass,String eviction,String name,int maxEntries,long maxBytes){
 		String key=cacheClass+"#"+name;
 		
 		Cache cache=hCaches.get(key);
@@ -227,7 +400,7 @@ public class CacheManager {
 		if(cache==null){
 			synchronized (hCaches) {
 				if(!hCaches.containsKey(key)){
-					cache=createCache(cacheClass,eviction,name);
+					cache=createCache(cacheClass,eviction,name,maxEntries,maxBytes);
 					
 					hCaches.put(key, cache);
 				}else{
@@ -242,8 +415,12 @@ public class CacheManager {
 	}
 	 
 	
-	private Cache createCache(String cacheClass,String eviction,String name){
+	private Cache createCache(String cacheClass,String eviction,String name,int maxEntries,long maxBytes){
 		if(cacheClass!=null && cacheClass.length()>0){
+			if("TINYLFU".equalsIgnoreCase(eviction) && cacheClass.equals(PerpetualCache.class.getName())){
+				return new TinyLfuCache(name,maxEntries,maxBytes);
+			}
+			
 			try{
 				Class<?> clazzCache=Class.forName(cacheClass);
 				
@@ -258,6 +435,10 @@ public class CacheManager {
 	}
 	
 	private Cache createEvictCache(Cache cache, String eviction){
+		if(cache instanceof TinyLfuCache){
+			return cache;
+		}
+		
 		if(eviction.equalsIgnoreCase("FIFO")){
 			return new FifoCache(cache);
 		}else if(eviction.equalsIgnoreCase("LRU")){
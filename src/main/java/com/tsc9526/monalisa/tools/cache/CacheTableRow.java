@@ -79,7 +79,7 @@ public class CacheTableRow {
 	}
 	
 	public int hashCode(){
-		return toString().hashCode();
+		return toString().toLowerCase().hashCode();
 	}
 	
 	public String toString(){
@@ -0,0 +1,48 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.tools.cache;
+
+/**
+ * 带软过期时间(soft TTL)的缓存值: 超过软过期时间后仍可返回旧值, 同时在后台刷新
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class CacheValue {
+	private Object value;
+	private long   freshUntil;
+	
+	public CacheValue(Object value,long softTtlInMillis){
+		this.value      = value;
+		this.freshUntil = System.currentTimeMillis()+softTtlInMillis;
+	}
+	
+	public Object getValue() {
+		return value;
+	}
+	
+	public long getFreshUntil() {
+		return freshUntil;
+	}
+	
+	public boolean isStale(){
+		return freshUntil < System.currentTimeMillis();
+	}
+	
+	public String toString(){
+		return String.valueOf(value);
+	}
+}
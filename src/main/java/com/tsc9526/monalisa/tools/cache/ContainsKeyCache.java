@@ -0,0 +1,36 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.tools.cache;
+
+/**
+ * 可选接口: {@link Cache}的实现可以提供不计入访问的key检查, 
+ * 未实现时使用 {@link CacheManager#containsKey(Cache, Object)} 的 getObject(key)!=null 检查
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public interface ContainsKeyCache {
+	
+	/**
+	 * 检查key是否在缓存中, 不计入访问(不影响淘汰顺序和访问频率)。 
+	 * 已经过期但还没有被清理的key也可能返回true
+	 * 
+	 * @param key the key
+	 * @return true if the key is in the cache
+	 */
+	boolean containsKey(Object key);
+	
+}
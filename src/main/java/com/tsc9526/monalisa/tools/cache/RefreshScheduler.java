@@ -0,0 +1,375 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.tools.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.tsc9526.monalisa.tools.Tasks;
+import com.tsc9526.monalisa.tools.Tools;
+import com.tsc9526.monalisa.tools.logger.Logger;
+
+/**
+ * 缓存的后台自动刷新: <br>
+ * <ul>
+ * <li>由共享的调度线程池({@link Tasks#getScheduler()})按周期(加随机抖动)触发, 刷新的查询在单独的工作线程池中执行</li>
+ * <li>同一个key同时只会有一个刷新任务, 同一分组(DBConfig)同时执行的刷新任务数有上限, 超过上限的本周期跳过</li>
+ * <li>缓存key被淘汰, 或者连续N个周期没有被访问, 自动取消刷新</li>
+ * </ul>
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class RefreshScheduler {
+	static Logger logger = Logger.getLogger(RefreshScheduler.class);
+	
+	public final static String DEFAULT_GROUP = "default";
+	
+	private Random random = new Random();
+	
+	private volatile ThreadPoolExecutor pool;
+	
+	private int threads = 5;
+	
+	private double jitter = 0.05;
+	
+	private int maxIdlePeriods = 10;
+	
+	private ConcurrentHashMap<CacheKey,RefreshTask>   tasks   = new ConcurrentHashMap<CacheKey,RefreshTask>();
+	private ConcurrentHashMap<CacheKey,String>        running = new ConcurrentHashMap<CacheKey,String>(); 
+	private ConcurrentHashMap<String,AtomicInteger>   groups  = new ConcurrentHashMap<String,AtomicInteger>();
+	
+	private AtomicLong refreshCount      = new AtomicLong();
+	private AtomicLong failedCount       = new AtomicLong();
+	private AtomicLong skippedCount      = new AtomicLong();
+	private AtomicLong deregisteredCount = new AtomicLong();
+	
+	/**
+	 * 
+	 * @param group             the group of the key, such as DBConfig's key
+	 * @param groupConcurrency  max running refresh tasks of the group, &lt;=0: no limit
+	 * @param key               the cache key
+	 * @param cache             the cache
+	 * @param cacheable         load the value
+	 * @param ttlInMillis       cache time of the loaded value
+	 * @param periodInMillis    refresh period
+	 * @return true if the key is added, false if the key exists (mark the key is accessed)
+	 */
+	public boolean add(String group,int groupConcurrency,CacheKey key,Cache cache, Cacheable cacheable,long ttlInMillis, long periodInMillis) {
+		RefreshTask task = tasks.get(key);
+		if(task == null) {
+			task = new RefreshTask(group==null?DEFAULT_GROUP:group, groupConcurrency, key, cache, cacheable, ttlInMillis, periodInMillis);
+			
+			RefreshTask exists = tasks.putIfAbsent(key, task);
+			if(exists == null) {
+				logger.debug("Add auto refresh cache key: "+key);
+				
+				task.schedule();
+				return true;
+			}
+			task = exists;
+		}
+		
+		task.lastAccessTime = System.currentTimeMillis();
+		return false;
+	}
+	
+	public boolean remove(CacheKey key) {
+		RefreshTask task = tasks.remove(key);
+		if(task != null) {
+			logger.debug("Remove auto refresh cache key: "+key);
+			
+			task.cancel();
+			return true;
+		}
+		return false;
+	}
+	
+	public List<CacheKey> keys() {
+		return new ArrayList<CacheKey>(tasks.keySet());
+	}
+	
+	/**
+	 * 在工作线程池中刷新缓存, 同一个key同时只有一个刷新任务
+	 * 
+	 * @return true if a new refresh task is submitted, false if the key is refreshing
+	 */
+	public boolean refreshAsync(CacheKey key,Cache cache, Cacheable cacheable,long ttlInMillis) {
+		return submit(key, cache, cacheable, ttlInMillis, null);
+	}
+	
+	protected boolean submit(final CacheKey key,final Cache cache, final Cacheable cacheable,final long ttlInMillis,final AtomicInteger groupRunning) {
+		String exists = running.putIfAbsent(key, key.toString());
+		if(exists != null) {
+			return false;
+		}
+		
+		if(groupRunning != null) {
+			groupRunning.incrementAndGet();
+		}
+		
+		Runnable r = new Runnable() {
+			public void run() {
+				try {
+					long ts = System.currentTimeMillis();
+					
+					Object value = cacheable.execute();
+					cache.putObject(key, value, ttlInMillis);
+					
+					refreshCount.incrementAndGet();
+					
+					RefreshTask task = tasks.get(key);
+					if(task != null) {
+						task.lastRefreshTime = System.currentTimeMillis();
+					}
+					
+					if(logger.isDebugEnabled()) {
+						long delta = System.currentTimeMillis() -ts;
+						logger.debug("Auto refresh cache("+ delta+" ms), "+Tools.getCachedInfo(key, value,ttlInMillis));
+					}
+				}catch(Throwable e) {
+					failedCount.incrementAndGet();
+					
+					logger.error("Refresh cache key: "+key+" failed: "+e);
+				}finally {
+					if(groupRunning != null) {
+						groupRunning.decrementAndGet();
+					}
+					
+					running.remove(key);
+				}
+			}
+		};
+		
+		try {
+			getExecutorPool().execute(r);
+		}catch(RuntimeException e) {
+			if(groupRunning != null) {
+				groupRunning.decrementAndGet();
+			}
+			running.remove(key);
+			throw e;
+		}
+		return true;
+	}
+	
+	protected ThreadPoolExecutor getExecutorPool() {
+		if(pool == null) {
+			synchronized (this) {
+				if(pool == null) {
+					logger.info("Init refresh cache thread pool size: "+threads);
+					
+					pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), Tasks.createThreadFactory("Monalisa-CacheRefresh"));
+				}
+			}
+		}
+		return pool;
+	}
+	
+	protected long nextDelay(long periodInMillis) {
+		long delta = (long)(periodInMillis * jitter);
+		if(delta <= 0) {
+			return periodInMillis;
+		}
+		
+		synchronized (random) {
+			return periodInMillis - delta + (long)(random.nextDouble() * 2 * delta);
+		}
+	}
+	
+	public void shutdown() {
+		for(RefreshTask task:tasks.values()) {
+			task.cancel();
+		}
+		tasks.clear();
+		
+		if(pool != null) {
+			pool.shutdownNow();
+		}
+	}
+	
+	public void setThreads(int threads) {
+		this.threads = threads;
+		
+		ThreadPoolExecutor p = pool;
+		if(p != null) {
+			if(threads > p.getMaximumPoolSize()) {
+				p.setMaximumPoolSize(threads);
+				p.setCorePoolSize(threads);
+			}else {
+				p.setCorePoolSize(threads);
+				p.setMaximumPoolSize(threads);
+			}
+		}
+	}
+	
+	/**
+	 * @param jitter the random ratio of the period, default 0.05: period ± 5%
+	 */
+	public void setJitter(double jitter) {
+		this.jitter = jitter;
+	}
+	
+	/**
+	 * @param maxIdlePeriods remove the refresh task if the key is not accessed in the periods, &lt;=0: never remove
+	 */
+	public void setMaxIdlePeriods(int maxIdlePeriods) {
+		this.maxIdlePeriods = maxIdlePeriods;
+	}
+	
+	public int getScheduledCount() {
+		return tasks.size();
+	}
+	
+	public int getActiveCount() {
+		ThreadPoolExecutor p = pool;
+		return p == null ? 0 : p.getActiveCount();
+	}
+	
+	/**
+	 * @return the number of refresh tasks waiting for a worker thread
+	 */
+	public int getQueueSize() {
+		ThreadPoolExecutor p = pool;
+		return p == null ? 0 : p.getQueue().size();
+	}
+	
+	public long getRefreshCount() {
+		return refreshCount.get();
+	}
+	
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+	
+	/**
+	 * @return times of the refresh skipped because the key is refreshing or the group is busy
+	 */
+	public long getSkippedCount() {
+		return skippedCount.get();
+	}
+	
+	public long getDeregisteredCount() {
+		return deregisteredCount.get();
+	}
+	
+	public String toString() {
+		return "scheduled: "+getScheduledCount()+", active: "+getActiveCount()+", queue: "+getQueueSize()
+		     +", refreshed: "+getRefreshCount()+", failed: "+getFailedCount()+", skipped: "+getSkippedCount()+", deregistered: "+getDeregisteredCount();
+	}
+	
+	class RefreshTask implements Runnable{
+		final CacheKey      key;
+		final Cache         cache;
+		final Cacheable     cacheable;
+		final long          ttlInMillis;
+		final long          periodInMillis;
+		final AtomicInteger groupRunning;
+		final int           groupConcurrency;
+		
+		volatile long lastAccessTime  = System.currentTimeMillis();
+		volatile long lastRefreshTime = System.currentTimeMillis();
+		
+		volatile ScheduledFuture<?> future;
+		volatile boolean cancelled = false;
+		
+		RefreshTask(String group,int groupConcurrency,CacheKey key,Cache cache, Cacheable cacheable,long ttlInMillis, long periodInMillis){
+			this.key              = key;
+			this.cache            = cache;
+			this.cacheable        = cacheable;
+			this.ttlInMillis      = ttlInMillis;
+			this.periodInMillis   = periodInMillis;
+			this.groupConcurrency = groupConcurrency;
+			
+			AtomicInteger counter = groups.get(group);
+			if(counter == null) {
+				counter = new AtomicInteger();
+				
+				AtomicInteger exists = groups.putIfAbsent(group, counter);
+				if(exists != null) {
+					counter = exists;
+				}
+			}
+			this.groupRunning = counter;
+		}
+		
+		void schedule() {
+			if(!cancelled) {
+				ScheduledExecutorService scheduler = Tasks.getScheduler();
+				if(!scheduler.isShutdown()) {
+					future = scheduler.schedule(this, nextDelay(periodInMillis), TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+		
+		void cancel() {
+			cancelled = true;
+			
+			ScheduledFuture<?> f = future;
+			if(f != null) {
+				f.cancel(false);
+			}
+		}
+		
+		public void run() {
+			if(cancelled) {
+				return;
+			}
+			
+			try {
+				long now = System.currentTimeMillis();
+				
+				if(maxIdlePeriods > 0 && now - lastAccessTime > maxIdlePeriods * periodInMillis) {
+					deregister("not accessed in "+maxIdlePeriods+" periods");
+					return;
+				}
+				
+				if(now - lastRefreshTime < ttlInMillis && !CacheManager.containsKey(cache, key)) {
+					deregister("evicted from the cache");
+					return;
+				}
+				
+				if(groupConcurrency > 0 && groupRunning.get() >= groupConcurrency) {
+					skippedCount.incrementAndGet();
+				}else if(!submit(key, cache, cacheable, ttlInMillis, groupRunning)) {
+					skippedCount.incrementAndGet();
+				}
+			}catch(Throwable e) {
+				logger.error("Schedule refresh cache key: "+key+" failed: "+e);
+			}
+			
+			schedule();
+		}
+		
+		void deregister(String reason) {
+			if(tasks.remove(key, this)) {
+				deregisteredCount.incrementAndGet();
+				
+				logger.debug("Remove auto refresh cache key: "+key+", "+reason);
+			}
+			cancel();
+		}
+	}
+}
@@ -1,7 +1,11 @@
 package com.tsc9526.monalisa.tools.cache;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 import com.tsc9526.monalisa.tools.cache.decorators.TransactionalCache;
 
@@ -9,6 +13,20 @@ public class TransactionalCacheManager {
 
 	private Map<Cache, TransactionalCache> transactionalCaches = new HashMap<Cache, TransactionalCache>();
 
+	private Map<String, Set<String>> evictTables = new LinkedHashMap<String, Set<String>>();
+	
+	/**
+	 * 事务提交后再清除依赖这些表的缓存, 回滚则忽略
+	 */
+	public void addEvictTables(String dbKey, Collection<String> tables) {
+		Set<String> ts = evictTables.get(dbKey);
+		if (ts == null) {
+			ts = new LinkedHashSet<String>();
+			evictTables.put(dbKey, ts);
+		}
+		ts.addAll(tables);
+	}
+
 	public void clear(Cache cache) {
 		getTransactionalCache(cache).clear();
 	}
@@ -25,12 +43,22 @@ public class TransactionalCacheManager {
 		for (TransactionalCache txCache : transactionalCaches.values()) {
 			txCache.commit();
 		}
+		
+		try {
+			for (Map.Entry<String, Set<String>> e : evictTables.entrySet()) {
+				CacheManager.getInstance().evictRelationTables(e.getKey(), e.getValue());
+			}
+		} finally {
+			evictTables.clear();
+		}
 	}
 
 	public void rollback() {
 		for (TransactionalCache txCache : transactionalCaches.values()) {
 			txCache.rollback();
 		}
+		
+		evictTables.clear();
 	}
 
 	private TransactionalCache getTransactionalCache(Cache cache) {
@@ -5,11 +5,13 @@ import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import com.tsc9526.monalisa.tools.cache.Cache;
+import com.tsc9526.monalisa.tools.cache.CacheManager;
+import com.tsc9526.monalisa.tools.cache.ContainsKeyCache;
 
 /**
  * FIFO (first in, first out) cache decorator
  */
-public class FifoCache implements Cache {
+public class FifoCache implements Cache, ContainsKeyCache {
 
 	private final Cache delegate;
 	private final LinkedList<Object> keyList;
@@ -47,11 +49,15 @@ public class FifoCache implements Cache {
 		return delegate.getObject(key);
 	}
 
+	public boolean containsKey(Object key) {
+		return CacheManager.containsKey(delegate, key);
+	}
+
 	public <T> T removeObject(Object key) {
 		return delegate.removeObject(key);
 	}
 
-	public void clear() {
+	public synchronized void clear() {
 		delegate.clear();
 		keyList.clear();
 	}
@@ -60,7 +66,7 @@ public class FifoCache implements Cache {
 		return delegate.getReadWriteLock();
 	}
 
-	private void cycleKeyList(Object key) {
+	private synchronized void cycleKeyList(Object key) {
 		keyList.addLast(key);
 		if (keyList.size() > size) {
 			Object oldestKey = keyList.removeFirst();
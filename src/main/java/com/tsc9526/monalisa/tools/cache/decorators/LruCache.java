@@ -6,11 +6,13 @@ import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import com.tsc9526.monalisa.tools.cache.Cache;
+import com.tsc9526.monalisa.tools.cache.CacheManager;
+import com.tsc9526.monalisa.tools.cache.ContainsKeyCache;
 
 /**
  * Least Recently Used cache decorator
  */
-public class LruCache implements Cache {
+public class LruCache implements Cache, ContainsKeyCache {
 
 	private final Cache delegate;
 	private Map<Object, Object> keyMap;
@@ -33,7 +35,7 @@ public class LruCache implements Cache {
 		return delegate.keys();
 	}
 
-	public void setSize(final int size) {
+	public synchronized void setSize(final int size) {
 		keyMap = new LinkedHashMap<Object, Object>(size, .75F, true) {
 			private static final long serialVersionUID = 4267176411845948333L;
 
@@ -54,16 +56,22 @@ public class LruCache implements Cache {
 	}
 
 	public <T> T getObject(Object key) {
-		keyMap.get(key); // touch
+		synchronized (this) {
+			keyMap.get(key); // touch
+		}
 		return delegate.getObject(key);
 
 	}
 
+	public boolean containsKey(Object key) {
+		return CacheManager.containsKey(delegate, key);
+	}
+
 	public <T> T removeObject(Object key) {
 		return delegate.removeObject(key);
 	}
 
-	public void clear() {
+	public synchronized void clear() {
 		delegate.clear();
 		keyMap.clear();
 	}
@@ -72,7 +80,7 @@ public class LruCache implements Cache {
 		return delegate.getReadWriteLock();
 	}
 
-	private void cycleKeyList(Object key) {
+	private synchronized void cycleKeyList(Object key) {
 		keyMap.put(key, key);
 		if (eldestKey != null) {
 			delegate.removeObject(eldestKey);
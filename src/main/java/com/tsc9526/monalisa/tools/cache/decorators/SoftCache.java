@@ -7,12 +7,14 @@ import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import com.tsc9526.monalisa.tools.cache.Cache;
+import com.tsc9526.monalisa.tools.cache.CacheManager;
+import com.tsc9526.monalisa.tools.cache.ContainsKeyCache;
 
 /**
  * Soft Reference cache decorator
  */
 @SuppressWarnings({"rawtypes","unchecked"})
-public class SoftCache implements Cache {
+public class SoftCache implements Cache, ContainsKeyCache {
 	
 	private final LinkedList hardLinksToAvoidGarbageCollection;
 	private final ReferenceQueue queueOfGarbageCollectedEntries;
@@ -66,6 +68,11 @@ public class SoftCache implements Cache {
 		return result;
 	}
 
+	public boolean containsKey(Object key) {
+		removeGarbageCollectedItems();
+		return CacheManager.containsKey(delegate, key);
+	}
+
 	public <T> T removeObject(Object key) {
 		removeGarbageCollectedItems();
 		return delegate.removeObject(key);
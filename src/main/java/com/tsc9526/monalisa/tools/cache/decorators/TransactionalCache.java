@@ -6,8 +6,10 @@ import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import com.tsc9526.monalisa.tools.cache.Cache;
+import com.tsc9526.monalisa.tools.cache.CacheManager;
+import com.tsc9526.monalisa.tools.cache.ContainsKeyCache;
 
-public class TransactionalCache implements Cache {
+public class TransactionalCache implements Cache, ContainsKeyCache {
 
 	private Cache delegate;
 	private boolean clearOnCommit;
@@ -43,6 +45,10 @@ public class TransactionalCache implements Cache {
 		return delegate.getObject(key);
 	}
 
+	public boolean containsKey(Object key) {
+		return entriesToAddOnCommit.containsKey(key) || CacheManager.containsKey(delegate, key);
+	}
+
 	public ReadWriteLock getReadWriteLock() {
 		return delegate.getReadWriteLock();
 	}
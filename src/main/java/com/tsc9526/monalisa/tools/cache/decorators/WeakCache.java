@@ -7,13 +7,15 @@ import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import com.tsc9526.monalisa.tools.cache.Cache;
+import com.tsc9526.monalisa.tools.cache.CacheManager;
+import com.tsc9526.monalisa.tools.cache.ContainsKeyCache;
 
 /**
  * Weak Reference cache decorator Thanks to Dr. Heinz Kabutz for his guidance
  * here.
  */
 @SuppressWarnings({"rawtypes","unchecked"})
-public class WeakCache implements Cache {
+public class WeakCache implements Cache, ContainsKeyCache {
 	private final LinkedList hardLinksToAvoidGarbageCollection;
 	private final ReferenceQueue queueOfGarbageCollectedEntries;
 	private final Cache delegate;
@@ -66,6 +68,11 @@ public class WeakCache implements Cache {
 		return result;
 	}
 
+	public boolean containsKey(Object key) {
+		removeGarbageCollectedItems();
+		return CacheManager.containsKey(delegate, key);
+	}
+
 	public <T> T removeObject(Object key) {
 		removeGarbageCollectedItems();
 		return delegate.removeObject(key);
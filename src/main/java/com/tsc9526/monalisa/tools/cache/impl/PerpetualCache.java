@@ -8,9 +8,10 @@ import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.tsc9526.monalisa.tools.cache.Cache;
+import com.tsc9526.monalisa.tools.cache.ContainsKeyCache;
 
 @SuppressWarnings("unchecked")
-public class PerpetualCache implements Cache {
+public class PerpetualCache implements Cache, ContainsKeyCache {
 
 	private String id;
 
@@ -44,6 +45,11 @@ public class PerpetualCache implements Cache {
 		return null;	
 	}
 
+	public boolean containsKey(Object key) {
+		CacheObject o =  cache.get(key);
+		return o!=null && !o.isExpired();
+	}
+
 	public List<Object> keys(){
 		List<Object> s = new ArrayList<Object>();
 		s.addAll( cache.keySet() );
@@ -51,7 +57,8 @@ public class PerpetualCache implements Cache {
 	}
 	
 	public <T> T removeObject(Object key) {
-		return (T)cache.remove(key);
+		CacheObject o = cache.remove(key);
+		return o==null?null:(T)o.data;
 	}
 
 	public void clear() {
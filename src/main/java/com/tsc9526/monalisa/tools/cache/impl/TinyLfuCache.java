@@ -0,0 +1,629 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.tools.cache.impl;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.tsc9526.monalisa.orm.model.Model;
+import com.tsc9526.monalisa.tools.cache.Cache;
+import com.tsc9526.monalisa.tools.cache.ContainsKeyCache;
+import com.tsc9526.monalisa.tools.cache.CacheValue;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
+import com.tsc9526.monalisa.tools.datatable.Page;
+
+/**
+ * 线程安全的有界缓存: <br>
+ * <ul>
+ * <li>按key的hash分段加锁(lock striping)</li>
+ * <li>W-TinyLFU: 每段分为窗口区(约1%)和主区, 都是access-order的LRU链表. 
+ *     新key先进入窗口区, 被挤出窗口区时, 主区有空间则直接进入主区, 
+ *     否则它的访问频率(Count-Min Sketch估算)必须高于主区所有待淘汰的key才会替换它们, 不然淘汰它自己</li>
+ * <li>同时限制条目数和估算的内存字节数</li>
+ * <li>过期条目在写入时按段定期清理, get时只检查当前条目</li>
+ * </ul>
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class TinyLfuCache implements Cache, ContainsKeyCache {
+	public final static int  DEFAULT_MAX_ENTRIES = 5*1024;
+	public final static long DEFAULT_MAX_BYTES   = 64*1024*1024L;
+	
+	private final static int MAX_SEGMENTS = 16;
+	
+	private String id;
+	
+	private Segment[] segments;
+	private int       segmentShift;
+	
+	private FrequencySketch sketch;
+	
+	private long reapIntervalInMillis = 1000;
+	
+	private ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+	
+	private AtomicLong hitCount      = new AtomicLong();
+	private AtomicLong missCount     = new AtomicLong();
+	private AtomicLong evictionCount = new AtomicLong();
+	private AtomicLong rejectCount   = new AtomicLong();
+	
+	public TinyLfuCache(String id) {
+		this(id,DEFAULT_MAX_ENTRIES,DEFAULT_MAX_BYTES);
+	}
+	
+	public TinyLfuCache(String id,int maxEntries,long maxBytes) {
+		if(maxEntries<1 || maxBytes<1){
+			throw new RuntimeException("Invalid cache size, maxEntries: "+maxEntries+", maxBytes: "+maxBytes);
+		}
+		
+		this.id = id;
+		
+		int n=2;
+		while(n<MAX_SEGMENTS && n*64<=maxEntries){
+			n<<=1;
+		}
+		
+		segmentShift = 32-Integer.numberOfTrailingZeros(n);
+		segments     = new Segment[n];
+		for(int i=0;i<n;i++){
+			segments[i]=new Segment( (maxEntries+n-1)/n, (maxBytes+n-1)/n );
+		}
+		
+		sketch = new FrequencySketch(maxEntries);
+	}
+	
+	public String getId() {
+		return id;
+	}
+
+	public int getSize() {
+		int size=0;
+		for(Segment s:segments){
+			s.lock();
+			try{
+				size+=s.window.size()+s.main.size();
+			}finally{
+				s.unlock();
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * @return the estimated bytes of all the cached entries
+	 */
+	public long getWeightedSize() {
+		long bytes=0;
+		for(Segment s:segments){
+			s.lock();
+			try{
+				bytes+=s.bytes;
+			}finally{
+				s.unlock();
+			}
+		}
+		return bytes;
+	}
+	
+	public <T> T putObject(Object key, T value,long ttlInMillis) {
+		int  h   = hash(key);
+		long now = System.currentTimeMillis();
+		
+		Segment s = segmentFor(h);
+		
+		long weight = estimateBytes(key)+estimateBytes(value)+64;
+		if(weight>s.maxBytes){
+			removeObject(key);
+			rejectCount.incrementAndGet();
+			return value;
+		}
+		
+		Node node=new Node(key,value,now+ttlInMillis,weight,h);
+		
+		s.lock();
+		try{
+			s.reapIfNeeded(now);
+			
+			//更新已在主区的key: 留在主区
+			boolean inMain=s.main.containsKey(key);
+			
+			s.remove(key);
+			if(inMain){
+				s.main.put(key, node);
+			}else{
+				s.window.put(key, node);
+			}
+			s.bytes+=weight;
+			
+			s.evict(now);
+		}finally{
+			s.unlock();
+		}
+		
+		return value;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T getObject(Object key) {
+		int h = hash(key);
+		
+		sketch.increment(h);
+		
+		Segment s = segmentFor(h);
+		s.lock();
+		try{
+			Node node=s.window.get(key);
+			if(node==null){
+				node=s.main.get(key);
+			}
+			
+			if(node!=null){
+				if(!node.isExpired(System.currentTimeMillis())){
+					hitCount.incrementAndGet();
+					
+					return (T)node.value;
+				}
+				
+				s.remove(key);
+			}
+		}finally{
+			s.unlock();
+		}
+		
+		missCount.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * The access order of the segment and the frequency sketch are not changed
+	 */
+	public boolean containsKey(Object key) {
+		Segment s = segmentFor(hash(key));
+		s.lock();
+		try{
+			return s.window.containsKey(key) || s.main.containsKey(key);
+		}finally{
+			s.unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T removeObject(Object key) {
+		Segment s = segmentFor(hash(key));
+		s.lock();
+		try{
+			Node node=s.remove(key);
+			return node!=null?(T)node.value:null;
+		}finally{
+			s.unlock();
+		}
+	}
+
+	public void clear() {
+		for(Segment s:segments){
+			s.lock();
+			try{
+				s.window.clear();
+				s.main.clear();
+				s.bytes=0;
+			}finally{
+				s.unlock();
+			}
+		}
+	}
+
+	public List<Object> keys() {
+		long now=System.currentTimeMillis();
+		
+		List<Object> keys=new ArrayList<Object>();
+		for(Segment s:segments){
+			s.lock();
+			try{
+				for(Node node:s.window.values()){
+					if(!node.isExpired(now)){
+						keys.add(node.key);
+					}
+				}
+				for(Node node:s.main.values()){
+					if(!node.isExpired(now)){
+						keys.add(node.key);
+					}
+				}
+			}finally{
+				s.unlock();
+			}
+		}
+		return keys;
+	}
+	
+	public ReadWriteLock getReadWriteLock() {
+		return readWriteLock;
+	}
+	
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	public long getRejectCount() {
+		return rejectCount.get();
+	}
+	
+	public long getReapIntervalInMillis() {
+		return reapIntervalInMillis;
+	}
+
+	public void setReapIntervalInMillis(long reapIntervalInMillis) {
+		this.reapIntervalInMillis = reapIntervalInMillis;
+	}
+	
+	/**
+	 * 估算对象占用的内存字节数, 集合类只抽样前面的一部分元素
+	 * 
+	 * @param v the object
+	 * @return estimated bytes
+	 */
+	protected long estimateBytes(Object v){
+		return estimateBytes(v,3);
+	}
+	
+	protected long estimateBytes(Object v,int depth){
+		if(v==null){
+			return 4;
+		}else if(v instanceof CharSequence){
+			return 40+2L*((CharSequence)v).length();
+		}else if(v instanceof Number || v instanceof Boolean || v instanceof Character){
+			return 24;
+		}else if(v instanceof Date){
+			return 32;
+		}else if(v instanceof byte[]){
+			return 16+((byte[])v).length;
+		}else if(v instanceof char[]){
+			return 16+2L*((char[])v).length;
+		}
+		
+		if(v instanceof CacheValue){
+			//stale-while-revalidate 模式下的包装对象: 按实际的值估算
+			return 24+estimateBytes(((CacheValue)v).getValue(),depth);
+		}
+		
+		if(depth<=0){
+			return 64;
+		}
+		
+		if(v instanceof Collection){
+			Collection<?> c=(Collection<?>)v;
+			
+			long bytes=0;
+			int  n=0;
+			for(Iterator<?> it=c.iterator();it.hasNext() && n<16;n++){
+				bytes+=estimateBytes(it.next(),depth-1)+8;
+			}
+			return 40+(n==0?0:bytes*c.size()/n);
+		}else if(v instanceof Map){
+			Map<?,?> m=(Map<?,?>)v;
+			
+			long bytes=0;
+			int  n=0;
+			for(Iterator<? extends Map.Entry<?,?>> it=m.entrySet().iterator();it.hasNext() && n<32;n++){
+				Map.Entry<?,?> e=it.next();
+				bytes+=estimateBytes(e.getKey(),depth-1)+estimateBytes(e.getValue(),depth-1)+32;
+			}
+			return 48+(n==0?0:bytes*m.size()/n);
+		}else if(v instanceof Model){
+			Model<?> m=(Model<?>)v;
+			
+			long bytes=64;
+			for(FGS fgs:m.fields()){
+				bytes+=estimateBytes(fgs.getObject(m),depth-1)+8;
+			}
+			return bytes;
+		}else if(v instanceof Page){
+			return 48+estimateBytes(((Page<?>)v).getRows(),depth);
+		}else if(v instanceof Object[]){
+			Object[] xs=(Object[])v;
+			
+			long bytes=0;
+			int  n=Math.min(xs.length,16);
+			for(int i=0;i<n;i++){
+				bytes+=estimateBytes(xs[i],depth-1)+8;
+			}
+			return 16+(n==0?0:bytes*xs.length/n);
+		}else if(v.getClass().isArray()){
+			return 16+8L*Array.getLength(v);
+		}
+		
+		return 64;
+	}
+	
+	private Segment segmentFor(int h){
+		return segments[h>>>segmentShift];
+	}
+	
+	static int hash(Object key){
+		int x=key==null?0:key.hashCode();
+		
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+	
+	public boolean equals(Object o) {
+		if (this == o){
+			return true;
+		}
+		
+		if (!(o instanceof Cache)){
+			return false;
+		}
+
+		Cache otherCache = (Cache) o;
+		return getId().equals(otherCache.getId());
+	}
+
+	public int hashCode() {
+		return getId().hashCode();
+	}
+	
+	static class Node{
+		final Object key;
+		final Object value;
+		final long   expiredTime;
+		final long   weight;
+		final int    hash;
+		
+		Node(Object key,Object value,long expiredTime,long weight,int hash){
+			this.key        =key;
+			this.value      =value;
+			this.expiredTime=expiredTime;
+			this.weight     =weight;
+			this.hash       =hash;
+		}
+		
+		boolean isExpired(long now){
+			return expiredTime < now;
+		}
+	}
+	
+	class Segment extends ReentrantLock{
+		private static final long serialVersionUID = -1795716428512817547L;
+		
+		final LinkedHashMap<Object,Node> window=new LinkedHashMap<Object,Node>(16,0.75f,true);
+		final LinkedHashMap<Object,Node> main  =new LinkedHashMap<Object,Node>(16,0.75f,true);
+		
+		final int  maxEntries;
+		final int  maxWindow;
+		final int  maxMain;
+		final long maxBytes;
+		
+		long bytes;
+		long nextReapTime;
+		
+		Segment(int maxEntries,long maxBytes){
+			this.maxEntries=maxEntries;
+			this.maxWindow =Math.max(1, maxEntries/100);
+			this.maxMain   =Math.max(0, maxEntries-maxWindow);
+			this.maxBytes  =maxBytes;
+		}
+		
+		Node remove(Object key){
+			Node node=window.remove(key);
+			if(node==null){
+				node=main.remove(key);
+			}
+			if(node!=null){
+				bytes-=node.weight;
+			}
+			return node;
+		}
+		
+		/**
+		 * 窗口区超出容量(或总字节数超出)时, 窗口区最久未访问的key作为候选进入主区
+		 * 
+		 * @param now current time
+		 */
+		void evict(long now){
+			while(window.size()>maxWindow){
+				admit(window.values().iterator().next(), now);
+			}
+			
+			while(bytes>maxBytes){
+				if(!window.isEmpty()){
+					admit(window.values().iterator().next(), now);
+				}else{
+					Node victim=main.values().iterator().next();
+					main.remove(victim.key);
+					bytes-=victim.weight;
+					
+					evictionCount.incrementAndGet();
+				}
+			}
+		}
+		
+		/**
+		 * 先决定候选是否准入, 再淘汰主区的key: 拒绝候选时主区不变
+		 * 
+		 * @param candidate the node removed from the window 
+		 * @param now current time
+		 */
+		void admit(Node candidate,long now){
+			window.remove(candidate.key);
+			
+			long freeBytes  =bytes-maxBytes;
+			int  freeEntries=main.size()+1-maxMain;
+			
+			List<Node> victims=new ArrayList<Node>();
+			int candidateFrequency=-1;
+			for(Iterator<Node> it=main.values().iterator();it.hasNext() && (freeBytes>0 || freeEntries>0);){
+				Node victim=it.next();
+				if(!victim.isExpired(now)){
+					if(candidateFrequency<0){
+						candidateFrequency=sketch.frequency(candidate.hash);
+					}
+					
+					if(sketch.frequency(victim.hash)>=candidateFrequency){
+						victims=null;
+						break;
+					}
+				}
+				
+				victims.add(victim);
+				freeBytes  -=victim.weight;
+				freeEntries--;
+			}
+			
+			if(victims==null || freeBytes>0 || freeEntries>0){
+				bytes-=candidate.weight;
+				rejectCount.incrementAndGet();
+				return;
+			}
+			
+			for(Node victim:victims){
+				main.remove(victim.key);
+				bytes-=victim.weight;
+				
+				evictionCount.incrementAndGet();
+			}
+			main.put(candidate.key, candidate);
+		}
+		
+		void reapIfNeeded(long now){
+			if(now<nextReapTime){
+				return;
+			}
+			
+			nextReapTime=now+reapIntervalInMillis;
+			
+			reap(window, now);
+			reap(main, now);
+		}
+		
+		void reap(Map<Object,Node> map,long now){
+			for(Iterator<Node> it=map.values().iterator();it.hasNext();){
+				Node node=it.next();
+				if(node.isExpired(now)){
+					it.remove();
+					bytes-=node.weight;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Count-Min Sketch, 每个key 4个4-bit计数器, 总计数达到10倍容量时所有计数减半(aging)
+	 */
+	static class FrequencySketch{
+		static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+		static final long RESET_MASK = 0x7777777777777777L;
+		
+		final AtomicLongArray table;
+		final int             tableMask;
+		final int             sampleSize;
+		final AtomicInteger   size=new AtomicInteger();
+		
+		FrequencySketch(int maxEntries){
+			int n=16;
+			while(n<maxEntries && n<(1<<24)){
+				n<<=1;
+			}
+			
+			table     =new AtomicLongArray(n);
+			tableMask =n-1;
+			sampleSize=10*Math.max(maxEntries,16);
+		}
+		
+		int frequency(int h){
+			int start=(h & 3) << 2;
+			int f=Integer.MAX_VALUE;
+			for(int i=0;i<4;i++){
+				int offset=(start+i) << 2;
+				int count =(int)((table.get(indexOf(h,i)) >>> offset) & 0xfL);
+				f=Math.min(f, count);
+			}
+			return f;
+		}
+		
+		void increment(int h){
+			int start=(h & 3) << 2;
+			
+			boolean added=false;
+			for(int i=0;i<4;i++){
+				added |= incrementAt(indexOf(h,i),start+i);
+			}
+			
+			if(added && size.incrementAndGet()>=sampleSize){
+				reset();
+			}
+		}
+		
+		boolean incrementAt(int i,int j){
+			int  offset=j << 2;
+			long mask  =0xfL << offset;
+			for(;;){
+				long v=table.get(i);
+				if((v & mask)==mask){
+					return false;
+				}
+				
+				if(table.compareAndSet(i, v, v+(1L << offset))){
+					return true;
+				}
+			}
+		}
+		
+		int indexOf(int h,int i){
+			long hash=(h+SEEDS[i])*SEEDS[i];
+			hash += hash >>> 32;
+			return ((int)hash) & tableMask;
+		}
+		
+		synchronized void reset(){
+			if(size.get()<sampleSize){
+				return;
+			}
+			
+			for(int i=0;i<table.length();i++){
+				for(;;){
+					long v=table.get(i);
+					if(table.compareAndSet(i, v, (v >>> 1) & RESET_MASK)){
+						break;
+					}
+				}
+			}
+			size.set(size.get()/2);
+		}
+	}
+}
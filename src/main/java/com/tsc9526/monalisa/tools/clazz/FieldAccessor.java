@@ -0,0 +1,35 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.tools.clazz;
+
+/**
+ * Base class of the generated field accessors, the fields are accessed by index. 
+ * 
+ * @see MelpAccessor
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public abstract class FieldAccessor {
+	
+	public abstract Object get(Object bean,int index);
+	
+	public abstract void set(Object bean,int index,Object value);
+	
+	protected RuntimeException unsupported(int index){
+		return new IllegalArgumentException("Field index not found: "+index+", accessor: "+getClass().getName());
+	}
+}
@@ -0,0 +1,376 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.tools.clazz;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
+import com.tsc9526.monalisa.tools.logger.Logger;
+
+/**
+ * Generate a field accessor class for the bean class, for example: <br>
+ * <code>
+ * public class Xxx$$MelpAccessor extends FieldAccessor{ <br>
+ * &nbsp;&nbsp;public Object get(Object bean,int index){ <br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;switch(index){ <br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;case 0: return ((Xxx)bean).getF0();<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;case 1: return ((Xxx)bean).getF1();<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;...<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;}<br>
+ * &nbsp;&nbsp;}<br>
+ * &nbsp;&nbsp;public void set(Object bean,int index,Object value){ ... } <br>
+ * }
+ * </code> <br>
+ * 
+ * Only the public getter/setter methods(or public fields) of a public class can be accessed,
+ * the others will be still accessed by reflection. <br>
+ * The ASM classes are only referenced by {@link Generator}, so this class can be loaded without ASM.
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class MelpAccessor {
+	static Logger logger=Logger.getLogger(MelpAccessor.class.getName());
+	
+	/**
+	 * Set to false to disable the generated accessors, all fields will be accessed by reflection. 
+	 */
+	public static boolean CFG_ENABLE = true;
+	
+	public final static String SUFFIX = "$$MelpAccessor";
+	
+	private static Boolean asmReady = null;
+	
+	private static Map<ClassLoader, AccessorClassLoader> hLoaders=new WeakHashMap<ClassLoader, AccessorClassLoader>();
+	
+	public static boolean isAsmReady(){
+		if(asmReady==null){
+			try{
+				Class.forName(MelpLib.libAsmClass,false,MelpAccessor.class.getClassLoader());
+				asmReady = true;
+			}catch(Throwable e){
+				asmReady = false;
+			}
+		}
+		return asmReady;
+	}
+	
+	/**
+	 * Generate the accessor class and bind it to the fields
+	 * 
+	 * @param clazz  the bean class
+	 * @param fields the fields of the class
+	 * @return true if the accessor is generated, otherwise false(the fields will be accessed by reflection).
+	 */
+	public static boolean enhance(Class<?> clazz,Collection<FGS> fields){
+		if(!CFG_ENABLE || fields.isEmpty() || !isAsmReady() || !isAccessible(clazz)){
+			return false;
+		}
+		
+		List<Slot> slots=new ArrayList<Slot>();
+		for(FGS fgs:fields){
+			Slot slot=new Slot(fgs,slots.size());
+			if(slot.canGet() || slot.canSet()){
+				slots.add(slot);
+			}
+		}
+		
+		if(slots.isEmpty()){
+			return false;
+		}
+		
+		try{
+			String name = clazz.getName()+SUFFIX;
+			byte[] code = Generator.generate(clazz, name, slots);
+			
+			FieldAccessor accessor=(FieldAccessor)getClassLoader(clazz).define(name, code).getDeclaredConstructor().newInstance();
+			
+			for(Slot slot:slots){
+				slot.fgs.bindAccessor(accessor, slot.index, slot.canGet(), slot.canSet());
+			}
+			return true;
+		}catch(Throwable e){
+			logger.warn("Generate field accessor failed, class: "+clazz.getName()+", use reflection instead: "+e);
+			return false;
+		}
+	}
+	 
+	private static AccessorClassLoader getClassLoader(Class<?> clazz){
+		synchronized(hLoaders){
+			AccessorClassLoader loader=hLoaders.get(clazz.getClassLoader());
+			if(loader==null){
+				loader=new AccessorClassLoader(clazz.getClassLoader());
+				hLoaders.put(clazz.getClassLoader(), loader);
+			}
+			return loader;
+		}
+	}
+	
+	private static boolean isAccessible(Class<?> clazz){
+		if(clazz.getClassLoader()==null || clazz.isInterface() || clazz.isArray() || clazz.isPrimitive()){
+			return false;
+		}
+		
+		if(clazz.getName().startsWith("java.")){
+			return false;
+		}
+		
+		Class<?> c=clazz;
+		while(c!=null){
+			if(!Modifier.isPublic(c.getModifiers())){
+				return false;
+			}
+			c=c.getEnclosingClass();
+		}
+		return true;
+	}
+	
+	/**
+	 * Bytecode generation, loaded only if the ASM library is ready
+	 */
+	static class Generator implements Opcodes{
+		static byte[] generate(Class<?> clazz,String name,List<Slot> slots){
+			String owner     = Type.getInternalName(clazz);
+			String className = name.replace('.', '/');
+			String superName = Type.getInternalName(FieldAccessor.class);
+		
+			ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+			cw.visit(V1_6, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, className, null, superName, null);
+		
+			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V", false);
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		
+			generateGet(cw, owner, superName, slots);
+			generateSet(cw, owner, superName, slots);
+		
+			cw.visitEnd();
+			return cw.toByteArray();
+		}
+	
+		private static void generateGet(ClassWriter cw,String owner,String superName,List<Slot> slots){
+			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "get", "(Ljava/lang/Object;I)Ljava/lang/Object;", null, null);
+			mv.visitCode();
+		
+			Label   dflt   = new Label();
+			Label[] labels = createLabels(slots, dflt, true);
+		
+			mv.visitVarInsn(ILOAD, 2);
+			mv.visitTableSwitchInsn(0, labels.length-1, dflt, labels);
+		
+			for(Slot slot:slots){
+				if(slot.canGet()){
+					mv.visitLabel(labels[slot.index]);
+					mv.visitVarInsn(ALOAD, 1);
+					mv.visitTypeInsn(CHECKCAST, owner);
+				
+					Class<?> type;
+					if(slot.getter!=null){
+						Method m=slot.getter;
+						type=m.getReturnType();
+						mv.visitMethodInsn(INVOKEVIRTUAL, owner, m.getName(), Type.getMethodDescriptor(m), false);
+					}else{
+						Field f=slot.getField;
+						type=f.getType();
+						mv.visitFieldInsn(GETFIELD, owner, f.getName(), Type.getDescriptor(type));
+					}
+				
+					box(mv, type);
+					mv.visitInsn(ARETURN);
+				}
+			}
+		
+			mv.visitLabel(dflt);
+			throwUnsupported(mv, superName);
+		
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+	
+		private static void generateSet(ClassWriter cw,String owner,String superName,List<Slot> slots){
+			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "set", "(Ljava/lang/Object;ILjava/lang/Object;)V", null, null);
+			mv.visitCode();
+		
+			Label   dflt   = new Label();
+			Label[] labels = createLabels(slots, dflt, false);
+		
+			mv.visitVarInsn(ILOAD, 2);
+			mv.visitTableSwitchInsn(0, labels.length-1, dflt, labels);
+		
+			for(Slot slot:slots){
+				if(slot.canSet()){
+					mv.visitLabel(labels[slot.index]);
+					mv.visitVarInsn(ALOAD, 1);
+					mv.visitTypeInsn(CHECKCAST, owner);
+					mv.visitVarInsn(ALOAD, 3);
+				
+					if(slot.setter!=null){
+						Method m=slot.setter;
+						unbox(mv, m.getParameterTypes()[0]);
+						mv.visitMethodInsn(INVOKEVIRTUAL, owner, m.getName(), Type.getMethodDescriptor(m), false);
+					
+						Class<?> r=m.getReturnType();
+						if(r==long.class || r==double.class){
+							mv.visitInsn(POP2);
+						}else if(r!=void.class){
+							mv.visitInsn(POP);
+						}
+					}else{
+						Field f=slot.setField;
+						unbox(mv, f.getType());
+						mv.visitFieldInsn(PUTFIELD, owner, f.getName(), Type.getDescriptor(f.getType()));
+					}
+					mv.visitInsn(RETURN);
+				}
+			}
+		
+			mv.visitLabel(dflt);
+			throwUnsupported(mv, superName);
+		
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+	
+		private static Label[] createLabels(List<Slot> slots,Label dflt,boolean get){
+			Label[] labels=new Label[slots.size()];
+			for(Slot slot:slots){
+				boolean ok= get ? slot.canGet() : slot.canSet();
+				labels[slot.index]= ok ? new Label() : dflt;
+			}
+			return labels;
+		}
+	
+		private static void throwUnsupported(MethodVisitor mv,String superName){
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitVarInsn(ILOAD, 2);
+			mv.visitMethodInsn(INVOKEVIRTUAL, superName, "unsupported", "(I)Ljava/lang/RuntimeException;", false);
+			mv.visitInsn(ATHROW);
+		}
+	
+		private static void box(MethodVisitor mv,Class<?> type){
+			if(type.isPrimitive()){
+				Class<?> w=wrapper(type);
+				mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(w), "valueOf", "("+Type.getDescriptor(type)+")"+Type.getDescriptor(w), false);
+			}
+		}
+	
+		private static void unbox(MethodVisitor mv,Class<?> type){
+			if(type.isPrimitive()){
+				Class<?> w=wrapper(type);
+				mv.visitTypeInsn(CHECKCAST, Type.getInternalName(w));
+				mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(w), type.getName()+"Value", "()"+Type.getDescriptor(type), false);
+			}else if(type!=Object.class){
+				mv.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+			}
+		}
+	}
+	
+	private static Class<?> wrapper(Class<?> type){
+		if(type==int.class){
+			return Integer.class;
+		}else if(type==long.class){
+			return Long.class;
+		}else if(type==boolean.class){
+			return Boolean.class;
+		}else if(type==double.class){
+			return Double.class;
+		}else if(type==float.class){
+			return Float.class;
+		}else if(type==short.class){
+			return Short.class;
+		}else if(type==byte.class){
+			return Byte.class;
+		}else{
+			return Character.class;
+		}
+	}
+	
+	private static boolean isPublic(Method m){
+		return m!=null && Modifier.isPublic(m.getModifiers()) && !Modifier.isStatic(m.getModifiers()); 
+	}
+	
+	private static boolean isPublic(Field f){
+		return f!=null && Modifier.isPublic(f.getModifiers()) && !Modifier.isStatic(f.getModifiers()) && isAccessible(f.getDeclaringClass());
+	}
+	
+	static class Slot{
+		FGS fgs;
+		int index;
+		
+		Method getter;
+		Method setter;
+		Field  getField;
+		Field  setField;
+		
+		Slot(FGS fgs,int index){
+			this.fgs   = fgs;
+			this.index = index;
+			
+			Field f=fgs.getField();
+			
+			if(isPublic(fgs.getGetMethod()) && fgs.getGetMethod().getReturnType()!=void.class){
+				getter=fgs.getGetMethod();
+			}else if(fgs.getGetMethod()==null && isPublic(f)){
+				getField=f;
+			}
+			
+			if(isPublic(fgs.getSetMethod())){
+				setter=fgs.getSetMethod();
+			}else if(fgs.getSetMethod()==null && isPublic(f) && !Modifier.isFinal(f.getModifiers())){
+				setField=f;
+			}
+		}
+		
+		boolean canGet(){
+			return getter!=null || getField!=null;
+		}
+		
+		boolean canSet(){
+			return setter!=null || setField!=null;
+		}
+	}
+	
+	static class AccessorClassLoader extends ClassLoader{
+		AccessorClassLoader(ClassLoader parent){
+			super(parent);
+		}
+		
+		synchronized Class<?> define(String name,byte[] code){
+			Class<?> c=findLoadedClass(name);
+			if(c==null){
+				c=defineClass(name, code, 0, code.length);
+			}
+			return c;
+		}
+	}
+}
@@ -36,6 +36,7 @@ import com.google.gson.JsonObject;
 import com.tsc9526.monalisa.orm.datasource.DbProp;
 import com.tsc9526.monalisa.tools.annotation.Alias;
 import com.tsc9526.monalisa.tools.converters.TypeConverter;
+import com.tsc9526.monalisa.tools.io.MelpClose;
 import com.tsc9526.monalisa.tools.parser.Parser;
 import com.tsc9526.monalisa.tools.parser.impl.BeanParser;
 import com.tsc9526.monalisa.tools.parser.impl.JsonObjectParser;
@@ -343,6 +344,8 @@ public class MelpClass {
 					}
 				}
 			}
+			
+			MelpAccessor.enhance(clazz, hFields.values());
 		}
 	 	
 		/**
@@ -488,6 +491,11 @@ public class MelpClass {
 		protected Method setMethod;
 		
 		protected boolean nullNone=false;
+		
+		protected FieldAccessor accessor;
+		protected int           accessorIndex = -1;
+		protected boolean       accessorGet   = false;
+		protected boolean       accessorSet   = false;
 	 	
 		public FGS(Class<?> type,String fieldName,String ... names){
 			this.fieldName=fieldName;
@@ -519,7 +527,44 @@ public class MelpClass {
 			}
 
 			getMethod=getMethod(clazz,get);
-			setMethod=getMethod(clazz,set, field.getType());		
+			setMethod=getMethod(clazz,set, field.getType());
+			
+			setAccessible();
+		}
+		
+		private void setAccessible(){
+			try{
+				if(getMethod!=null){
+					getMethod.setAccessible(true);
+				}
+				if(setMethod!=null){
+					setMethod.setAccessible(true);
+				}
+				field.setAccessible(true);
+			}catch(Exception e){
+				MelpClose.close(e);
+			}
+		}
+		
+		/**
+		 * Access the field by the generated accessor instead of reflection
+		 * 
+		 * @param accessor  the generated accessor
+		 * @param index     index of this field in the accessor
+		 * @param get       true if the accessor can get the field value
+		 * @param set       true if the accessor can set the field value
+		 * 
+		 * @see MelpAccessor
+		 */
+		void bindAccessor(FieldAccessor accessor,int index,boolean get,boolean set){
+			this.accessor      = accessor;
+			this.accessorIndex = index;
+			this.accessorGet   = get;
+			this.accessorSet   = set;
+		}
+		
+		public FieldAccessor getAccessor(){
+			return accessor;
 		}
 		
 		public boolean isSameName(FGS other){
@@ -575,11 +620,11 @@ public class MelpClass {
 				if(field==null && bean instanceof Map){
 					return getMapObject((Map)bean);
 				}else{			
-					if(getMethod!=null){
-						getMethod.setAccessible(true);
+					if(accessorGet){
+						return accessor.get(bean, accessorIndex);
+					}else if(getMethod!=null){
 						return getMethod.invoke(bean);				
 					}else{
-						field.setAccessible(true);
 						return field.get(bean);				
 					}		
 				}
@@ -600,10 +645,11 @@ public class MelpClass {
 						return;
 					}
 					
-					if(setMethod!=null){
+					if(accessorSet){
+						accessor.set(target, accessorIndex, theValue);
+					}else if(setMethod!=null){
 						setMethod.invoke(target, theValue);
 					}else{
-						field.setAccessible(true);
 						field.set(target, theValue);
 					}
 				}
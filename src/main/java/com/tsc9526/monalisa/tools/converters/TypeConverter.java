@@ -64,6 +64,52 @@ public class TypeConverter {
 		}		 
 	}
 	  
+	/**
+	 * Convert with the conversion resolved by {@link #getConversion(Class)}, 
+	 * no conversion is called if the value is already the target type.
+	 * 
+	 * @param v the value
+	 * @param type the target type
+	 * @param conversion the conversion of the target type
+	 * @param <T> the target type
+	 * @return the converted value
+	 */
+	public <T> T convert(Object v, Class<T> type, Conversion<?> conversion) {
+		if(v==null || v instanceof JsonNull){
+			return null;
+		}
+		
+		if(type==null || type.isInstance(v)){
+			return (T)v;
+		}else if(conversion!=null){
+			return (T)conversion.convert(v, type);
+		}else{
+			return null;
+		}
+	}
+	
+	/**
+	 * Resolve the conversion of the target type once, then call {@link #convert(Object, Class, Conversion)} for each value
+	 * 
+	 * @param type the target type
+	 * @return the conversion, null if not found
+	 */
+	public Conversion<?> getConversion(Class<?> type){
+		if(type==null){
+			return null;
+		}
+		
+		if(type.isEnum()){
+			return typeConversions.get(Conversion.TYPE_ENUM);
+		}else{
+			Conversion<?> conversion=typeConversions.get(type);
+			if(conversion==null){
+				conversion=typeConversions.get(type.isArray() ? Conversion.TYPE_ARRAYS : Conversion.TYPE_OBJECT);
+			}
+			return conversion;
+		}
+	}
+	
 	protected <T> T doConvert(Object value, Class<T> type){
 		Conversion<?> conversion=null;
 		if(type.isEnum()){
@@ -0,0 +1,68 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.tools.datatable;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * 键集分页(seek pagination)的结果: 没有页码, 通过续页标记获取下一页
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class KeysetPage<T> extends Page<T> {
+	private static final long serialVersionUID = -33322L;
+	
+	/**
+	 * The token of the next page, null if no more pages
+	 */
+	private String next;
+	
+	public KeysetPage(){
+	}
+	
+	/**
+	 * @param rows    records in this page
+	 * @param records total records, -1: not counted
+	 * @param size    size of page
+	 * @param next    the token of the next page, null if no more pages
+	 */
+	public KeysetPage(List<T> rows,long records,long size,String next){
+		super(rows,records,size,0);
+		
+		this.next=next;
+	}
+	
+	/**
+	 * @return the token of the next page, null if no more pages
+	 */
+	public String getNext(){
+		return next;
+	}
+	
+	public boolean hasNext(){
+		return next!=null;
+	}
+	
+	protected void writeJson(JsonWriter w)throws IOException{
+		super.writeJson(w);
+		
+		w.name("next").value(next);
+	}
+}
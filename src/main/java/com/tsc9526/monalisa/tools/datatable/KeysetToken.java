@@ -0,0 +1,165 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package com.tsc9526.monalisa.tools.datatable;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.tsc9526.monalisa.tools.string.MelpString;
+
+/**
+ * 键集分页(seek pagination)的续页标记: 记录上一页最后一条记录的排序字段的值. <br>
+ * 标记中只保存值和类型, 不会反序列化任何对象, 可以安全的传给客户端.
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+public class KeysetToken {
+	
+	/**
+	 * @param keys   the sort keys
+	 * @param values the values of the last row
+	 * @return the token
+	 */
+	public static String encode(List<String> keys,Object[] values){
+		JsonArray array=new JsonArray();
+		array.add(new JsonPrimitive(join(keys)));
+		
+		for(Object v:values){
+			JsonArray x=new JsonArray();
+			x.add(new JsonPrimitive(getType(v)));
+			x.add(new JsonPrimitive(getString(v)));
+			array.add(x);
+		}
+		
+		return MelpString.bytesToHexString(MelpString.toBytesUtf8(array.toString())).toLowerCase();
+	}
+	
+	/**
+	 * @param keys  the sort keys
+	 * @param token the token
+	 * @return the values of the last row
+	 */
+	public static Object[] decode(List<String> keys,String token){
+		try{
+			String json=new String(MelpString.hexStringToBytes(token),"utf-8");
+			JsonArray array=new JsonParser().parse(json).getAsJsonArray();
+			
+			if(!join(keys).equals(array.get(0).getAsString()) || array.size()!=keys.size()+1){
+				throw new RuntimeException("Keyset token does not match the sort keys: "+keys);
+			}
+			
+			Object[] values=new Object[keys.size()];
+			for(int i=0;i<values.length;i++){
+				JsonArray x=array.get(i+1).getAsJsonArray();
+				values[i]=getValue(x.get(0).getAsString(),x.get(1));
+			}
+			return values;
+		}catch(RuntimeException e){
+			throw e;
+		}catch(Exception e){
+			throw new RuntimeException("Invalid keyset token: "+token,e);
+		}
+	}
+	
+	private static String join(List<String> keys){
+		StringBuilder sb=new StringBuilder();
+		for(String k:keys){
+			if(sb.length()>0){
+				sb.append(",");
+			}
+			sb.append(k.toLowerCase());
+		}
+		return sb.toString();
+	}
+	
+	private static String getType(Object v){
+		if(v instanceof Integer){
+			return "I";
+		}else if(v instanceof Long){
+			return "L";
+		}else if(v instanceof Short){
+			return "H";
+		}else if(v instanceof Byte){
+			return "Y";
+		}else if(v instanceof BigDecimal){
+			return "B";
+		}else if(v instanceof BigInteger){
+			return "G";
+		}else if(v instanceof Double){
+			return "D";
+		}else if(v instanceof Float){
+			return "F";
+		}else if(v instanceof Boolean){
+			return "Z";
+		}else if(v instanceof java.sql.Timestamp){
+			return "T";
+		}else if(v instanceof java.sql.Date){
+			return "d";
+		}else if(v instanceof java.sql.Time){
+			return "t";
+		}else if(v instanceof Date){
+			return "U";
+		}else{
+			return "S";
+		}
+	}
+	
+	private static String getString(Object v){
+		if(v instanceof java.sql.Timestamp){
+			java.sql.Timestamp ts=(java.sql.Timestamp)v;
+			return ts.getTime()+"."+ts.getNanos();
+		}else if(v instanceof Date){
+			return String.valueOf(((Date)v).getTime());
+		}else{
+			return v.toString();
+		}
+	}
+	
+	private static Object getValue(String type,JsonElement e){
+		String s=e.getAsString();
+		
+		char c=type.charAt(0);
+		switch(c){
+			case 'I': return Integer.valueOf(s);
+			case 'L': return Long.valueOf(s);
+			case 'H': return Short.valueOf(s);
+			case 'Y': return Byte.valueOf(s);
+			case 'B': return new BigDecimal(s);
+			case 'G': return new BigInteger(s);
+			case 'D': return Double.valueOf(s);
+			case 'F': return Float.valueOf(s);
+			case 'Z': return Boolean.valueOf(s);
+			case 'T': {
+				int p=s.indexOf('.');
+				java.sql.Timestamp ts=new java.sql.Timestamp(Long.parseLong(s.substring(0,p)));
+				ts.setNanos(Integer.parseInt(s.substring(p+1)));
+				return ts;
+			}
+			case 'd': return new java.sql.Date(Long.parseLong(s));
+			case 't': return new java.sql.Time(Long.parseLong(s));
+			case 'U': return new Date(Long.parseLong(s));
+			case 'S': return s;
+			default : throw new RuntimeException("Invalid keyset value type: "+type);
+		}
+	}
+}
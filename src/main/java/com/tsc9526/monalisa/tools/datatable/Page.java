@@ -34,7 +34,7 @@ public class Page<T> implements Serializable {
 	private static final long serialVersionUID = -33321L;
 	
 	/**
-	 * Total pages
+	 * Total pages, -1: unknown(the records are not counted)
 	 */
 	private long total  = 0;
 	
@@ -48,6 +48,11 @@ public class Page<T> implements Serializable {
 	 */
 	private long records= 0;
 	
+	/**
+	 * true: the records is estimated by the database, not the exact COUNT(*)
+	 */
+	private boolean approximate = false;
+	
 	/**
 	 * Page size
 	 */
@@ -65,7 +70,7 @@ public class Page<T> implements Serializable {
 	 * Constructor of the page
 	 * 
 	 * @param rows      records in this page
-	 * @param records   total records
+	 * @param records   total records, -1: not counted
 	 * @param size      size of page
 	 * @param offset    position of the first record. first is 0.
 	 */
@@ -85,9 +90,13 @@ public class Page<T> implements Serializable {
 		
 		this.page   = 1 + offset/size;
 		
-		this.total = (int) (this.records / this.size);
-		if (this.records % this.size != 0) {
-			this.total++;
+		if(this.records < 0){
+			this.total = -1;
+		}else{
+			this.total = (int) (this.records / this.size);
+			if (this.records % this.size != 0) {
+				this.total++;
+			}
 		}
 	}
 	
@@ -126,7 +135,7 @@ public class Page<T> implements Serializable {
 	 
 	/**
 	 * 
-	 * @return total pages
+	 * @return total pages, -1: unknown
 	 */
 	public long getTotal() {
 		return total;
@@ -134,12 +143,23 @@ public class Page<T> implements Serializable {
 		 
 	/**
 	 * 
-	 * @return total records
+	 * @return total records, -1: not counted
 	 */
 	public long getRecords() {
 		return records;
 	}
 	
+	/**
+	 * @return true if the total records is an estimate
+	 */
+	public boolean isApproximate() {
+		return approximate;
+	}
+
+	public void setApproximate(boolean approximate) {
+		this.approximate = approximate;
+	}
+	
 	
 	/**
 	 * Copy to new page, and transform the list data to target class
@@ -155,6 +175,7 @@ public class Page<T> implements Serializable {
 		page.size  = this.size;
 		page.total = this.total;
 		page.records  = this.records;
+		page.approximate = this.approximate;
 		
 		if(rows!=null){
 			page.rows=this.rows.as(toClass);
@@ -171,12 +192,7 @@ public class Page<T> implements Serializable {
 			w.setSerializeNulls(true);
 			w.beginObject();
 			
-			w.name("page").value(page);
-			w.name("total").value(total);
-			w.name("size").value(size);
-			w.name("records").value(records);
-			w.name("rows");
-			MelpJson.writeJson(w,rows,false);
+			writeJson(w);
 			 
 			w.endObject();
 			w.close();
@@ -186,6 +202,18 @@ public class Page<T> implements Serializable {
 			throw new RuntimeException(e);
 		}
 	}
+	
+	protected void writeJson(JsonWriter w)throws IOException{
+		w.name("page").value(page);
+		w.name("total").value(total);
+		w.name("size").value(size);
+		w.name("records").value(records);
+		if(approximate){
+			w.name("approximate").value(true);
+		}
+		w.name("rows");
+		MelpJson.writeJson(w,rows,false);
+	}
 }
 
 
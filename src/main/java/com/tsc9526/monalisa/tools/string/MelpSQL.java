@@ -24,7 +24,11 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.tsc9526.monalisa.orm.dialect.Dialect;
  
@@ -256,4 +260,69 @@ public class MelpSQL {
 		
 		return false;
 	}
+	
+	private static Pattern DML_TABLE    = Pattern.compile("^\\s*(?:INSERT\\s+(?:IGNORE\\s+)?INTO|REPLACE\\s+INTO|UPDATE|DELETE\\s+FROM|MERGE\\s+INTO|TRUNCATE\\s+TABLE|TRUNCATE)\\s+([^\\s(,;]+)",Pattern.CASE_INSENSITIVE);
+	private static Pattern QUERY_TABLES = Pattern.compile("\\b(?:FROM|JOIN)\\s+([^\\s(),;]+)",Pattern.CASE_INSENSITIVE);
+	
+	/**
+	 * 取DML语句(INSERT/REPLACE/UPDATE/DELETE/MERGE/TRUNCATE)的目标表名
+	 * 
+	 * @param sql the sql statement
+	 * @return lower case table name without schema and quotes, or null if not a DML statement
+	 */
+	public static String getDmlTable(String sql){
+		if(sql==null){
+			return null;
+		}
+		
+		Matcher m=DML_TABLE.matcher(sql);
+		if(m.find()){
+			return getTableName(m.group(1));
+		}
+		return null;
+	}
+	
+	/**
+	 * 取查询语句中FROM/JOIN后面的表名, 子查询忽略
+	 * 
+	 * @param sql the query statement
+	 * @return lower case table names without schema and quotes
+	 */
+	public static Set<String> getQueryTables(String sql){
+		Set<String> tables=new LinkedHashSet<String>();
+		if(sql!=null){
+			Matcher m=QUERY_TABLES.matcher(sql);
+			while(m.find()){
+				String table=getTableName(m.group(1));
+				if(table!=null){
+					tables.add(table);
+				}
+			}
+		}
+		return tables;
+	}
+	
+	/**
+	 * <code>`db`.`user`</code>, <code>[dbo].[user]</code>, <code>"USER"</code> -&gt; user
+	 * 
+	 * @param name table name, may be quoted and with schema
+	 * @return lower case table name
+	 */
+	public static String getTableName(String name){
+		if(name==null){
+			return null;
+		}
+		
+		String table=name.trim();
+		int p=table.lastIndexOf('.');
+		if(p>=0){
+			table=table.substring(p+1);
+		}
+		
+		table=Dialect.getRealname(table);
+		if(table.length()==0){
+			return null;
+		}
+		return table.toLowerCase();
+	}
 }
@@ -0,0 +1,78 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.orm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.orm.Tx;
+import com.tsc9526.monalisa.orm.Tx.Atom;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class TxTest {
+	
+	public void testAfterCommit() {
+		final List<String> xs=new ArrayList<String>();
+		
+		Tx.execute(new Atom<Integer>() {
+			public Integer execute() {
+				Tx.getTx().afterCommit(new Runnable() {
+					public void run() {
+						xs.add("a");
+					}
+				});
+				
+				Assert.assertEquals(xs.size(), 0);
+				return 1;
+			}
+		});
+		
+		Assert.assertEquals(xs.size(), 1);
+		Assert.assertNull(Tx.getTx());
+	}
+	
+	public void testDiscardOnRollback() {
+		final List<String> xs=new ArrayList<String>();
+		
+		try{
+			Tx.execute(new Atom<Integer>() {
+				public Integer execute() {
+					Tx.getTx().afterCommit(new Runnable() {
+						public void run() {
+							xs.add("a");
+						}
+					});
+					
+					throw new RuntimeException("rollback");
+				}
+			});
+			
+			Assert.fail("Exception expected");
+		}catch(RuntimeException e){
+			Assert.assertEquals(e.getMessage(), "rollback");
+		}
+		
+		Assert.assertEquals(xs.size(), 0);
+	}
+}
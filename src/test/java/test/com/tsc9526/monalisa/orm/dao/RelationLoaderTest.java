@@ -0,0 +1,196 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.orm.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.orm.annotation.Column;
+import com.tsc9526.monalisa.orm.annotation.Relation;
+import com.tsc9526.monalisa.orm.annotation.Table;
+import com.tsc9526.monalisa.orm.dao.RelationLoader;
+import com.tsc9526.monalisa.orm.dao.Select;
+import com.tsc9526.monalisa.orm.datasource.DBConfig;
+import com.tsc9526.monalisa.orm.datasource.DataSourceManager;
+import com.tsc9526.monalisa.orm.model.Model;
+import com.tsc9526.monalisa.tools.datatable.DataTable;
+
+import test.com.tsc9526.monalisa.orm.dialect.basic.TestSimpleDB;
+import test.com.tsc9526.monalisa.orm.dialect.mysql.MysqlDB;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class RelationLoaderTest {
+	
+	public void testOneToMany() {
+		MemoryLoader loader=new MemoryLoader(3);
+		
+		List<Author> authors=Arrays.asList(new Author(1), null, new Author(2), new Author(3), new Author(1));
+		loader.load(authors, Arrays.asList("books", "books.author"));
+		
+		Assert.assertEquals(authors.get(0).books.size(), 2);
+		Assert.assertEquals(authors.get(2).books.size(), 1);
+		Assert.assertEquals(authors.get(3).books.size(), 0);
+		Assert.assertEquals(authors.get(4).books.size(), 2);
+		
+		Book book=authors.get(2).books.get(0);
+		Assert.assertEquals(book.authorId, Long.valueOf(2));
+		Assert.assertEquals(book.author.id, Integer.valueOf(2));
+		
+		Assert.assertEquals(loader.columns, Arrays.asList("`author_id`", "`id`"));
+		Assert.assertEquals(loader.chunks.get(0), Arrays.asList((Object)1, 2, 3));
+		Assert.assertEquals(loader.chunks.get(1), Arrays.asList((Object)1L, 2L));
+	}
+	
+	public void testChunks() {
+		MemoryLoader loader=new MemoryLoader(2500);
+		
+		List<Author> authors=new ArrayList<Author>();
+		for(int i=1;i<=2500;i++){
+			authors.add(new Author(i));
+		}
+		loader.load(authors, Arrays.asList("books"));
+		
+		Assert.assertEquals(loader.chunks.size(), 3);
+		Assert.assertEquals(loader.chunks.get(2).size(), 500);
+		Assert.assertEquals(authors.get(1).books.get(0).id, Integer.valueOf(3));
+	}
+	
+	public void testSelectWith() {
+		final MemoryLoader loader=new MemoryLoader(3);
+		
+		Select<Author, Select> select=new Select<Author, Select>(new Author()){
+			protected DataTable<Author> selectByKeysChunk(String column,List<Object> keys){
+				DataTable<Author> rs=new DataTable<Author>();
+				for(Object id:keys){
+					rs.add(new Author((Integer)id));
+				}
+				return rs;
+			}
+			
+			protected RelationLoader createRelationLoader(){
+				return loader;
+			}
+		};
+		
+		List<Author> authors=select.with("books").selectByKeys(Arrays.asList(1, 2));
+		Assert.assertEquals(authors.get(0).books.size(), 2);
+		Assert.assertEquals(loader.chunks.size(), 1);
+	}
+	
+	public void testSelectUse() {
+		DBConfig db=DataSourceManager.getInstance().getDBConfig(MysqlDB.class);
+		
+		Select<Author, Select> select=new Select<Author, Select>(new Author());
+		select.use(db);
+		
+		Assert.assertTrue(new DbLoader(select).childDb(new Book())==db);
+		Assert.assertTrue(new DbLoader(new Select<Author, Select>(new Author())).childDb(new Book())==new Book().db());
+	}
+	
+	static class DbLoader extends RelationLoader{
+		DbLoader(Select select){
+			super(select);
+		}
+		
+		DBConfig childDb(Model child){
+			return createSelect(child).db();
+		}
+	}
+	
+	/**
+	 * Books: id= 1..n, author_id= (id+1)/2, except author 3
+	 */
+	static class MemoryLoader extends RelationLoader{
+		List<String> columns=new ArrayList<String>();
+		List<List<Object>> chunks=new ArrayList<List<Object>>();
+		
+		int books;
+		
+		MemoryLoader(int books){
+			super(null);
+			this.books=books;
+		}
+		
+		protected List<Model> selectChildren(Model child,String column,List<Object> keys){
+			columns.add(column);
+			chunks.add(new ArrayList<Object>(keys));
+			
+			List<Model> rs=new ArrayList<Model>();
+			if(child instanceof Book){
+				for(int i=1;i<=books;i++){
+					long authorId=(i+1)/2;
+					if(authorId!=3 && keys.contains((int)authorId)){
+						rs.add(new Book(i, authorId));
+					}
+				}
+			}else{
+				for(Object id:keys){
+					rs.add(new Author(((Long)id).intValue()));
+				}
+			}
+			return rs;
+		}
+	}
+	
+	@Table(name="relation_author", primaryKeys={"id"})
+	public static class Author extends Model<Author> implements TestSimpleDB{
+		private static final long serialVersionUID = -3525169171231283453L;
+		
+		@Column(name="id", key=true, notnull=true)
+		Integer id;
+		
+		@Relation(column="author_id")
+		List<Book> books;
+		
+		public Author(){
+		}
+		
+		Author(Integer id){
+			this.id=id;
+		}
+	}
+	
+	@Table(name="relation_book", primaryKeys={"id"})
+	public static class Book extends Model<Book> implements TestSimpleDB{
+		private static final long serialVersionUID = 6480723614219410957L;
+		
+		@Column(name="id", key=true, notnull=true)
+		Integer id;
+		
+		@Column(name="author_id")
+		Long authorId;
+		
+		@Relation(refColumn="author_id")
+		Author author;
+		
+		public Book(){
+		}
+		
+		Book(Integer id,Long authorId){
+			this.id=id;
+			this.authorId=authorId;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.orm.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.orm.Query;
+import com.tsc9526.monalisa.orm.annotation.Column;
+import com.tsc9526.monalisa.orm.annotation.Table;
+import com.tsc9526.monalisa.orm.dao.Select;
+import com.tsc9526.monalisa.orm.datasource.DataSourceManager;
+import com.tsc9526.monalisa.orm.dialect.Dialect;
+import com.tsc9526.monalisa.orm.dialect.MysqlDialect;
+import com.tsc9526.monalisa.orm.executor.HandlerResultSet;
+import com.tsc9526.monalisa.orm.model.Model;
+import com.tsc9526.monalisa.orm.model.ModelEvent;
+import com.tsc9526.monalisa.tools.datatable.DataTable;
+
+import test.com.tsc9526.monalisa.orm.dialect.basic.TestSimpleDB;
+import test.com.tsc9526.monalisa.orm.dialect.basic.TestSimpleModel;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class SelectByKeysTest {
+	
+	public void testInputOrder() {
+		MemorySelect select=new MemorySelect();
+		
+		List<TestSimpleModel> rs=select.selectByKeys(Arrays.asList(5, "2", 3, null, 5));
+		Assert.assertEquals(rs.size(), 5);
+		Assert.assertEquals(rs.get(0).getAuto(), Integer.valueOf(5));
+		Assert.assertEquals(rs.get(1).getAuto(), Integer.valueOf(2));
+		Assert.assertNull(rs.get(2));
+		Assert.assertNull(rs.get(3));
+		Assert.assertSame(rs.get(4), rs.get(0));
+		
+		Assert.assertEquals(select.chunks.size(), 1);
+		Assert.assertEquals(select.chunks.get(0), Arrays.asList((Object)5,2,3));
+		Assert.assertEquals(select.column, "`auto`");
+	}
+	
+	public void testChunks() {
+		MemorySelect select=new MemorySelect();
+		
+		List<Integer> ids=new ArrayList<Integer>();
+		for(int i=1;i<=2500;i++){
+			ids.add(i);
+		}
+		
+		List<TestSimpleModel> rs=select.selectByKeys(ids);
+		Assert.assertEquals(select.chunks.size(), 3);
+		Assert.assertEquals(select.chunks.get(0).size(), 1000);
+		Assert.assertEquals(select.chunks.get(2).size(), 500);
+		
+		Assert.assertEquals(rs.get(2499).getAuto(), Integer.valueOf(2500));
+		Assert.assertNull(rs.get(2));
+	}
+	
+	public void testLoadAll() {
+		LoadModel.events.clear();
+		
+		List<LoadModel> models=Arrays.asList(new LoadModel(2), new LoadModel(3), new LoadModel(1));
+		List<LoadModel> rs=DataSourceManager.getInstance().getDBConfig(TestSimpleDB.class).loadAll(models);
+		
+		Assert.assertEquals(LoadModel.events, Arrays.asList("before:2", "before:3", "before:1", "select"));
+		
+		Assert.assertSame(rs.get(0), models.get(0));
+		Assert.assertEquals(rs.get(0).name, "n2");
+		Assert.assertNull(rs.get(1));
+		Assert.assertNull(models.get(1).name);
+		Assert.assertEquals(rs.get(2).name, "n1");
+	}
+	
+	/**
+	 * Returns the models of the keys except 3
+	 */
+	static class MemorySelect extends Select<TestSimpleModel, MemorySelect>{
+		String column;
+		List<List<Object>> chunks=new ArrayList<List<Object>>();
+		
+		MemorySelect(){
+			super(new TestSimpleModel());
+		}
+		
+		protected DataTable<TestSimpleModel> selectByKeysChunk(String column,List<Object> keys){
+			this.column=column;
+			this.chunks.add(new ArrayList<Object>(keys));
+			
+			DataTable<TestSimpleModel> rs=new DataTable<TestSimpleModel>();
+			for(int i=keys.size()-1;i>=0;i--){
+				Integer id=(Integer)keys.get(i);
+				if(id!=3){
+					rs.add(new TestSimpleModel().setAuto(id));
+				}
+			}
+			return rs;
+		}
+	}
+	
+	/**
+	 * The select query returns the models of the keys except 3
+	 */
+	@Table(name="load_model", primaryKeys={"id"})
+	public static class LoadModel extends Model<LoadModel> implements TestSimpleDB{
+		private static final long serialVersionUID = 2409671285113659235L;
+		
+		static List<String> events=new ArrayList<String>();
+		
+		@Column(name="id", key=true, notnull=true)
+		Integer id;
+		
+		@Column(name="name")
+		String name;
+		
+		public LoadModel(){
+		}
+		
+		LoadModel(Integer id){
+			this.id=id;
+		}
+		
+		protected void before(ModelEvent event){
+			events.add("before:"+id);
+			super.before(event);
+		}
+		
+		public Dialect dialect(){
+			return new MysqlDialect(){
+				public Query select(Model model,String whereStatement,final Object ... args){
+					return new Query(){
+						@SuppressWarnings("unchecked")
+						public <T> DataTable<T> getList(HandlerResultSet<T> resultHandler){
+							events.add("select");
+							
+							DataTable<LoadModel> rs=new DataTable<LoadModel>();
+							for(Object id:args){
+								if(!id.equals(3)){
+									LoadModel m=new LoadModel((Integer)id);
+									m.name="n"+id;
+									rs.add(m);
+								}
+							}
+							return (DataTable<T>)rs;
+						}
+					};
+				}
+			};
+		}
+	}
+}
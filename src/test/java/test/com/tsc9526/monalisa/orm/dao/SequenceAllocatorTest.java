@@ -0,0 +1,162 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.orm.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.orm.Query;
+import com.tsc9526.monalisa.orm.dao.SequenceAllocator;
+import com.tsc9526.monalisa.orm.dialect.Dialect;
+import com.tsc9526.monalisa.orm.dialect.OracleDialect;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class SequenceAllocatorTest {
+	
+	public void testPooledLo() {
+		MemorySequence s=new MemorySequence(10L);
+		for(int i=1;i<=25;i++){
+			Assert.assertEquals(s.next(100), i);
+		}
+		Assert.assertEquals(s.queries.get(), 3);
+		Assert.assertEquals(s.incrementQueries.get(), 1);
+	}
+	
+	public void testPrefetch() {
+		MemorySequence s=new MemorySequence(1L);
+		for(int i=1;i<=25;i++){
+			Assert.assertEquals(s.next(20), i);
+		}
+		Assert.assertEquals(s.queries.get(), 2);
+		Assert.assertEquals(s.incrementQueries.get(), 1);
+	}
+	
+	public void testUnknownIncrement() {
+		MemorySequence s=new MemorySequence(null);
+		for(int i=1;i<=3;i++){
+			Assert.assertEquals(s.next(1), i);
+		}
+		Assert.assertEquals(s.queries.get(), 3);
+		
+		for(int i=4;i<=13;i++){
+			Assert.assertEquals(s.next(5), i);
+		}
+		Assert.assertEquals(s.queries.get(), 5);
+		Assert.assertEquals(s.incrementQueries.get(), 0);
+	}
+	
+	public void testConcurrent()throws Exception {
+		final MemorySequence s=new MemorySequence(7L);
+		final Set<Long> values=Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+		
+		final int threads=8,n=1000;
+		final CountDownLatch latch=new CountDownLatch(threads);
+		for(int t=0;t<threads;t++){
+			new Thread(){
+				public void run(){
+					for(int i=0;i<n;i++){
+						values.add(s.next(1));
+					}
+					latch.countDown();
+				}
+			}.start();
+		}
+		latch.await();
+		
+		Assert.assertEquals(values.size(), threads*n);
+	}
+	
+	public void testOracleSql() {
+		OracleDialect dialect=new OracleDialect();
+		Assert.assertEquals(dialect.getSequenceNext("seq_user",50), "SELECT seq_user.Nextval FROM dual CONNECT BY LEVEL <= 50");
+		Assert.assertEquals(dialect.getSequenceIncrement("seq_user").getParameters().get(0), "SEQ_USER");
+		Assert.assertEquals(dialect.getSequenceIncrement("scott.seq_user").getParameters().get(0), "SCOTT");
+	}
+	
+	/**
+	 * In memory sequence: start with 1, increment by: <code>increment</code>. <br>
+	 * Only the sequence queries are stubbed, the blocks are allocated by {@link SequenceAllocator}
+	 */
+	static class MemorySequence extends SequenceAllocator{
+		MemoryDialect dialect=new MemoryDialect();
+		
+		long next=1;
+		AtomicInteger queries=new AtomicInteger();
+		AtomicInteger incrementQueries=new AtomicInteger();
+		
+		/**
+		 * @param increment null: the dialect does not know the increment
+		 */
+		MemorySequence(Long increment){
+			super(null,"seq_test");
+			dialect.increment=increment;
+		}
+		
+		protected Dialect getDialect(){
+			return dialect;
+		}
+		
+		protected synchronized List<Long> select(Query query){
+			List<Long> rs=new ArrayList<Long>();
+			
+			String sql=query.getSql();
+			if(sql.equals("INCREMENT")){
+				incrementQueries.incrementAndGet();
+				rs.add(dialect.increment);
+				return rs;
+			}
+			
+			queries.incrementAndGet();
+			
+			long step=dialect.increment==null?1:dialect.increment;
+			int count=sql.equals("NEXTVAL")?1:Integer.parseInt(sql.substring("NEXTVAL ".length()));
+			for(int i=0;i<count;i++){
+				rs.add(next);
+				next+=step;
+			}
+			return rs;
+		}
+	}
+	
+	static class MemoryDialect extends OracleDialect{
+		Long increment;
+		
+		public String getSequenceNext(String seq){
+			return "NEXTVAL";
+		}
+		
+		public String getSequenceNext(String seq,int count){
+			return "NEXTVAL "+count;
+		}
+		
+		public Query getSequenceIncrement(String seq){
+			return increment==null?null:new Query().add("INCREMENT");
+		}
+	}
+}
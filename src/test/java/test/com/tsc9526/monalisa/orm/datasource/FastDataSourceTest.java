@@ -0,0 +1,333 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.orm.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.orm.datasource.FastDataSource;
+import com.tsc9526.monalisa.orm.datasource.pool.ConnectionPool;
+import com.tsc9526.monalisa.tools.misc.MelpMisc;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class FastDataSourceTest {
+	static FakeDriver driver=new FakeDriver();
+	static{
+		try{
+			DriverManager.registerDriver(driver);
+		}catch(SQLException e){
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private FastDataSource createDataSource(int max,int min,int waitTime){
+		FastDataSource ds=new FastDataSource();
+		ds.setUrl(FakeDriver.URL);
+		ds.setUsername("u");
+		ds.setPassword("p");
+		
+		Properties props=new Properties();
+		props.put("max", ""+max);
+		props.put("min", ""+min);
+		props.put("waitTime", ""+waitTime);
+		props.put("fakeOption", "x");
+		ds.setProperties(props);
+		return ds;
+	}
+	
+	public void testReuseAndReset()throws Exception{
+		FastDataSource ds=createDataSource(2, 0, 1);
+		
+		Connection conn=ds.getConnection();
+		FakeConnection fake=conn.unwrap(FakeConnection.class);
+		Assert.assertEquals(fake.info.get("fakeOption"), "x");
+		Assert.assertEquals(fake.info.get("user"), "u");
+		
+		conn.setAutoCommit(false);
+		conn.close();
+		Assert.assertTrue(conn.isClosed());
+		Assert.assertEquals(fake.rollbacks, 1);
+		Assert.assertTrue(fake.autoCommit);
+		
+		try{
+			conn.createStatement();
+			Assert.fail("Connection is closed");
+		}catch(SQLException e){}
+		
+		Connection conn2=ds.getConnection();
+		Assert.assertSame(conn2.unwrap(FakeConnection.class), fake);
+		conn2.close();
+		
+		Assert.assertEquals(ds.getPool().getTotalCount(), 1);
+		Assert.assertEquals(ds.getPool().getIdleCount(), 1);
+		
+		ds.close();
+		Assert.assertTrue(fake.closed);
+	}
+	
+	public void testStatementCache()throws Exception{
+		FastDataSource ds=createDataSource(1, 0, 1);
+		
+		Properties props=new Properties();
+		props.put("statementCacheSize", "2");
+		ds.setProperties(props);
+		
+		Connection conn=ds.getConnection();
+		FakeConnection fake=conn.unwrap(FakeConnection.class);
+		
+		PreparedStatement p1=conn.prepareStatement("SELECT 1");
+		PreparedStatement p2=conn.prepareStatement("SELECT 1");
+		Assert.assertNotSame(p1.unwrap(PreparedStatement.class), p2.unwrap(PreparedStatement.class));
+		Assert.assertSame(p1.getConnection(), conn);
+		p1.setInt(1, 100);
+		p1.close();
+		p2.close();
+		Assert.assertTrue(p1.isClosed());
+		Assert.assertEquals(fake.prepares, 2);
+		Assert.assertEquals(fake.statementCloses, 1);
+		conn.close();
+		
+		conn=ds.getConnection();
+		PreparedStatement p3=conn.prepareStatement("SELECT 1");
+		Assert.assertEquals(fake.prepares, 2);
+		Assert.assertEquals(fake.clearParameters, 2);
+		p3.close();
+		
+		conn.prepareStatement("SELECT 1", PreparedStatement.RETURN_GENERATED_KEYS).close();
+		Assert.assertEquals(fake.prepares, 3);
+		
+		//LRU: evict "SELECT 1"
+		conn.prepareStatement("SELECT 2").close();
+		Assert.assertEquals(fake.statementCloses, 2);
+		
+		PreparedStatement p4=conn.prepareStatement("SELECT 2");
+		p4.setFetchSize(10);
+		p4.close();
+		Assert.assertEquals(fake.statementCloses, 3);
+		conn.close();
+		
+		ConnectionPool pool=ds.getPool();
+		Assert.assertEquals(pool.getStatementHitCount(), 2);
+		Assert.assertEquals(pool.getStatementMissCount(), 4);
+		
+		ds.close();
+		Assert.assertEquals(fake.statementCloses, 4);
+	}
+	
+	public void testTimeout()throws Exception{
+		FastDataSource ds=createDataSource(1, 0, 1);
+		
+		Connection conn=ds.getConnection();
+		long t=System.currentTimeMillis();
+		try{
+			ds.getConnection();
+			Assert.fail("Pool is full");
+		}catch(RuntimeException e){
+			Assert.assertTrue(e.getMessage().startsWith("Connection pool is full/timeout"), e.getMessage());
+		}
+		Assert.assertTrue(System.currentTimeMillis()-t>=900);
+		Assert.assertEquals(ds.getPool().getTimeoutCount(), 1);
+		
+		conn.close();
+		ds.close();
+	}
+	
+	public void testEvictInvalid()throws Exception{
+		FastDataSource ds=createDataSource(2, 0, 1);
+		ds.setIdleValidationQuery(0, null);
+		
+		Connection conn=ds.getConnection();
+		FakeConnection fake=conn.unwrap(FakeConnection.class);
+		conn.close();
+		
+		fake.valid=false;
+		MelpMisc.sleep(5);
+		
+		Connection conn2=ds.getConnection();
+		Assert.assertNotSame(conn2.unwrap(FakeConnection.class), fake);
+		Assert.assertTrue(fake.closed);
+		conn2.close();
+		
+		ConnectionPool pool=ds.getPool();
+		Assert.assertEquals(pool.getCreatedCount(), 2);
+		Assert.assertEquals(pool.getClosedCount(), 1);
+		
+		ds.close();
+	}
+	
+	public void testConcurrentBorrow()throws Exception{
+		final FastDataSource ds=createDataSource(4, 1, 5);
+		final AtomicInteger errors=new AtomicInteger();
+		
+		List<Thread> threads=new ArrayList<Thread>();
+		for(int i=0;i<16;i++){
+			Thread t=new Thread(){
+				public void run(){
+					try{
+						for(int k=0;k<200;k++){
+							Connection conn=ds.getConnection();
+							if(!conn.getAutoCommit()){
+								errors.incrementAndGet();
+							}
+							conn.setAutoCommit(false);
+							conn.close();
+						}
+					}catch(Exception e){
+						errors.incrementAndGet();
+					}
+				}
+			};
+			threads.add(t);
+			t.start();
+		}
+		for(Thread t:threads){
+			t.join();
+		}
+		
+		ConnectionPool pool=ds.getPool();
+		Assert.assertEquals(errors.get(), 0);
+		Assert.assertEquals(pool.getBorrowCount(), 16*200);
+		Assert.assertTrue(pool.getCreatedCount()<=4, "created: "+pool.getCreatedCount());
+		Assert.assertEquals(pool.getActiveCount(), 0);
+		
+		ds.close();
+	}
+	
+	public static class FakeDriver implements Driver{
+		final static String URL="jdbc:fake:pool";
+		
+		public Connection connect(String url, Properties info) throws SQLException {
+			if(!acceptsURL(url)){
+				return null;
+			}
+			
+			final FakeConnection fake=new FakeConnection(info);
+			return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[] { Connection.class }, fake);
+		}
+
+		public boolean acceptsURL(String url) throws SQLException {
+			return URL.equals(url);
+		}
+
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
+			return new DriverPropertyInfo[0];
+		}
+
+		public int getMajorVersion() {
+			return 1;
+		}
+
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		public boolean jdbcCompliant() {
+			return false;
+		}
+
+		public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			throw new SQLFeatureNotSupportedException();
+		}
+	}
+	
+	public static class FakeConnection implements InvocationHandler{
+		Properties info;
+		
+		volatile boolean autoCommit = true;
+		volatile boolean closed     = false;
+		volatile boolean valid      = true;
+		volatile int     rollbacks  = 0;
+		
+		volatile int     prepares        = 0;
+		volatile int     statementCloses = 0;
+		volatile int     clearParameters = 0;
+		
+		FakeConnection(Properties info){
+			this.info=info;
+		}
+		
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name=method.getName();
+			if(name.equals("setAutoCommit")){
+				autoCommit=(Boolean)args[0];
+			}else if(name.equals("getAutoCommit")){
+				return autoCommit;
+			}else if(name.equals("rollback")){
+				rollbacks++;
+			}else if(name.equals("close")){
+				closed=true;
+			}else if(name.equals("isClosed")){
+				return closed;
+			}else if(name.equals("isValid")){
+				return valid;
+			}else if(name.equals("unwrap")){
+				return this;
+			}else if(name.equals("prepareStatement")){
+				prepares++;
+				return createStatement();
+			}else if(name.equals("isReadOnly")){
+				return false;
+			}else if(name.equals("getTransactionIsolation")){
+				return Connection.TRANSACTION_READ_COMMITTED;
+			}else if(name.equals("hashCode")){
+				return System.identityHashCode(proxy);
+			}else if(name.equals("equals")){
+				return proxy==args[0];
+			}else if(name.equals("toString")){
+				return "FakeConnection@"+System.identityHashCode(proxy);
+			}
+			return null;
+		}
+		
+		private PreparedStatement createStatement(){
+			return (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class[] { PreparedStatement.class }, new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					String name=method.getName();
+					if(name.equals("close")){
+						statementCloses++;
+					}else if(name.equals("clearParameters")){
+						clearParameters++;
+					}else if(name.equals("hashCode")){
+						return System.identityHashCode(proxy);
+					}else if(name.equals("equals")){
+						return proxy==args[0];
+					}
+					return null;
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.orm.datasource;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.orm.annotation.DB;
+import com.tsc9526.monalisa.orm.datasource.DBConfig;
+import com.tsc9526.monalisa.orm.datasource.DBConfig.Host;
+import com.tsc9526.monalisa.orm.datasource.DBConfig.Level;
+import com.tsc9526.monalisa.orm.datasource.PooledDataSource;
+import com.tsc9526.monalisa.orm.datasource.ReadDataSource;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class ReadDataSourceTest {
+	static Set<String> downHosts=new CopyOnWriteArraySet<String>();
+	
+	public void testHosts() {
+		DBConfig db=DBConfig.fromClass(ReadSplitDB.class);
+		
+		Assert.assertEquals(db.getCfg().getUrl(), "jdbc:mysql://w1:3306/test?useUnicode=true");
+		
+		List<Host> hosts=db.getCfg().getDbHosts();
+		Assert.assertEquals(hosts.size(), 3);
+		Assert.assertEquals(hosts.get(0).LEVEL, Level.ONLY_WRITE);
+		Assert.assertEquals(hosts.get(1).LEVEL, Level.ONLY_READ);
+		Assert.assertEquals(hosts.get(2).URL, "jdbc:mysql://r2:3306/test?useUnicode=true");
+		
+		Assert.assertTrue(db.getReadDataSource() instanceof ReadDataSource);
+		Assert.assertEquals(((ReadDataSource)db.getReadDataSource()).getNodes().size(), 2);
+	}
+	
+	public void testRoute() throws SQLException{
+		DBConfig db=DBConfig.fromClass(ReadSplitDB.class);
+		ReadDataSource rds=(ReadDataSource)db.getReadDataSource();
+		
+		Connection c1=rds.getConnection();
+		Connection c2=rds.getConnection();
+		
+		String u1=c1.unwrap(Connection.class).toString();
+		String u2=c2.unwrap(Connection.class).toString();
+		Assert.assertTrue(u1.contains("//r"), u1);
+		Assert.assertTrue(u2.contains("//r"), u2);
+		Assert.assertNotEquals(u1, u2);
+		
+		c1.close();
+		c1.close();
+		c2.close();
+		for(ReadDataSource.Node node:rds.getNodes()){
+			Assert.assertEquals(node.getOutstanding(), 0);
+		}
+		
+		Assert.assertTrue(db.getDataSource().getConnection().toString().contains("//w1:3306"));
+		
+		downHosts.add("r2");
+		for(int i=0;i<4;i++){
+			Connection c=rds.getConnection();
+			Assert.assertTrue(c.unwrap(Connection.class).toString().contains("//r1:3306"));
+			c.close();
+		}
+		Assert.assertTrue(rds.getNodes().get(1).isEjected());
+		
+		downHosts.add("r1");
+		Connection c=rds.getConnection();
+		Assert.assertTrue(c.toString().contains("//w1:3306"), c.toString());
+		Assert.assertTrue(rds.getFallbackCount()>0);
+		
+		downHosts.clear();
+	}
+	
+	@DB(url="jdbc:mysql://[+w1:3306,-r1:3306,-r2:3306]/test?useUnicode=true",username="u",password="p",datasourceClass="test.com.tsc9526.monalisa.orm.datasource.ReadDataSourceTest$FakeDataSource")
+	private class ReadSplitDB{}
+	
+	public static class FakeDataSource implements PooledDataSource{
+		private String url;
+		
+		public Connection getConnection() throws SQLException {
+			for(String host:downHosts){
+				if(url.contains("//"+host+":")){
+					throw new SQLException("Host is down: "+host,"08001");
+				}
+			}
+			
+			return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[] { Connection.class }, new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					if(method.getName().equals("toString")){
+						return "FakeConnection: "+url;
+					}
+					return null;
+				}
+			});
+		}
+		
+		public Connection getConnection(String username, String password) throws SQLException {
+			return getConnection();
+		}
+		
+		public void setUrl(String url) {
+			this.url=url;
+		}
+		
+		public void setDriver(String driver) {}
+		public void setUsername(String username) {}
+		public void setPassword(String password) {}
+		public void setProperties(Properties properties) {}
+		public void setIdleValidationQuery(int idleInSeconds, String validationQuery) {}
+		public void close() throws IOException {}
+		
+		public PrintWriter getLogWriter() throws SQLException {
+			return null;
+		}
+		
+		public void setLogWriter(PrintWriter out) throws SQLException {}
+		public void setLoginTimeout(int seconds) throws SQLException {}
+		
+		public int getLoginTimeout() throws SQLException {
+			return 0;
+		}
+		
+		public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			throw new SQLFeatureNotSupportedException();
+		}
+		
+		public <T> T unwrap(Class<T> iface) throws SQLException {
+			return null;
+		}
+		
+		public boolean isWrapperFor(Class<?> iface) throws SQLException {
+			return false;
+		}
+	}
+}
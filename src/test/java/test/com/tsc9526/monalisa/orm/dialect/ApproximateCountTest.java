@@ -0,0 +1,97 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.orm.dialect;
+
+import java.util.ArrayList;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.orm.dialect.MysqlDialect;
+import com.tsc9526.monalisa.orm.dialect.OracleDialect;
+import com.tsc9526.monalisa.orm.dialect.PostgresDialect;
+import com.tsc9526.monalisa.tools.datatable.DataMap;
+import com.tsc9526.monalisa.tools.datatable.DataTable;
+import com.tsc9526.monalisa.tools.datatable.Page;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class ApproximateCountTest {
+	
+	public void testMysqlExplain() {
+		DataTable<DataMap> rs=new DataTable<DataMap>();
+		rs.add(explainRow(1,1000,10));
+		rs.add(explainRow(1,2,100));
+		rs.add(explainRow(2,5000,100));
+		
+		Assert.assertEquals(new MysqlExplain().getExplainRows(rs), 200);
+		Assert.assertEquals(new MysqlExplain().getExplainRows(new DataTable<DataMap>()), -1);
+	}
+	
+	public void testPostgresPlan() {
+		PostgresPlan p=new PostgresPlan();
+		Assert.assertEquals(p.getPlanRows("Seq Scan on t  (cost=0.00..35.50 rows=2550 width=4)"), 2550);
+		Assert.assertEquals(p.getPlanRows("Result"), -1);
+	}
+	
+	public void testOracleSingleTable() {
+		OracleTable o=new OracleTable();
+		Assert.assertEquals(o.getSingleTableName("SELECT * FROM t_user"), "T_USER");
+		Assert.assertEquals(o.getSingleTableName("select a.id, a.name from scott.t_user a order by a.id"), "SCOTT.T_USER");
+		Assert.assertNull(o.getSingleTableName("SELECT * FROM t_user WHERE id>?"));
+		Assert.assertNull(o.getSingleTableName("SELECT * FROM t_user a, t_blog b"));
+		Assert.assertNull(o.getSingleTableName("SELECT * FROM t_user a JOIN t_blog b ON a.id=b.user_id"));
+	}
+	
+	public void testPageJson() {
+		Page<String> page=new Page<String>(new ArrayList<String>(),1000,10,0);
+		Assert.assertTrue(page.toJson().indexOf("approximate")<0);
+		
+		page.setApproximate(true);
+		Assert.assertTrue(page.toJson().indexOf("\"approximate\":true")>0, page.toJson());
+		Assert.assertTrue(page.as(String.class).isApproximate());
+	}
+	
+	private DataMap explainRow(int id,long rows,double filtered){
+		DataMap r=new DataMap();
+		r.put("id", id);
+		r.put("rows", rows);
+		r.put("filtered", filtered);
+		return r;
+	}
+	
+	static class MysqlExplain extends MysqlDialect{
+		public long getExplainRows(DataTable<DataMap> rs){
+			return super.getExplainRows(rs);
+		}
+	}
+	
+	static class PostgresPlan extends PostgresDialect{
+		public long getPlanRows(String plan){
+			return super.getPlanRows(plan);
+		}
+	}
+	
+	static class OracleTable extends OracleDialect{
+		public String getSingleTableName(String sql){
+			return super.getSingleTableName(sql);
+		}
+	}
+}
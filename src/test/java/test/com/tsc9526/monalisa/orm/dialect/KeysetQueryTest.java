@@ -0,0 +1,129 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.orm.dialect;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.orm.Query;
+import com.tsc9526.monalisa.orm.datasource.DataSourceManager;
+import com.tsc9526.monalisa.orm.dialect.Dialect;
+import com.tsc9526.monalisa.orm.dialect.MysqlDialect;
+import com.tsc9526.monalisa.orm.dialect.OracleDialect;
+import com.tsc9526.monalisa.orm.executor.HandlerResultSet;
+import com.tsc9526.monalisa.orm.partition.ShardMerger;
+import com.tsc9526.monalisa.orm.partition.ShardMerger.OrderBy;
+import com.tsc9526.monalisa.tools.datatable.DataMap;
+import com.tsc9526.monalisa.tools.datatable.DataTable;
+import com.tsc9526.monalisa.tools.datatable.KeysetPage;
+
+import test.com.tsc9526.monalisa.orm.dialect.basic.TestSimpleDB;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class KeysetQueryTest {
+	
+	public void testRowValue() {
+		Query q=createQuery(new MysqlDialect(),"SELECT * FROM t WHERE a=? OR b=? ORDER BY t.create_time, id");
+		
+		Query k=q.getDialect().getKeysetQuery(q, ShardMerger.parseOrderBy(q.getSql()), new Object[]{"2016-01-01",5}, 10);
+		Assert.assertEquals(k.getSql(), "SELECT * FROM t WHERE (a=? OR b=?) AND (t.create_time, id) > (?, ?) ORDER BY t.create_time, id LIMIT 10 OFFSET 0");
+		Assert.assertEquals(k.getParameters(), Arrays.asList((Object)1,2,"2016-01-01",5));
+		
+		q=createQuery(new MysqlDialect(),"SELECT * FROM t ORDER BY id DESC");
+		k=q.getDialect().getKeysetQuery(q, ShardMerger.parseOrderBy(q.getSql()), new Object[]{5}, 10);
+		Assert.assertEquals(k.getSql(), "SELECT * FROM t WHERE id < ? ORDER BY id DESC LIMIT 10 OFFSET 0");
+		
+		k=q.getDialect().getKeysetQuery(q, ShardMerger.parseOrderBy(q.getSql()), null, 10);
+		Assert.assertEquals(k.getSql(), "SELECT * FROM t ORDER BY id DESC LIMIT 10 OFFSET 0");
+	}
+	
+	public void testExpanded() {
+		Query q=createQuery(new OracleDialect(),"SELECT * FROM t WHERE a=? ORDER BY name, id DESC");
+		
+		Query k=q.getDialect().getKeysetQuery(q, ShardMerger.parseOrderBy(q.getSql()), new Object[]{"x",5}, 10);
+		Assert.assertTrue(k.getSql().indexOf("WHERE (a=?) AND ((name > ?) OR (name = ? AND id < ?)) ORDER BY name, id DESC")>0, k.getSql());
+		Assert.assertEquals(k.getParameters(), Arrays.asList((Object)1,"x","x",5));
+	}
+	
+	public void testGroupBy() {
+		Query q=createQuery(new MysqlDialect(),"SELECT a.name, COUNT(*) AS c FROM t a GROUP BY a.name ORDER BY a.name");
+		
+		Query k=q.getDialect().getKeysetQuery(q, ShardMerger.parseOrderBy(q.getSql()), new Object[]{"x"}, 10);
+		Assert.assertEquals(k.getSql(), "SELECT * FROM (SELECT a.name, COUNT(*) AS c FROM t a GROUP BY a.name) keyset_ WHERE `name` > ? ORDER BY `name` LIMIT 10 OFFSET 0");
+	}
+	
+	public void testPageAfter() {
+		final int[] limits=new int[1];
+		
+		Query q=new Query();
+		q.use(DataSourceManager.getInstance().getDBConfig(TestSimpleDB.class));
+		q.setPageCount(false);
+		q.setDialect(new MysqlDialect(){
+			public Query getKeysetQuery(Query origin,List<OrderBy> orders,final Object[] after,final int limit){
+				limits[0]=limit;
+				
+				return new Query(){
+					@SuppressWarnings("unchecked")
+					public <T> DataTable<T> getList(HandlerResultSet<T> resultHandler){
+						DataTable<DataMap> rs=new DataTable<DataMap>();
+						for(int id=1;id<=5 && rs.size()<limit;id++){
+							if(after==null || id>((Number)after[0]).intValue()){
+								DataMap m=new DataMap();
+								m.put("id", id);
+								rs.add(m);
+							}
+						}
+						return (DataTable<T>)rs;
+					}
+				};
+			}
+		});
+		q.add("SELECT * FROM t ORDER BY id");
+		
+		KeysetPage<DataMap> page=q.getPageAfter(2, null);
+		Assert.assertEquals(limits[0], 3);
+		Assert.assertEquals(page.getRows().size(), 2);
+		Assert.assertNotNull(page.getNext());
+		
+		page=q.getPageAfter(2, page.getNext());
+		Assert.assertEquals(page.getRows().get(0).getInt("id",0), 3);
+		Assert.assertNotNull(page.getNext());
+		
+		page=q.getPageAfter(2, page.getNext());
+		Assert.assertEquals(page.getRows().size(), 1);
+		Assert.assertNull(page.getNext());
+		
+		page=q.getPageAfter(5, null);
+		Assert.assertEquals(page.getRows().size(), 5);
+		Assert.assertNull(page.getNext());
+	}
+	
+	private Query createQuery(Dialect dialect,String sql){
+		Query q=new Query();
+		q.setDialect(dialect);
+		
+		q.add(sql, sql.indexOf("OR b=?")>0?new Object[]{1,2}:(sql.indexOf("a=?")>0?new Object[]{1}:new Object[0]));
+		return q;
+	}
+}
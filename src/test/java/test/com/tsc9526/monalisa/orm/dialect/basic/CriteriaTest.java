@@ -17,8 +17,11 @@
 package test.com.tsc9526.monalisa.orm.dialect.basic;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.testng.Assert;
@@ -27,6 +30,12 @@ import org.testng.annotations.Test;
 import com.tsc9526.monalisa.orm.Query;
 import com.tsc9526.monalisa.orm.criteria.QEH;
 import com.tsc9526.monalisa.orm.datasource.DataSourceManager;
+import com.tsc9526.monalisa.orm.datasource.DbProp;
+import com.tsc9526.monalisa.orm.dialect.Dialect;
+import com.tsc9526.monalisa.orm.dialect.MysqlDialect;
+import com.tsc9526.monalisa.orm.dialect.OracleDialect;
+import com.tsc9526.monalisa.orm.dialect.PostgresDialect;
+import com.tsc9526.monalisa.orm.dialect.SQLServerDialect;
 
 /**
  * 
@@ -225,6 +234,76 @@ public class CriteriaTest {
 		Assert.assertEquals(sql,sql_expect);
 	}
 	
+	public void testInsertOrUpdateAll()throws Exception{
+		List<TestSimpleModel> models=new ArrayList<TestSimpleModel>();
+		for(int i=1;i<=2;i++){
+			TestSimpleModel model=new TestSimpleModel();
+			model.setAuto(i);
+			model.setIntField1(i*10);
+			models.add(model);
+		}
+		
+		Dialect dialect=models.get(0).dialect();
+		Assert.assertEquals(dialect.getUpsertKey(models.get(0)), dialect.getUpsertKey(models.get(1)));
+		Assert.assertEquals(dialect.getUpsertRowKey(models.get(1)), Arrays.asList((Object)2));
+		
+		Query query=dialect.insertOrUpdateAll(models);
+		Assert.assertEquals(query.getSql(), "INSERT INTO `simple_model`(`auto`, `int_field1`)VALUES(?, ?), (?, ?) ON DUPLICATE KEY UPDATE `int_field1` = VALUES(`int_field1`)");
+		Assert.assertEquals(query.getParameters(), Arrays.asList((Object)1,10,2,20));
+		
+		query=new PostgresDialect().insertOrUpdateAll(models);
+		Assert.assertEquals(query.getSql(), "INSERT INTO \"simple_model\"(\"auto\", \"int_field1\")VALUES(?, ?), (?, ?) ON CONFLICT ( \"auto\") DO UPDATE SET \"int_field1\" = EXCLUDED.\"int_field1\"");
+		
+		query=new SQLServerDialect().insertOrUpdateAll(models);
+		Assert.assertEquals(query.getSql(), "MERGE INTO [simple_model] AS m USING (VALUES (?, ?), (?, ?)) AS s ([auto], [int_field1])"
+				+" ON (m.[auto] = s.[auto])"
+				+"\r\n WHEN MATCHED     THEN UPDATE SET m.[int_field1] = s.[int_field1]"
+				+"\r\n WHEN NOT MATCHED THEN INSERT ([auto], [int_field1]) VALUES (s.[auto], s.[int_field1]);");
+		Assert.assertEquals(query.getParameters(), Arrays.asList((Object)1,10,2,20));
+		
+		query=new OracleDialect().insertOrUpdateAll(models);
+		Assert.assertTrue(query.getSql().startsWith("MERGE INTO \"SIMPLE_MODEL\" m USING (\r\n SELECT ? \"auto\", ? \"int_field1\" FROM dual\r\n UNION ALL SELECT ?, ? FROM dual\r\n) s ON (m.\"auto\" = s.\"auto\")"), query.getSql());
+		
+		TestSimpleModel other=new TestSimpleModel();
+		other.setIntField1(1);
+		other.setStringField1("1");
+		Assert.assertNotEquals(dialect.getUpsertKey(other), dialect.getUpsertKey(models.get(0)));
+		
+		Assert.assertNull(dialect.getUpsertKey(new TestSimpleModel()));
+	}
+	
+	public void testInsertOrUpdateAllKeyNotChanged()throws Exception{
+		List<TestSimpleModel> models=new ArrayList<TestSimpleModel>();
+		for(int i=1;i<=2;i++){
+			//loaded model: the key is not changed
+			TestSimpleModel model=new TestSimpleModel();
+			model.setAuto(i);
+			model.setIntField1(i);
+			model.clearChanges();
+			
+			model.setIntField1(i*10);
+			models.add(model);
+		}
+		
+		Dialect dialect=models.get(0).dialect();
+		Assert.assertNotNull(dialect.getUpsertKey(models.get(0)));
+		Assert.assertEquals(dialect.getUpsertKey(models.get(0)), dialect.getUpsertKey(models.get(1)));
+		
+		Query query=dialect.insertOrUpdateAll(models);
+		Assert.assertEquals(query.getSql(), "INSERT INTO `simple_model`(`int_field1`, `auto`)VALUES(?, ?), (?, ?) ON DUPLICATE KEY UPDATE `int_field1` = VALUES(`int_field1`)");
+		Assert.assertEquals(query.getParameters(), Arrays.asList((Object)10,1,20,2));
+		
+		query=new SQLServerDialect().insertOrUpdateAll(models);
+		Assert.assertEquals(query.getSql(), "MERGE INTO [simple_model] AS m USING (VALUES (?, ?), (?, ?)) AS s ([int_field1], [auto])"
+				+" ON (m.[auto] = s.[auto])"
+				+"\r\n WHEN MATCHED     THEN UPDATE SET m.[int_field1] = s.[int_field1]"
+				+"\r\n WHEN NOT MATCHED THEN INSERT ([int_field1]) VALUES (s.[int_field1]);");
+		Assert.assertEquals(query.getParameters(), Arrays.asList((Object)10,1,20,2));
+		
+		query=new OracleDialect().insertOrUpdateAll(models);
+		Assert.assertTrue(query.getSql().startsWith("MERGE INTO \"SIMPLE_MODEL\" m USING (\r\n SELECT ? \"int_field1\", ? \"auto\" FROM dual\r\n UNION ALL SELECT ?, ? FROM dual\r\n) s ON (m.\"auto\" = s.\"auto\")"), query.getSql());
+	}
+	
 	public void testInsert()throws Exception{
 		String time="2015-06-08 11:10:31";
 		SimpleDateFormat sdf=new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
@@ -249,6 +328,85 @@ public class CriteriaTest {
 	 
 	}
 	
+	public void testShapeSqlCached()throws Exception{
+		TestSimpleModel model=new TestSimpleModel();
+		model.setAuto(1);
+		model.setIntField1(1);
+		model.setStringField1("1");
+		 
+		Query q1=model.dialect().update(model);
+		String sql_expect="UPDATE `simple_model` SET `int_field1`=?, `string_field1`=? WHERE `auto` = ?";
+		Assert.assertEquals(q1.getSql(),sql_expect);
+		Assert.assertEquals(q1.getParameters(),Arrays.asList((Object)1,"1",1));
+		
+		model.setAuto(2);
+		model.setIntField1(2);
+		Query q2=model.dialect().update(model);
+		Assert.assertEquals(q2.getSql(),sql_expect);
+		Assert.assertEquals(q2.getParameters(),Arrays.asList((Object)2,"1",2));
+		
+		Query d=model.dialect().delete(model);
+		Assert.assertEquals(d.getSql(),"DELETE FROM `simple_model` WHERE `auto` = ?");
+		
+		model.setAuto(null);
+		Query u=model.dialect().update(model);
+		Assert.assertEquals(u.getSql(),"UPDATE `simple_model` SET `int_field1`=?, `string_field1`=? WHERE `int_field1` = ? AND `string_field1` = ?");
+		Assert.assertEquals(u.getParameters(),Arrays.asList((Object)2,"1",2,"1"));
+		
+		ShapeDialect dialect=new ShapeDialect();
+		model.setAuto(1);
+		Query s1=dialect.update(model);
+		Assert.assertEquals(s1.getSql(),sql_expect);
+		Assert.assertEquals(dialect.puts, 2);
+		Assert.assertEquals(dialect.hits, 0);
+		
+		//same shape: UPDATE ... SET and WHERE are served from the cache
+		model.setAuto(2);
+		model.setIntField1(3);
+		Query s2=dialect.update(model);
+		Assert.assertEquals(s2.getSql(),sql_expect);
+		Assert.assertEquals(s2.getParameters(),Arrays.asList((Object)3,"1",2));
+		Assert.assertEquals(dialect.puts, 2);
+		Assert.assertEquals(dialect.hits, 2);
+		Assert.assertEquals(dialect.size(), 2);
+		
+		//the cache is full: new shapes are not cached, the cached ones are kept
+		int max=DbProp.CFG_SQL_SHAPE_CACHE_SIZE;
+		DbProp.CFG_SQL_SHAPE_CACHE_SIZE=2;
+		try{
+			Query i=dialect.insert(model);
+			Assert.assertEquals(i.getSql(),"INSERT INTO `simple_model`(`auto`, `int_field1`, `string_field1`)VALUES(?, ?, ?)");
+			Assert.assertEquals(dialect.size(), 2);
+			
+			dialect.update(model);
+			Assert.assertEquals(dialect.hits, 4);
+		}finally{
+			DbProp.CFG_SQL_SHAPE_CACHE_SIZE=max;
+		}
+	}
+	
+	static class ShapeDialect extends MysqlDialect{
+		int puts;
+		int hits;
+		
+		protected String getShapeSql(ShapeKey key){
+			String sql=super.getShapeSql(key);
+			if(sql!=null){
+				hits++;
+			}
+			return sql;
+		}
+		
+		protected void putShapeSql(ShapeKey key,String sql){
+			puts++;
+			super.putShapeSql(key, sql);
+		}
+		
+		int size(){
+			return hShapeSqls.size();
+		}
+	}
+	
 	public void testSelect()throws Exception{
 		String time="2015-06-08 11:10:31";
 		SimpleDateFormat sdf=new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
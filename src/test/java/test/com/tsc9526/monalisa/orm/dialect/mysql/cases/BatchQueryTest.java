@@ -147,4 +147,33 @@ public class BatchQueryTest {
 			Assert.assertEquals(TestTable1.SELECT().count(),0);
 		}
 	}
+	
+	public void testBatchModels(){
+		List<TestTable1> ms=new ArrayList<TestTable1>();
+		for(int i=0;i<5;i++){
+			ms.add(new TestTable1().setName("M-"+i).setTitle("T-"+i));
+		}
+		ms.add(new TestTable1().setName("M-5"));
+		
+		int[] rs=MysqlDB.DB.batchInsert(ms);
+		Assert.assertEquals(rs.length,6);
+		Assert.assertEquals(TestTable1.SELECT().count(),6);
+		
+		for(int i=0;i<ms.size();i++){
+			Assert.assertEquals(rs[i],1);
+			
+			TestTable1 x=TestTable1.SELECT().selectOne("name=?","M-"+i);
+			Assert.assertEquals(ms.get(i).getId(),x.getId());
+			
+			ms.get(i).setTitle("U-"+i);
+		}
+		
+		rs=MysqlDB.DB.batchUpdate(ms);
+		Assert.assertEquals(rs.length,6);
+		Assert.assertEquals(TestTable1.SELECT().selectOne("name=?","M-5").getTitle(),"U-5");
+		
+		rs=MysqlDB.DB.batchDelete(ms);
+		Assert.assertEquals(rs.length,6);
+		Assert.assertEquals(TestTable1.SELECT().count(),0);
+	}
 }
@@ -18,6 +18,7 @@ package test.com.tsc9526.monalisa.orm.dialect.mysql.cases;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.testng.Assert;
@@ -30,6 +31,8 @@ import test.com.tsc9526.monalisa.orm.dialect.mysql.mysqldb.TestTable1;
 import test.com.tsc9526.monalisa.orm.dialect.mysql.mysqldb.TestTable2;
 
 import com.tsc9526.monalisa.orm.Tx;
+import com.tsc9526.monalisa.tools.datatable.DataTable;
+import com.tsc9526.monalisa.tools.datatable.Page;
 import com.tsc9526.monalisa.tools.string.MelpDate;
 
 /**
@@ -120,6 +123,37 @@ public class ModelTest {
 		
 	}
 	
+	public void testPartitionSelect()throws Exception{
+		SimpleDateFormat sdf=new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		
+		TestLogyyyymm log=new TestLogyyyymm();
+		log.setLogTime(sdf.parse("2016-03-01 01:01:01"));
+		log.save();
+		
+		log=new TestLogyyyymm();
+		log.setLogTime(sdf.parse("2016-04-02 02:02:02"));
+		log.save();
+		
+		Date from=sdf.parse("2015-12-01 00:00:00");
+		Date to  =sdf.parse("2016-05-01 00:00:00");
+		
+		List<String> tables=TestLogyyyymm.SELECT().partitions(from, to).getTables();
+		Assert.assertTrue(tables.contains("test_logyyyymm_201603"));
+		Assert.assertTrue(tables.contains("test_logyyyymm_201604"));
+		Assert.assertFalse(tables.contains("test_logyyyymm_201512"));
+		
+		long count=TestLogyyyymm.SELECT().partitions(from, to).count(null);
+		Assert.assertTrue(count>=2);
+		
+		DataTable<TestLogyyyymm> rs=TestLogyyyymm.SELECT().partitions(from, to).select(2, 0, "ORDER BY log_time DESC");
+		Assert.assertEquals(rs.size(), 2);
+		Assert.assertTrue(rs.get(0).getLogTime().getTime()>=rs.get(1).getLogTime().getTime());
+		
+		Page<TestLogyyyymm> page=TestLogyyyymm.SELECT().partitions(from, to).selectPage(1, 1, "ORDER BY log_time");
+		Assert.assertEquals(page.getRecords(), count);
+		Assert.assertEquals(page.rows(), 1);
+	}
+	
 	
 	public void testInsertArrays()throws Exception{
 		int[] i1=new int[]{3,2,1};
@@ -0,0 +1,96 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.orm.dialect.mysql.cases;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.orm.Query;
+import com.tsc9526.monalisa.orm.executor.ResultStream;
+import com.tsc9526.monalisa.orm.executor.RowCallback;
+import com.tsc9526.monalisa.tools.datatable.DataMap;
+
+import test.com.tsc9526.monalisa.orm.dialect.mysql.MysqlDB;
+import test.com.tsc9526.monalisa.orm.dialect.mysql.mysqldb.TestTable1;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class QueryStreamTest {
+
+	@BeforeMethod
+	public void setup(){
+		TestTable1.DELETE().deleteAll();
+		
+		for(int i=0;i<10;i++){
+			new TestTable1().setName("stream_"+i).setTitle("title_"+i).save();
+		}
+	}
+	
+	public void testStream(){
+		Query q=MysqlDB.DB.createQuery();
+		q.add("SELECT * FROM test_table_1 ORDER BY id ASC");
+		
+		ResultStream<TestTable1> rs=q.stream(TestTable1.class);
+		try{
+			int n=0;
+			for(TestTable1 x:rs){
+				Assert.assertEquals(x.getName(),"stream_"+n);
+				n++;
+			}
+			Assert.assertEquals(n,10);
+			Assert.assertEquals(rs.getRows(),10);
+			Assert.assertTrue(rs.isClosed());
+		}finally{
+			rs.close();
+		}
+	}
+	
+	public void testStreamClose(){
+		Query q=MysqlDB.DB.createQuery();
+		q.add("SELECT * FROM test_table_1 ORDER BY id ASC");
+		
+		ResultStream<DataMap> rs=q.stream(DataMap.class);
+		Assert.assertTrue(rs.hasNext());
+		Assert.assertEquals(rs.next().getString("name"),"stream_0");
+		rs.close();
+		
+		Assert.assertTrue(rs.isClosed());
+		Assert.assertFalse(rs.hasNext());
+		
+		Assert.assertEquals(TestTable1.SELECT().count(),10);
+	}
+	
+	public void testForEach(){
+		Query q=MysqlDB.DB.createQuery();
+		q.add("SELECT * FROM test_table_1 ORDER BY id ASC");
+		
+		final StringBuilder sb=new StringBuilder();
+		long n=q.forEach(TestTable1.class,new RowCallback<TestTable1>() {
+			public boolean onRow(TestTable1 row, long index) {
+				sb.append(row.getName().substring(7));
+				return index<4;
+			}
+		});
+		
+		Assert.assertEquals(n,5);
+		Assert.assertEquals(sb.toString(),"01234");
+	}
+}
@@ -25,6 +25,8 @@ import org.testng.annotations.Test;
 import test.com.tsc9526.monalisa.orm.dialect.mysql.MysqlDB;
 
 import com.tsc9526.monalisa.orm.Query;
+import com.tsc9526.monalisa.tools.datatable.DataMap;
+import com.tsc9526.monalisa.tools.datatable.DataTable;
 
 /**
  * 
@@ -134,4 +136,23 @@ public class QueryTest {
 		Assert.assertEquals(q.getSql(),"SELECT * FROM T1 WHERE f1 NOT IN(?, ?, ?, ?)");
 		Assert.assertEquals(q.getExecutableSQL(),"SELECT * FROM T1 WHERE f1 NOT IN('x1', 'x2', 'x3', 'x4')");
 	}
+	
+	public void testMappingPlan(){
+		for(int i=0;i<2;i++){
+			Query q=MysqlDB.DB.createQuery();
+			q.add("SELECT 1 AS a, 2 AS A, 3 AS a");
+			
+			DataTable<DataMap> rs=q.getList();
+			Assert.assertEquals(rs.size(),1);
+			
+			DataMap m=rs.get(0);
+			Assert.assertEquals(m.getInteger("a").intValue(),1);
+			Assert.assertEquals(m.getInteger("a1").intValue(),2);
+			Assert.assertEquals(m.getInteger("a2").intValue(),3);
+			
+			Assert.assertEquals(rs.getHeaders().get(0).getName(),"a");
+			Assert.assertEquals(rs.getHeaders().get(1).getName(),"A");
+			Assert.assertEquals(rs.getHeaders().get(2).getName(),"a1");
+		}
+	}
 }
@@ -180,6 +180,37 @@ public class ModelHolderTest {
 		Assert.assertEquals(sql,"UPDATE `simple_model` SET `int_field2`=2, `string_field1`='xstring' WHERE `auto` = 1");
 	}
 	
+	public void testChangeOrder()throws Exception{
+		TestSimpleModel model=new TestSimpleModel();
+		model.setIntField2(2);
+		model.setStringField1(null);
+		model.setIntField1(1);
+		model.setIntField2(3);
+		
+		Assert.assertEquals(names(model.changedFields()),"intField2,stringField1,intField1");
+		
+		model.clearChangesNull();
+		Assert.assertEquals(names(model.changedFields()),"intField2,intField1");
+		
+		model.set("string_field1", "x");
+		Assert.assertEquals(names(model.changedFields()),"intField2,intField1,stringField1");
+		
+		model.clearChanges();
+		Assert.assertEquals(model.changedFields().size(),0);
+		Assert.assertEquals(model.getIntField2().intValue(),3);
+	}
+	
+	private String names(Collection<FGS> fields){
+		StringBuilder sb=new StringBuilder();
+		for(FGS fgs:fields){
+			if(sb.length()>0){
+				sb.append(",");
+			}
+			sb.append(fgs.getFieldName());
+		}
+		return sb.toString();
+	}
+	
 	public void testCopy(){
 		TestSimpleModel x1=new TestSimpleModel();
 		x1.setIntField1(1);
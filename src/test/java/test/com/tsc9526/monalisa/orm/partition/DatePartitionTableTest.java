@@ -0,0 +1,105 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.orm.partition;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.orm.datasource.DBConfig;
+import com.tsc9526.monalisa.orm.datasource.DataSourceManager;
+import com.tsc9526.monalisa.orm.dialect.MysqlDialect;
+import com.tsc9526.monalisa.orm.meta.MetaPartition;
+import com.tsc9526.monalisa.orm.partition.DatePartitionTable;
+
+import test.com.tsc9526.monalisa.orm.dialect.basic.TestSimpleDB;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class DatePartitionTableTest {
+	SimpleDateFormat sdf=new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+	
+	public void testMonthTables()throws Exception {
+		MetaPartition mp=MetaPartition.parseFromString("log_{DatePartitionTable(yyyyMM,log_time)}");
+		DatePartitionTable p=new DatePartitionTable();
+		
+		List<String> names=p.getTableNames(mp, sdf.parse("2016-11-30 10:00:00"), sdf.parse("2017-03-01 00:00:00"));
+		Assert.assertEquals(names, Arrays.asList("log_201611","log_201612","log_201701","log_201702"));
+		
+		names=p.getTableNames(mp, sdf.parse("2016-01-31 00:00:00"), sdf.parse("2016-03-31 00:00:00"));
+		Assert.assertEquals(names, Arrays.asList("log_201601","log_201602","log_201603"));
+		
+		names=p.getTableNames(mp, sdf.parse("2016-01-01 00:00:00"), sdf.parse("2016-01-01 00:00:00"));
+		Assert.assertTrue(names.isEmpty());
+	}
+	
+	public void testDayTables()throws Exception {
+		MetaPartition mp=MetaPartition.parseFromString("log_{DatePartitionTable(yyyyMMdd,log_time)}");
+		DatePartitionTable p=new DatePartitionTable();
+		
+		List<String> names=p.getTableNames(mp, sdf.parse("2016-02-28 23:00:00"), sdf.parse("2016-03-02 00:00:01"));
+		Assert.assertEquals(names, Arrays.asList("log_20160228","log_20160229","log_20160301","log_20160302"));
+		Assert.assertEquals(p.getDateField(mp), "log_time");
+	}
+	
+	public void testNextTables()throws Exception {
+		MetaPartition mp=MetaPartition.parseFromString("log_{DatePartitionTable(yyyyMM,log_time)}");
+		DatePartitionTable p=new DatePartitionTable();
+		
+		List<String> names=p.getNextTableNames(mp, sdf.parse("2016-11-30 23:59:59"), 2);
+		Assert.assertEquals(names, Arrays.asList("log_201611","log_201612","log_201701"));
+		
+		names=p.getNextTableNames(mp, sdf.parse("2016-01-31 00:00:00"), 1);
+		Assert.assertEquals(names, Arrays.asList("log_201601","log_201602"));
+		
+		names=p.getNextTableNames(mp, sdf.parse("2016-01-31 00:00:00"), 0);
+		Assert.assertEquals(names, Arrays.asList("log_201601"));
+	}
+	
+	public void testTableExistCache()throws Exception {
+		DBConfig db=DataSourceManager.getInstance().getDBConfig(TestSimpleDB.class);
+		
+		ExistDialect dialect=new ExistDialect();
+		String table="log_exist_"+System.nanoTime();
+		
+		Assert.assertTrue(dialect.tableExistCached(db, table));
+		Assert.assertTrue(dialect.tableExistCached(db, table));
+		Assert.assertEquals(dialect.checks, 1);
+		
+		dialect.exist=false;
+		dialect.clearTableExistCache(db, table);
+		Assert.assertFalse(dialect.tableExistCached(db, table));
+		Assert.assertFalse(dialect.tableExistCached(db, table));
+		Assert.assertEquals(dialect.checks, 2);
+	}
+	
+	static class ExistDialect extends MysqlDialect{
+		boolean exist=true;
+		int checks=0;
+		
+		public boolean tableExist(DBConfig db,String name,boolean includeView){
+			checks++;
+			return exist;
+		}
+	}
+}
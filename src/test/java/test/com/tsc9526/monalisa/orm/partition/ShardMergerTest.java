@@ -0,0 +1,223 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.orm.partition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.orm.Query;
+import com.tsc9526.monalisa.orm.datasource.DBConfig;
+import com.tsc9526.monalisa.orm.datasource.DataSourceManager;
+import com.tsc9526.monalisa.orm.executor.HandlerResultSet;
+import com.tsc9526.monalisa.orm.partition.ConsistentHashShard;
+import com.tsc9526.monalisa.orm.partition.ModShard;
+import com.tsc9526.monalisa.orm.partition.ShardMerger;
+import com.tsc9526.monalisa.orm.partition.ShardMerger.OrderBy;
+import com.tsc9526.monalisa.orm.partition.ShardResultHandler;
+import com.tsc9526.monalisa.orm.partition.ShardedDB;
+import com.tsc9526.monalisa.tools.Tasks;
+import com.tsc9526.monalisa.tools.datatable.DataMap;
+import com.tsc9526.monalisa.tools.datatable.DataTable;
+
+import test.com.tsc9526.monalisa.orm.dialect.basic.TestSimpleDB;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class ShardMergerTest {
+	
+	public void testStrategy() {
+		ModShard mod=new ModShard();
+		Assert.assertEquals(mod.getShard(7, 4), 3);
+		Assert.assertEquals(mod.getShard(8L, 4), 0);
+		Assert.assertEquals(mod.getShard("7", 4), mod.getShard("7", 4));
+		
+		ConsistentHashShard hash=new ConsistentHashShard();
+		int[] counts=new int[4];
+		for(int i=0;i<4000;i++){
+			int x=hash.getShard(i, 4);
+			Assert.assertEquals(hash.getShard(i, 4), x);
+			counts[x]++;
+		}
+		for(int c:counts){
+			Assert.assertTrue(c>500, Arrays.toString(counts));
+		}
+		
+		//增加一个分片, 大部分的key不会移动
+		int moved=0;
+		for(int i=0;i<4000;i++){
+			if(hash.getShard(i, 4)!=hash.getShard(i, 5)){
+				moved++;
+			}
+		}
+		Assert.assertTrue(moved<1500, "moved: "+moved);
+	}
+	
+	public void testScatter() {
+		DBConfig db=DataSourceManager.getInstance().getDBConfig(TestSimpleDB.class);
+		ShardedDB shards=new ShardedDB(db, Arrays.asList(db,db,db,db), new ModShard());
+		
+		ExecutorService old=ShardedDB.getExecutor();
+		ThreadPoolExecutor executor=new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS
+				, new SynchronousQueue<Runnable>()
+				, Tasks.createThreadFactory("Test-Shard")
+				, new ThreadPoolExecutor.CallerRunsPolicy());
+		ShardedDB.setExecutor(executor);
+		try{
+			List<String> rs=shards.scatter(new ShardedDB.ShardTask<String>(){
+				public String execute(DBConfig shard) {
+					try{
+						Thread.sleep(100);
+					}catch(InterruptedException e){
+						Thread.currentThread().interrupt();
+					}
+					return Thread.currentThread().getName();
+				}
+			});
+			Assert.assertEquals(rs.size(), 4);
+			
+			//线程数不超过executor的上限, 其余分片在调用线程中执行
+			Set<String> threads=new HashSet<String>(rs);
+			Assert.assertTrue(threads.contains(Thread.currentThread().getName()), rs.toString());
+			Assert.assertTrue(threads.contains("Test-Shard-1"), rs.toString());
+			Assert.assertEquals(threads.size(), 2, rs.toString());
+			Assert.assertEquals(executor.getLargestPoolSize(), 1);
+		}finally{
+			ShardedDB.setExecutor(old);
+			executor.shutdown();
+		}
+	}
+	
+	public void testForShard() {
+		Query q=new Query();
+		HandlerResultSet<DataMap> origin=new HandlerResultSet<DataMap>(q, DataMap.class);
+		
+		HandlerResultSet<DataMap> h1=ShardResultHandler.forShard(origin);
+		HandlerResultSet<DataMap> h2=ShardResultHandler.forShard(origin);
+		Assert.assertEquals(h1.getClass(), HandlerResultSet.class);
+		Assert.assertTrue(h1!=origin && h1!=h2);
+		Assert.assertTrue(h1.getQuery()==q);
+		Assert.assertEquals(h1.getResultClass(), DataMap.class);
+		
+		HandlerResultSet<DataMap> custom=new HandlerResultSet<DataMap>(q, DataMap.class){};
+		Assert.assertTrue(ShardResultHandler.forShard(custom) instanceof ShardResultHandler);
+	}
+	
+	public void testParseOrderBy() {
+		List<OrderBy> orders=ShardMerger.parseOrderBy("SELECT * FROM (SELECT a FROM t ORDER BY b) x WHERE name='order by c' ORDER BY t.`id` DESC, name LIMIT 10");
+		Assert.assertEquals(orders.size(), 2);
+		Assert.assertEquals(orders.get(0).getName(), "id");
+		Assert.assertTrue(orders.get(0).isDesc());
+		Assert.assertEquals(orders.get(1).getName(), "name");
+		Assert.assertFalse(orders.get(1).isDesc());
+		
+		Assert.assertTrue(ShardMerger.parseOrderBy("SELECT * FROM t").isEmpty());
+	}
+	
+	public void testMerge() {
+		List<List<DataMap>> lists=new ArrayList<List<DataMap>>();
+		lists.add(rows(1,4,7));
+		lists.add(rows(2,5,8));
+		lists.add(rows(3,6));
+		
+		DataTable<DataMap> r=ShardMerger.merge(lists, ShardMerger.parseOrderBy("SELECT * FROM t ORDER BY id"), 2, 3);
+		Assert.assertEquals(ids(r), "3,4,5");
+		
+		r=ShardMerger.merge(lists, ShardMerger.parseOrderBy("SELECT * FROM t ORDER BY id"), 0, -1);
+		Assert.assertEquals(ids(r), "1,2,3,4,5,6,7,8");
+		
+		r=ShardMerger.merge(lists, ShardMerger.parseOrderBy("SELECT * FROM t"), 1, 3);
+		Assert.assertEquals(ids(r), "4,7,2");
+		
+		List<List<DataMap>> desc=new ArrayList<List<DataMap>>();
+		desc.add(rows(9,3));
+		desc.add(rows(8,7,1));
+		r=ShardMerger.merge(desc, ShardMerger.parseOrderBy("SELECT * FROM t ORDER BY id DESC"), 0, 4);
+		Assert.assertEquals(ids(r), "9,8,7,3");
+	}
+	
+	public void testAggregate() {
+		String sql="SELECT COUNT(*) AS cnt, SUM(amount) total, MIN(id), MAX(id), 'x' AS tag FROM t WHERE name=?";
+		
+		List<DataMap> rs=new ArrayList<DataMap>();
+		rs.add(row(2L,10,1,5));
+		rs.add(row(3L,20,2,9));
+		rs.add(row(0L,null,null,null));
+		
+		DataMap r=ShardMerger.aggregate(rs, sql);
+		Assert.assertEquals(r.get("cnt"), 5L);
+		Assert.assertEquals(r.get("total"), 30);
+		Assert.assertEquals(r.get("min"), 1);
+		Assert.assertEquals(r.get("max"), 9);
+		Assert.assertEquals(r.get("tag"), "x");
+		
+		String countSql="SELECT COUNT(*) AS cnt FROM( SELECT a, COUNT(*) FROM t GROUP BY a ) AS tmp";
+		Assert.assertEquals(ShardMerger.aggregate(Arrays.asList(3L, 4L), countSql), (Object)7L);
+		
+		Assert.assertNull(ShardMerger.parseAggregates("SELECT a, COUNT(*) FROM t GROUP BY a"));
+		Assert.assertNull(ShardMerger.parseAggregates("SELECT * FROM t"));
+		
+		try{
+			ShardMerger.aggregate(Arrays.asList(3L, 4L), "SELECT AVG(x) FROM t");
+			Assert.fail("AVG can not be merged");
+		}catch(RuntimeException e){
+		}
+	}
+	
+	private DataMap row(Object cnt,Object total,Object min,Object max){
+		DataMap m=new DataMap();
+		m.put("cnt", cnt);
+		m.put("total", total);
+		m.put("min", min);
+		m.put("max", max);
+		m.put("tag", "x");
+		return m;
+	}
+	
+	private List<DataMap> rows(int... ids){
+		List<DataMap> rs=new ArrayList<DataMap>();
+		for(int id:ids){
+			DataMap m=new DataMap();
+			m.put("id", id);
+			rs.add(m);
+		}
+		return rs;
+	}
+	
+	private String ids(List<DataMap> rs){
+		StringBuilder sb=new StringBuilder();
+		for(DataMap m:rs){
+			if(sb.length()>0){
+				sb.append(",");
+			}
+			sb.append(m.get("id"));
+		}
+		return sb.toString();
+	}
+}
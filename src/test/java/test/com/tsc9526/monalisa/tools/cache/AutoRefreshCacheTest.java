@@ -17,6 +17,7 @@
 package test.com.tsc9526.monalisa.tools.cache;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.List;
 
@@ -29,6 +30,7 @@ import com.tsc9526.monalisa.orm.executor.CacheableExecute;
 import com.tsc9526.monalisa.orm.executor.Execute;
 import com.tsc9526.monalisa.tools.cache.CacheKey;
 import com.tsc9526.monalisa.tools.cache.CacheManager;
+import com.tsc9526.monalisa.tools.io.MelpClose;
 import com.tsc9526.monalisa.tools.misc.MelpMisc;
 
 import test.com.tsc9526.monalisa.orm.dialect.mysql.MysqlDB;
@@ -62,7 +64,7 @@ public class AutoRefreshCacheTest {
 		Assert.assertTrue(getTestTable1AutoRefresh("auto-test-cache-"+0) == t1);
 		
 		//update title, not update cache
-		TestTable1.SELECT().selectByPrimaryKey(t1.getId()).setTitle("tx").update();
+		updateTitleWithoutEvictCache(t1.getId(),"tx");
 		Assert.assertEquals(getTestTable1AutoRefresh("auto-test-cache-"+0).getTitle(),"t0");
 		
 		MelpMisc.sleep(200);
@@ -75,6 +77,25 @@ public class AutoRefreshCacheTest {
 	}
 	
 
+	/**
+	 * Update by plain JDBC, so that the cached queries of test_table_1 are not evicted
+	 */
+	private void updateTitleWithoutEvictCache(Integer id,String title) {
+		Connection conn=null;
+		PreparedStatement pst=null;
+		try {
+			conn=MysqlDB.DB.getDataSource().getConnection();
+			pst=conn.prepareStatement("UPDATE test_table_1 SET title=? WHERE id=?");
+			pst.setString(1, title);
+			pst.setInt(2, id);
+			pst.executeUpdate();
+		}catch(SQLException e) {
+			throw new RuntimeException(e);
+		}finally {
+			MelpClose.close(pst,conn);
+		}
+	}
+	
 	private TestTable1 getTestTable1AutoRefresh(String name) {
 		TestTable1 t1= TestTable1.WHERE()
 				.name.eq(name)
@@ -91,7 +112,7 @@ public class AutoRefreshCacheTest {
 		Assert.assertTrue(getTestTable1AutoRefreshRemove1("auto-test-cache-"+0) == t1);
 		
 		//update title, not update cache
-		TestTable1.SELECT().selectByPrimaryKey(t1.getId()).setTitle("tx").update();
+		updateTitleWithoutEvictCache(t1.getId(),"tx");
 		Assert.assertEquals(getTestTable1AutoRefreshRemove1("auto-test-cache-"+0).getTitle(),"t0");
 		
 		MelpMisc.sleep(200);
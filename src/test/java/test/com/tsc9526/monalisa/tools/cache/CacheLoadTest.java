@@ -0,0 +1,165 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.tools.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.tools.cache.Cache;
+import com.tsc9526.monalisa.tools.cache.CacheKey;
+import com.tsc9526.monalisa.tools.cache.CacheManager;
+import com.tsc9526.monalisa.tools.cache.Cacheable;
+import com.tsc9526.monalisa.tools.cache.impl.TinyLfuCache;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class CacheLoadTest {
+	
+	public void testSingleFlight() throws Exception{
+		final CacheKey key=new CacheKey("test-single-flight");
+		final AtomicInteger loads=new AtomicInteger();
+		
+		final Cacheable loader=new Cacheable() {
+			public Object execute() {
+				loads.incrementAndGet();
+				pause(200);
+				return new Object();
+			}
+		};
+		
+		int threads=50;
+		final CountDownLatch start=new CountDownLatch(1);
+		final CountDownLatch done =new CountDownLatch(threads);
+		final List<Object> results=new ArrayList<Object>();
+		
+		for(int i=0;i<threads;i++){
+			new Thread(){
+				public void run(){
+					try{
+						start.await();
+						Object v=CacheManager.getInstance().load(key, loader, 0);
+						synchronized (results) {
+							results.add(v);
+						}
+					}catch(Exception e){
+						e.printStackTrace();
+					}finally{
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		start.countDown();
+		done.await();
+		
+		Assert.assertEquals(loads.get(), 1);
+		Assert.assertEquals(results.size(), threads);
+		for(Object v:results){
+			Assert.assertTrue(v==results.get(0));
+		}
+		Assert.assertEquals(CacheManager.getInstance().getLoadingCount(), 0);
+	}
+	
+	public void testLoadException() {
+		CacheKey key=new CacheKey("test-load-exception");
+		try{
+			CacheManager.getInstance().load(key, new Cacheable() {
+				public Object execute() {
+					throw new IllegalStateException("load failed");
+				}
+			}, 0);
+			
+			Assert.fail("Exception expected");
+		}catch(IllegalStateException e){
+			Assert.assertEquals(e.getMessage(), "load failed");
+		}
+		
+		Object v=CacheManager.getInstance().load(key, new Cacheable() {
+			public Object execute() {
+				return "ok";
+			}
+		}, 0);
+		Assert.assertEquals(v, "ok");
+	}
+	
+	public void testWaitTimeout() throws Exception{
+		final CacheKey key=new CacheKey("test-load-timeout");
+		
+		Thread leader=new Thread(){
+			public void run(){
+				CacheManager.getInstance().load(key, new Cacheable() {
+					public Object execute() {
+						pause(500);
+						return "slow";
+					}
+				}, 0);
+			}
+		};
+		leader.start();
+		pause(100);
+		
+		try{
+			CacheManager.getInstance().load(key, new Cacheable() {
+				public Object execute() {
+					return "fast";
+				}
+			}, 50);
+			
+			Assert.fail("Timeout expected");
+		}catch(RuntimeException e){
+			Assert.assertTrue(e.getMessage().startsWith("Timeout"), e.getMessage());
+		}
+		
+		leader.join();
+	}
+	
+	public void testRefreshAsync() throws Exception{
+		final Cache cache=new TinyLfuCache("test-refresh-async");
+		final CacheKey key=new CacheKey("test-refresh-async");
+		final AtomicInteger loads=new AtomicInteger();
+		
+		Cacheable loader=new Cacheable() {
+			public Object execute() {
+				pause(200);
+				return "v"+loads.incrementAndGet();
+			}
+		};
+		
+		Assert.assertTrue(CacheManager.getInstance().refreshAsync(key, cache, loader, 10*1000));
+		Assert.assertFalse(CacheManager.getInstance().refreshAsync(key, cache, loader, 10*1000));
+		
+		pause(500);
+		Assert.assertEquals(loads.get(), 1);
+		Assert.assertEquals(cache.getObject(key), "v1");
+	}
+	
+	static void pause(long ms){
+		try{
+			Thread.sleep(ms);
+		}catch(InterruptedException e){
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -21,6 +21,7 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import com.tsc9526.monalisa.orm.Query;
+import com.tsc9526.monalisa.orm.Tx;
 import com.tsc9526.monalisa.tools.datatable.DataMap;
 import com.tsc9526.monalisa.tools.datatable.DataTable;
 import com.tsc9526.monalisa.tools.datatable.Page;
@@ -69,6 +70,33 @@ public class CacheTest {
 		Assert.assertTrue(getList(5,0) != rs);
 	}
 	
+	public void testEvictByTableChanged() {
+		DataTable<TestTable1> rs=getList(10,0);
+		Assert.assertTrue(getList(10,0) == rs);
+		
+		final TestTable1 x=rs.get(0);
+		x.setTitle("t-changed");
+		x.update();
+		
+		DataTable<TestTable1> rs2=getList(10,0);
+		Assert.assertTrue(rs2 != rs);
+		Assert.assertTrue(getList(10,0) == rs2);
+		
+		final DataTable<TestTable1> rs3=rs2;
+		Tx.execute(new Tx.Atom<Integer>() {
+			public Integer execute() throws Throwable {
+				x.setTitle("t-changed-in-tx");
+				x.update();
+				
+				//evict after commit
+				Assert.assertTrue(getList(10,0) == rs3);
+				return 0;
+			}
+		});
+		
+		Assert.assertTrue(getList(10,0) != rs3);
+	}
+	
 	private DataTable<TestTable1> getList(int limit,int offset){
 		DataTable<TestTable1> rs=TestTable1.WHERE()
 				.name.like("mm-test-cache-%")
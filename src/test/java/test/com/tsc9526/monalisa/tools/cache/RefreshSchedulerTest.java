@@ -0,0 +1,146 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.tools.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.tools.cache.Cache;
+import com.tsc9526.monalisa.tools.cache.CacheKey;
+import com.tsc9526.monalisa.tools.cache.Cacheable;
+import com.tsc9526.monalisa.tools.cache.RefreshScheduler;
+import com.tsc9526.monalisa.tools.cache.impl.TinyLfuCache;
+import com.tsc9526.monalisa.tools.misc.MelpMisc;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class RefreshSchedulerTest {
+	
+	public void testRefresh() {
+		RefreshScheduler rs=new RefreshScheduler();
+		Cache cache=new TinyLfuCache("test-refresh");
+		CacheKey key=new CacheKey("test-refresh");
+		
+		final AtomicInteger loads=new AtomicInteger();
+		Cacheable loader=new Cacheable() {
+			public Object execute() {
+				return "v"+loads.incrementAndGet();
+			}
+		};
+		
+		cache.putObject(key, "v0", 10*1000);
+		Assert.assertTrue(rs.add("g1", 0, key, cache, loader, 10*1000, 100));
+		Assert.assertFalse(rs.add("g1", 0, key, cache, loader, 10*1000, 100));
+		
+		MelpMisc.sleep(380);
+		Assert.assertTrue(loads.get()>=2, "loads: "+loads.get());
+		Assert.assertEquals(cache.getObject(key), "v"+loads.get());
+		
+		Assert.assertTrue(rs.remove(key));
+		Assert.assertFalse(rs.remove(key));
+		
+		int n=loads.get();
+		MelpMisc.sleep(300);
+		Assert.assertEquals(loads.get(), n);
+		Assert.assertEquals(rs.getScheduledCount(), 0);
+		
+		rs.shutdown();
+	}
+	
+	public void testIdleRemoved() {
+		RefreshScheduler rs=new RefreshScheduler();
+		rs.setMaxIdlePeriods(2);
+		
+		Cache cache=new TinyLfuCache("test-idle");
+		CacheKey key=new CacheKey("test-idle");
+		
+		cache.putObject(key, "v0", 10*1000);
+		rs.add(null, 0, key, cache, new Cacheable() {
+			public Object execute() {
+				return "v1";
+			}
+		}, 10*1000, 50);
+		
+		MelpMisc.sleep(400);
+		Assert.assertEquals(rs.getScheduledCount(), 0);
+		Assert.assertEquals(rs.getDeregisteredCount(), 1);
+		
+		rs.shutdown();
+	}
+	
+	public void testEvictedRemoved() {
+		RefreshScheduler rs=new RefreshScheduler();
+		
+		Cache cache=new TinyLfuCache("test-evicted");
+		CacheKey key=new CacheKey("test-evicted");
+		
+		cache.putObject(key, "v0", 10*1000);
+		rs.add(null, 0, key, cache, new Cacheable() {
+			public Object execute() {
+				return "v1";
+			}
+		}, 10*1000, 100);
+		
+		cache.removeObject(key);
+		
+		MelpMisc.sleep(300);
+		Assert.assertEquals(rs.getScheduledCount(), 0);
+		Assert.assertNull(cache.getObject(key));
+		
+		rs.shutdown();
+	}
+	
+	public void testGroupConcurrency() {
+		RefreshScheduler rs=new RefreshScheduler();
+		
+		final AtomicInteger running=new AtomicInteger();
+		final AtomicInteger maxRunning=new AtomicInteger();
+		Cacheable loader=new Cacheable() {
+			public Object execute() {
+				int n=running.incrementAndGet();
+				synchronized (maxRunning) {
+					if(n>maxRunning.get()){
+						maxRunning.set(n);
+					}
+				}
+				MelpMisc.sleep(100);
+				running.decrementAndGet();
+				return "v";
+			}
+		};
+		
+		Cache cache=new TinyLfuCache("test-group");
+		for(int i=0;i<10;i++){
+			CacheKey key=new CacheKey("test-group-"+i);
+			cache.putObject(key, "v0", 10*1000);
+			
+			rs.add("g2", 2, key, cache, loader, 10*1000, 50);
+		}
+		
+		MelpMisc.sleep(600);
+		rs.shutdown();
+		
+		Assert.assertTrue(maxRunning.get()<=2, "max running: "+maxRunning.get());
+		Assert.assertTrue(rs.getRefreshCount()>0);
+		Assert.assertTrue(rs.getSkippedCount()>0);
+	}
+}
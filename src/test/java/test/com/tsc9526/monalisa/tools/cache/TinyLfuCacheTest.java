@@ -0,0 +1,241 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.tools.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.tools.cache.Cache;
+import com.tsc9526.monalisa.tools.cache.CacheKey;
+import com.tsc9526.monalisa.tools.cache.CacheManager;
+import com.tsc9526.monalisa.tools.cache.CacheValue;
+import com.tsc9526.monalisa.tools.cache.decorators.LruCache;
+import com.tsc9526.monalisa.tools.cache.impl.TinyLfuCache;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class TinyLfuCacheTest {
+	
+	public void testPutGet() {
+		TinyLfuCache cache=new TinyLfuCache("test-put-get");
+		
+		CacheKey key=new CacheKey("k1");
+		cache.putObject(key, "v1", 10*1000);
+		Assert.assertEquals(cache.getObject(new CacheKey("k1")), "v1");
+		Assert.assertEquals(cache.getSize(), 1);
+		
+		Assert.assertEquals(cache.removeObject(key), "v1");
+		Assert.assertNull(cache.getObject(key));
+		Assert.assertEquals(cache.getWeightedSize(), 0);
+	}
+	
+	public void testExpired() throws Exception{
+		TinyLfuCache cache=new TinyLfuCache("test-expired");
+		cache.putObject("k1", "v1", 10);
+		
+		Thread.sleep(50);
+		Assert.assertNull(cache.getObject("k1"));
+		Assert.assertEquals(cache.getSize(), 0);
+	}
+	
+	public void testMaxEntries() {
+		TinyLfuCache cache=new TinyLfuCache("test-max-entries",64,Integer.MAX_VALUE);
+		for(int i=0;i<1000;i++){
+			cache.getObject("k"+i);
+			cache.putObject("k"+i, i, 10*1000);
+		}
+		
+		Assert.assertTrue(cache.getSize()<=64, "size: "+cache.getSize());
+		Assert.assertTrue(cache.getEvictionCount()+cache.getRejectCount()>=1000-64);
+	}
+	
+	public void testMaxBytes() {
+		TinyLfuCache cache=new TinyLfuCache("test-max-bytes",1024,64*1024);
+		
+		StringBuilder sb=new StringBuilder();
+		for(int i=0;i<1024;i++){
+			sb.append("x");
+		}
+		String v=sb.toString();
+		
+		for(int i=0;i<1000;i++){
+			cache.getObject("k"+i);
+			cache.putObject("k"+i, v, 10*1000);
+		}
+		
+		Assert.assertTrue(cache.getWeightedSize()<=64*1024, "bytes: "+cache.getWeightedSize());
+		Assert.assertTrue(cache.getSize()<64);
+	}
+	
+	public void testContainsKey() {
+		TinyLfuCache cache=new TinyLfuCache("test-contains-key");
+		cache.putObject("k1", "v1", 10*1000);
+		
+		Assert.assertTrue(cache.containsKey("k1"));
+		Assert.assertFalse(cache.containsKey("k2"));
+		
+		Cache lru=new LruCache(cache);
+		Assert.assertTrue(CacheManager.containsKey(lru, "k1"));
+		Assert.assertFalse(CacheManager.containsKey(lru, "k2"));
+		
+		Assert.assertEquals(cache.getHitCount(), 0);
+		Assert.assertEquals(cache.getMissCount(), 0);
+	}
+	
+	public void testCacheValueBytes() {
+		TinyLfuCache cache=new TinyLfuCache("test-cache-value-bytes");
+		
+		StringBuilder sb=new StringBuilder();
+		for(int i=0;i<4096;i++){
+			sb.append("x");
+		}
+		
+		cache.putObject("k1", new CacheValue(sb.toString(), 1000), 10*1000);
+		Assert.assertTrue(cache.getWeightedSize()>2*4096, "bytes: "+cache.getWeightedSize());
+	}
+	
+	public void testFrequentKeysAdmitted() {
+		TinyLfuCache cache=new TinyLfuCache("test-frequent",1024,Integer.MAX_VALUE);
+		
+		for(int i=0;i<32;i++){
+			cache.getObject("hot"+i);
+			cache.putObject("hot"+i, i, 10*1000);
+		}
+		
+		for(int n=0;n<10;n++){
+			for(int i=0;i<32;i++){
+				Assert.assertNotNull(cache.getObject("hot"+i));
+			}
+		}
+		
+		//one-hit scan should not flush the hot keys
+		for(int i=0;i<10000;i++){
+			cache.getObject("scan"+i);
+			cache.putObject("scan"+i, i, 10*1000);
+		}
+		
+		int hits=0;
+		for(int i=0;i<32;i++){
+			if(cache.getObject("hot"+i)!=null){
+				hits++;
+			}
+		}
+		Assert.assertEquals(hits, 32);
+	}
+	
+	public void testWindowAdmission() {
+		TinyLfuCache cache=new TinyLfuCache("test-window",64,Integer.MAX_VALUE);
+		for(int i=0;i<128;i++){
+			cache.getObject("warm"+i);
+			cache.getObject("warm"+i);
+			cache.putObject("warm"+i, i, 10*1000);
+		}
+		Assert.assertEquals(cache.getSize(), 64);
+		
+		//the cache is full of keys used more often, new keys are still cached in the window
+		for(int i=0;i<20;i++){
+			cache.putObject("new"+i, i, 10*1000);
+			Assert.assertEquals(cache.getObject("new"+i), (Object)i);
+		}
+		
+		//a key used often enough moves from the window to the main area
+		cache.putObject("x", "x", 10*1000);
+		for(int i=0;i<6;i++){
+			Assert.assertEquals(cache.getObject("x"), "x");
+		}
+		for(int i=0;i<20;i++){
+			cache.putObject("scan"+i, i, 10*1000);
+		}
+		Assert.assertEquals(cache.getObject("x"), "x");
+	}
+	
+	public void testRejectKeepsVictims() {
+		TinyLfuCache cache=new TinyLfuCache("test-reject",64,Integer.MAX_VALUE);
+		for(int i=0;i<128;i++){
+			cache.getObject("warm"+i);
+			cache.getObject("warm"+i);
+			cache.putObject("warm"+i, i, 10*1000);
+		}
+		
+		long evictions=cache.getEvictionCount();
+		List<Object> keys=cache.keys();
+		
+		//one-hit keys are rejected when they leave the window, the main area is not changed
+		for(int i=0;i<100;i++){
+			cache.putObject("scan"+i, i, 10*1000);
+		}
+		Assert.assertEquals(cache.getEvictionCount(), evictions);
+		Assert.assertEquals(cache.getSize(), 64);
+		
+		int kept=0;
+		for(Object key:keys){
+			if(cache.containsKey(key)){
+				kept++;
+			}
+		}
+		Assert.assertTrue(kept>=keys.size()-2, "kept: "+kept);
+	}
+	
+	public void testConcurrent() throws Exception{
+		final TinyLfuCache cache=new TinyLfuCache("test-concurrent",256,Integer.MAX_VALUE);
+		final AtomicReference<Throwable> error=new AtomicReference<Throwable>();
+		
+		int threads=64;
+		final CountDownLatch latch=new CountDownLatch(threads);
+		
+		List<Thread> ts=new ArrayList<Thread>();
+		for(int t=0;t<threads;t++){
+			final int seed=t;
+			Thread thread=new Thread(){
+				public void run(){
+					try{
+						for(int i=0;i<5000;i++){
+							String key="k"+((i*31+seed)%1024);
+							if(cache.getObject(key)==null){
+								cache.putObject(key, i, 10*1000);
+							}
+						}
+					}catch(Throwable e){
+						error.set(e);
+					}finally{
+						latch.countDown();
+					}
+				}
+			};
+			ts.add(thread);
+			thread.start();
+		}
+		latch.await();
+		
+		Assert.assertNull(error.get());
+		Assert.assertTrue(cache.getSize()<=256, "size: "+cache.getSize());
+		Assert.assertEquals(cache.keys().size(), cache.getSize());
+	}
+	
+	public void testDefaultCache() {
+		Cache cache=CacheManager.getInstance().getDefaultCache();
+		Assert.assertTrue(cache instanceof TinyLfuCache);
+	}
+}
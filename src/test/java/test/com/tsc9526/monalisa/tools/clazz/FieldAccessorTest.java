@@ -0,0 +1,199 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.tools.clazz;
+
+import java.util.Date;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.tools.clazz.MelpAccessor;
+import com.tsc9526.monalisa.tools.clazz.MelpClass;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.ClassHelper;
+import com.tsc9526.monalisa.tools.clazz.MelpClass.FGS;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class FieldAccessorTest {
+	
+	public void testGetAndSet(){
+		ClassHelper mc=MelpClass.getClassHelper(AccessorBean.class);
+		
+		AccessorBean bean=new AccessorBean();
+		
+		FGS id=mc.getField("id");
+		Assert.assertNotNull(id.getAccessor());
+		id.setObject(bean, 10);
+		Assert.assertEquals(bean.getId(),10);
+		Assert.assertEquals(id.getObject(bean),10);
+		
+		id.setObject(bean, null);
+		Assert.assertEquals(bean.getId(),10);
+		
+		FGS name=mc.getField("name");
+		name.setObject(bean, "x1");
+		Assert.assertEquals(bean.getName(),"x1");
+		Assert.assertEquals(name.getObject(bean),"x1");
+		
+		FGS amount=mc.getField("amount");
+		amount.setObject(bean, "12345678901");
+		Assert.assertEquals(bean.amount,12345678901L);
+		Assert.assertEquals(amount.getObject(bean),12345678901L);
+		
+		FGS enabled=mc.getField("enabled");
+		enabled.setObject(bean, true);
+		Assert.assertTrue(bean.isEnabled());
+		Assert.assertEquals(enabled.getObject(bean),Boolean.TRUE);
+		
+		Date now=new Date();
+		FGS time=mc.getField("time");
+		time.setObject(bean, now);
+		Assert.assertEquals(time.getObject(bean),now);
+		
+		FGS secret=mc.getField("secret");
+		secret.setObject(bean, "s1");
+		Assert.assertEquals(secret.getObject(bean),"s1");
+	}
+	
+	public void testReflection(){
+		boolean enable=MelpAccessor.CFG_ENABLE;
+		try{
+			MelpAccessor.CFG_ENABLE=false;
+			ClassHelper reflect=new ClassHelper(AccessorBean.class);
+			
+			FGS name=reflect.getField("name");
+			FGS id  =reflect.getField("id");
+			Assert.assertNull(name.getAccessor());
+			Assert.assertNull(id.getAccessor());
+			
+			AccessorBean bean=new AccessorBean();
+			name.setObject(bean, "x2");
+			id.setObject(bean, "20");
+			Assert.assertEquals(bean.getName(),"x2");
+			Assert.assertEquals(bean.getId(),20);
+			Assert.assertEquals(id.getObject(bean),20);
+		}finally{
+			MelpAccessor.CFG_ENABLE=enable;
+		}
+		
+		FGS name=MelpClass.getClassHelper(AccessorBean.class).getField("name");
+		Assert.assertSame(new ClassHelper(AccessorBean.class).getField("name").getAccessor().getClass(), name.getAccessor().getClass());
+	}
+	
+	/**
+	 * 字段存取性能对比: MelpAccessor vs 反射. 不在默认测试中执行, 通过 main 方法运行
+	 */
+	@Test(enabled=false)
+	public void benchmark(){
+		ClassHelper accessor=MelpClass.getClassHelper(AccessorBean.class);
+		
+		ClassHelper reflect;
+		boolean enable=MelpAccessor.CFG_ENABLE;
+		try{
+			MelpAccessor.CFG_ENABLE=false;
+			reflect=new ClassHelper(AccessorBean.class);
+		}finally{
+			MelpAccessor.CFG_ENABLE=enable;
+		}
+		Assert.assertNotNull(accessor.getField("name").getAccessor());
+		Assert.assertNull(reflect.getField("name").getAccessor());
+		
+		int n=2000000;
+		for(int i=0;i<3;i++){
+			long t1=run(accessor,n);
+			long t2=run(reflect ,n);
+			
+			System.out.println("Get/Set "+n+" times, accessor: "+(t1/1000000)+" ms, reflection: "+(t2/1000000)+" ms");
+		}
+	}
+	
+	private long run(ClassHelper mc,int n){
+		FGS id  =mc.getField("id");
+		FGS name=mc.getField("name");
+		
+		AccessorBean bean=new AccessorBean();
+		Integer v=Integer.valueOf(1);
+		
+		long h=0;
+		long t=System.nanoTime();
+		for(int i=0;i<n;i++){
+			id.setObject(bean, v);
+			name.setObject(bean, "x");
+			
+			h+=(Integer)id.getObject(bean);
+			h+=name.getObject(bean).hashCode();
+		}
+		t=System.nanoTime()-t;
+		
+		Assert.assertTrue(h>0);
+		return t;
+	}
+	
+	public static void main(String[] args) {
+		new FieldAccessorTest().benchmark();
+	}
+	
+	public static class AccessorBean{
+		private int     id;
+		private String  name;
+		private boolean enabled;
+		private Date    time;
+		private String  secret;
+		
+		public long     amount;
+		
+		public int getId() {
+			return id;
+		}
+		
+		public AccessorBean setId(int id) {
+			this.id = id;
+			return this;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Date getTime() {
+			return time;
+		}
+
+		public void setTime(Date time) {
+			this.time = time;
+		}
+		
+		String getSecret(){
+			return secret;
+		}
+	}
+}
@@ -28,6 +28,7 @@ import org.testng.annotations.Test;
 import test.com.tsc9526.monalisa.orm.dialect.basic.TestSimpleModel;
 
 import com.google.gson.JsonPrimitive;
+import com.tsc9526.monalisa.tools.converters.Conversion;
 import com.tsc9526.monalisa.tools.converters.TypeConverter;
 
 /**
@@ -38,6 +39,19 @@ import com.tsc9526.monalisa.tools.converters.TypeConverter;
 public class TestConverter {
 	private TypeConverter converter=new TypeConverter();
 	
+	public void testResolvedConversion(){
+		Conversion<?> c=converter.getConversion(Integer.class);
+		Assert.assertEquals(converter.convert("12", Integer.class, c), Integer.valueOf(12));
+		Assert.assertEquals(converter.convert(12L, Integer.class, c), Integer.valueOf(12));
+		Assert.assertNull(converter.convert(null, Integer.class, c));
+		
+		Date d=new java.sql.Timestamp(0);
+		Assert.assertSame(converter.convert(d, Date.class, converter.getConversion(Date.class)), d);
+		
+		byte[] bs=new byte[]{1,2};
+		Assert.assertSame(converter.convert(bs, byte[].class, converter.getConversion(byte[].class)), bs);
+	}
+	
 	public void testListString(){
 		List<?> rs = converter.convert("a,b,c", List.class);
 		
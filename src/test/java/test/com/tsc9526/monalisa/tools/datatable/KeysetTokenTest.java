@@ -0,0 +1,77 @@
+/*******************************************************************************************
+ *	Copyright (c) 2016, zzg.zhou(11039850@qq.com)
+ * 
+ *  Monalisa is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU Lesser General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+
+ *	This program is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU Lesser General Public License for more details.
+
+ *	You should have received a copy of the GNU Lesser General Public License
+ *	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************************/
+package test.com.tsc9526.monalisa.tools.datatable;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.tsc9526.monalisa.tools.datatable.KeysetPage;
+import com.tsc9526.monalisa.tools.datatable.KeysetToken;
+
+/**
+ * 
+ * @author zzg.zhou(11039850@qq.com)
+ */
+@Test
+public class KeysetTokenTest {
+	
+	public void testEncodeDecode() {
+		Timestamp ts=new Timestamp(1475000000123L);
+		ts.setNanos(123456789);
+		
+		List<String> keys=Arrays.asList("create_time","name","amount","id","last");
+		Object[] values=new Object[]{ts,"a,\"b\"",new BigDecimal("12.30"),123L,new Date(1475000000000L)};
+		
+		String token=KeysetToken.encode(keys, values);
+		Assert.assertTrue(token.matches("[0-9a-f]+"));
+		
+		Object[] xs=KeysetToken.decode(keys, token);
+		Assert.assertEquals(xs, values);
+		Assert.assertEquals(((Timestamp)xs[0]).getNanos(), 123456789);
+		Assert.assertEquals(xs[2].toString(), "12.30");
+		Assert.assertEquals(xs[3].getClass(), Long.class);
+	}
+	
+	public void testKeysNotMatch() {
+		String token=KeysetToken.encode(Arrays.asList("id"), new Object[]{1});
+		try{
+			KeysetToken.decode(Arrays.asList("name"), token);
+			Assert.fail("Keys not match");
+		}catch(RuntimeException e){
+		}
+		
+		try{
+			KeysetToken.decode(Arrays.asList("id"), "zz");
+			Assert.fail("Invalid token");
+		}catch(RuntimeException e){
+		}
+	}
+	
+	public void testPageNotCounted() {
+		KeysetPage<String> page=new KeysetPage<String>(Arrays.asList("a","b"), -1, 2, "0a");
+		Assert.assertEquals(page.getTotal(), -1);
+		Assert.assertEquals(page.getRecords(), -1);
+		Assert.assertTrue(page.hasNext());
+		Assert.assertTrue(page.toJson().indexOf("\"next\":\"0a\"")>0);
+	}
+}
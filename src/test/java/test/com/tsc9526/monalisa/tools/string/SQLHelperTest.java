@@ -18,6 +18,7 @@ package test.com.tsc9526.monalisa.tools.string;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import junit.framework.Assert;
 
@@ -110,4 +111,22 @@ public class SQLHelperTest {
 		Assert.assertEquals(expected, v);
 	}
 	
+	public void testDmlTable(){
+		Assert.assertEquals("t1",MelpSQL.getDmlTable("INSERT INTO T1(f1)VALUES(?)"));
+		Assert.assertEquals("t1",MelpSQL.getDmlTable("insert ignore into `db`.`t1` (f1) values(?)"));
+		Assert.assertEquals("t1",MelpSQL.getDmlTable(" update\r\n[dbo].[T1] set f1=?"));
+		Assert.assertEquals("t1",MelpSQL.getDmlTable("DELETE FROM \"T1\" WHERE id=?"));
+		Assert.assertEquals("t1",MelpSQL.getDmlTable("REPLACE INTO t1(f1)VALUES(?)"));
+		Assert.assertEquals("t1",MelpSQL.getDmlTable("TRUNCATE TABLE t1"));
+		Assert.assertNull(MelpSQL.getDmlTable("SELECT * FROM t1"));
+		Assert.assertNull(MelpSQL.getDmlTable(null));
+	}
+	
+	public void testQueryTables(){
+		Set<String> tables=MelpSQL.getQueryTables("SELECT COUNT(*) FROM `T1` a LEFT JOIN db.t2 b ON a.id=b.id, (SELECT * FROM t3) c");
+		Assert.assertEquals(3,tables.size());
+		Assert.assertTrue(tables.contains("t1"));
+		Assert.assertTrue(tables.contains("t2"));
+		Assert.assertTrue(tables.contains("t3"));
+	}
 }